@@ -0,0 +1,7 @@
+CREATE TABLE zn_data.subscription_offset (
+  so_subscription_id VARCHAR(36)  NOT NULL,
+  so_event_type      VARCHAR(255) NOT NULL,
+  so_partition       VARCHAR(255) NOT NULL,
+  so_offset          VARCHAR(255) NOT NULL,
+  PRIMARY KEY (so_subscription_id, so_event_type, so_partition)
+);
@@ -1,5 +1,6 @@
 package org.zalando.nakadi.repository.db;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
@@ -67,7 +68,8 @@ public class EventTypeCacheTestAT {
 
     @Test
     public void onCreatedAddNewChildrenZNode() throws Exception {
-        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync);
+        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync,
+                new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         etc.created(et.getName());
@@ -77,7 +79,8 @@ public class EventTypeCacheTestAT {
 
     @Test
     public void whenUpdatedSetChildrenZNodeValue() throws Exception {
-        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync);
+        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync,
+                new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         client.get()
@@ -94,7 +97,8 @@ public class EventTypeCacheTestAT {
 
     @Test
     public void whenRemovedThenDeleteZNodeValue() throws Exception {
-        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync);
+        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync,
+                new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
         Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()), Mockito.any()))
                 .thenReturn(() -> {});
@@ -111,7 +115,8 @@ public class EventTypeCacheTestAT {
 
     @Test
     public void loadsFromDbOnCacheMissTest() throws Exception {
-        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync);
+        final EventTypeCache etc = new EventTypeCache(eventTypeRepository, timelineRepository, client, timelineSync,
+                new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         Mockito
@@ -129,7 +134,8 @@ public class EventTypeCacheTestAT {
     @Test
     public void invalidateCacheOnUpdate() throws Exception {
         final EventTypeCache etc = new RepositoriesConfig()
-                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync);
+                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync,
+                        new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         Mockito
@@ -156,7 +162,8 @@ public class EventTypeCacheTestAT {
     @Test
     public void testGetTimelines() throws Exception {
         final EventTypeCache etc = new RepositoriesConfig()
-                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync);
+                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync,
+                        new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         Mockito.when(timelineRepository.listTimelinesOrdered(et.getName()))
@@ -171,7 +178,8 @@ public class EventTypeCacheTestAT {
     public void invalidateCacheOnTimelineChange() throws Exception {
         final TestTimelineSync timelineSync = new TestTimelineSync();
         final EventTypeCache etc = new RepositoriesConfig()
-                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync);
+                .eventTypeCache(client, eventTypeRepository, timelineRepository, timelineSync,
+                        new MetricRegistry(), 0);
         final EventType et = buildDefaultEventType();
 
         Mockito.when(timelineRepository.listTimelinesOrdered(et.getName()))
@@ -0,0 +1,86 @@
+package org.zalando.nakadi.repository.db;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.utils.TestUtils;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.zalando.nakadi.utils.TestUtils.randomUUID;
+
+public class SubscriptionOffsetDbRepositoryTest extends AbstractDbRepositoryTest {
+    private static final EventTypePartition P0 = new EventTypePartition("et", "0");
+    private static final EventTypePartition P1 = new EventTypePartition("et", "1");
+
+    private SubscriptionOffsetDbRepository repository;
+    private String subscriptionId;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        repository = new SubscriptionOffsetDbRepository(template, TestUtils.OBJECT_MAPPER);
+        subscriptionId = randomUUID();
+        repository.upsertOffsets(subscriptionId, ImmutableList.of(cursor(P0, "001"), cursor(P1, "001")));
+    }
+
+    @Test
+    public void whenOffsetsAreUpsertedThenTheyAreOverwritten() {
+        repository.upsertOffsets(subscriptionId, ImmutableList.of(cursor(P1, "005")));
+
+        assertEquals(ImmutableMap.of(P0, "001", P1, "005"), repository.getOffsets(subscriptionId));
+        assertEquals(ImmutableMap.of(P1, "005"),
+                repository.getOffsets(subscriptionId, Collections.singletonList(P1)));
+    }
+
+    @Test
+    public void whenOffsetsOfManySubscriptionsAreReadThenTheyAreGroupedBySubscription() {
+        final String other = randomUUID();
+        repository.upsertOffsets(other, ImmutableList.of(cursor(P0, "007")));
+
+        assertEquals(ImmutableMap.of(subscriptionId, ImmutableMap.of(P0, "001", P1, "001"),
+                other, ImmutableMap.of(P0, "007")),
+                repository.getOffsetsOfSubscriptions(ImmutableList.of(subscriptionId, other, randomUUID())));
+        repository.deleteOffsets(other);
+    }
+
+    @Test
+    public void whenOffsetsAreNotChangedConcurrentlyThenAllOfThemAreUpdated() {
+        repository.compareAndSetOffsets(subscriptionId, ImmutableMap.of(P0, "001", P1, "001"),
+                ImmutableList.of(cursor(P0, "002"), cursor(P1, "003")));
+
+        assertEquals(ImmutableMap.of(P0, "002", P1, "003"), repository.getOffsets(subscriptionId));
+    }
+
+    @Test
+    public void whenOffsetIsChangedConcurrentlyThenItIsNotUpdated() {
+        try {
+            repository.compareAndSetOffsets(subscriptionId, ImmutableMap.of(P1, "000"),
+                    ImmutableList.of(cursor(P1, "003")));
+            fail("Conflict is expected");
+        } catch (final OptimisticLockingFailureException ignore) {
+            // expected
+        }
+        assertEquals(ImmutableMap.of(P0, "001", P1, "001"), repository.getOffsets(subscriptionId));
+    }
+
+    @Test
+    public void whenOffsetsAreDeletedThenTheyAreGone() {
+        repository.deleteOffsets(subscriptionId);
+
+        final Map<EventTypePartition, String> offsets = repository.getOffsets(subscriptionId);
+        assertTrue(offsets.isEmpty());
+    }
+
+    private static SubscriptionCursorWithoutToken cursor(final EventTypePartition key, final String offset) {
+        return new SubscriptionCursorWithoutToken(key.getEventType(), key.getPartition(), offset);
+    }
+}
@@ -0,0 +1,126 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
+import org.zalando.nakadi.utils.TestUtils;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+import org.zalando.nakadi.webservice.BaseAT;
+import org.zalando.nakadi.webservice.utils.ZookeeperTestUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.zalando.nakadi.utils.TestUtils.randomUUID;
+
+public class OffsetStoreAT extends BaseAT {
+
+    private static final CuratorFramework CURATOR = ZookeeperTestUtils.createCurator(ZOOKEEPER_URL);
+    private static final EventTypePartition P0 = new EventTypePartition("et", "0");
+    private static final EventTypePartition P1 = new EventTypePartition("et", "1");
+    private static final List<EventTypePartition> KEYS = ImmutableList.of(P0, P1);
+    private static final Comparator<SubscriptionCursorWithoutToken> BY_OFFSET =
+            Comparator.comparing(SubscriptionCursorWithoutToken::getOffset);
+
+    private final AtomicBoolean useDbOffsets = new AtomicBoolean(false);
+    private SubscriptionOffsetDbRepository repository;
+    private DbOffsetWatcher watcher;
+    private String subscriptionId;
+
+    @Before
+    public void setUp() {
+        repository = new SubscriptionOffsetDbRepository(
+                new JdbcTemplate(new DriverManagerDataSource(POSTGRES_URL, POSTGRES_USER, POSTGRES_PWD)),
+                TestUtils.OBJECT_MAPPER);
+        watcher = new DbOffsetWatcher(repository);
+        subscriptionId = randomUUID();
+    }
+
+    @After
+    public void tearDown() {
+        createClient(new ZkWatchHub(CURATOR)).deleteSubscription();
+    }
+
+    @Test
+    public void whenCursorsAreResetWithDbOffsetsEnabledThenOffsetsAreMovedToDb() throws Exception {
+        final ZkSubscriptionClient client = createClient(new ZkWatchHub(CURATOR));
+        client.fillEmptySubscription(ImmutableList.of(cursor(P0, "001"), cursor(P1, "001")));
+        assertEquals(ImmutableMap.of(P0, "001", P1, "001"), offsets(client));
+
+        useDbOffsets.set(true);
+        client.resetCursors(ImmutableList.of(cursor(P0, "005")), 10_000);
+
+        assertEquals(ImmutableMap.of(P0, "005", P1, "001"), repository.getOffsets(subscriptionId));
+        assertNull(CURATOR.checkExists().forPath(subscriptionPath("/offsets")));
+        assertNotNull(CURATOR.checkExists().forPath(subscriptionPath("/offset_store")));
+        assertEquals(ImmutableMap.of(P0, "005", P1, "001"), offsets(client));
+    }
+
+    @Test
+    public void whenOffsetsAreMovedByAnotherInstanceThenClientsSwitchToDb() {
+        final ZkWatchHub hub = new ZkWatchHub(CURATOR);
+        final ZkSubscriptionClient client = createClient(hub);
+        client.fillEmptySubscription(ImmutableList.of(cursor(P0, "001"), cursor(P1, "001")));
+        assertEquals(ImmutableMap.of(P0, "001", P1, "001"), offsets(client));
+
+        useDbOffsets.set(true);
+        createClient(new ZkWatchHub(CURATOR)).resetCursors(ImmutableList.of(cursor(P0, "005")), 10_000);
+
+        assertEquals(ImmutableList.of(true), client.commitOffsets(ImmutableList.of(cursor(P1, "007")), BY_OFFSET));
+        assertEquals(ImmutableMap.of(P0, "005", P1, "007"), repository.getOffsets(subscriptionId));
+        assertEquals(ImmutableMap.of(P0, "005", P1, "007"), offsets(createClient(hub)));
+    }
+
+    @Test
+    public void whenSubscriptionIsRecreatedThenOffsetsAreKeptInTheStoreChosenAgain() throws Exception {
+        final ZkWatchHub hub = new ZkWatchHub(CURATOR);
+        useDbOffsets.set(true);
+        createClient(hub).fillEmptySubscription(ImmutableList.of(cursor(P0, "001"), cursor(P1, "001")));
+        assertEquals(ImmutableMap.of(P0, "001", P1, "001"), offsets(createClient(hub)));
+        assertNull(CURATOR.checkExists().forPath(subscriptionPath("/offsets")));
+
+        useDbOffsets.set(false);
+        final ZkSubscriptionClient client = createClient(hub);
+        client.fillEmptySubscription(ImmutableList.of(cursor(P0, "003"), cursor(P1, "003")));
+        assertTrue(repository.getOffsets(subscriptionId).isEmpty());
+        assertNull(CURATOR.checkExists().forPath(subscriptionPath("/offset_store")));
+        assertEquals(ImmutableMap.of(P0, "003", P1, "003"), offsets(createClient(hub)));
+
+        useDbOffsets.set(true);
+        createClient(hub).fillEmptySubscription(ImmutableList.of(cursor(P0, "004"), cursor(P1, "004")));
+        assertEquals(ImmutableMap.of(P0, "004", P1, "004"), repository.getOffsets(subscriptionId));
+        assertEquals(ImmutableMap.of(P0, "004", P1, "004"), offsets(client));
+    }
+
+    private ZkSubscriptionClient createClient(final ZkWatchHub hub) {
+        return new NewZkSubscriptionClient(subscriptionId, CURATOR, "offset-store-test", MAPPER, () -> false, hub,
+                new DbOffsetStore(subscriptionId, repository, watcher), useDbOffsets::get);
+    }
+
+    private static Map<EventTypePartition, String> offsets(final ZkSubscriptionClient client) {
+        return client.getOffsets(KEYS).values().stream().collect(Collectors.toMap(
+                SubscriptionCursorWithoutToken::getEventTypePartition, SubscriptionCursorWithoutToken::getOffset));
+    }
+
+    private String subscriptionPath(final String value) {
+        return "/nakadi/subscriptions/" + subscriptionId + value;
+    }
+
+    private static SubscriptionCursorWithoutToken cursor(final EventTypePartition key, final String offset) {
+        return new SubscriptionCursorWithoutToken(key.getEventType(), key.getPartition(), offset);
+    }
+}
@@ -0,0 +1,94 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zalando.nakadi.utils.EventPayloads;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares single pass {@link BatchFactory} with the way batches were processed before: body converted to string,
+ * split into events by one scan and then every event parsed once again by {@link StrictJsonParser} and encoded back
+ * to utf-8 just to measure its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchFactoryBenchmark {
+
+    @Param({"1xSMALL", "1000xSMALL", "10000xSMALL", "1xKB_1", "1000xKB_1", "10000xKB_1", "1xKB_100", "100xKB_100"})
+    public String batch;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = EventPayloads.batchBody(batch);
+    }
+
+    @Benchmark
+    public void singlePass(final Blackhole bh) {
+        bh.consume(BatchFactory.from(body));
+    }
+
+    @Benchmark
+    public void stringScanAndReparse(final Blackhole bh) {
+        final String events = new String(body, StandardCharsets.UTF_8);
+        for (final String rawEvent : splitEvents(events)) {
+            final JSONObject event = StrictJsonParser.parseObject(rawEvent);
+            bh.consume(event);
+            bh.consume(rawEvent.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    /**
+     * Reproduces the first pass of the string based implementation - looking for object boundaries and collecting
+     * positions of the whitespaces outside of strings.
+     */
+    private static List<String> splitEvents(final String data) {
+        final List<String> result = new ArrayList<>();
+        int nestingLevel = 0;
+        boolean escaped = false;
+        boolean insideQuote = false;
+        int objectStart = -1;
+        List<Integer> skipPositions = new ArrayList<>();
+        for (int curPos = 0; curPos < data.length(); ++curPos) {
+            final char curChar = data.charAt(curPos);
+            if (!insideQuote && nestingLevel > 0 && Character.isWhitespace(curChar)) {
+                skipPositions.add(curPos - objectStart);
+            }
+            if (escaped) {
+                escaped = false;
+            } else if (curChar == '\\') {
+                escaped = true;
+            } else if (curChar == '"') {
+                insideQuote = !insideQuote;
+            } else if (!insideQuote && curChar == '{') {
+                if (nestingLevel++ == 0) {
+                    objectStart = curPos;
+                    skipPositions = new ArrayList<>();
+                }
+            } else if (!insideQuote && curChar == '}' && --nestingLevel == 0) {
+                result.add(data.substring(objectStart, curPos + 1));
+            }
+        }
+        return result;
+    }
+}
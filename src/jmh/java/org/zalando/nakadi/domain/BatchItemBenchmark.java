@@ -0,0 +1,66 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.utils.EventPayloads;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dumps an event of the batch the way it is done on publishing: with metadata replaced by the enriched one (as
+ * {@link org.zalando.nakadi.enrichment.MetadataEnrichmentStrategy} does) and, for comparison, without injections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchItemBenchmark {
+
+    @Param({"SMALL", "KB_1", "KB_100"})
+    public EventPayloads.EventSize eventSize;
+
+    private BatchItem enriched;
+    private BatchItem plain;
+
+    @Setup
+    public void setUp() {
+        final byte[] body = ("[" + EventPayloads.event(0, eventSize) + "]").getBytes(StandardCharsets.UTF_8);
+        plain = BatchFactory.from(body).get(0);
+        enriched = BatchFactory.from(body).get(0);
+        final JSONObject metadata = enriched.getEvent().getJSONObject(BatchItem.Injection.METADATA.name);
+        metadata.put("received_at", "2019-01-01T10:00:01.000Z");
+        metadata.put("event_type", "order.order-placed");
+        metadata.put("flow_id", "JEzfd8xbTb2SbIuRvDPcaA");
+        metadata.put("partition", "5");
+        metadata.put("version", "1.0.0");
+        enriched.inject(BatchItem.Injection.METADATA, metadata.toString());
+    }
+
+    @Benchmark
+    public String dumpEventToStringEnriched() {
+        return enriched.dumpEventToString();
+    }
+
+    @Benchmark
+    public byte[] dumpEventEnriched() {
+        return enriched.dumpEvent();
+    }
+
+    @Benchmark
+    public String dumpEventToStringPlain() {
+        return plain.dumpEventToString();
+    }
+}
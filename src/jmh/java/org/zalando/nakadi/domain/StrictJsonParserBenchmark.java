@@ -0,0 +1,50 @@
+package org.zalando.nakadi.domain;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.utils.EventPayloads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses one event with {@link StrictJsonParser}, {@code jsonLenient} shows the cost of the lenient parser of
+ * org.json for the same event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StrictJsonParserBenchmark {
+
+    @Param({"SMALL", "KB_1", "KB_100"})
+    public EventPayloads.EventSize eventSize;
+
+    private String event;
+
+    @Setup
+    public void setUp() {
+        event = EventPayloads.event(0, eventSize);
+    }
+
+    @Benchmark
+    public JSONObject strict() {
+        return StrictJsonParser.parseObject(event);
+    }
+
+    @Benchmark
+    public JSONObject jsonLenient() {
+        return new JSONObject(event);
+    }
+}
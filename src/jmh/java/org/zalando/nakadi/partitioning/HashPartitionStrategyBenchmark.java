@@ -0,0 +1,110 @@
+package org.zalando.nakadi.partitioning;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.env.StandardEnvironment;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.exceptions.Try;
+import org.zalando.nakadi.util.JsonPathAccess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.abs;
+
+/**
+ * Partitions sample events from test resources (events.10000.*.txt) with {@link HashPartitionStrategy} using cached
+ * {@link PartitionRoutingTable} and compares it with the way partitions were resolved before: list of partitions
+ * copied for every event, partition key paths parsed and partitions sorted on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashPartitionStrategyBenchmark {
+
+    @Param({"A", "B", "C"})
+    public String sampleSet;
+
+    @Param({"8", "64"})
+    public int partitionCount;
+
+    private final StringHash stringHash = new StringHash();
+    private HashPartitionStrategyCrutch hashPartitioningCrutch;
+    private HashPartitionStrategy strategy;
+    private EventType eventType;
+    private List<JSONObject> events;
+    private List<String> partitions;
+    private PartitionRoutingTable routingTable;
+
+    @Setup
+    public void setUp() throws IOException {
+        eventType = new EventType();
+        eventType.setPartitionKeyFields(Arrays.asList("sku", "name"));
+        hashPartitioningCrutch = new HashPartitionStrategyCrutch(new StandardEnvironment(), 0);
+        strategy = new HashPartitionStrategy(hashPartitioningCrutch, stringHash);
+        partitions = IntStream.range(0, partitionCount).mapToObj(String::valueOf).collect(Collectors.toList());
+        routingTable = new PartitionRoutingTable(eventType, "topic", partitions, hashPartitioningCrutch);
+        events = loadSampleSet("/org/zalando/nakadi/partitioning/events.10000." + sampleSet + ".txt");
+    }
+
+    @Benchmark
+    public void routingTable(final Blackhole bh) {
+        for (final JSONObject event : events) {
+            bh.consume(strategy.calculatePartition(eventType, event, routingTable));
+        }
+    }
+
+    @Benchmark
+    public void listPerEvent(final Blackhole bh) {
+        for (final JSONObject event : events) {
+            final List<String> eventPartitions = Collections.unmodifiableList(new ArrayList<>(partitions));
+            final JsonPathAccess traversableJsonEvent = new JsonPathAccess(event);
+            final int hashValue = eventType.getPartitionKeyFields().stream()
+                    .map(Try.wrap(pkf -> stringHash.hashCode(traversableJsonEvent.get(pkf).toString())))
+                    .map(Try::getOrThrow)
+                    .mapToInt(hc -> hc)
+                    .sum();
+            final int partitionIndex = hashPartitioningCrutch.adjustPartitionIndex(
+                    abs(hashValue) % eventPartitions.size(), eventPartitions.size());
+            bh.consume(eventPartitions.stream().sorted().collect(Collectors.toList()).get(partitionIndex));
+        }
+    }
+
+    private static List<JSONObject> loadSampleSet(final String resource) throws IOException {
+        final List<JSONObject> result = new ArrayList<>(10000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                HashPartitionStrategyBenchmark.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isNoneBlank(line)) {
+                    result.add(new JSONObject(line));
+                }
+            }
+        }
+        return result;
+    }
+}
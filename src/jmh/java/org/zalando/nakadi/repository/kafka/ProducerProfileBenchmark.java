@@ -0,0 +1,77 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.utils.EventPayloads;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds kafka record batches the same way as producer does for every compression of producer profiles, and counts
+ * bytes of the events and bytes of the batches sent to the broker. Bytes on the wire per batch are
+ * {@code wireBytes / ops}. Linger of the profile decides how many events are collected into one batch, which is
+ * represented by the amount of events in the batch: with linger of zero a batch often holds what was published with
+ * one request, while longer linger collects events of several requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProducerProfileBenchmark {
+
+    @Param({"none", "lz4", "zstd", "gzip"})
+    public String compression;
+
+    @Param({"1xSMALL", "100xSMALL", "1000xSMALL", "100xKB_1", "1xKB_100", "10xKB_100"})
+    public String batch;
+
+    private CompressionType compressionType;
+    private List<byte[]> events;
+    private int rawSize;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long rawBytes;
+        public long wireBytes;
+    }
+
+    @Setup
+    public void setUp() {
+        compressionType = CompressionType.forName(compression);
+        events = EventPayloads.eventBytes(batch);
+        rawSize = events.stream().mapToInt(event -> event.length).sum();
+    }
+
+    @Benchmark
+    public MemoryRecords buildBatch(final Bytes bytes) {
+        final MemoryRecordsBuilder builder = MemoryRecords.builder(
+                ByteBuffer.allocate(rawSize + 1024), compressionType, TimestampType.CREATE_TIME, 0L);
+        final long timestamp = System.currentTimeMillis();
+        for (final byte[] event : events) {
+            builder.append(timestamp, null, event);
+        }
+        final MemoryRecords records = builder.build();
+        bytes.rawBytes += rawSize;
+        bytes.wireBytes += records.sizeInBytes();
+        return records;
+    }
+}
@@ -0,0 +1,67 @@
+package org.zalando.nakadi.service;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.utils.EventPayloads;
+import org.zalando.nakadi.view.Cursor;
+import org.zalando.nakadi.view.SubscriptionCursor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes batches of low-level and subscription streams with {@link EventStreamWriterBinary} into a stream, that
+ * discards the data, so that only the cost of serialization is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventStreamWriterBinaryBenchmark {
+
+    @Param({"1xSMALL", "1000xSMALL", "10000xSMALL", "1xKB_1", "1000xKB_1", "10000xKB_1", "1xKB_100", "100xKB_100"})
+    public String batch;
+
+    private final EventStreamWriterBinary writer = new EventStreamWriterBinary();
+    private final OutputStream out = ByteStreams.nullOutputStream();
+    private final Cursor cursor = new Cursor("5", "001-0001-000000000000123456");
+    private final SubscriptionCursor subscriptionCursor = new SubscriptionCursor(
+            "5", "001-0001-000000000000123456", "order.order-placed", "4c8cf4b6-8d22-4aa1-9b4c-0cbbd2a7e5c7");
+    private List<byte[]> events;
+    private List<ConsumedEvent> consumedEvents;
+
+    @Setup
+    public void setUp() {
+        events = EventPayloads.eventBytes(batch);
+        consumedEvents = events.stream()
+                .map(event -> new ConsumedEvent(event, null, 0L))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public int writeBatch() throws IOException {
+        return writer.writeBatch(out, cursor, events);
+    }
+
+    @Benchmark
+    public int writeSubscriptionBatch() throws IOException {
+        return writer.writeSubscriptionBatch(out, subscriptionCursor, consumedEvents, Optional.empty());
+    }
+}
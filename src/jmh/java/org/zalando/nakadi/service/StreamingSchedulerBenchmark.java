@@ -0,0 +1,211 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Storage;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.EventConsumer;
+import org.zalando.nakadi.security.FullAccessClient;
+import org.zalando.nakadi.view.Cursor;
+import org.zalando.nakadi.view.SubscriptionCursor;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Load harness for low-level streams running on {@link StreamingScheduler}. Opens {@code streams} idle streams, that
+ * are waiting for new events the same way as real connections do, and measures the time from an event becoming
+ * available in the consumer till the batch with this event is written to the output (use percentiles of sample time
+ * mode, e.g. p0.99). Thread count of the JVM is printed once the streams are closed, with thread-per-stream approach it
+ * would be at least {@code streams}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(4)
+@Fork(1)
+public class StreamingSchedulerBenchmark {
+
+    private static final byte[] EVENT = "{\"metadata\":{\"eid\":\"1\"}}".getBytes(StandardCharsets.UTF_8);
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long MAX_IDLE_POLL_MS = 1000;
+
+    @Param({"10000"})
+    public int streams;
+
+    @Param({"32"})
+    public int schedulerThreads;
+
+    private StreamingScheduler scheduler;
+    private List<BenchmarkStream> openStreams;
+    private AtomicBoolean connectionReady;
+    private int peakThreads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        scheduler = new StreamingScheduler(schedulerThreads, schedulerThreads);
+        connectionReady = new AtomicBoolean(true);
+        final Timeline timeline = new Timeline("et", 0, new Storage("default", Storage.Type.KAFKA), "topic",
+                new Date());
+        final EventStreamConfig config = EventStreamConfig.builder()
+                .withCursors(ImmutableList.of(NakadiCursor.of(timeline, "0", "000000000000000000")))
+                .withBatchLimit(1)
+                .withEtName("et")
+                .withConsumingClient(new FullAccessClient("benchmark"))
+                .build();
+        final CursorConverter cursorConverter = mock(CursorConverter.class, withSettings().stubOnly());
+        final BlacklistService blacklistService = mock(BlacklistService.class, withSettings().stubOnly());
+        final NakadiKpiPublisher kpiPublisher = mock(NakadiKpiPublisher.class, withSettings().stubOnly());
+        final MetricRegistry metricRegistry = new MetricRegistry();
+
+        openStreams = new ArrayList<>(streams);
+        for (int i = 0; i < streams; ++i) {
+            final BenchmarkStream stream = new BenchmarkStream(NakadiCursor.of(timeline, "0", "000000000000000001"));
+            final EventStream eventStream = new EventStream(stream, ByteStreams.nullOutputStream(), config,
+                    blacklistService, cursorConverter, metricRegistry.meter("bytes"), stream, kpiPublisher,
+                    "kpi", TimeUnit.DAYS.toMillis(1), scheduler.createSerialExecutor(), POLL_TIMEOUT_MS,
+                    MAX_IDLE_POLL_MS, null);
+            final NonBlockingOutputStream output = new NonBlockingOutputStream(
+                    mock(HttpServletRequest.class, withSettings().stubOnly()),
+                    mock(ServletOutputStream.class, withSettings().stubOnly()), Long.MAX_VALUE);
+            stream.finished = eventStream.streamEventsAsync(output, connectionReady, () -> {
+            });
+            openStreams.add(stream);
+        }
+        peakThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionReady.set(false);
+        openStreams.forEach(stream -> stream.finished.join());
+        System.out.println();
+        System.out.println("Open streams: " + streams + ", scheduler threads: " + schedulerThreads +
+                ", JVM threads with all streams open: " + peakThreads);
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void eventToBatchLatency() {
+        final BenchmarkStream stream = openStreams.get(ThreadLocalRandom.current().nextInt(openStreams.size()));
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+        stream.publish(written);
+        written.join();
+    }
+
+    /**
+     * Consumer and writer of one stream. Events are written as soon as they are published, and batches are not
+     * serialized, as only scheduling of streams is measured.
+     */
+    private static class BenchmarkStream implements EventConsumer, EventStreamWriter {
+        private final NakadiCursor position;
+        private final Queue<ConsumedEvent> available = new ConcurrentLinkedQueue<>();
+        private final Queue<CompletableFuture<Void>> waiting = new ConcurrentLinkedQueue<>();
+        private CompletableFuture<Void> finished;
+        private volatile Runnable dataListener;
+
+        private BenchmarkStream(final NakadiCursor position) {
+            this.position = position;
+        }
+
+        private void publish(final CompletableFuture<Void> written) {
+            waiting.add(written);
+            available.add(new ConsumedEvent(EVENT, position, System.currentTimeMillis()));
+            final Runnable listener = dataListener;
+            if (null != listener) {
+                listener.run();
+            }
+        }
+
+        @Override
+        public void setDataListener(final Runnable dataListener) {
+            this.dataListener = dataListener;
+        }
+
+        @Override
+        public boolean notifiesAboutAllEvents() {
+            return true;
+        }
+
+        @Override
+        public List<ConsumedEvent> readEvents() {
+            return readAvailableEvents();
+        }
+
+        @Override
+        public List<ConsumedEvent> readAvailableEvents() {
+            final List<ConsumedEvent> result = new ArrayList<>();
+            ConsumedEvent event;
+            while (null != (event = available.poll())) {
+                result.add(event);
+            }
+            return result;
+        }
+
+        @Override
+        public void pause(final Collection<EventTypePartition> partitions) {
+        }
+
+        @Override
+        public void resume(final Collection<EventTypePartition> partitions) {
+        }
+
+        @Override
+        public int writeBatch(final OutputStream os, final Cursor cursor, final List<byte[]> events) {
+            for (int i = 0; i < events.size(); ++i) {
+                final CompletableFuture<Void> written = waiting.poll();
+                if (null != written) {
+                    written.complete(null);
+                }
+            }
+            return events.size() * EVENT.length;
+        }
+
+        @Override
+        public int writeSubscriptionBatch(final OutputStream os, final SubscriptionCursor cursor,
+                                          final List<ConsumedEvent> events, final Optional<String> metadata) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.zalando.nakadi.service.subscription;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.service.subscription.model.Partition;
+import org.zalando.nakadi.service.subscription.model.Session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebalances partitions of a subscription reading from 4 event types: on start of the first streams (all the
+ * partitions are unassigned), when one more stream joins balanced subscription and when nothing has to be changed.
+ * Throughput of partitions is either unknown, so that partitions are balanced by count, or random with a few hot
+ * partitions. The biggest case is 10000 partitions distributed between 200 streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionRebalancerBenchmark {
+
+    private static final int EVENT_TYPES = 4;
+
+    @Param({"1", "10", "100", "200"})
+    public int sessionCount;
+
+    @Param({"8", "64", "1024", "2500"})
+    public int partitionsPerEventType;
+
+    @Param({"false", "true"})
+    public boolean knownThroughput;
+
+    private SubscriptionRebalancer rebalancer;
+    private List<Session> sessions;
+    private List<Session> sessionsWithNewcomer;
+    private Partition[] unassigned;
+    private Partition[] balanced;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        final Map<EventTypePartition, Double> throughput = new HashMap<>();
+        rebalancer = new SubscriptionRebalancer(partition -> throughput.getOrDefault(partition, 0.));
+        sessions = new ArrayList<>();
+        for (int i = 0; i < sessionCount; ++i) {
+            sessions.add(new Session("session-" + i, 1));
+        }
+        sessionsWithNewcomer = new ArrayList<>(sessions);
+        sessionsWithNewcomer.add(new Session("session-new", 1));
+
+        unassigned = new Partition[EVENT_TYPES * partitionsPerEventType];
+        for (int et = 0; et < EVENT_TYPES; ++et) {
+            for (int p = 0; p < partitionsPerEventType; ++p) {
+                final int idx = et * partitionsPerEventType + p;
+                unassigned[idx] = new Partition("et-" + et, String.valueOf(p), null, null, Partition.State.UNASSIGNED);
+                if (knownThroughput) {
+                    throughput.put(unassigned[idx].getKey(),
+                            random.nextInt(100) == 0 ? 10_000. + random.nextInt(10_000) : 100. + random.nextInt(1000));
+                }
+            }
+        }
+        balanced = rebalancer.apply(sessions, unassigned);
+    }
+
+    @Benchmark
+    public Partition[] initialAssignment() {
+        return rebalancer.apply(sessions, unassigned);
+    }
+
+    @Benchmark
+    public Partition[] sessionJoined() {
+        return rebalancer.apply(sessionsWithNewcomer, balanced);
+    }
+
+    @Benchmark
+    public Partition[] nothingChanged() {
+        return rebalancer.apply(sessions, balanced);
+    }
+}
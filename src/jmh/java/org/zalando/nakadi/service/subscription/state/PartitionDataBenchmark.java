@@ -0,0 +1,83 @@
+package org.zalando.nakadi.service.subscription.state;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Storage;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.kafka.KafkaCursor;
+import org.zalando.nakadi.utils.EventPayloads;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes events of one partition through {@link PartitionData} the way subscription stream does: events are added
+ * as they are consumed, taken in batches to be sent and committed once in a while. Score is per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionDataBenchmark {
+
+    private static final int EVENTS = 10_000;
+    private static final int COMMIT_EVERY = 1_000;
+    private static final Comparator<NakadiCursor> COMPARATOR = Comparator.comparing(NakadiCursor::getOffset);
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private ConsumedEvent[] events;
+    private NakadiCursor initialCursor;
+
+    @Setup
+    public void setUp() {
+        final Timeline timeline = new Timeline("et", 0, new Storage("default", Storage.Type.KAFKA), "topic",
+                new Date());
+        final byte[] event = EventPayloads.event(0, EventPayloads.EventSize.KB_1).getBytes(StandardCharsets.UTF_8);
+        initialCursor = NakadiCursor.of(timeline, "0", KafkaCursor.toNakadiOffset(0));
+        events = new ConsumedEvent[EVENTS];
+        for (int i = 0; i < EVENTS; ++i) {
+            events[i] = new ConsumedEvent(
+                    event, NakadiCursor.of(timeline, "0", KafkaCursor.toNakadiOffset(i + 1)), 0L);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void streamAndCommit(final Blackhole bh) {
+        final PartitionData data = new PartitionData(COMPARATOR, null, initialCursor, 0L);
+        int sent = 0;
+        for (int i = 0; i < EVENTS; ++i) {
+            data.addEvent(events[i]);
+            final List<ConsumedEvent> batch = data.takeEventsToStream(i, batchSize, Long.MAX_VALUE, false);
+            if (null != batch) {
+                bh.consume(batch);
+                sent += batch.size();
+            }
+            if (sent >= COMMIT_EVERY) {
+                bh.consume(data.onCommitOffset(data.getSentOffset()));
+                sent = 0;
+            }
+        }
+        bh.consume(data.extractAll(EVENTS));
+    }
+}
@@ -0,0 +1,121 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
+import org.zalando.nakadi.utils.TestUtils;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits offsets of all the partitions of a subscription at once, the same way as commits of a stream are written,
+ * with offsets kept either in zookeeper or in database. Every thread commits to its own subscription, so commits do
+ * not conflict, and committed cursors per second are {@code cursors}. Requires zookeeper and postgres started with
+ * docker-compose, e.g. {@code ./gradlew startStorages}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class OffsetStoreBenchmark {
+
+    private static final String ZOOKEEPER = "localhost:2181";
+    private static final String DATABASE = "jdbc:postgresql://localhost:5432/local_nakadi_db";
+    private static final Comparator<SubscriptionCursorWithoutToken> BY_OFFSET =
+            Comparator.comparing(SubscriptionCursorWithoutToken::getOffset);
+
+    @Param({"zookeeper", "database"})
+    public String store;
+
+    @Param({"1", "8", "64"})
+    public int partitions;
+
+    private CuratorFramework curator;
+    private SingleConnectionDataSource dataSource;
+    private NewZkSubscriptionClient client;
+    private long offset;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cursors {
+        public long cursors;
+    }
+
+    @Setup
+    public void setUp() {
+        curator = CuratorFrameworkFactory.newClient(ZOOKEEPER, new ExponentialBackoffRetry(100, 3));
+        curator.start();
+        dataSource = new SingleConnectionDataSource(DATABASE, "nakadi", "nakadi", true);
+        final SubscriptionOffsetDbRepository repository = transactional(
+                new SubscriptionOffsetDbRepository(new JdbcTemplate(dataSource), TestUtils.OBJECT_MAPPER));
+        final String subscriptionId = TestUtils.randomUUID();
+        client = new NewZkSubscriptionClient(subscriptionId, curator, "benchmark", TestUtils.OBJECT_MAPPER,
+                () -> true, new ZkWatchHub(curator),
+                new DbOffsetStore(subscriptionId, repository, new DbOffsetWatcher(repository)),
+                () -> "database".equals(store));
+        client.fillEmptySubscription(nextCursors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.deleteSubscription();
+        curator.close();
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Boolean> commitOffsets(final Cursors cursors) {
+        final List<Boolean> committed = client.commitOffsets(nextCursors(), BY_OFFSET);
+        cursors.cursors += partitions;
+        return committed;
+    }
+
+    private List<SubscriptionCursorWithoutToken> nextCursors() {
+        offset += 1;
+        final String value = String.format("%019d", offset);
+        final List<SubscriptionCursorWithoutToken> cursors = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; ++i) {
+            cursors.add(new SubscriptionCursorWithoutToken("benchmark-event-type", String.valueOf(i), value));
+        }
+        return cursors;
+    }
+
+    /**
+     * Applies transactions of repository methods, as it is done by spring for the application.
+     */
+    private SubscriptionOffsetDbRepository transactional(final SubscriptionOffsetDbRepository repository) {
+        final ProxyFactory proxyFactory = new ProxyFactory(repository);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(
+                new DataSourceTransactionManager(dataSource), new AnnotationTransactionAttributeSource()));
+        return (SubscriptionOffsetDbRepository) proxyFactory.getProxy();
+    }
+}
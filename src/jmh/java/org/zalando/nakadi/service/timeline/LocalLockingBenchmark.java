@@ -0,0 +1,87 @@
+package org.zalando.nakadi.service.timeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Enters and leaves publishing of random event type from 64 threads with {@link LocalLocking} and with the way it was
+ * done before: counters of all the event types guarded by one monitor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class LocalLockingBenchmark {
+
+    @Param({"1", "1000"})
+    public int eventTypeCount;
+
+    private final LocalLocking localLocking = new LocalLocking();
+    private final MonitorLocking monitorLocking = new MonitorLocking();
+    private String[] eventTypes;
+
+    @Setup
+    public void setUp() {
+        eventTypes = new String[eventTypeCount];
+        for (int i = 0; i < eventTypeCount; ++i) {
+            eventTypes[i] = "event-type-" + i;
+        }
+    }
+
+    @Benchmark
+    public void perEventTypeGate() throws InterruptedException, TimeoutException, IOException {
+        localLocking.workWithEventType(randomEventType(), 1000).close();
+    }
+
+    @Benchmark
+    public void globalMonitor() throws IOException {
+        monitorLocking.workWithEventType(randomEventType()).close();
+    }
+
+    private String randomEventType() {
+        return eventTypes[ThreadLocalRandom.current().nextInt(eventTypes.length)];
+    }
+
+    private static class MonitorLocking {
+        private final Map<String, Integer> eventTypesBeingPublished = new HashMap<>();
+        private final Object lock = new Object();
+
+        Closeable workWithEventType(final String eventType) {
+            synchronized (lock) {
+                eventTypesBeingPublished.put(eventType, eventTypesBeingPublished.getOrDefault(eventType, 0) + 1);
+            }
+            return () -> {
+                synchronized (lock) {
+                    final int currentCount = eventTypesBeingPublished.get(eventType);
+                    if (1 == currentCount) {
+                        eventTypesBeingPublished.remove(eventType);
+                        lock.notifyAll();
+                    } else {
+                        eventTypesBeingPublished.put(eventType, currentCount - 1);
+                    }
+                }
+            };
+        }
+    }
+}
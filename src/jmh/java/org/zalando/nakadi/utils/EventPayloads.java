@@ -0,0 +1,82 @@
+package org.zalando.nakadi.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates events for benchmarks, that look like business events published to nakadi: metadata, a few top level
+ * fields and an array of line items, that is growing until the event reaches the requested size. Generation is
+ * deterministic, so that results of different runs are comparable.
+ * <p>
+ * Batches are described as {@code <events>x<size>}, e.g. {@code 1000xKB_1} is a batch of 1000 events of 1 KB each.
+ */
+public final class EventPayloads {
+
+    public enum EventSize {
+        SMALL(0),
+        KB_1(1024),
+        KB_100(100 * 1024);
+
+        private final int bytes;
+
+        EventSize(final int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private EventPayloads() {
+    }
+
+    public static String event(final int index, final EventSize size) {
+        final Random random = new Random(index);
+        final StringBuilder sb = new StringBuilder(size.bytes + 256);
+        sb.append("{\"metadata\":{\"eid\":\"").append(new UUID(random.nextLong(), random.nextLong()))
+                .append("\",\"occurred_at\":\"2019-01-01T10:00:00.").append(String.format("%03d", index % 1000))
+                .append("Z\"},\"order_number\":\"ORD-").append(index)
+                .append("\",\"customer\":{\"id\":").append(random.nextInt(1_000_000))
+                .append(",\"country\":\"DE\",\"name\":\"Jürgen Müller\"},\"items\":[");
+        int item = 0;
+        do {
+            if (item > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sku\":\"SKU-").append(random.nextInt(100_000))
+                    .append("\",\"name\":\"Prodüct ").append(item)
+                    .append(" \\\"limited\\\" edition\",\"price\":").append(random.nextInt(10_000)).append(".99")
+                    .append(",\"quantity\":").append(1 + random.nextInt(5))
+                    .append(",\"tags\":[\"summer\",\"sale\"]}");
+            ++item;
+        } while (sb.length() < size.bytes);
+        return sb.append("]}").toString();
+    }
+
+    public static List<String> events(final String batch) {
+        final int separator = batch.indexOf('x');
+        final int count = Integer.parseInt(batch.substring(0, separator));
+        final EventSize size = EventSize.valueOf(batch.substring(separator + 1));
+        final List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(event(i, size));
+        }
+        return result;
+    }
+
+    /**
+     * Returns utf-8 encoded batch as it is sent to the publishing endpoint.
+     */
+    public static byte[] batchBody(final String batch) {
+        return ("[" + String.join(",\n", events(batch)) + "]").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static List<byte[]> eventBytes(final String batch) {
+        final List<String> events = events(batch);
+        final List<byte[]> result = new ArrayList<>(events.size());
+        for (final String event : events) {
+            result.add(event.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
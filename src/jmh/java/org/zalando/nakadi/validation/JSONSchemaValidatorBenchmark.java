@@ -0,0 +1,69 @@
+package org.zalando.nakadi.validation;
+
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.utils.EventTypeTestBuilder;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.zalando.nakadi.utils.TestUtils.readFile;
+
+/**
+ * Validates valid data change event from test resources (product-event.json) with compiled schema and with everit
+ * only, the way it was done before schemas were compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JSONSchemaValidatorBenchmark {
+
+    private JSONSchemaValidator validator;
+    private Schema everitSchema;
+    private JSONObject event;
+
+    @Setup
+    public void setUp() throws IOException {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .category(EventCategory.DATA)
+                .schema(readFile("product-json-schema.json"))
+                .build();
+        final JSONObject schema = new JsonSchemaEnrichment().effectiveSchema(eventType);
+        validator = new JSONSchemaValidator(schema);
+        everitSchema = SchemaLoader.builder()
+                .schemaJson(schema)
+                .addFormatValidator("date-time", new RFC3339DateTimeValidator())
+                .build()
+                .load()
+                .build();
+        event = new JSONObject(readFile("product-event.json"));
+    }
+
+    @Benchmark
+    public Optional<ValidationError> compiled() {
+        return validator.accepts(event);
+    }
+
+    @Benchmark
+    public JSONObject everit() {
+        everitSchema.validate(event);
+        return event;
+    }
+}
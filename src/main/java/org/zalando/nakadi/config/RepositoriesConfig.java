@@ -1,7 +1,9 @@
 package org.zalando.nakadi.config;
 
+import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -61,14 +63,18 @@ public class RepositoriesConfig {
     public EventTypeCache eventTypeCache(final ZooKeeperHolder zooKeeperHolder,
                                          @DB final EventTypeRepository eventTypeRepository,
                                          @DB final TimelineDbRepository timelineRepository,
-                                         final TimelineSync timelineSync) {
+                                         final TimelineSync timelineSync,
+                                         final MetricRegistry metricRegistry,
+                                         @Value("${nakadi.eventTypeCache.refreshJitterMs}")
+                                         final long refreshJitterMs) {
         ValidationStrategy.register(EventBodyMustRespectSchema.NAME, new EventBodyMustRespectSchema(
                 new JsonSchemaEnrichment()
         ));
         ValidationStrategy.register(EventMetadataValidationStrategy.NAME, new EventMetadataValidationStrategy());
 
         try {
-            return new EventTypeCache(eventTypeRepository, timelineRepository, zooKeeperHolder, timelineSync);
+            return new EventTypeCache(eventTypeRepository, timelineRepository, zooKeeperHolder, timelineSync,
+                    metricRegistry, refreshJitterMs);
         } catch (final Exception e) {
             throw new IllegalStateException("failed to create event type cache", e);
         }
@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.zalando.nakadi.domain.SchemaChange;
+import org.zalando.nakadi.repository.kafka.KafkaProducerProfiles;
 import org.zalando.nakadi.service.validation.EventTypeOptionsValidator;
 import org.zalando.nakadi.validation.SchemaEvolutionService;
 import org.zalando.nakadi.validation.schema.CategoryChangeConstraint;
@@ -48,8 +49,9 @@ public class ValidatorConfig {
     @Bean
     public EventTypeOptionsValidator eventTypeOptionsValidator(
             @Value("${nakadi.topic.min.retentionMs}") final long minTopicRetentionMs,
-            @Value("${nakadi.topic.max.retentionMs}") final long maxTopicRetentionMs) {
-        return new EventTypeOptionsValidator(minTopicRetentionMs, maxTopicRetentionMs);
+            @Value("${nakadi.topic.max.retentionMs}") final long maxTopicRetentionMs,
+            final KafkaProducerProfiles producerProfiles) {
+        return new EventTypeOptionsValidator(minTopicRetentionMs, maxTopicRetentionMs, producerProfiles.getNames());
     }
 
     @Bean
@@ -18,6 +18,7 @@ import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.zalando.nakadi.controller.StreamingDeferredResult;
 import org.zalando.nakadi.security.ClientResolver;
 import org.zalando.nakadi.util.FlowIdRequestFilter;
 import org.zalando.nakadi.util.GzipBodyRequestFilter;
@@ -41,6 +42,7 @@ public class WebConfig extends WebMvcConfigurationSupport {
     public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
         configurer.setDefaultTimeout(nakadiStreamTimeout);
         configurer.registerCallableInterceptors(timeoutInterceptor());
+        configurer.registerDeferredResultInterceptors(new StreamingDeferredResult.StartInterceptor());
     }
 
     @Bean
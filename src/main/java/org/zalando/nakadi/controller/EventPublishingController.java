@@ -1,6 +1,5 @@
 package org.zalando.nakadi.controller;
 
-import com.google.common.base.Charsets;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +12,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.zalando.nakadi.domain.EventPublishResult;
 import org.zalando.nakadi.domain.EventPublishingStatus;
 import org.zalando.nakadi.exceptions.runtime.AccessDeniedException;
@@ -28,6 +28,9 @@ import org.zalando.nakadi.service.BlacklistService;
 import org.zalando.nakadi.service.EventPublisher;
 import org.zalando.nakadi.service.NakadiKpiPublisher;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -62,13 +65,15 @@ public class EventPublishingController {
     }
 
     @RequestMapping(value = "/event-types/{eventTypeName}/events", method = POST)
-    public ResponseEntity postEvent(@PathVariable final String eventTypeName,
-                                    @RequestBody final String eventsAsString,
-                                    final NativeWebRequest request,
-                                    final Client client)
+    public DeferredResult<ResponseEntity> postEvent(@PathVariable final String eventTypeName,
+                                                    @RequestBody final byte[] events,
+                                                    final NativeWebRequest request,
+                                                    final Client client)
             throws AccessDeniedException, BlockedException, ServiceTemporarilyUnavailableException,
             InternalNakadiException, EventTypeTimeoutException, NoSuchEventTypeException {
-        LOG.trace("Received event {} for event type {}", eventsAsString, eventTypeName);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Received event {} for event type {}", new String(events, StandardCharsets.UTF_8), eventTypeName);
+        }
 
         final EventTypeMetrics eventTypeMetrics = eventTypeMetricRegistry.metricsFor(eventTypeName);
 
@@ -76,41 +81,53 @@ public class EventPublishingController {
             throw new BlockedException("Application or event type is blocked");
         }
 
+        final long startingNanos = System.nanoTime();
+        final CompletableFuture<EventPublishResult> publishing;
         try {
-            final ResponseEntity response = postEventInternal(
-                    eventTypeName, eventsAsString, request, eventTypeMetrics, client);
-            eventTypeMetrics.incrementResponseCount(response.getStatusCode().value());
-            return response;
+            publishing = publisher.publishAsync(events, eventTypeName);
         } catch (final NoSuchEventTypeException exception) {
+            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
             eventTypeMetrics.incrementResponseCount(NOT_FOUND.getStatusCode());
             throw exception;
         } catch (final RuntimeException ex) {
+            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
             eventTypeMetrics.incrementResponseCount(INTERNAL_SERVER_ERROR.getStatusCode());
             throw ex;
         }
-    }
 
-    private ResponseEntity postEventInternal(final String eventTypeName,
-                                             final String eventsAsString,
-                                             final NativeWebRequest nativeWebRequest,
-                                             final EventTypeMetrics eventTypeMetrics,
-                                             final Client client)
-            throws AccessDeniedException, ServiceTemporarilyUnavailableException, InternalNakadiException,
-            EventTypeTimeoutException, NoSuchEventTypeException {
-        final long startingNanos = System.nanoTime();
-        try {
-            final EventPublishResult result = publisher.publish(eventsAsString, eventTypeName);
+        // Response is written once storage acknowledges the batch, request thread is not waiting for it.
+        final DeferredResult<ResponseEntity> deferredResponse = new DeferredResult<>();
+        publishing.whenComplete((result, ex) -> {
+            try {
+                if (null != ex) {
+                    eventTypeMetrics.incrementResponseCount(INTERNAL_SERVER_ERROR.getStatusCode());
+                    deferredResponse.setErrorResult(ex instanceof CompletionException ? ex.getCause() : ex);
+                } else {
+                    final ResponseEntity response = processResult(
+                            eventTypeName, events, result, startingNanos, eventTypeMetrics, client);
+                    eventTypeMetrics.incrementResponseCount(response.getStatusCode().value());
+                    deferredResponse.setResult(response);
+                }
+            } finally {
+                eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
+            }
+        });
+        return deferredResponse;
+    }
 
-            final int eventCount = result.getResponses().size();
-            final int totalSizeBytes = eventsAsString.getBytes(Charsets.UTF_8).length;
+    private ResponseEntity processResult(final String eventTypeName,
+                                         final byte[] events,
+                                         final EventPublishResult result,
+                                         final long startingNanos,
+                                         final EventTypeMetrics eventTypeMetrics,
+                                         final Client client) {
+        final int eventCount = result.getResponses().size();
+        final int totalSizeBytes = events.length;
 
-            reportMetrics(eventTypeMetrics, result, totalSizeBytes, eventCount);
-            reportSLOs(startingNanos, totalSizeBytes, eventCount, result, eventTypeName, client);
+        reportMetrics(eventTypeMetrics, result, totalSizeBytes, eventCount);
+        reportSLOs(startingNanos, totalSizeBytes, eventCount, result, eventTypeName, client);
 
-            return response(result);
-        } finally {
-            eventTypeMetrics.updateTiming(startingNanos, System.nanoTime());
-        }
+        return response(result);
     }
 
     private void reportSLOs(final long startingNanos, final int totalSizeBytes, final int eventCount,
@@ -18,7 +18,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.zalando.nakadi.domain.CursorError;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.NakadiCursor;
@@ -46,8 +46,9 @@ import org.zalando.nakadi.service.EventStream;
 import org.zalando.nakadi.service.EventStreamConfig;
 import org.zalando.nakadi.service.EventStreamFactory;
 import org.zalando.nakadi.service.EventTypeChangeListener;
+import org.zalando.nakadi.service.NonBlockingOutputStream;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.timeline.TimelineService;
-import org.zalando.nakadi.util.FlowIdUtils;
 import org.zalando.nakadi.view.Cursor;
 import org.zalando.problem.Problem;
 import org.zalando.problem.StatusType;
@@ -63,6 +64,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -94,6 +97,8 @@ public class EventStreamController {
     private final AuthorizationValidator authorizationValidator;
     private final EventTypeChangeListener eventTypeChangeListener;
     private final Long maxMemoryUsageBytes;
+    private final long maxPendingOutputBytes;
+    private final StreamCompression streamCompression;
 
     @Autowired
     public EventStreamController(final EventTypeRepository eventTypeRepository,
@@ -107,7 +112,9 @@ public class EventStreamController {
                                  final CursorConverter cursorConverter,
                                  final AuthorizationValidator authorizationValidator,
                                  final EventTypeChangeListener eventTypeChangeListener,
-                                 @Value("${nakadi.stream.maxStreamMemoryBytes}") final Long maxMemoryUsageBytes) {
+                                 @Value("${nakadi.stream.maxStreamMemoryBytes}") final Long maxMemoryUsageBytes,
+                                 @Value("${nakadi.stream.output.maxPendingBytes}") final long maxPendingOutputBytes,
+                                 final StreamCompression streamCompression) {
         this.eventTypeRepository = eventTypeRepository;
         this.timelineService = timelineService;
         this.jsonMapper = jsonMapper;
@@ -120,6 +127,8 @@ public class EventStreamController {
         this.authorizationValidator = authorizationValidator;
         this.eventTypeChangeListener = eventTypeChangeListener;
         this.maxMemoryUsageBytes = maxMemoryUsageBytes;
+        this.maxPendingOutputBytes = maxPendingOutputBytes;
+        this.streamCompression = streamCompression;
     }
 
     @VisibleForTesting
@@ -185,7 +194,7 @@ public class EventStreamController {
     }
 
     @RequestMapping(value = "/event-types/{name}/events", method = RequestMethod.GET)
-    public StreamingResponseBody streamEvents(
+    public DeferredResult<Void> streamEvents(
             @PathVariable("name") final String eventTypeName,
             @Nullable @RequestParam(value = "batch_limit", required = false) final Integer batchLimit,
             @Nullable @RequestParam(value = "stream_limit", required = false) final Integer streamLimit,
@@ -194,113 +203,181 @@ public class EventStreamController {
             @Nullable
             @RequestParam(value = "stream_keep_alive_limit", required = false) final Integer streamKeepAliveLimit,
             @Nullable @RequestHeader(name = "X-nakadi-cursors", required = false) final String cursorsStr,
-            final HttpServletRequest request, final HttpServletResponse response, final Client client) {
-        final String flowId = FlowIdUtils.peek();
+            final HttpServletRequest request, final HttpServletResponse response, final Client client)
+            throws IOException {
+        final NonBlockingOutputStream output = new NonBlockingOutputStream(
+                request, response.getOutputStream(), maxPendingOutputBytes);
+        final OutputStream outputStream = streamCompression.compress(request, response, output, client.getClientId(),
+                MetricUtils.streamNameForLoLA(client.getClientId(), eventTypeName));
 
-        return outputStream -> {
-            FlowIdUtils.push(flowId);
-
-            if (blacklistService.isConsumptionBlocked(eventTypeName, client.getClientId())) {
-                writeProblemResponse(response, outputStream,
-                        Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
-                return;
-            }
+        if (blacklistService.isConsumptionBlocked(eventTypeName, client.getClientId())) {
+            writeProblemResponse(response, outputStream,
+                    Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
+            outputStream.close();
+            return null;
+        }
 
-            final AtomicBoolean connectionReady = closedConnectionsCrutch.listenForConnectionClose(request);
-            Counter consumerCounter = null;
-            EventStream eventStream = null;
-            final AtomicBoolean needCheckAuthorization = new AtomicBoolean(false);
+        final AtomicBoolean connectionReady = closedConnectionsCrutch.listenForConnectionClose(request);
+        Counter consumerCounter = null;
+        EventStream eventStream = null;
+        Closeable authorizationListener = null;
+        final AtomicBoolean needCheckAuthorization = new AtomicBoolean(false);
 
-            LOG.info("[X-NAKADI-CURSORS] \"{}\" {}", eventTypeName, Optional.ofNullable(cursorsStr).orElse("-"));
+        LOG.info("[X-NAKADI-CURSORS] \"{}\" {}", eventTypeName, Optional.ofNullable(cursorsStr).orElse("-"));
 
-            try (Closeable ignore = eventTypeChangeListener.registerListener(et -> needCheckAuthorization.set(true),
-                    Collections.singletonList(eventTypeName))) {
-                final EventType eventType = eventTypeRepository.findByName(eventTypeName);
+        try {
+            authorizationListener = eventTypeChangeListener.registerListener(et -> needCheckAuthorization.set(true),
+                    Collections.singletonList(eventTypeName));
+            final EventType eventType = eventTypeRepository.findByName(eventTypeName);
 
-                authorizationValidator.authorizeEventTypeView(eventType);
-                authorizeStreamRead(eventTypeName);
+            authorizationValidator.authorizeEventTypeView(eventType);
+            authorizeStreamRead(eventTypeName);
 
-                // validate parameters
-                final EventStreamConfig streamConfig = EventStreamConfig.builder()
-                        .withBatchLimit(batchLimit)
-                        .withStreamLimit(streamLimit)
-                        .withBatchTimeout(batchTimeout)
-                        .withStreamTimeout(streamTimeout)
-                        .withStreamKeepAliveLimit(streamKeepAliveLimit)
-                        .withEtName(eventTypeName)
-                        .withConsumingClient(client)
-                        .withCursors(getStreamingStart(eventType, cursorsStr))
-                        .withMaxMemoryUsageBytes(maxMemoryUsageBytes)
-                        .build();
+            // validate parameters
+            final EventStreamConfig streamConfig = EventStreamConfig.builder()
+                    .withBatchLimit(batchLimit)
+                    .withStreamLimit(streamLimit)
+                    .withBatchTimeout(batchTimeout)
+                    .withStreamTimeout(streamTimeout)
+                    .withStreamKeepAliveLimit(streamKeepAliveLimit)
+                    .withEtName(eventTypeName)
+                    .withConsumingClient(client)
+                    .withCursors(getStreamingStart(eventType, cursorsStr))
+                    .withMaxMemoryUsageBytes(maxMemoryUsageBytes)
+                    .build();
 
-                consumerCounter = metricRegistry.counter(metricNameFor(eventTypeName, CONSUMERS_COUNT_METRIC_NAME));
-                consumerCounter.inc();
+            consumerCounter = metricRegistry.counter(metricNameFor(eventTypeName, CONSUMERS_COUNT_METRIC_NAME));
+            consumerCounter.inc();
 
-                final String kafkaQuotaClientId = getKafkaQuotaClientId(eventTypeName, client);
+            final String kafkaQuotaClientId = getKafkaQuotaClientId(eventTypeName, client);
 
-                response.setStatus(HttpStatus.OK.value());
-                response.setHeader("Warning", "299 - nakadi - the Low-level API is deprecated and will " +
-                        "be removed from a future release. Please consider migrating to the Subscriptions API.");
-                response.setContentType("application/x-json-stream");
-                final EventConsumer eventConsumer = timelineService.createEventConsumer(
-                        kafkaQuotaClientId, streamConfig.getCursors());
+            response.setStatus(HttpStatus.OK.value());
+            response.setHeader("Warning", "299 - nakadi - the Low-level API is deprecated and will " +
+                    "be removed from a future release. Please consider migrating to the Subscriptions API.");
+            response.setContentType("application/x-json-stream");
+            final EventConsumer eventConsumer = timelineService.createEventConsumer(
+                    kafkaQuotaClientId, streamConfig.getCursors());
 
-                final String bytesFlushedMetricName = MetricUtils.metricNameForLoLAStream(
-                        client.getClientId(),
-                        eventTypeName);
+            final String bytesFlushedMetricName = MetricUtils.metricNameForLoLAStream(
+                    client.getClientId(),
+                    eventTypeName);
 
-                final Meter bytesFlushedMeter = this.streamMetrics.meter(bytesFlushedMetricName);
+            final Meter bytesFlushedMeter = this.streamMetrics.meter(bytesFlushedMetricName);
 
-                eventStream = eventStreamFactory.createEventStream(
-                        outputStream, eventConsumer, streamConfig, bytesFlushedMeter);
+            eventStream = eventStreamFactory.createEventStream(
+                    outputStream, eventConsumer, streamConfig, bytesFlushedMeter);
+        } catch (final Exception e) {
+            writeExceptionResponse(response, outputStream, e);
+            finishStreaming(connectionReady, consumerCounter, eventStream, authorizationListener, outputStream);
+            return null;
+        }
 
+        final Counter streamCounter = consumerCounter;
+        final EventStream stream = eventStream;
+        final Closeable listener = authorizationListener;
+        final StreamingDeferredResult result = new StreamingDeferredResult(() -> {
+            final CompletableFuture<Void> streaming;
+            try {
+                output.start();
                 outputStream.flush(); // Flush status code to client
-
-                eventStream.streamEvents(connectionReady, () -> {
+                streaming = stream.streamEventsAsync(output, connectionReady, () -> {
                     if (needCheckAuthorization.getAndSet(false)) {
                         authorizeStreamRead(eventTypeName);
                     }
                 });
-            } catch (final UnparseableCursorException e) {
-                LOG.debug("Incorrect syntax of X-nakadi-cursors header: {}. Respond with BAD_REQUEST.",
-                        e.getCursors(), e);
-                writeProblemResponse(response, outputStream, BAD_REQUEST, e.getMessage());
-            } catch (final NoSuchEventTypeException e) {
-                writeProblemResponse(response, outputStream, NOT_FOUND, "topic not found");
-            } catch (final NoConnectionSlotsException e) {
-                LOG.debug("Connection creation failed due to exceeding max connection count");
-                writeProblemResponse(response, outputStream,
-                        Problem.valueOf(TOO_MANY_REQUESTS, e.getMessage()));
-            } catch (final ServiceTemporarilyUnavailableException e) {
-                LOG.error("Error while trying to stream events.", e);
-                writeProblemResponse(response, outputStream, SERVICE_UNAVAILABLE, e.getMessage());
-            } catch (final InvalidLimitException e) {
-                writeProblemResponse(response, outputStream, UNPROCESSABLE_ENTITY, e.getMessage());
-            } catch (final InternalNakadiException e) {
-                LOG.error("Error while trying to stream events.", e);
-                writeProblemResponse(response, outputStream, INTERNAL_SERVER_ERROR, e.getMessage());
-            } catch (final InvalidCursorException e) {
-                writeProblemResponse(response, outputStream, PRECONDITION_FAILED, e.getMessage());
-            } catch (final AccessDeniedException e) {
-                writeProblemResponse(response, outputStream, FORBIDDEN, e.explain());
-            } catch (final Exception e) {
-                LOG.error("Error while trying to stream events. Respond with INTERNAL_SERVER_ERROR.", e);
-                writeProblemResponse(response, outputStream, INTERNAL_SERVER_ERROR, e.getMessage());
-            } finally {
-                connectionReady.set(false);
-                if (consumerCounter != null) {
-                    consumerCounter.dec();
-                }
-                if (eventStream != null) {
-                    eventStream.close();
-                }
-                try {
-                    outputStream.flush();
-                } finally {
-                    outputStream.close();
+            } catch (final IOException | RuntimeException e) {
+                LOG.info("Failed to start streaming of {}", eventTypeName, e);
+                finishStreamingQuietly(connectionReady, streamCounter, stream, listener, outputStream);
+                return output.getFinished();
+            }
+            return streaming.handle((ignore, ex) -> {
+                if (null != ex) {
+                    writeExceptionResponseQuietly(response, outputStream, ex);
                 }
+                finishStreamingQuietly(connectionReady, streamCounter, stream, listener, outputStream);
+                return null;
+            }).thenCompose(ignore -> output.getFinished());
+        });
+        result.onTimeout(() -> connectionReady.set(false));
+        return result;
+    }
+
+    private void finishStreamingQuietly(final AtomicBoolean connectionReady,
+                                        @Nullable final Counter consumerCounter,
+                                        @Nullable final EventStream eventStream,
+                                        @Nullable final Closeable authorizationListener,
+                                        final OutputStream outputStream) {
+        try {
+            finishStreaming(connectionReady, consumerCounter, eventStream, authorizationListener, outputStream);
+        } catch (final IOException e) {
+            LOG.info("Failed to close stream", e);
+        }
+    }
+
+    private void finishStreaming(final AtomicBoolean connectionReady,
+                                 @Nullable final Counter consumerCounter,
+                                 @Nullable final EventStream eventStream,
+                                 @Nullable final Closeable authorizationListener,
+                                 final OutputStream outputStream) throws IOException {
+        connectionReady.set(false);
+        if (consumerCounter != null) {
+            consumerCounter.dec();
+        }
+        try {
+            if (eventStream != null) {
+                eventStream.close();
+            }
+            if (authorizationListener != null) {
+                authorizationListener.close();
             }
-        };
+        } finally {
+            try {
+                outputStream.flush();
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    private void writeExceptionResponseQuietly(final HttpServletResponse response,
+                                               final OutputStream outputStream,
+                                               final Throwable ex) {
+        final Throwable cause = ex instanceof CompletionException && null != ex.getCause() ? ex.getCause() : ex;
+        try {
+            writeExceptionResponse(response, outputStream,
+                    cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+        } catch (final IOException e) {
+            LOG.info("Failed to write problem response", e);
+        }
+    }
+
+    private void writeExceptionResponse(final HttpServletResponse response, final OutputStream outputStream,
+                                        final Exception ex) throws IOException {
+        if (ex instanceof UnparseableCursorException) {
+            LOG.debug("Incorrect syntax of X-nakadi-cursors header: {}. Respond with BAD_REQUEST.",
+                    ((UnparseableCursorException) ex).getCursors(), ex);
+            writeProblemResponse(response, outputStream, BAD_REQUEST, ex.getMessage());
+        } else if (ex instanceof NoSuchEventTypeException) {
+            writeProblemResponse(response, outputStream, NOT_FOUND, "topic not found");
+        } else if (ex instanceof NoConnectionSlotsException) {
+            LOG.debug("Connection creation failed due to exceeding max connection count");
+            writeProblemResponse(response, outputStream, Problem.valueOf(TOO_MANY_REQUESTS, ex.getMessage()));
+        } else if (ex instanceof ServiceTemporarilyUnavailableException) {
+            LOG.error("Error while trying to stream events.", ex);
+            writeProblemResponse(response, outputStream, SERVICE_UNAVAILABLE, ex.getMessage());
+        } else if (ex instanceof InvalidLimitException) {
+            writeProblemResponse(response, outputStream, UNPROCESSABLE_ENTITY, ex.getMessage());
+        } else if (ex instanceof InternalNakadiException) {
+            LOG.error("Error while trying to stream events.", ex);
+            writeProblemResponse(response, outputStream, INTERNAL_SERVER_ERROR, ex.getMessage());
+        } else if (ex instanceof InvalidCursorException) {
+            writeProblemResponse(response, outputStream, PRECONDITION_FAILED, ex.getMessage());
+        } else if (ex instanceof AccessDeniedException) {
+            writeProblemResponse(response, outputStream, FORBIDDEN, ((AccessDeniedException) ex).explain());
+        } else {
+            LOG.error("Error while trying to stream events. Respond with INTERNAL_SERVER_ERROR.", ex);
+            writeProblemResponse(response, outputStream, INTERNAL_SERVER_ERROR, ex.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,45 @@
+package org.zalando.nakadi.controller;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptorAdapter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Result of streaming endpoints. Streams are writing to the response from the threads of
+ * {@link org.zalando.nakadi.service.StreamingScheduler} instead of occupying a servlet thread for the whole lifetime
+ * of the connection. Streaming is started only after async processing of the request is started (see
+ * {@link StartInterceptor}), so that nothing is written to the response concurrently with the servlet thread.
+ * The result is set once the stream is finished and the response is closed.
+ */
+public class StreamingDeferredResult extends DeferredResult<Void> {
+
+    private final Supplier<CompletableFuture<?>> streaming;
+
+    public StreamingDeferredResult(final Supplier<CompletableFuture<?>> streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Starts streaming. Future, that is returned by streaming, should be completed once the response is closed.
+     */
+    CompletableFuture<?> start() {
+        try {
+            return streaming.get().whenComplete((ignore, ignoreEx) -> setResult(null));
+        } catch (final RuntimeException ex) {
+            setResult(null);
+            throw ex;
+        }
+    }
+
+    public static class StartInterceptor extends DeferredResultProcessingInterceptorAdapter {
+        @Override
+        public <T> void preProcess(final NativeWebRequest request, final DeferredResult<T> deferredResult) {
+            if (deferredResult instanceof StreamingDeferredResult) {
+                ((StreamingDeferredResult) deferredResult).start();
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.zalando.nakadi.domain.ItemsWrapper;
 import org.zalando.nakadi.domain.SubscriptionEventTypeStats;
+import org.zalando.nakadi.domain.SubscriptionStats;
 import org.zalando.nakadi.exceptions.runtime.DbWriteOperationsBlockedException;
 import org.zalando.nakadi.exceptions.runtime.InconsistentStateException;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
@@ -21,6 +22,7 @@ import org.zalando.nakadi.service.subscription.SubscriptionService;
 import org.zalando.nakadi.service.subscription.SubscriptionService.StatsMode;
 
 import javax.annotation.Nullable;
+import java.util.List;
 import java.util.Set;
 
 import static org.springframework.http.HttpStatus.NO_CONTENT;
@@ -53,6 +55,14 @@ public class SubscriptionController {
                         .listSubscriptions(owningApplication, eventTypes, showStatus, limit, offset));
     }
 
+    @RequestMapping(value = "/stats", method = RequestMethod.GET)
+    public ItemsWrapper<SubscriptionStats> getSubscriptionsStats(
+            @RequestParam(value = "subscription_id") final List<String> subscriptionIds)
+            throws InvalidLimitException, InconsistentStateException, NoSuchEventTypeException,
+            NoSuchSubscriptionException, ServiceTemporarilyUnavailableException {
+        return subscriptionService.getSubscriptionsStats(subscriptionIds);
+    }
+
     @RequestMapping(value = "/{id}", method = RequestMethod.GET)
     public ResponseEntity<?> getSubscription(@PathVariable("id") final String subscriptionId,
                                              final NativeWebRequest request)
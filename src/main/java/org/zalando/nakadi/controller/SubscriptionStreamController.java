@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,7 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.zalando.nakadi.config.NakadiSettings;
 import org.zalando.nakadi.domain.Subscription;
 import org.zalando.nakadi.exceptions.runtime.AccessDeniedException;
@@ -24,16 +25,18 @@ import org.zalando.nakadi.exceptions.runtime.NoStreamingSlotsAvailable;
 import org.zalando.nakadi.exceptions.runtime.NoSuchSubscriptionException;
 import org.zalando.nakadi.exceptions.runtime.SubscriptionPartitionConflictException;
 import org.zalando.nakadi.exceptions.runtime.WrongStreamParametersException;
+import org.zalando.nakadi.metrics.MetricUtils;
 import org.zalando.nakadi.repository.db.SubscriptionDbRepository;
 import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.BlacklistService;
 import org.zalando.nakadi.service.ClosedConnectionsCrutch;
+import org.zalando.nakadi.service.NonBlockingOutputStream;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.subscription.StreamParameters;
 import org.zalando.nakadi.service.subscription.SubscriptionOutput;
 import org.zalando.nakadi.service.subscription.SubscriptionStreamer;
 import org.zalando.nakadi.service.subscription.SubscriptionStreamerFactory;
 import org.zalando.nakadi.service.subscription.SubscriptionValidationService;
-import org.zalando.nakadi.util.FlowIdUtils;
 import org.zalando.nakadi.view.UserStreamParameters;
 import org.zalando.problem.Problem;
 
@@ -66,6 +69,8 @@ public class SubscriptionStreamController {
     private final MetricRegistry metricRegistry;
     private final SubscriptionDbRepository subscriptionDbRepository;
     private final SubscriptionValidationService subscriptionValidationService;
+    private final StreamCompression streamCompression;
+    private final long maxPendingOutputBytes;
 
     @Autowired
     public SubscriptionStreamController(final SubscriptionStreamerFactory subscriptionStreamerFactory,
@@ -75,7 +80,10 @@ public class SubscriptionStreamController {
                                         final BlacklistService blacklistService,
                                         @Qualifier("perPathMetricRegistry") final MetricRegistry metricRegistry,
                                         final SubscriptionDbRepository subscriptionDbRepository,
-                                        final SubscriptionValidationService subscriptionValidationService) {
+                                        final SubscriptionValidationService subscriptionValidationService,
+                                        final StreamCompression streamCompression,
+                                        @Value("${nakadi.stream.output.maxPendingBytes}")
+                                        final long maxPendingOutputBytes) {
         this.subscriptionStreamerFactory = subscriptionStreamerFactory;
         this.jsonMapper = objectMapper;
         this.closedConnectionsCrutch = closedConnectionsCrutch;
@@ -84,15 +92,20 @@ public class SubscriptionStreamController {
         this.metricRegistry = metricRegistry;
         this.subscriptionDbRepository = subscriptionDbRepository;
         this.subscriptionValidationService = subscriptionValidationService;
+        this.streamCompression = streamCompression;
+        this.maxPendingOutputBytes = maxPendingOutputBytes;
     }
 
     private class SubscriptionOutputImpl implements SubscriptionOutput {
         private boolean headersSent;
         private final HttpServletResponse response;
+        private final NonBlockingOutputStream output;
         private final OutputStream out;
 
-        SubscriptionOutputImpl(final HttpServletResponse response, final OutputStream out) {
+        SubscriptionOutputImpl(final HttpServletResponse response, final NonBlockingOutputStream output,
+                               final OutputStream out) {
             this.response = response;
+            this.output = output;
             this.out = out;
             this.headersSent = false;
         }
@@ -147,15 +160,25 @@ public class SubscriptionStreamController {
         public OutputStream getOutputStream() {
             return this.out;
         }
+
+        @Override
+        public boolean isBackpressured() {
+            return output.isBackpressured();
+        }
+
+        @Override
+        public void setWritableListener(final Runnable listener) {
+            output.setWritableListener(listener);
+        }
     }
 
     @RequestMapping(value = "/subscriptions/{subscription_id}/events", method = RequestMethod.POST)
-    public StreamingResponseBody streamEvents(
+    public DeferredResult<Void> streamEvents(
             @PathVariable("subscription_id") final String subscriptionId,
             @Valid @RequestBody final UserStreamParameters userParameters,
             final HttpServletRequest request,
             final HttpServletResponse response,
-            final Client client) {
+            final Client client) throws IOException {
 
         final StreamParameters streamParameters = StreamParameters.of(userParameters,
                 nakadiSettings.getMaxCommitTimeout(), client);
@@ -164,7 +187,7 @@ public class SubscriptionStreamController {
     }
 
     @RequestMapping(value = "/subscriptions/{subscription_id}/events", method = RequestMethod.GET)
-    public StreamingResponseBody streamEvents(
+    public DeferredResult<Void> streamEvents(
             @PathVariable("subscription_id") final String subscriptionId,
             @Nullable @RequestParam(value = "max_uncommitted_events", required = false) final Integer
                     maxUncommittedEvents,
@@ -175,7 +198,8 @@ public class SubscriptionStreamController {
             @Nullable @RequestParam(value = "stream_keep_alive_limit", required = false) final Integer
                     streamKeepAliveLimit,
             @Nullable @RequestParam(value = "commit_timeout", required = false) final Long commitTimeout,
-            final HttpServletRequest request, final HttpServletResponse response, final Client client) {
+            final HttpServletRequest request, final HttpServletResponse response, final Client client)
+            throws IOException {
 
         final UserStreamParameters userParameters = new UserStreamParameters(batchLimit, streamLimit, batchTimeout,
                 streamTimeout, streamKeepAliveLimit, maxUncommittedEvents, ImmutableList.of(), commitTimeout);
@@ -186,49 +210,63 @@ public class SubscriptionStreamController {
         return stream(subscriptionId, request, response, client, streamParameters);
     }
 
-    private StreamingResponseBody stream(final String subscriptionId,
-                                         final HttpServletRequest request,
-                                         final HttpServletResponse response,
-                                         final Client client,
-                                         final StreamParameters streamParameters) {
-        final String flowId = FlowIdUtils.peek();
-
-        return outputStream -> {
-            FlowIdUtils.push(flowId);
-
-            final String metricName = metricNameForSubscription(subscriptionId, CONSUMERS_COUNT_METRIC_NAME);
-            final Counter consumerCounter = metricRegistry.counter(metricName);
-            consumerCounter.inc();
-
-            final AtomicBoolean connectionReady = closedConnectionsCrutch.listenForConnectionClose(request);
-
-            SubscriptionStreamer streamer = null;
-            final SubscriptionOutputImpl output = new SubscriptionOutputImpl(response, outputStream);
-            try {
-                if (blacklistService.isSubscriptionConsumptionBlocked(subscriptionId, client.getClientId())) {
-                    writeProblemResponse(response, outputStream,
-                            Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
-                    return;
-                }
+    private DeferredResult<Void> stream(final String subscriptionId,
+                                       final HttpServletRequest request,
+                                       final HttpServletResponse response,
+                                       final Client client,
+                                       final StreamParameters streamParameters) throws IOException {
+        final NonBlockingOutputStream nonBlockingOutput = new NonBlockingOutputStream(
+                request, response.getOutputStream(), maxPendingOutputBytes);
+        final OutputStream outputStream = streamCompression.compress(request, response, nonBlockingOutput,
+                client.getClientId(), MetricUtils.streamNameForHiLA(client.getClientId(), subscriptionId));
+        final String metricName = metricNameForSubscription(subscriptionId, CONSUMERS_COUNT_METRIC_NAME);
+        final Counter consumerCounter = metricRegistry.counter(metricName);
+        consumerCounter.inc();
 
-                final Subscription subscription = subscriptionDbRepository.getSubscription(subscriptionId);
-                subscriptionValidationService.validatePartitionsToStream(subscription,
-                        streamParameters.getPartitions());
-
-                streamer = subscriptionStreamerFactory.build(subscription, streamParameters, output,
-                        connectionReady, blacklistService);
-
-                streamer.stream();
-            } catch (final InterruptedException ex) {
-                LOG.warn("Interrupted while streaming with " + streamer, ex);
-                Thread.currentThread().interrupt();
-            } catch (final Exception e) {
-                output.onException(e);
-            } finally {
-                consumerCounter.dec();
-                outputStream.close();
+        final AtomicBoolean connectionReady = closedConnectionsCrutch.listenForConnectionClose(request);
+
+        final SubscriptionStreamer streamer;
+        final SubscriptionOutputImpl output = new SubscriptionOutputImpl(response, nonBlockingOutput, outputStream);
+        try {
+            if (blacklistService.isSubscriptionConsumptionBlocked(subscriptionId, client.getClientId())) {
+                writeProblemResponse(response, outputStream,
+                        Problem.valueOf(FORBIDDEN, "Application or event type is blocked"));
+                finishStreaming(consumerCounter, outputStream);
+                return null;
             }
-        };
+
+            final Subscription subscription = subscriptionDbRepository.getSubscription(subscriptionId);
+            subscriptionValidationService.validatePartitionsToStream(subscription,
+                    streamParameters.getPartitions());
+
+            streamer = subscriptionStreamerFactory.build(subscription, streamParameters, output,
+                    connectionReady, blacklistService);
+        } catch (final Exception e) {
+            output.onException(e);
+            finishStreaming(consumerCounter, outputStream);
+            return null;
+        }
+
+        final StreamingDeferredResult result = new StreamingDeferredResult(() -> {
+            nonBlockingOutput.start();
+            return streamer.stream()
+                    .whenComplete((ignore, ignoreEx) -> {
+                        try {
+                            finishStreaming(consumerCounter, outputStream);
+                        } catch (final IOException e) {
+                            LOG.warn("Failed to close output stream of {}", streamer, e);
+                        }
+                    })
+                    .handle((ignore, ignoreEx) -> null)
+                    .thenCompose(ignore -> nonBlockingOutput.getFinished());
+        });
+        result.onTimeout(() -> connectionReady.set(false));
+        return result;
+    }
+
+    private void finishStreaming(final Counter consumerCounter, final OutputStream outputStream) throws IOException {
+        consumerCounter.dec();
+        outputStream.close();
     }
 
     private void writeProblemResponse(final HttpServletResponse response,
@@ -1,18 +1,48 @@
 package org.zalando.nakadi.domain;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.Consumer;
 
+/**
+ * Splits batch of events into {@link BatchItem}s working directly on utf-8 encoded request body. Every event is
+ * read exactly once: while building {@link JSONObject} for it (it is needed for validation anyway) tokenizer also
+ * collects event boundaries, positions of characters that should be skipped when event is written to storage and
+ * positions of fields that are going to be replaced during enrichment.
+ */
 public class BatchFactory {
 
-    private static int navigateToObjectStart(final int from, final int end, final String data) {
+    private static final String POSSIBLE_NUMBER_DIGITS = "0123456789-+.Ee";
+    private static final int[] NO_SKIP_POSITIONS = new int[0];
+
+    public static List<BatchItem> from(final String events) {
+        return from(events.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static List<BatchItem> from(final byte[] events) {
+        final List<BatchItem> batch = new ArrayList<>();
+        int objectStart = locateOpenSquareBracket(events) + 1;
+        final int arrayEnd = locateClosingSquareBracket(objectStart, events);
+
+        final EventTokenizer tokenizer = new EventTokenizer(events, arrayEnd);
+        while (-1 != (objectStart = navigateToObjectStart(objectStart, arrayEnd, events))) {
+            batch.add(tokenizer.readEvent(objectStart));
+            objectStart = tokenizer.getPosition();
+        }
+
+        return batch;
+    }
+
+    private static int navigateToObjectStart(final int from, final int end, final byte[] data) {
         int curPos = from;
-        char currentChar;
-        while (curPos < end && (currentChar = data.charAt(curPos)) != '{') {
-            if (currentChar != ',' && !isEmptyCharacter(currentChar)) {
+        byte currentByte;
+        while (curPos < end && (currentByte = data[curPos]) != '{') {
+            if (currentByte != ',' && !isEmptyCharacter(currentByte)) {
                 throw new JSONException("Illegal character at position " + curPos);
             }
             ++curPos;
@@ -21,139 +51,311 @@ public class BatchFactory {
         return found ? curPos : -1;
     }
 
-    private static int navigateToObjectEnd(final int from, final int end, final String data,
-                                           final Consumer<BatchItem> batchItemConsumer) {
-        int curPos = from;
-        int nestingLevel = 0;
-        boolean escaped = false;
-        boolean insideQuote = false;
-        boolean hasFields = false;
-        int injectionPointStart = -1;
-
-        final BatchItem.InjectionConfiguration[] injections =
-                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length];
-        final List<Integer> skipPositions = new ArrayList<>();
-
-        while (curPos < end) {
-            final char curChar = data.charAt(curPos);
-            if (!insideQuote && shouldBeSkipped(curChar)) {
-                skipPositions.add(curPos - from);
-            }
-            if (!escaped && curChar == '"') {
-                insideQuote = !insideQuote;
-                if (insideQuote && nestingLevel == 1 && injectionPointStart == -1) {
-                    injectionPointStart = curPos;
-                    hasFields = true;
-                }
-            }
-            if (escaped) {
-                escaped = false;
-            } else if (!escaped && curChar == '\\') {
-                escaped = true;
-            } else if (!insideQuote) {
-                BatchItem.InjectionConfiguration toAdd = null;
-                if (curChar == '{') {
-                    ++nestingLevel;
-                } else if (curChar == '}') {
-                    --nestingLevel;
-                    if (nestingLevel == 1 && injectionPointStart != -1) {
-                        toAdd = extractInjection(from, injectionPointStart, curPos + 1, data);
-                        injectionPointStart = -1;
-                    }
-                    if (nestingLevel == 0) {
-                        break;
-                    }
-                } else if (nestingLevel == 1 && curChar == ',' && injectionPointStart != -1) {
-                    toAdd = extractInjection(from, injectionPointStart, curPos, data);
-                    injectionPointStart = -1;
+    private static int locateOpenSquareBracket(final byte[] events) {
+        int pos = 0;
+        while (pos < events.length && isEmptyCharacter(events[pos])) {
+            ++pos;
+        }
+        if (pos == events.length || events[pos] != '[') {
+            throw new JSONException("Array of events should start with [ at position " + pos);
+        }
+        return pos;
+    }
+
+    private static int locateClosingSquareBracket(final int start, final byte[] events) {
+        int pos = events.length - 1;
+        while (pos >= start && isEmptyCharacter(events[pos])) {
+            --pos;
+        }
+        if (pos < start || events[pos] != ']') {
+            throw new JSONException("Array of events should end with ] at position " + pos);
+        }
+        return pos;
+    }
+
+    static boolean isEmptyCharacter(final byte c) {
+        return (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+    }
+
+    /**
+     * Strict json tokenizer over utf-8 bytes. Follows the rules of {@link StrictJsonParser}, but does not require
+     * body to be converted to string, and decodes only the content of string tokens.
+     */
+    private static class EventTokenizer {
+
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        private int eventStart;
+        private int[] skipPositions = new int[16];
+        private int skipCount;
+        private BatchItem.InjectionConfiguration[] injections;
+
+        EventTokenizer(final byte[] data, final int end) {
+            this.data = data;
+            this.end = end;
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        BatchItem readEvent(final int objectStart) {
+            this.eventStart = objectStart;
+            this.position = objectStart + 1;
+            this.skipCount = 0;
+            this.injections = new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length];
+
+            final JSONObject event = readObject(true);
+            return new BatchItem(
+                    data,
+                    eventStart,
+                    position - eventStart,
+                    event,
+                    BatchItem.EmptyInjectionConfiguration.build(1, event.length() > 0),
+                    injections,
+                    skipCount == 0 ? NO_SKIP_POSITIONS : Arrays.copyOf(skipPositions, skipCount));
+        }
+
+        private byte nextUnskippable() {
+            while (position < end) {
+                final byte value = data[position++];
+                if (!isEmptyCharacter(value)) {
+                    return value;
                 }
-                if (null != toAdd) {
-                    injections[toAdd.injection.ordinal()] = toAdd;
+                if (skipCount == skipPositions.length) {
+                    skipPositions = Arrays.copyOf(skipPositions, skipPositions.length * 2);
                 }
+                skipPositions[skipCount++] = position - 1 - eventStart;
             }
-            ++curPos;
+            throw syntaxError("Unexpected end of data");
         }
-        if (curPos == data.length()) {
-            return -1;
+
+        private Object readValue() {
+            final byte value = nextUnskippable();
+            switch (value) {
+                case '{':
+                    return readObject(false);
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 'n':
+                    readExpected("ull", "Expected null value");
+                    return JSONObject.NULL;
+                case 't':
+                    readExpected("rue", "Expected true value");
+                    return Boolean.TRUE;
+                case 'f':
+                    readExpected("alse", "Expected false value");
+                    return Boolean.FALSE;
+                default:
+                    return readNumber(value);
+            }
         }
-        batchItemConsumer.accept(
-                new BatchItem(
-                        data.substring(from, curPos + 1),
-                        BatchItem.EmptyInjectionConfiguration.build(1, hasFields),
-                        injections,
-                        skipPositions));
-        return curPos;
-    }
 
-    private static BatchItem.InjectionConfiguration extractInjection(
-            final int messageOffset,
-            final int injectionPointStart,
-            final int end,
-            final String data) {
-        for (final BatchItem.Injection type : BatchItem.Injection.values()) {
-            if ((end - injectionPointStart - 3) < type.name.length()) {
-                continue;
-            }
-            boolean matches = data.charAt(injectionPointStart + 1 + type.name.length()) == '"';
-            if (matches) {
-                for (int i = 0; i < type.name.length(); ++i) {
-                    if (data.charAt(injectionPointStart + i + 1) != type.name.charAt(i)) {
-                        matches = false;
-                        break;
-                    }
+        private JSONObject readObject(final boolean eventRoot) {
+            final JSONObject result = new JSONObject();
+            byte nameStart = nextUnskippable();
+            if (nameStart == '}') {
+                return result;
+            }
+            for (; ; ) {
+                if (nameStart != '"') {
+                    throw syntaxError("Unexpected symbol '" + (char) nameStart + "'");
+                }
+                final int fieldStart = position - 1;
+                final String name = readString();
+                if (nextUnskippable() != ':') {
+                    throw syntaxError("Waiting for name-value separator : while parsing object");
+                }
+                final Object value = readValue();
+                if (eventRoot) {
+                    registerInjection(name, fieldStart, position);
+                }
+                result.putOnce(name, value);
+
+                final byte nextToken = nextUnskippable();
+                if (nextToken == '}') {
+                    return result;
+                } else if (nextToken != ',') {
+                    throw syntaxError("Unexpected symbol '" + (char) nextToken + "' while parsing object");
+                }
+                nameStart = nextUnskippable();
+                if (nameStart == '}') {
+                    throw syntaxError("Not allowed to finish object with comma");
                 }
             }
-            if (matches) {
-                return new BatchItem.InjectionConfiguration(
-                        type, injectionPointStart - messageOffset, end - messageOffset);
+        }
+
+        private void registerInjection(final String name, final int fieldStart, final int fieldEnd) {
+            for (final BatchItem.Injection type : BatchItem.Injection.values()) {
+                if (type.name.equals(name)) {
+                    injections[type.ordinal()] = new BatchItem.InjectionConfiguration(
+                            type, fieldStart - eventStart, fieldEnd - eventStart);
+                }
             }
         }
-        return null;
-    }
 
-    public static List<BatchItem> from(final String events) {
-        final List<BatchItem> batch = new ArrayList<>();
-        int objectStart = locateOpenSquareBracket(events) + 1;
-        final int arrayEnd = locateClosingSquareBracket(objectStart, events);
+        private JSONArray readArray() {
+            final JSONArray result = new JSONArray();
+            if (nextUnskippable() == ']') {
+                return result;
+            }
+            --position;
+            for (; ; ) {
+                result.put(readValue());
+                final byte separator = nextUnskippable();
+                if (separator == ']') {
+                    return result;
+                } else if (separator != ',') {
+                    throw syntaxError("Unexpected separator '" + (char) separator + "'");
+                }
+            }
+        }
 
-        while (-1 != (objectStart = navigateToObjectStart(objectStart, arrayEnd, events))) {
-            final int objectEnd = navigateToObjectEnd(objectStart, arrayEnd, events, batch::add);
-            if (objectEnd == -1) {
-                throw new JSONException("Unclosed object staring at " + objectStart + " found.");
+        private void readExpected(final String expected, final String errorMessage) {
+            if (position + expected.length() >= end) {
+                throw syntaxError("Unexpected end of data");
             }
-            objectStart = objectEnd + 1;
+            for (int i = 0; i < expected.length(); ++i) {
+                if (data[position + i] != expected.charAt(i)) {
+                    throw syntaxError(errorMessage);
+                }
+            }
+            position += expected.length();
         }
 
-        return batch;
-    }
+        private Object readNumber(final byte first) {
+            if (first < 0 || POSSIBLE_NUMBER_DIGITS.indexOf(first) < 0) {
+                throw syntaxError("Unexpected symbol '" + (char) first + "'");
+            }
+            final int start = position - 1;
+            while (position < end && data[position] >= 0 && POSSIBLE_NUMBER_DIGITS.indexOf(data[position]) >= 0) {
+                ++position;
+            }
+            final String stringNumber = new String(data, start, position - start, StandardCharsets.US_ASCII);
 
-    private static int locateOpenSquareBracket(final String events) {
-        int pos = 0;
-        while (pos < events.length() && isEmptyCharacter(events.charAt(pos))) {
-            ++pos;
+            if (stringNumber.indexOf('.') > -1 || stringNumber.indexOf('e') > -1
+                    || stringNumber.indexOf('E') > -1 || "-0".equals(stringNumber)) {
+                final Double d = Double.valueOf(stringNumber);
+                if (!d.isInfinite() && !d.isNaN()) {
+                    return d;
+                } else {
+                    throw syntaxError(stringNumber + " can not be used");
+                }
+            } else {
+                try {
+                    final long longValue = Long.parseLong(stringNumber);
+                    if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                        return (int) longValue;
+                    }
+                    return longValue;
+                } catch (NumberFormatException e) {
+                    throw syntaxError("Can not use long value '" + stringNumber + "' cause it is too big");
+                }
+            }
         }
-        if (events.charAt(pos) != '[') {
-            throw new JSONException("Array of events should start with [ at position " + pos);
+
+        /**
+         * Reads string value, assuming that opening quote is already consumed. Multibyte utf-8 sequences never
+         * contain bytes from ascii range, so it is safe to search for quotes and escapes byte by byte.
+         */
+        private String readString() {
+            final int start = position;
+            int segmentStart = start;
+            StringBuilder sb = null;
+            for (; ; ) {
+                if (position >= end) {
+                    throw syntaxError("Unexpected end of data");
+                }
+                final byte value = data[position++];
+                switch (value) {
+                    case 0:
+                    case '\n':
+                    case '\r':
+                        throw syntaxError("Unterminated string");
+                    case '"':
+                        if (null == sb) {
+                            return new String(data, start, position - 1 - start, StandardCharsets.UTF_8);
+                        }
+                        appendSegment(sb, segmentStart, position - 1);
+                        return sb.toString();
+                    case '\\':
+                        if (null == sb) {
+                            sb = new StringBuilder();
+                        }
+                        appendSegment(sb, segmentStart, position - 1);
+                        readEscaped(sb);
+                        segmentStart = position;
+                        break;
+                    default:
+                        break;
+                }
+            }
         }
-        return pos;
-    }
 
-    private static int locateClosingSquareBracket(final int start, final String events) {
-        int pos = events.length() - 1;
-        while (pos >= start && isEmptyCharacter(events.charAt(pos))) {
-            --pos;
+        private void appendSegment(final StringBuilder sb, final int from, final int to) {
+            if (to > from) {
+                sb.append(new String(data, from, to - from, StandardCharsets.UTF_8));
+            }
         }
-        if (events.charAt(pos) != ']') {
-            throw new JSONException("Array of events should end with ] at position " + pos);
+
+        private void readEscaped(final StringBuilder sb) {
+            if (position >= end) {
+                throw syntaxError("Unexpected end of data");
+            }
+            final byte value = data[position++];
+            switch (value) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'u':
+                    sb.append(readCodepoint());
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    sb.append((char) value);
+                    break;
+                default:
+                    throw syntaxError("Illegal escape.");
+            }
         }
-        return pos;
-    }
 
-    static boolean shouldBeSkipped(final char c) {
-        return (c == '\r' || c == '\n' || c == ' ' || c == '\t');
-    }
+        private char readCodepoint() {
+            if (position + 4 >= end) {
+                throw syntaxError("Unexpected end of data");
+            }
+            int codepoint = 0;
+            for (int i = 0; i < 4; ++i) {
+                final int digit = Character.digit((char) data[position + i], 16);
+                if (digit < 0) {
+                    throw syntaxError("Illegal codepoint "
+                            + new String(data, position, 4, StandardCharsets.UTF_8));
+                }
+                codepoint = (codepoint << 4) | digit;
+            }
+            position += 4;
+            return (char) codepoint;
+        }
 
-    static boolean isEmptyCharacter(final char c) {
-        return (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+        private JSONException syntaxError(final String message) {
+            return new JSONException(message + " at pos " + position);
+        }
     }
 }
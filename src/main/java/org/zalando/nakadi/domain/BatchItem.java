@@ -6,7 +6,6 @@ import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
 import java.util.Optional;
 
 public class BatchItem {
@@ -53,26 +52,36 @@ public class BatchItem {
     private static final EmptyInjectionConfiguration CONFIG_NO_COMMA = new EmptyInjectionConfiguration(1, false);
 
     private final BatchItemResponse response;
-    private final String rawEvent;
+    private final byte[] payload;
+    private final int offset;
+    private final int length;
     private final JSONObject event;
     private final EmptyInjectionConfiguration emptyInjectionConfiguration;
     private final InjectionConfiguration[] injections;
-    private String[] injectionValues;
-    private final List<Integer> skipCharacters;
+    private byte[][] injectionValues;
+    private final int[] skipCharacters;
     private String partition;
     private String brokerId;
     private String eventKey;
-    private int eventSize;
 
+    /**
+     * Creates batch item for event, that is located in {@code payload} (utf-8 encoded request body, that is shared
+     * between all the items of the batch) starting at {@code offset} and taking {@code length} bytes. All the
+     * positions (injections and characters to skip) are relative to {@code offset}.
+     */
     public BatchItem(
-            final String rawEvent,
+            final byte[] payload,
+            final int offset,
+            final int length,
+            final JSONObject event,
             final EmptyInjectionConfiguration emptyInjectionConfiguration,
             final InjectionConfiguration[] injections,
-            final List<Integer> skipCharacters) {
-        this.rawEvent = rawEvent;
+            final int[] skipCharacters) {
+        this.payload = payload;
+        this.offset = offset;
+        this.length = length;
         this.skipCharacters = skipCharacters;
-        this.event = StrictJsonParser.parseObject(rawEvent);
-        this.eventSize = rawEvent.getBytes(StandardCharsets.UTF_8).length;
+        this.event = event;
         this.emptyInjectionConfiguration = emptyInjectionConfiguration;
         this.injections = injections;
         this.response = new BatchItemResponse();
@@ -82,11 +91,16 @@ public class BatchItem {
                 .ifPresent(this.response::setEid);
     }
 
+    /**
+     * Injects {@code value} (serialized json) into event instead of the original value of {@code type} field. Value
+     * is encoded right away, so that it is encoded only once and only injected fragment is encoded, not the whole
+     * event.
+     */
     public void inject(final Injection type, final String value) {
         if (null == injectionValues) {
-            injectionValues = new String[Injection.values().length];
+            injectionValues = new byte[Injection.values().length][];
         }
-        injectionValues[type.ordinal()] = value;
+        injectionValues[type.ordinal()] = value.getBytes(StandardCharsets.UTF_8);
     }
 
     public JSONObject getEvent() {
@@ -138,23 +152,39 @@ public class BatchItem {
     }
 
     public int getEventSize() {
-        return eventSize;
+        return length;
     }
 
     public String dumpEventToString() {
+        if (null == injectionValues && skipCharacters.length == 0) {
+            return new String(payload, offset, length, StandardCharsets.UTF_8);
+        }
+        return new String(dumpEvent(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns utf-8 encoded event with all the injections applied, ready to be sent to storage. Event is assembled
+     * directly from request bytes, without intermediate strings, into array of exactly the required size.
+     */
+    public byte[] dumpEvent() {
+        if (null == injectionValues && skipCharacters.length == 0) {
+            return Arrays.copyOfRange(payload, offset, offset + length);
+        }
+        final EventBuilder sizeCounter = new EventBuilder(null);
+        writeEvent(sizeCounter);
+        final EventBuilder builder = new EventBuilder(new byte[sizeCounter.size]);
+        writeEvent(builder);
+        return builder.buffer;
+    }
+
+    private void writeEvent(final EventBuilder builder) {
         if (null == injectionValues) {
-            if (skipCharacters.isEmpty()) {
-                return rawEvent;
-            } else {
-                final StringBuilder sb = new StringBuilder();
-                appendWithSkip(sb, 0, rawEvent.length(), 0);
-                return sb.toString();
-            }
+            appendWithSkip(builder, 0, length, 0);
+            return;
         }
         boolean nonComaAdded = false;
         int lastMainEventUsedPosition = 0;
         int currentSkipPosition = 0;
-        final StringBuilder sb = new StringBuilder();
         final Injection[] sortedInjections = Arrays.copyOf(Injection.values(), Injection.values().length);
         Arrays.sort(sortedInjections, Comparator.comparing(injection -> {
             final InjectionConfiguration config = injections[injection.ordinal()];
@@ -162,7 +192,7 @@ public class BatchItem {
         }));
 
         for (final Injection injectionKey : sortedInjections) {
-            final String injectionValue = injectionValues[injectionKey.ordinal()];
+            final byte[] injectionValue = injectionValues[injectionKey.ordinal()];
             if (injectionValue == null) {
                 continue;
             }
@@ -178,35 +208,39 @@ public class BatchItem {
             }
 
             if (positionStart > lastMainEventUsedPosition) {
-                currentSkipPosition = appendWithSkip(sb, lastMainEventUsedPosition, positionStart, currentSkipPosition);
+                currentSkipPosition = appendWithSkip(
+                        builder, lastMainEventUsedPosition, positionStart, currentSkipPosition);
                 lastMainEventUsedPosition = positionEnd;
             }
-            sb.append('\"').append(injectionKey.name).append("\":");
-            sb.append(injectionValue);
+            builder.append((byte) '\"');
+            builder.appendAscii(injectionKey.name);
+            builder.append((byte) '\"');
+            builder.append((byte) ':');
+            builder.append(injectionValue, 0, injectionValue.length);
             if (config == null) {
                 if (!emptyInjectionConfiguration.addComma) {
                     // Well, really rare case, but we are trying to load brain, so cover it as well
                     if (nonComaAdded) {
-                        sb.append(',');
+                        builder.append((byte) ',');
                     } else {
                         nonComaAdded = true;
                     }
                 } else {
-                    sb.append(',');
+                    builder.append((byte) ',');
                 }
             }
         }
-        if (lastMainEventUsedPosition < rawEvent.length()) {
-            appendWithSkip(sb, lastMainEventUsedPosition, rawEvent.length(), currentSkipPosition);
+        if (lastMainEventUsedPosition < length) {
+            appendWithSkip(builder, lastMainEventUsedPosition, length, currentSkipPosition);
         }
-        return sb.toString();
     }
 
-    private int appendWithSkip(final StringBuilder sb, final int from, final int to, final int currentSkipPosition) {
+    private int appendWithSkip(final EventBuilder builder, final int from, final int to,
+                               final int currentSkipPosition) {
         int currentPos = from;
         int idx;
-        for (idx = currentSkipPosition; idx < skipCharacters.size(); ++idx) {
-            final int currentSkipIdx = skipCharacters.get(idx);
+        for (idx = currentSkipPosition; idx < skipCharacters.length; ++idx) {
+            final int currentSkipIdx = skipCharacters[idx];
             if (currentSkipIdx < from) {
                 continue;
             }
@@ -214,14 +248,50 @@ public class BatchItem {
                 break;
             }
             if (currentSkipIdx > currentPos) {
-                sb.append(rawEvent, currentPos, currentSkipIdx);
+                builder.append(payload, offset + currentPos, currentSkipIdx - currentPos);
             }
             currentPos = currentSkipIdx + 1;
         }
         if (to > currentPos) {
-            sb.append(rawEvent, currentPos, to);
+            builder.append(payload, offset + currentPos, to - currentPos);
         }
         return idx;
     }
 
+    /**
+     * Writes event into buffer. In case if buffer is null, only counts the size of the event, this way event is
+     * written into array of exact size without reallocations and trimming.
+     */
+    private static class EventBuilder {
+        @Nullable
+        private final byte[] buffer;
+        private int size;
+
+        EventBuilder(@Nullable final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void append(final byte value) {
+            if (null != buffer) {
+                buffer[size] = value;
+            }
+            size++;
+        }
+
+        void append(final byte[] data, final int from, final int count) {
+            if (null != buffer) {
+                System.arraycopy(data, from, buffer, size, count);
+            }
+            size += count;
+        }
+
+        void appendAscii(final String value) {
+            if (null != buffer) {
+                for (int i = 0; i < value.length(); ++i) {
+                    buffer[size + i] = (byte) value.charAt(i);
+                }
+            }
+            size += value.length();
+        }
+    }
 }
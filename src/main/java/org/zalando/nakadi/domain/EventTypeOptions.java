@@ -1,10 +1,14 @@
 package org.zalando.nakadi.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import javax.annotation.Nullable;
 
 public class EventTypeOptions {
 
     private Long retentionTime;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String producerProfile;
 
     @Nullable
     public Long getRetentionTime() {
@@ -14,4 +18,13 @@ public class EventTypeOptions {
     public void setRetentionTime(@Nullable final Long retentionTime) {
         this.retentionTime = retentionTime;
     }
+
+    @Nullable
+    public String getProducerProfile() {
+        return producerProfile;
+    }
+
+    public void setProducerProfile(@Nullable final String producerProfile) {
+        this.producerProfile = producerProfile;
+    }
 }
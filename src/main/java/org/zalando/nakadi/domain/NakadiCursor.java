@@ -28,17 +28,11 @@ public abstract class NakadiCursor {
     }
 
     private final Timeline timeline;
-    private final String partition;
-    // NO BEGIN HERE - only real offset!
-    private final String offset;
+    private final EventTypePartition eventTypePartition;
 
-    private NakadiCursor(
-            final Timeline timeline,
-            final String partition,
-            final String offset) {
+    private NakadiCursor(final Timeline timeline, final EventTypePartition eventTypePartition) {
         this.timeline = timeline;
-        this.partition = partition;
-        this.offset = offset;
+        this.eventTypePartition = eventTypePartition;
     }
 
     public Timeline getTimeline() {
@@ -54,21 +48,29 @@ public abstract class NakadiCursor {
     }
 
     public String getPartition() {
-        return partition;
+        return eventTypePartition.getPartition();
     }
 
-    public String getOffset() {
-        return offset;
-    }
+    // NO BEGIN HERE - only real offset!
+    public abstract String getOffset();
 
+    /**
+     * Returns event type partition of the cursor. The instance is shared by all the cursors created from it with
+     * {@link #of(Timeline, EventTypePartition, long)}, so it is not allocated for every consumed event.
+     */
     public EventTypePartition getEventTypePartition() {
-        return new EventTypePartition(timeline.getEventType(), partition);
+        return eventTypePartition;
     }
 
     public TopicPartition getTopicPartition() {
-        return new TopicPartition(timeline.getTopic(), partition);
+        return new TopicPartition(timeline.getTopic(), getPartition());
     }
 
+    /**
+     * Compares offsets of cursors of the same timeline and partition without formatting or parsing them.
+     */
+    public abstract int compareOffset(NakadiCursor other);
+
     public abstract NakadiCursor shiftWithinTimeline(long offset);
 
     public abstract boolean isLast();
@@ -92,15 +94,15 @@ public abstract class NakadiCursor {
 
         final NakadiCursor that = (NakadiCursor) o;
         return Objects.equals(this.timeline, that.timeline)
-                && Objects.equals(this.partition, that.partition)
-                && Objects.equals(this.offset, that.offset);
+                && Objects.equals(this.getPartition(), that.getPartition())
+                && Objects.equals(this.getOffset(), that.getOffset());
     }
 
     @Override
     public int hashCode() {
         int result = timeline.hashCode();
-        result = 31 * result + partition.hashCode();
-        result = 31 * result + offset.hashCode();
+        result = 31 * result + getPartition().hashCode();
+        result = 31 * result + getOffset().hashCode();
         return result;
     }
 
@@ -108,15 +110,31 @@ public abstract class NakadiCursor {
     public String toString() {
         //Ok, it's time to compact the message.
         return "T(" + Timeline.debugString(timeline) + ")-" +
-                "P(" + partition + ")-" +
-                "O(" + offset + ")";
+                "P(" + getPartition() + ")-" +
+                "O(" + getOffset() + ")";
     }
 
 
     public static NakadiCursor of(final Timeline timeline, final String partition, final String offset) {
         switch (timeline.getStorage().getType()) {
             case KAFKA:
-                return new NakadiKafkaCursor(timeline, partition, offset);
+                return new NakadiKafkaCursor(
+                        timeline, new EventTypePartition(timeline.getEventType(), partition), offset);
+            default:
+                throw new NakadiBaseException(
+                        "Cursor storage type " + timeline.getStorage().getType() + " not supported");
+        }
+    }
+
+    /**
+     * Creates cursor from offset as it is stored in storage. Offset is formatted only when (and if) it is requested,
+     * which is usually the case only for the last event of a batch sent to consumer.
+     */
+    public static NakadiCursor of(
+            final Timeline timeline, final EventTypePartition eventTypePartition, final long offset) {
+        switch (timeline.getStorage().getType()) {
+            case KAFKA:
+                return new NakadiKafkaCursor(timeline, eventTypePartition, offset);
             default:
                 throw new NakadiBaseException(
                         "Cursor storage type " + timeline.getStorage().getType() + " not supported");
@@ -124,17 +142,61 @@ public abstract class NakadiCursor {
     }
 
     private static class NakadiKafkaCursor extends NakadiCursor {
-        NakadiKafkaCursor(final Timeline timeline, final String partition, final String offset) {
-            super(timeline, partition, offset);
+        private final long kafkaOffset;
+        // false if cursor was created from offset that is not a number, kafkaOffset is not set in this case
+        private final boolean numeric;
+        private String offset;
+
+        NakadiKafkaCursor(
+                final Timeline timeline, final EventTypePartition eventTypePartition, final long kafkaOffset) {
+            super(timeline, eventTypePartition);
+            this.kafkaOffset = kafkaOffset;
+            this.numeric = true;
+        }
+
+        NakadiKafkaCursor(final Timeline timeline, final EventTypePartition eventTypePartition, final String offset) {
+            super(timeline, eventTypePartition);
+            this.offset = offset;
+            long parsed = 0;
+            boolean isNumeric = true;
+            try {
+                parsed = KafkaCursor.toKafkaOffset(offset);
+            } catch (final NumberFormatException ex) {
+                isNumeric = false;
+            }
+            this.kafkaOffset = parsed;
+            this.numeric = isNumeric;
+        }
+
+        @Override
+        public String getOffset() {
+            // Racy, but String is immutable, so the worst case is formatting it more than once
+            String result = offset;
+            if (null == result) {
+                result = KafkaCursor.toNakadiOffset(kafkaOffset);
+                offset = result;
+            }
+            return result;
+        }
+
+        private long getKafkaOffset() {
+            if (!numeric) {
+                throw new NumberFormatException("For input string: \"" + offset + "\"");
+            }
+            return kafkaOffset;
+        }
+
+        @Override
+        public int compareOffset(final NakadiCursor other) {
+            if (numeric && other instanceof NakadiKafkaCursor && ((NakadiKafkaCursor) other).numeric) {
+                return Long.compare(kafkaOffset, ((NakadiKafkaCursor) other).kafkaOffset);
+            }
+            return getOffset().compareTo(other.getOffset());
         }
 
         @Override
         public NakadiCursor shiftWithinTimeline(final long toAdd) {
-            return new NakadiKafkaCursor(
-                    getTimeline(),
-                    getPartition(),
-                    KafkaCursor.toNakadiOffset(KafkaCursor.toKafkaOffset(getOffset()) + toAdd)
-            );
+            return new NakadiKafkaCursor(getTimeline(), getEventTypePartition(), getKafkaOffset() + toAdd);
         }
 
         @Override
@@ -153,14 +215,12 @@ public abstract class NakadiCursor {
             final long existingOffset = ((Timeline.KafkaStoragePosition) timeline.getLatestPosition())
                     .getLastOffsetForPartition(partition);
 
-            final long offset = KafkaCursor.toKafkaOffset(getOffset());
-
-            return offset == existingOffset;
+            return getKafkaOffset() == existingOffset;
         }
 
         @Override
         public boolean isInitial() {
-            return Long.parseLong(getOffset()) == -1; // Yes, it is always like that for kafka.
+            return getKafkaOffset() == -1; // Yes, it is always like that for kafka.
         }
 
         @Override
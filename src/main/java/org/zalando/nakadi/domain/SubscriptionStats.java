@@ -0,0 +1,47 @@
+package org.zalando.nakadi.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.List;
+
+@Immutable
+public class SubscriptionStats {
+
+    private final String subscriptionId;
+    private final List<SubscriptionEventTypeStats> eventTypes;
+    private final boolean computed;
+
+    public SubscriptionStats(final String subscriptionId, final List<SubscriptionEventTypeStats> eventTypes) {
+        this(subscriptionId, eventTypes, true);
+    }
+
+    public SubscriptionStats(
+            @JsonProperty("subscription_id") final String subscriptionId,
+            @JsonProperty("event_types") final List<SubscriptionEventTypeStats> eventTypes,
+            @JsonProperty("computed") final boolean computed) {
+        this.subscriptionId = subscriptionId;
+        this.eventTypes = eventTypes;
+        this.computed = computed;
+    }
+
+    /**
+     * Stats of subscription, that is not tracked yet. They are computed in background and served by next requests.
+     */
+    public static SubscriptionStats notComputed(final String subscriptionId) {
+        return new SubscriptionStats(subscriptionId, Collections.emptyList(), false);
+    }
+
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public List<SubscriptionEventTypeStats> getEventTypes() {
+        return Collections.unmodifiableList(eventTypes);
+    }
+
+    public boolean isComputed() {
+        return computed;
+    }
+}
@@ -9,6 +9,7 @@ public class MetricUtils {
     public static final String SUBSCRIPTION_PREFIX = NAKADI_PREFIX + "subscriptions";
     private static final String LOW_LEVEL_STREAM = "lola";
     private static final String HIGH_LEVEL_STREAM = "hila";
+    private static final String COMPRESSION = "compression";
     private static final String BYTES_FLUSHED = "bytes-flushed";
 
     public static String metricNameFor(final String eventTypeName, final String metricName) {
@@ -20,18 +21,28 @@ public class MetricUtils {
     }
 
     public static String metricNameForLoLAStream(final String applicationId, final String eventTypeName) {
+        return MetricRegistry.name(streamNameForLoLA(applicationId, eventTypeName), BYTES_FLUSHED);
+    }
+
+    public static String metricNameForHiLAStream(final String applicationId, final String subscriptionId) {
+        return MetricRegistry.name(streamNameForHiLA(applicationId, subscriptionId), BYTES_FLUSHED);
+    }
+
+    public static String streamNameForLoLA(final String applicationId, final String eventTypeName) {
         return MetricRegistry.name(
                 LOW_LEVEL_STREAM,
                 applicationId.replace(".", "#"),
-                eventTypeName.replace(".", "#"),
-                BYTES_FLUSHED);
+                eventTypeName.replace(".", "#"));
     }
 
-    public static String metricNameForHiLAStream(final String applicationId, final String subscriptionId) {
+    public static String streamNameForHiLA(final String applicationId, final String subscriptionId) {
         return MetricRegistry.name(
                 HIGH_LEVEL_STREAM,
                 applicationId.replace(".", "#"),
-                subscriptionId,
-                BYTES_FLUSHED);
+                subscriptionId);
+    }
+
+    public static String compressionNameForClient(final String applicationId) {
+        return MetricRegistry.name(COMPRESSION, applicationId.replace(".", "#"));
     }
 }
@@ -10,7 +10,6 @@ import org.zalando.nakadi.domain.EventTypeBase;
 import org.zalando.nakadi.exceptions.runtime.InvalidEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchPartitionStrategyException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
-import org.zalando.nakadi.service.timeline.TimelineService;
 
 import java.util.List;
 import java.util.Map;
@@ -28,11 +27,12 @@ public class PartitionResolver {
             HASH_STRATEGY, USER_DEFINED_STRATEGY, RANDOM_STRATEGY);
 
     private final Map<String, PartitionStrategy> partitionStrategies;
-    private final TimelineService timelineService;
+    private final PartitionRoutingCache partitionRoutingCache;
 
     @Autowired
-    public PartitionResolver(final TimelineService timelineService, final HashPartitionStrategy hashPartitionStrategy) {
-        this.timelineService = timelineService;
+    public PartitionResolver(final PartitionRoutingCache partitionRoutingCache,
+                             final HashPartitionStrategy hashPartitionStrategy) {
+        this.partitionRoutingCache = partitionRoutingCache;
 
         partitionStrategies = ImmutableMap.of(
                 HASH_STRATEGY, hashPartitionStrategy,
@@ -66,9 +66,8 @@ public class PartitionResolver {
                     eventTypeStrategy);
         }
 
-        final List<String> partitions = timelineService.getTopicRepository(eventType)
-                .listPartitionNames(timelineService.getActiveTimeline(eventType).getTopic());
-        return partitionStrategy.calculatePartition(eventType, eventAsJson, partitions);
+        return partitionStrategy.calculatePartition(
+                eventType, eventAsJson, partitionRoutingCache.getRoutingTable(eventType));
     }
 
 }
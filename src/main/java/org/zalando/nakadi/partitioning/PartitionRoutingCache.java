@@ -0,0 +1,81 @@
+package org.zalando.nakadi.partitioning;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.repository.db.EventTypeCache;
+import org.zalando.nakadi.service.timeline.TimelineService;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps {@link PartitionRoutingTable} for each event type, so that storage is not asked for the list of partitions
+ * for every published event. Table is rebuilt when active timeline of event type is switched to another topic or
+ * event type was updated, and is dropped each time when event type is invalidated in {@link EventTypeCache} (update,
+ * deletion, repartitioning). Partitions of topic are listed again once table is older than ttl, so that partitions
+ * added to the topic are noticed even if invalidation was missed.
+ */
+@Component
+public class PartitionRoutingCache {
+
+    private final TimelineService timelineService;
+    private final HashPartitionStrategyCrutch hashPartitioningCrutch;
+    private final long ttlMs;
+    private final ConcurrentMap<String, CachedTable> routingTables = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PartitionRoutingCache(final TimelineService timelineService,
+                                 final EventTypeCache eventTypeCache,
+                                 final HashPartitionStrategyCrutch hashPartitioningCrutch,
+                                 @Value("${nakadi.partitioning.routingTableTtlMs}") final long ttlMs) {
+        this.timelineService = timelineService;
+        this.hashPartitioningCrutch = hashPartitioningCrutch;
+        this.ttlMs = ttlMs;
+        eventTypeCache.addInvalidationListener(this::invalidate);
+    }
+
+    public PartitionRoutingTable getRoutingTable(final EventType eventType) {
+        final String topic = timelineService.getActiveTimeline(eventType).getTopic();
+        final CachedTable cached = routingTables.get(eventType.getName());
+        if (null != cached && cached.routingTable.isApplicableTo(eventType, topic)) {
+            final long now = System.currentTimeMillis();
+            if (now - cached.checkedAt < ttlMs) {
+                return cached.routingTable;
+            }
+            final List<String> partitions = listPartitions(eventType, topic);
+            if (cached.routingTable.isApplicableTo(partitions)) {
+                cached.checkedAt = now;
+                return cached.routingTable;
+            }
+            return build(eventType, topic, partitions);
+        }
+        return build(eventType, topic, listPartitions(eventType, topic));
+    }
+
+    public void invalidate(final String eventTypeName) {
+        routingTables.remove(eventTypeName);
+    }
+
+    private List<String> listPartitions(final EventType eventType, final String topic) {
+        return timelineService.getTopicRepository(eventType).listPartitionNames(topic);
+    }
+
+    private PartitionRoutingTable build(final EventType eventType, final String topic, final List<String> partitions) {
+        final PartitionRoutingTable routingTable =
+                new PartitionRoutingTable(eventType, topic, partitions, hashPartitioningCrutch);
+        routingTables.put(eventType.getName(), new CachedTable(routingTable));
+        return routingTable;
+    }
+
+    private static class CachedTable {
+        private final PartitionRoutingTable routingTable;
+        private volatile long checkedAt = System.currentTimeMillis();
+
+        private CachedTable(final PartitionRoutingTable routingTable) {
+            this.routingTable = routingTable;
+        }
+    }
+}
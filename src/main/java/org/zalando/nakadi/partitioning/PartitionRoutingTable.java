@@ -0,0 +1,88 @@
+package org.zalando.nakadi.partitioning;
+
+import org.joda.time.DateTime;
+import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.util.JsonPathAccess;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.lang.Math.abs;
+import static org.zalando.nakadi.validation.JsonSchemaEnrichment.DATA_PATH_PREFIX;
+
+/**
+ * Everything that is needed to route events of event type to partitions, precomputed once per topic. Hash
+ * partitioning is reduced to array lookup: partitions are already sorted and reordered according to
+ * {@link HashPartitionStrategyCrutch}, and partition key fields are already split into path elements.
+ */
+public class PartitionRoutingTable {
+
+    @Nullable
+    private final String topic;
+    private final List<String> partitions;
+    private final List<String> partitionKeyFields;
+    private final EventCategory category;
+    @Nullable
+    private final DateTime eventTypeUpdatedAt;
+    private final String[] hashRouting;
+    private final String[][] partitionKeyPaths;
+
+    public PartitionRoutingTable(final EventType eventType,
+                                 @Nullable final String topic,
+                                 final List<String> partitions,
+                                 final HashPartitionStrategyCrutch hashPartitioningCrutch) {
+        this.topic = topic;
+        this.partitions = Collections.unmodifiableList(partitions);
+        this.partitionKeyFields = eventType.getPartitionKeyFields();
+        this.category = eventType.getCategory();
+        this.eventTypeUpdatedAt = eventType.getUpdatedAt();
+
+        final String[] sortedPartitions = partitions.stream().sorted().toArray(String[]::new);
+        this.hashRouting = new String[sortedPartitions.length];
+        for (int i = 0; i < sortedPartitions.length; ++i) {
+            hashRouting[i] = sortedPartitions[hashPartitioningCrutch.adjustPartitionIndex(i, sortedPartitions.length)];
+        }
+
+        this.partitionKeyPaths = new String[partitionKeyFields.size()][];
+        for (int i = 0; i < partitionKeyPaths.length; ++i) {
+            final String field = partitionKeyFields.get(i);
+            partitionKeyPaths[i] = JsonPathAccess.compilePath(
+                    EventCategory.DATA.equals(category) ? DATA_PATH_PREFIX + field : field);
+        }
+    }
+
+    /**
+     * Checks that table is still applicable to event type, e.g. that there were no timeline switch, no update of
+     * event type (partition key fields, repartitioning) since table was built. Table is validated against the event
+     * type that is actually used, so it does not depend on invalidation of event type cache alone.
+     */
+    public boolean isApplicableTo(final EventType eventType, final String activeTopic) {
+        return Objects.equals(topic, activeTopic)
+                && Objects.equals(eventTypeUpdatedAt, eventType.getUpdatedAt())
+                && Objects.equals(category, eventType.getCategory())
+                && Objects.equals(partitionKeyFields, eventType.getPartitionKeyFields());
+    }
+
+    /**
+     * Checks that partitions of topic, that were listed again, are the ones the table was built for. Partitions can
+     * be added to topic without switch of timeline, so their count is compared.
+     */
+    public boolean isApplicableTo(final List<String> topicPartitions) {
+        return partitions.size() == topicPartitions.size();
+    }
+
+    public List<String> getPartitions() {
+        return partitions;
+    }
+
+    public String[][] getPartitionKeyPaths() {
+        return partitionKeyPaths;
+    }
+
+    public String getPartitionForHash(final int hashValue) {
+        return hashRouting[abs(hashValue) % hashRouting.length];
+    }
+}
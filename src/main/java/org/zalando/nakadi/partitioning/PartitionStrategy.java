@@ -15,4 +15,10 @@ public interface PartitionStrategy {
 
     String calculatePartition(EventType eventType, JSONObject event, List<String> partitions)
             throws PartitioningException;
+
+    default String calculatePartition(final EventType eventType, final JSONObject event,
+                                      final PartitionRoutingTable routingTable)
+            throws PartitioningException {
+        return calculatePartition(eventType, event, routingTable.getPartitions());
+    }
 }
@@ -13,8 +13,39 @@ import java.util.Set;
 
 public interface EventConsumer extends Closeable {
 
+    /**
+     * Reads events, waiting for them for up to poll timeout if nothing is available yet.
+     */
     List<ConsumedEvent> readEvents();
 
+    /**
+     * Reads events, that are available without waiting.
+     */
+    List<ConsumedEvent> readAvailableEvents();
+
+    /**
+     * Stops fetching of partitions until they are resumed, partitions that are not assigned to consumer are ignored.
+     * Events of paused partitions, that are already fetched, may still be returned.
+     */
+    void pause(Collection<EventTypePartition> partitions);
+
+    void resume(Collection<EventTypePartition> partitions);
+
+    /**
+     * Sets listener, that is called (from any thread) once new events may be available for
+     * {@link #readAvailableEvents()}. Streams are reading the consumer on this notification instead of polling it.
+     */
+    default void setDataListener(final Runnable listener) {
+    }
+
+    /**
+     * @return true if data listener is notified about all the events read by the consumer, false if consumer
+     * still has to be polled periodically to get some of them
+     */
+    default boolean notifiesAboutAllEvents() {
+        return false;
+    }
+
     interface LowLevelConsumer extends EventConsumer {
         Set<TopicPartition> getAssignment();
     }
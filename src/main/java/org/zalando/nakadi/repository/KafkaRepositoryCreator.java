@@ -10,8 +10,12 @@ import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
 import org.zalando.nakadi.exceptions.runtime.TopicRepositoryException;
 import org.zalando.nakadi.repository.kafka.KafkaFactory;
+import org.zalando.nakadi.repository.kafka.KafkaFetchMultiplexer;
 import org.zalando.nakadi.repository.kafka.KafkaLocationManager;
+import org.zalando.nakadi.repository.kafka.KafkaOffsets;
+import org.zalando.nakadi.repository.kafka.KafkaProducerProfiles;
 import org.zalando.nakadi.repository.kafka.KafkaSettings;
+import org.zalando.nakadi.repository.kafka.KafkaTimestampIndex;
 import org.zalando.nakadi.repository.kafka.KafkaTopicConfigFactory;
 import org.zalando.nakadi.repository.kafka.KafkaTopicRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
@@ -29,18 +33,21 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
     private final ZookeeperSettings zookeeperSettings;
     private final KafkaTopicConfigFactory kafkaTopicConfigFactory;
     private final MetricRegistry metricRegistry;
+    private final KafkaProducerProfiles producerProfiles;
 
     @Autowired
     public KafkaRepositoryCreator(final NakadiSettings nakadiSettings,
                                   final KafkaSettings kafkaSettings,
                                   final ZookeeperSettings zookeeperSettings,
                                   final KafkaTopicConfigFactory kafkaTopicConfigFactory,
-                                  final MetricRegistry metricRegistry) {
+                                  final MetricRegistry metricRegistry,
+                                  final KafkaProducerProfiles producerProfiles) {
         this.nakadiSettings = nakadiSettings;
         this.kafkaSettings = kafkaSettings;
         this.zookeeperSettings = zookeeperSettings;
         this.kafkaTopicConfigFactory = kafkaTopicConfigFactory;
         this.metricRegistry = metricRegistry;
+        this.producerProfiles = producerProfiles;
     }
 
     @Override
@@ -53,9 +60,27 @@ public class KafkaRepositoryCreator implements TopicRepositoryCreator {
                     kafkaConfiguration.getExhibitorAddress(),
                     kafkaConfiguration.getExhibitorPort());
             final KafkaFactory kafkaFactory =
-                    new KafkaFactory(new KafkaLocationManager(zooKeeperHolder, kafkaSettings), metricRegistry);
+                    new KafkaFactory(new KafkaLocationManager(zooKeeperHolder, kafkaSettings), metricRegistry,
+                            MetricRegistry.name("kafka.producer", storage.getId()), kafkaSettings.getProducerShards(),
+                            producerProfiles);
+            final KafkaTimestampIndex timestampIndex = new KafkaTimestampIndex(
+                    kafkaSettings.getTimestampIndexSampleIntervalMs(), kafkaSettings.getTimestampIndexMaxSamples());
+            final KafkaFetchMultiplexer fetchMultiplexer = kafkaSettings.getFetchMultiplexerConsumers() > 0 ?
+                    new KafkaFetchMultiplexer(
+                            kafkaFactory::getConsumer,
+                            kafkaSettings.getFetchMultiplexerConsumers(),
+                            kafkaSettings.getFetchMultiplexerWindowBytes(),
+                            nakadiSettings.getKafkaPollTimeoutMs(),
+                            timestampIndex,
+                            metricRegistry,
+                            MetricRegistry.name("kafka.fetch.multiplexer", storage.getId())) :
+                    null;
+            final KafkaOffsets kafkaOffsets = new KafkaOffsets(kafkaFactory::getConsumer,
+                    kafkaSettings.getOffsetsTtlMs(), kafkaSettings.getOffsetsTimeoutMs(), metricRegistry,
+                    MetricRegistry.name("kafka.offsets", storage.getId()));
             final KafkaTopicRepository kafkaTopicRepository = new KafkaTopicRepository(zooKeeperHolder,
-                    kafkaFactory, nakadiSettings, kafkaSettings, zookeeperSettings, kafkaTopicConfigFactory);
+                    kafkaFactory, nakadiSettings, kafkaSettings, zookeeperSettings, kafkaTopicConfigFactory,
+                    timestampIndex, kafkaOffsets, fetchMultiplexer);
             // check that it does work
             kafkaTopicRepository.listTopics();
             return kafkaTopicRepository;
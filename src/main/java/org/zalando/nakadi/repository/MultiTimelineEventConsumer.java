@@ -59,10 +59,15 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
      * for each event type partition within current timeline.
      */
     private final Map<EventTypePartition, String> borderOffsets = new HashMap<>();
+    /**
+     * Paused partitions, that are to be paused in underlying consumers created later as well
+     */
+    private final Set<EventTypePartition> pausedPartitions = new HashSet<>();
     private final TimelineService timelineService;
     private final TimelineSync timelineSync;
     private final AtomicBoolean timelinesChanged = new AtomicBoolean(false);
     private final Comparator<NakadiCursor> comparator;
+    private volatile Runnable dataListener;
 
     public MultiTimelineEventConsumer(
             final String clientId,
@@ -82,6 +87,15 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
 
     @Override
     public List<ConsumedEvent> readEvents() {
+        return read(EventConsumer::readEvents);
+    }
+
+    @Override
+    public List<ConsumedEvent> readAvailableEvents() {
+        return read(EventConsumer::readAvailableEvents);
+    }
+
+    private List<ConsumedEvent> read(final Function<EventConsumer, List<ConsumedEvent>> reader) {
         if (timelinesChanged.compareAndSet(true, false)) {
             try {
                 onTimelinesChanged();
@@ -91,7 +105,7 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
         }
         final List<ConsumedEvent> result;
         try {
-            result = poll();
+            result = poll(reader);
         } catch (KafkaFactory.KafkaCrutchException kce) {
             LOG.warn("Kafka connections should be reinitialized because consumers should be recreated", kce);
             final List<NakadiCursor> tmpOffsets = new ArrayList<>(latestOffsets.values());
@@ -119,11 +133,11 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
      *
      * @return List of consumed events.
      */
-    private List<ConsumedEvent> poll() {
+    private List<ConsumedEvent> poll(final Function<EventConsumer, List<ConsumedEvent>> reader) {
         List<ConsumedEvent> result = null;
         boolean newCollectionCreated = false;
         for (final EventConsumer consumer : eventConsumers.values()) {
-            final List<ConsumedEvent> partialResult = consumer.readEvents();
+            final List<ConsumedEvent> partialResult = reader.apply(consumer);
             if (null == result) {
                 result = partialResult;
             } else {
@@ -239,6 +253,12 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
                 LOG.info("Creating underlying consumer for client id {} and cursors {}",
                         clientId, Arrays.deepToString(entry.getValue().toArray()));
                 final EventConsumer.LowLevelConsumer consumer = repo.createEventConsumer(clientId, entry.getValue());
+                if (!pausedPartitions.isEmpty()) {
+                    consumer.pause(pausedPartitions);
+                }
+                if (null != dataListener) {
+                    consumer.setDataListener(dataListener);
+                }
                 eventConsumers.put(repo, consumer);
             }
         }
@@ -308,11 +328,50 @@ public class MultiTimelineEventConsumer implements EventConsumer.ReassignableEve
 
     private void cleanStreamedPartitions(final Set<EventTypePartition> partitions) {
         partitions.forEach(latestOffsets::remove);
+        pausedPartitions.removeAll(partitions);
+    }
+
+    @Override
+    public void pause(final Collection<EventTypePartition> partitions) {
+        final List<EventTypePartition> toPause = partitions.stream()
+                .filter(latestOffsets::containsKey)
+                .filter(pausedPartitions::add)
+                .collect(Collectors.toList());
+        if (!toPause.isEmpty()) {
+            eventConsumers.values().forEach(consumer -> consumer.pause(toPause));
+        }
+    }
+
+    @Override
+    public void resume(final Collection<EventTypePartition> partitions) {
+        final List<EventTypePartition> toResume = partitions.stream()
+                .filter(pausedPartitions::remove)
+                .collect(Collectors.toList());
+        if (!toResume.isEmpty()) {
+            eventConsumers.values().forEach(consumer -> consumer.resume(toResume));
+        }
+    }
+
+    @Override
+    public void setDataListener(final Runnable listener) {
+        this.dataListener = listener;
+        eventConsumers.values().forEach(consumer -> consumer.setDataListener(listener));
+    }
+
+    @Override
+    public boolean notifiesAboutAllEvents() {
+        return !timelinesChanged.get() && eventConsumers.values().stream()
+                .allMatch(EventConsumer::notifiesAboutAllEvents);
     }
 
     void onTimelineChange(final String eventType) {
         LOG.info("Received timeiline change notification for event type {}", eventType);
         timelinesChanged.set(true);
+        final Runnable listener = dataListener;
+        if (null != listener) {
+            // Consumers are to be switched to new timelines, that is done while reading
+            listener.run();
+        }
     }
 
     @Override
@@ -13,9 +13,11 @@ import org.zalando.nakadi.exceptions.runtime.TopicCreationException;
 import org.zalando.nakadi.exceptions.runtime.TopicDeletionException;
 import org.zalando.nakadi.exceptions.runtime.TopicRepositoryException;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface TopicRepository {
 
@@ -43,7 +45,30 @@ public interface TopicRepository {
 
     boolean topicExists(String topic) throws TopicRepositoryException;
 
-    void syncPostBatch(String topicId, List<BatchItem> batch) throws EventPublishingException;
+    /**
+     * Sends batch to storage and waits for acknowledgements.
+     *
+     * @param topicId         Topic to publish to
+     * @param batch           Batch of items with already resolved partitions
+     * @param producerProfile Producer profile of the event type, default one is used if null
+     * @throws EventPublishingException In case at least one of items failed to be published
+     */
+    void syncPostBatch(String topicId, List<BatchItem> batch, @Nullable String producerProfile)
+            throws EventPublishingException;
+
+    /**
+     * Sends batch to storage without waiting for acknowledgements. Statuses of batch items are updated the same way
+     * as with {@link #syncPostBatch(String, List, String)}, but once storage acknowledges (or rejects) them.
+     *
+     * @param topicId         Topic to publish to
+     * @param batch           Batch of items with already resolved partitions
+     * @param producerProfile Producer profile of the event type, default one is used if null
+     * @return Future, that completes when all the items are published, or completes exceptionally with
+     * {@link EventPublishingException} in case at least one of items failed to be published
+     * @throws EventPublishingException In case when batch could not be handed over to storage at all
+     */
+    CompletableFuture<Void> postBatch(String topicId, List<BatchItem> batch, @Nullable String producerProfile)
+            throws EventPublishingException;
 
     Optional<PartitionStatistics> loadPartitionStatistics(Timeline timeline, String partition)
             throws ServiceTemporarilyUnavailableException;
@@ -62,16 +87,50 @@ public interface TopicRepository {
     List<PartitionStatistics> loadTopicStatistics(Collection<Timeline> timelines)
             throws ServiceTemporarilyUnavailableException;
 
+    /**
+     * Returns statistics of all the partitions of the timelines.
+     *
+     * @param timelines Timelines to query data for
+     * @param fresh     Whether statistics must reflect state of the storage after the call was made. Otherwise
+     *                  statistics may be a bit behind, which is fine for everything except positions that are stored
+     * @return List of statistics
+     * @throws ServiceTemporarilyUnavailableException In case when there was a problem communicating with storage
+     */
+    List<PartitionStatistics> loadTopicStatistics(Collection<Timeline> timelines, boolean fresh)
+            throws ServiceTemporarilyUnavailableException;
+
     List<PartitionEndStatistics> loadTopicEndStatistics(Collection<Timeline> topics)
             throws ServiceTemporarilyUnavailableException;
 
+    /**
+     * Returns end statistics of all the partitions of the timelines, see {@link #loadTopicStatistics(Collection,
+     * boolean)} for the meaning of fresh.
+     */
+    List<PartitionEndStatistics> loadTopicEndStatistics(Collection<Timeline> topics, boolean fresh)
+            throws ServiceTemporarilyUnavailableException;
+
     List<String> listPartitionNames(String topicId);
 
     EventConsumer.LowLevelConsumer createEventConsumer(String clientId, List<NakadiCursor> positions)
             throws InvalidCursorException;
 
+    /**
+     * Estimates timestamp of the event, that follows the position, from the events, that were published or consumed
+     * by this node, without reading from storage.
+     *
+     * @param position Position to get timestamp of the next event for
+     * @return Timestamp of the next event, or empty if there is not enough data for the estimate
+     */
+    Optional<Long> estimateNextEventTimestamp(NakadiCursor position);
+
     void validateReadCursors(List<NakadiCursor> cursors) throws InvalidCursorException,
             ServiceTemporarilyUnavailableException;
 
     void setRetentionTime(String topic, Long retentionMs) throws TopicConfigException;
+
+    /**
+     * Stops background work of the repository (shared consumers and their threads) and releases its resources.
+     * Repository is not used anymore after that.
+     */
+    void close();
 }
@@ -13,6 +13,8 @@ import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
 import org.zalando.nakadi.exceptions.runtime.TopicRepositoryException;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -84,11 +86,53 @@ public class TopicRepositoryHolder {
         }
     }
 
+    /**
+     * Closes topic repository of the storage, that was deleted. Repository is created again if the storage is used
+     * after that.
+     */
+    public void removeTopicRepository(final String storageId) {
+        final List<TopicRepository> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            storageTopicRepository.entrySet().removeIf(entry -> {
+                if (storageId.equals(entry.getKey().getId())) {
+                    removed.add(entry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.unlock();
+        }
+        removed.forEach(this::closeTopicRepository);
+    }
+
+    @PreDestroy
+    public void close() {
+        final List<TopicRepository> removed;
+        lock.lock();
+        try {
+            removed = new ArrayList<>(storageTopicRepository.values());
+            storageTopicRepository.clear();
+        } finally {
+            lock.unlock();
+        }
+        removed.forEach(this::closeTopicRepository);
+    }
+
+    private void closeTopicRepository(final TopicRepository topicRepository) {
+        try {
+            topicRepository.close();
+        } catch (final RuntimeException ex) {
+            LOG.warn("Failed to close topic repository", ex);
+        }
+    }
+
     public Timeline.StoragePosition createStoragePosition(final Timeline timeline) {
         try {
             final Storage storage = timeline.getStorage();
             final List<NakadiCursor> offsets = getTopicRepository(storage)
-                    .loadTopicStatistics(Collections.singleton(timeline)).stream()
+                    .loadTopicStatistics(Collections.singleton(timeline), true).stream()
                     .map(PartitionStatistics::getLast)
                     .collect(Collectors.toList());
             return getTopicRepositoryCreator(storage.getType()).createStoragePosition(offsets);
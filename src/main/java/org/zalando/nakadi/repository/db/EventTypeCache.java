@@ -1,10 +1,15 @@
 package org.zalando.nakadi.repository.db;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
@@ -14,10 +19,13 @@ import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.metrics.MetricUtils;
 import org.zalando.nakadi.repository.EventTypeRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 import org.zalando.nakadi.service.timeline.TimelineSync;
@@ -25,22 +33,47 @@ import org.zalando.nakadi.validation.EventTypeValidator;
 import org.zalando.nakadi.validation.EventValidation;
 
 import javax.annotation.Nonnull;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * Cache of event types together with their validators and timelines. Changes of event types are propagated through
+ * zookeeper, and cached entries are rebuilt in background on every change, while previous value is still served, so
+ * that request threads do not wait for database and schema compilation. Refreshes are delayed by random jitter, so
+ * that not all the nodes are hitting database at the same moment, only the node that made the change refreshes the
+ * entry right away. Failed refreshes are retried with backoff, and if they keep failing, the entry is dropped and
+ * loaded again on request thread.
+ * <p>
+ * Timelines can not be served stale, as events would be published to the topic that is not active anymore. Each
+ * timeline change moves timeline fence of event type, and entries loaded before the fence are never served: they are
+ * loaded again on request thread, unless background load is done earlier.
+ */
 public class EventTypeCache {
 
     public static final String ZKNODE_PATH = "/nakadi/event_types";
     public static final int CACHE_MAX_SIZE = 100000;
+    private static final String PRELOAD_METRIC_PREFIX = "nakadi.startup.event_type_cache";
+    private static final long REFRESH_RETRY_MS = 100;
+    private static final int REFRESH_MAX_ATTEMPTS = 5;
     private static final Logger LOG = LoggerFactory.getLogger(EventTypeCache.class);
     private final LoadingCache<String, CachedValue> eventTypeCache;
     private final PathChildrenCache cacheSync;
@@ -49,13 +82,25 @@ public class EventTypeCache {
     private final TimelineSync timelineSync;
     private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
     private Map<String, TimelineSync.ListenerRegistration> timelineRegistrations;
+    private final EventTypeRepository eventTypeRepository;
+    private final TimelineDbRepository timelineRepository;
+    private final MetricRegistry metricRegistry;
+    private final long refreshJitterMs;
+    // Refreshes are executed one by one, so that older data never overwrites newer one
+    private final ScheduledExecutorService refreshExecutor;
+    private final Set<String> pendingRefreshes = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicLong> timelineFences = new ConcurrentHashMap<>();
+    private final Map<String, CacheMetrics> metrics = new ConcurrentHashMap<>();
 
     public EventTypeCache(final EventTypeRepository eventTypeRepository,
                           final TimelineDbRepository timelineRepository,
                           final ZooKeeperHolder zkClient,
-                          final TimelineSync timelineSync)
+                          final TimelineSync timelineSync,
+                          final MetricRegistry metricRegistry,
+                          final long refreshJitterMs)
             throws Exception {
-        this(eventTypeRepository, timelineRepository, zkClient, setupCacheSync(zkClient.get()), timelineSync);
+        this(eventTypeRepository, timelineRepository, zkClient, setupCacheSync(zkClient.get()), timelineSync,
+                metricRegistry, refreshJitterMs);
     }
 
     @VisibleForTesting
@@ -63,16 +108,24 @@ public class EventTypeCache {
                    final TimelineDbRepository timelineRepository,
                    final ZooKeeperHolder zkClient,
                    final PathChildrenCache cache,
-                   final TimelineSync timelineSync) {
+                   final TimelineSync timelineSync,
+                   final MetricRegistry metricRegistry,
+                   final long refreshJitterMs) {
         this.zkClient = zkClient;
-        this.eventTypeCache = setupInMemoryEventTypeCache(eventTypeRepository, timelineRepository);
+        this.eventTypeRepository = eventTypeRepository;
+        this.timelineRepository = timelineRepository;
+        this.metricRegistry = metricRegistry;
+        this.refreshJitterMs = refreshJitterMs;
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("event-type-cache-refresh").setDaemon(true).build());
+        this.eventTypeCache = setupInMemoryEventTypeCache();
         this.cacheSync = cache;
         this.timelineSync = timelineSync;
         this.timelineRegistrations = new ConcurrentHashMap<>();
         if (null != cacheSync) {
             this.cacheSync.getListenable().addListener((curator, event) -> this.onZkEvent(event));
         }
-        preloadEventTypes(eventTypeRepository, timelineRepository);
+        preloadEventTypes();
     }
 
     private static PathChildrenCache setupCacheSync(final CuratorFramework zkClient) throws Exception {
@@ -94,48 +147,138 @@ public class EventTypeCache {
         return cacheSync;
     }
 
-    private void preloadEventTypes(final EventTypeRepository eventTypeRepository,
-                                   final TimelineDbRepository timelineRepository) {
-        final long start = System.currentTimeMillis();
+    /**
+     * Fills the cache with all the event types. Only what is needed to serve requests correctly is done before the
+     * node starts: event types and timelines are loaded and timeline listeners are registered. Validators are
+     * compiled in background in parallel (or on first use, whatever comes first), and znodes are created in background
+     * only for event types that are missing them.
+     */
+    private void preloadEventTypes() {
+        final long start = System.nanoTime();
+        final Map<String, CachedValue> preloaded = new HashMap<>();
         rwLock.writeLock().lock();
         try {
-            final Map<String, List<Timeline>> eventTypeTimelines = timelineRepository.listTimelinesOrdered().stream()
-                    .collect(Collectors.groupingBy(Timeline::getEventType));
+            final Map<String, List<Timeline>> eventTypeTimelines = timePhase("timelines",
+                    () -> timelineRepository.listTimelinesOrdered().stream()
+                            .collect(Collectors.groupingBy(Timeline::getEventType)));
+            final List<EventType> eventTypes = timePhase("event_types", eventTypeRepository::list);
             final List<Timeline> emptyList = ImmutableList.of();
-            final Map<String, CachedValue> preloaded = eventTypeRepository.list().stream().collect(Collectors.toMap(
-                    EventType::getName,
-                    et -> new CachedValue(
+            timePhase("entries", () -> {
+                for (final EventType et : eventTypes) {
+                    registerTimelineListener(et.getName());
+                    preloaded.put(et.getName(), new CachedValue(
                             et,
-                            EventValidation.forType(et),
-                            eventTypeTimelines.getOrDefault(et.getName(), emptyList))
-            ));
-            final Iterator<Map.Entry<String, CachedValue>> it = preloaded.entrySet().iterator();
-            while (it.hasNext()) {
-                String eventTypeName = null;
+                            Suppliers.memoize(() -> EventValidation.forType(et)),
+                            eventTypeTimelines.getOrDefault(et.getName(), emptyList),
+                            getTimelineFence(et.getName()).get()));
+                }
+                this.eventTypeCache.putAll(preloaded);
+                return null;
+            });
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        final long elapsed = System.nanoTime() - start;
+        metricRegistry.timer(MetricRegistry.name(PRELOAD_METRIC_PREFIX, "total")).update(elapsed, TimeUnit.NANOSECONDS);
+        LOG.info("Cache preload complete, load {} event types within {} ms",
+                preloaded.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+        final Thread warmUp = new Thread(() -> {
+            timePhase("znodes", () -> createMissingZNodes(preloaded.keySet()));
+            timePhase("validators", () -> compileValidators(preloaded));
+        }, "event-type-cache-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    private <T> T timePhase(final String phase, final Supplier<T> action) {
+        final long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            metricRegistry.timer(MetricRegistry.name(PRELOAD_METRIC_PREFIX, phase))
+                    .update(elapsed, TimeUnit.NANOSECONDS);
+            LOG.info("Cache preload phase {} took {} ms", phase, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    private Void createMissingZNodes(final Set<String> eventTypes) {
+        if (null == cacheSync) {
+            return null;
+        }
+        final Set<String> tracked = cacheSync.getCurrentData().stream()
+                .map(data -> ZKPaths.getNodeFromPath(data.getPath()))
+                .collect(Collectors.toSet());
+        int created = 0;
+        for (final String eventType : eventTypes) {
+            if (!tracked.contains(eventType)) {
                 try {
-                    eventTypeName = it.next().getKey();
-                    created(eventTypeName);
+                    createZNode(eventType);
+                    ++created;
                 } catch (final Exception e) {
-                    LOG.error("Failed to create node for {}", eventTypeName, e);
-                    it.remove();
+                    LOG.error("Failed to create node for {}", eventType, e);
+                }
+            }
+        }
+        LOG.info("Created {} missing nodes for {} event types", created, eventTypes.size());
+        return null;
+    }
+
+    private Void compileValidators(final Map<String, CachedValue> preloaded) {
+        final ExecutorService compilers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("event-type-validator-%d").setDaemon(true).build());
+        try {
+            final List<Future<?>> compiled = new ArrayList<>(preloaded.size());
+            preloaded.forEach((name, value) -> compiled.add(compilers.submit(() -> {
+                try {
+                    value.getEventTypeValidator();
+                } catch (final RuntimeException e) {
+                    LOG.error("Failed to compile validator for {}, it will be compiled on first use", name, e);
                 }
+            })));
+            for (final Future<?> future : compiled) {
+                future.get();
             }
-            this.eventTypeCache.putAll(preloaded);
-            LOG.info("Cache preload complete, load {} event types within {} ms",
-                    preloaded.size(),
-                    System.currentTimeMillis() - start);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LOG.error("Failed to compile validators", e);
         } finally {
-            rwLock.writeLock().unlock();
+            compilers.shutdown();
         }
+        return null;
     }
 
+    /**
+     * Notifies all the nodes about the change of event type. The node, that made the change, refreshes the entry
+     * without jitter once the change is committed, so that requests coming to it after the change already see it.
+     */
     public void updated(final String name) throws Exception {
         created(name); // make sure every event type is tracked in the remote cache
         final String path = getZNodePath(name);
         zkClient.get().setData().forPath(path, new byte[0]);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    refreshNow(name);
+                }
+            });
+        } else {
+            refreshNow(name);
+        }
     }
 
     public void created(final String name) throws Exception {
+        createZNode(name);
+        registerTimelineListener(name);
+    }
+
+    @VisibleForTesting
+    void createZNode(final String name) throws Exception {
         try {
             final String path = getZNodePath(name);
             zkClient.get()
@@ -146,9 +289,11 @@ public class EventTypeCache {
         } catch (final KeeperException.NodeExistsException expected) {
             LOG.debug("Silently do nothing since event type has already been tracked");
         }
+    }
 
+    private void registerTimelineListener(final String name) {
         timelineRegistrations.computeIfAbsent(name,
-                n -> timelineSync.registerTimelineChangeListener(n, (etName) -> eventTypeCache.invalidate(etName)));
+                n -> timelineSync.registerTimelineChangeListener(n, this::onTimelineChange));
     }
 
     public void removed(final String name) throws Exception {
@@ -160,8 +305,22 @@ public class EventTypeCache {
 
     private Optional<CachedValue> getCached(final String name)
             throws NoSuchEventTypeException, InternalNakadiException {
+        final CachedValue cached = eventTypeCache.getIfPresent(name);
+        if (null != cached && !cached.isBehind(getTimelineFence(name))) {
+            getMetrics(name).hits.mark();
+            return Optional.of(cached);
+        }
         try {
-            return Optional.ofNullable(eventTypeCache.get(name));
+            while (true) {
+                final CachedValue loaded = eventTypeCache.get(name);
+                if (!loaded.isBehind(getTimelineFence(name))) {
+                    // Counted only for existing event types, not to create metrics for any name requested
+                    getMetrics(name).misses.mark();
+                    return Optional.of(loaded);
+                }
+                // Loaded before timeline change, remove it unless it is already replaced
+                eventTypeCache.asMap().remove(name, loaded);
+            }
         } catch (final UncheckedExecutionException | ExecutionException e) {
             if (e.getCause() instanceof NoSuchEventTypeException) {
                 throw (NoSuchEventTypeException) e.getCause();
@@ -194,33 +353,143 @@ public class EventTypeCache {
         String invalidatedEventType = null;
         rwLock.readLock().lock();
         try {
-            final boolean needInvalidate = event.getType() == PathChildrenCacheEvent.Type.CHILD_UPDATED ||
-                    event.getType() == PathChildrenCacheEvent.Type.CHILD_REMOVED ||
-                    event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED;
-            if (needInvalidate) {
+            if (event.getType() == PathChildrenCacheEvent.Type.CHILD_REMOVED) {
                 final String[] path = event.getData().getPath().split("/");
                 invalidatedEventType = path[path.length - 1];
                 eventTypeCache.invalidate(invalidatedEventType);
+                removeMetrics(invalidatedEventType);
+            } else if (event.getType() == PathChildrenCacheEvent.Type.CHILD_UPDATED ||
+                    event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED) {
+                final String[] path = event.getData().getPath().split("/");
+                final String eventTypeName = path[path.length - 1];
+                if (null != eventTypeCache.getIfPresent(eventTypeName)) {
+                    // Listeners are notified once the new value is in place
+                    scheduleRefresh(eventTypeName);
+                } else {
+                    invalidatedEventType = eventTypeName;
+                }
             }
         } finally {
             rwLock.readLock().unlock();
         }
         if (null != invalidatedEventType) {
-            for (final Consumer<String> listener : invalidationListeners) {
-                listener.accept(invalidatedEventType);
+            notifyInvalidationListeners(invalidatedEventType);
+        }
+    }
+
+    private void notifyInvalidationListeners(final String eventTypeName) {
+        for (final Consumer<String> listener : invalidationListeners) {
+            listener.accept(eventTypeName);
+        }
+    }
+
+    private void scheduleRefresh(final String name) {
+        if (!pendingRefreshes.add(name)) {
+            return;
+        }
+        final long delay = refreshJitterMs > 0 ? ThreadLocalRandom.current().nextLong(refreshJitterMs) : 0;
+        refreshExecutor.schedule(() -> refresh(name, 1), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Refreshes the entry on the refresh thread, so that it is not overwritten by the refresh, that loaded older
+     * data, and waits for it. If the refresh fails, the entry is dropped and loaded again on the next request.
+     */
+    private void refreshNow(final String name) {
+        try {
+            refreshExecutor.submit(() -> {
+                try {
+                    eventTypeCache.asMap().replace(name, loadValue(name));
+                } catch (final NoSuchEventTypeException e) {
+                    eventTypeCache.invalidate(name);
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to refresh event type {} after update, cached value is dropped", name, e);
+                    eventTypeCache.invalidate(name);
+                }
+            }).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            eventTypeCache.invalidate(name);
+        } catch (final ExecutionException e) {
+            LOG.error("Failed to refresh event type {} after update, cached value is dropped", name, e);
+            eventTypeCache.invalidate(name);
+        }
+        notifyInvalidationListeners(name);
+    }
+
+    private void refresh(final String name, final int attempt) {
+        pendingRefreshes.remove(name);
+        try {
+            eventTypeCache.asMap().replace(name, loadValue(name));
+        } catch (final NoSuchEventTypeException e) {
+            eventTypeCache.invalidate(name);
+        } catch (final RuntimeException e) {
+            if (attempt < REFRESH_MAX_ATTEMPTS) {
+                // Previous value is served while refresh is retried with backoff, unless event type changes again
+                LOG.warn("Failed to refresh event type {} (attempt {}), retrying", name, attempt, e);
+                if (pendingRefreshes.add(name)) {
+                    refreshExecutor.schedule(() -> refresh(name, attempt + 1),
+                            REFRESH_RETRY_MS << (attempt - 1), TimeUnit.MILLISECONDS);
+                }
+                return;
             }
+            // Changed event type can not be served stale forever, it is loaded again on the next request
+            LOG.error("Failed to refresh event type {}, cached value is dropped", name, e);
+            eventTypeCache.invalidate(name);
         }
+        notifyInvalidationListeners(name);
     }
 
-    private LoadingCache<String, CachedValue> setupInMemoryEventTypeCache(
-            final EventTypeRepository eventTypeRepository, final TimelineDbRepository timelineRepository) {
+    private void onTimelineChange(final String name) {
+        getTimelineFence(name).incrementAndGet();
+        eventTypeCache.invalidate(name);
+        refreshExecutor.execute(() -> {
+            try {
+                getCached(name);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to load event type {} after timeline change", name, e);
+            }
+        });
+    }
+
+    private AtomicLong getTimelineFence(final String name) {
+        final AtomicLong fence = timelineFences.get(name);
+        return null != fence ? fence : timelineFences.computeIfAbsent(name, n -> new AtomicLong());
+    }
+
+    private CachedValue loadValue(final String name) {
+        // Fence is taken before timelines are loaded, so that timeline change in between is not missed
+        final long fence = getTimelineFence(name).get();
+        final long start = System.nanoTime();
+        final EventType eventType = eventTypeRepository.findByName(name);
+        final List<Timeline> timelines = timelineRepository.listTimelinesOrdered(name);
+        registerTimelineListener(name);
+        final CachedValue value = new CachedValue(
+                eventType, Suppliers.ofInstance(EventValidation.forType(eventType)), timelines, fence);
+        getMetrics(name).reloadTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    private CacheMetrics getMetrics(final String name) {
+        final CacheMetrics cached = metrics.get(name);
+        return null != cached ? cached : metrics.computeIfAbsent(name, n -> new CacheMetrics(
+                metricRegistry.meter(MetricUtils.metricNameFor(n, "cache.hits")),
+                metricRegistry.meter(MetricUtils.metricNameFor(n, "cache.misses")),
+                metricRegistry.timer(MetricUtils.metricNameFor(n, "cache.reload_time"))));
+    }
+
+    private void removeMetrics(final String name) {
+        if (null != metrics.remove(name)) {
+            metricRegistry.remove(MetricUtils.metricNameFor(name, "cache.hits"));
+            metricRegistry.remove(MetricUtils.metricNameFor(name, "cache.misses"));
+            metricRegistry.remove(MetricUtils.metricNameFor(name, "cache.reload_time"));
+        }
+    }
+
+    private LoadingCache<String, CachedValue> setupInMemoryEventTypeCache() {
         final CacheLoader<String, CachedValue> loader = new CacheLoader<String, CachedValue>() {
             public CachedValue load(final String key) throws Exception {
-                final EventType eventType = eventTypeRepository.findByName(key);
-                final List<Timeline> timelines = timelineRepository.listTimelinesOrdered(key);
-                timelineRegistrations.computeIfAbsent(key, n ->
-                        timelineSync.registerTimelineChangeListener(n, (etName) -> eventTypeCache.invalidate(etName)));
-                return new CachedValue(eventType, EventValidation.forType(eventType), timelines);
+                return loadValue(key);
             }
         };
 
@@ -235,18 +504,37 @@ public class EventTypeCache {
         invalidationListeners.add(onEventTypeInvalidated);
     }
 
+    private static class CacheMetrics {
+        private final Meter hits;
+        private final Meter misses;
+        private final Timer reloadTime;
+
+        CacheMetrics(final Meter hits, final Meter misses, final Timer reloadTime) {
+            this.hits = hits;
+            this.misses = misses;
+            this.reloadTime = reloadTime;
+        }
+    }
+
     private static class CachedValue {
         private final EventType eventType;
-        private final EventTypeValidator eventTypeValidator;
+        private final Supplier<EventTypeValidator> eventTypeValidator;
         @Nonnull
         private final List<Timeline> timelines;
+        private final long timelineFence;
 
         CachedValue(final EventType eventType,
-                    final EventTypeValidator eventTypeValidator,
-                    final List<Timeline> timelines) {
+                    final Supplier<EventTypeValidator> eventTypeValidator,
+                    final List<Timeline> timelines,
+                    final long timelineFence) {
             this.eventType = eventType;
             this.eventTypeValidator = eventTypeValidator;
             this.timelines = timelines;
+            this.timelineFence = timelineFence;
+        }
+
+        boolean isBehind(final AtomicLong fence) {
+            return timelineFence < fence.get();
         }
 
         public EventType getEventType() {
@@ -254,7 +542,7 @@ public class EventTypeCache {
         }
 
         public EventTypeValidator getEventTypeValidator() {
-            return eventTypeValidator;
+            return eventTypeValidator.get();
         }
 
         public List<Timeline> getTimelines() {
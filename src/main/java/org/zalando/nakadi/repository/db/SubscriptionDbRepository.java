@@ -29,6 +29,8 @@ import org.zalando.nakadi.util.UUIDGenerator;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -108,6 +110,24 @@ public class SubscriptionDbRepository extends AbstractDbRepository {
         }
     }
 
+    /**
+     * Loads subscriptions with one query, ids that do not exist are skipped.
+     */
+    public List<Subscription> getSubscriptions(final Collection<String> ids)
+            throws ServiceTemporarilyUnavailableException {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final String sql = "SELECT s_subscription_object FROM zn_data.subscription WHERE s_id IN (" +
+                ids.stream().map(id -> "?").collect(Collectors.joining(",")) + ")";
+        try {
+            return jdbcTemplate.query(sql, ids.toArray(), rowMapper);
+        } catch (final DataAccessException e) {
+            LOG.error("Database error when getting subscriptions", e);
+            throw new ServiceTemporarilyUnavailableException("Error occurred when running database request");
+        }
+    }
+
     public void deleteSubscription(final String id)
             throws NoSuchSubscriptionException, ServiceTemporarilyUnavailableException {
         try {
@@ -0,0 +1,172 @@
+package org.zalando.nakadi.repository.db;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.zalando.nakadi.annotations.DB;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.RepositoryProblemException;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Committed offsets of subscriptions, that were moved from zookeeper to database. Every offset is a row, all the
+ * changes are written with batched statements.
+ */
+@DB
+@Repository
+public class SubscriptionOffsetDbRepository extends AbstractDbRepository {
+
+    @Autowired
+    public SubscriptionOffsetDbRepository(final JdbcTemplate template, final ObjectMapper mapper) {
+        super(template, mapper);
+    }
+
+    public void upsertOffsets(final String subscriptionId, final Collection<SubscriptionCursorWithoutToken> cursors)
+            throws RepositoryProblemException {
+        try {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO zn_data.subscription_offset " +
+                            "(so_subscription_id, so_event_type, so_partition, so_offset) VALUES (?, ?, ?, ?) " +
+                            "ON CONFLICT (so_subscription_id, so_event_type, so_partition) " +
+                            "DO UPDATE SET so_offset = EXCLUDED.so_offset",
+                    cursors.stream()
+                            .map(cursor -> new Object[]{
+                                    subscriptionId, cursor.getEventType(), cursor.getPartition(), cursor.getOffset()})
+                            .collect(Collectors.toList()));
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when writing offsets of subscription " +
+                    subscriptionId, e);
+        }
+    }
+
+    public Map<EventTypePartition, String> getOffsets(final String subscriptionId) throws RepositoryProblemException {
+        try {
+            return toMap(jdbcTemplate.query(
+                    "SELECT so_event_type, so_partition, so_offset FROM zn_data.subscription_offset " +
+                            "WHERE so_subscription_id = ?",
+                    (rs, rowNum) -> new SubscriptionCursorWithoutToken(
+                            rs.getString("so_event_type"), rs.getString("so_partition"), rs.getString("so_offset")),
+                    subscriptionId));
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when reading offsets of subscription " +
+                    subscriptionId, e);
+        }
+    }
+
+    /**
+     * Reads offsets of several subscriptions with one query.
+     *
+     * @return offsets by subscription id, subscriptions without offsets are missing
+     */
+    public Map<String, Map<EventTypePartition, String>> getOffsetsOfSubscriptions(
+            final Collection<String> subscriptionIds) throws RepositoryProblemException {
+        if (subscriptionIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Map<EventTypePartition, String>> result = new HashMap<>();
+        try {
+            jdbcTemplate.query(
+                    "SELECT so_subscription_id, so_event_type, so_partition, so_offset " +
+                            "FROM zn_data.subscription_offset WHERE so_subscription_id IN (" +
+                            String.join(", ", Collections.nCopies(subscriptionIds.size(), "?")) + ")",
+                    subscriptionIds.toArray(),
+                    rs -> {
+                        result.computeIfAbsent(rs.getString("so_subscription_id"), id -> new HashMap<>()).put(
+                                new EventTypePartition(rs.getString("so_event_type"), rs.getString("so_partition")),
+                                rs.getString("so_offset"));
+                    });
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when reading offsets of " +
+                    subscriptionIds.size() + " subscriptions", e);
+        }
+        return result;
+    }
+
+    public Map<EventTypePartition, String> getOffsets(
+            final String subscriptionId, final Collection<EventTypePartition> keys)
+            throws RepositoryProblemException {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final List<Object> args = new ArrayList<>(1 + keys.size() * 2);
+        args.add(subscriptionId);
+        for (final EventTypePartition key : keys) {
+            args.add(key.getEventType());
+            args.add(key.getPartition());
+        }
+        try {
+            return toMap(jdbcTemplate.query(
+                    "SELECT so_event_type, so_partition, so_offset FROM zn_data.subscription_offset " +
+                            "WHERE so_subscription_id = ? AND (so_event_type, so_partition) IN (" +
+                            String.join(", ", Collections.nCopies(keys.size(), "(?, ?)")) + ")",
+                    args.toArray(),
+                    (rs, rowNum) -> new SubscriptionCursorWithoutToken(
+                            rs.getString("so_event_type"), rs.getString("so_partition"), rs.getString("so_offset"))));
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when reading offsets of subscription " +
+                    subscriptionId, e);
+        }
+    }
+
+    /**
+     * Updates all the offsets in one transaction, only if none of them differs from the expected value.
+     *
+     * @param expected offsets, that are expected to be committed now
+     * @throws OptimisticLockingFailureException if any of offsets was changed concurrently
+     */
+    @Transactional
+    public void compareAndSetOffsets(
+            final String subscriptionId,
+            final Map<EventTypePartition, String> expected,
+            final List<SubscriptionCursorWithoutToken> cursors)
+            throws OptimisticLockingFailureException, RepositoryProblemException {
+        final int[] updated;
+        try {
+            updated = jdbcTemplate.batchUpdate(
+                    "UPDATE zn_data.subscription_offset SET so_offset = ? WHERE so_subscription_id = ? " +
+                            "AND so_event_type = ? AND so_partition = ? AND so_offset = ?",
+                    cursors.stream()
+                            .map(cursor -> new Object[]{
+                                    cursor.getOffset(), subscriptionId, cursor.getEventType(), cursor.getPartition(),
+                                    expected.get(cursor.getEventTypePartition())})
+                            .collect(Collectors.toList()));
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when committing offsets of subscription " +
+                    subscriptionId, e);
+        }
+        for (final int count : updated) {
+            if (count == 0) {
+                throw new OptimisticLockingFailureException(
+                        "Offsets of subscription " + subscriptionId + " were changed concurrently");
+            }
+        }
+    }
+
+    public void deleteOffsets(final String subscriptionId) throws RepositoryProblemException {
+        try {
+            jdbcTemplate.update("DELETE FROM zn_data.subscription_offset WHERE so_subscription_id = ?",
+                    subscriptionId);
+        } catch (final DataAccessException e) {
+            throw new RepositoryProblemException("Error occurred when deleting offsets of subscription " +
+                    subscriptionId, e);
+        }
+    }
+
+    private static Map<EventTypePartition, String> toMap(final List<SubscriptionCursorWithoutToken> cursors) {
+        final Map<EventTypePartition, String> result = new HashMap<>();
+        cursors.forEach(cursor -> result.put(cursor.getEventTypePartition(), cursor.getOffset()));
+        return result;
+    }
+}
@@ -1,15 +1,18 @@
 package org.zalando.nakadi.repository.kafka;
 
+import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.domain.NakadiCursor;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InvalidCursorException;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import static org.zalando.nakadi.domain.CursorError.INVALID_FORMAT;
 import static org.zalando.nakadi.domain.CursorError.PARTITION_NOT_FOUND;
 
 public class KafkaCursor implements Comparable<KafkaCursor> {
+    private static final int NAKADI_OFFSET_LENGTH = 18;
     private final String topic;
     private final int partition;
     private final long offset;
@@ -38,12 +41,23 @@ public class KafkaCursor implements Comparable<KafkaCursor> {
 
     public NakadiCursor toNakadiCursor(final Timeline timeline) {
         return NakadiCursor.of(timeline,
-                toNakadiPartition(partition),
-                toNakadiOffset(offset));
+                new EventTypePartition(timeline.getEventType(), toNakadiPartition(partition)),
+                offset);
     }
 
     public static String toNakadiOffset(final long offset) {
-        return offset >= 0 ? String.format("%018d", offset) : String.valueOf(offset);
+        if (offset < 0) {
+            return String.valueOf(offset);
+        }
+        final String digits = String.valueOf(offset);
+        if (digits.length() >= NAKADI_OFFSET_LENGTH) {
+            return digits;
+        }
+        final char[] result = new char[NAKADI_OFFSET_LENGTH];
+        final int padding = NAKADI_OFFSET_LENGTH - digits.length();
+        Arrays.fill(result, 0, padding, '0');
+        digits.getChars(0, digits.length(), result, padding);
+        return new String(result);
     }
 
     public static String toNakadiPartition(final int partition) {
@@ -1,6 +1,7 @@
 package org.zalando.nakadi.repository.kafka;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
@@ -10,134 +11,220 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class KafkaFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaFactory.class);
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
     private final KafkaLocationManager kafkaLocationManager;
     private final Counter useCountMetric;
     private final Counter producerTerminations;
-    private final Map<Producer<String, String>, AtomicInteger> useCount = new ConcurrentHashMap<>();
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-    @Nullable
-    private Producer<String, String> activeProducer;
+    private final Map<Producer<String, byte[]>, Lease> leases = new ConcurrentHashMap<>();
+    private final MetricRegistry metricRegistry;
+    private final String metricPrefix;
+    private final int producerShards;
+    private final KafkaProducerProfiles producerProfiles;
+    // Shards of default profile are created right away, shards of other profiles - once they are used
+    private final Map<String, Shard[]> shardsByProfile = new ConcurrentHashMap<>();
 
-    public KafkaFactory(final KafkaLocationManager kafkaLocationManager, final MetricRegistry metricRegistry) {
+    public KafkaFactory(final KafkaLocationManager kafkaLocationManager, final MetricRegistry metricRegistry,
+                        final String metricPrefix, final int producerShards,
+                        final KafkaProducerProfiles producerProfiles) {
         this.kafkaLocationManager = kafkaLocationManager;
         this.useCountMetric = metricRegistry.counter("kafka.producer.use_count");
         this.producerTerminations = metricRegistry.counter("kafka.producer.termination_count");
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
+        this.producerShards = producerShards;
+        this.producerProfiles = producerProfiles;
+        shardsByProfile.put(KafkaProducerProfiles.DEFAULT, createShards(KafkaProducerProfiles.DEFAULT));
     }
 
-    @Nullable
-    private Producer<String, String> takeUnderLock(final boolean canCreate) {
-        final Lock lock = canCreate ? rwLock.writeLock() : rwLock.readLock();
-        lock.lock();
-        try {
-            if (null != activeProducer) {
-                useCount.get(activeProducer).incrementAndGet();
-                return activeProducer;
-            } else if (canCreate) {
-                activeProducer = createProducerInstance();
-                useCount.put(activeProducer, new AtomicInteger(1));
-                LOG.info("New producer instance created: " + activeProducer);
-                return activeProducer;
-            } else {
-                return null;
-            }
-        } finally {
-            lock.unlock();
-        }
+    protected Producer<String, byte[]> createProducerInstance(final KafkaProducerProfiles.Profile profile) {
+        return new KafkaProducerCrutch(profile.apply(kafkaLocationManager.getKafkaProducerProperties()),
+                new KafkaCrutch(kafkaLocationManager));
     }
 
-    protected Producer<String, String> createProducerInstance() {
-        return new KafkaProducerCrutch(kafkaLocationManager.getKafkaProducerProperties(),
-                new KafkaCrutch(kafkaLocationManager));
+    private Shard[] createShards(final String profileName) {
+        final KafkaProducerProfiles.Profile profile = producerProfiles.getProfile(profileName);
+        final String prefix = KafkaProducerProfiles.DEFAULT.equals(profileName) ?
+                metricPrefix : MetricRegistry.name(metricPrefix, "profile", profileName);
+        final Shard[] shards = new Shard[producerShards];
+        for (int i = 0; i < producerShards; ++i) {
+            shards[i] = new Shard(i, profileName, profile);
+            shards[i].registerMetrics(metricRegistry, MetricRegistry.name(prefix, "shard", String.valueOf(i)));
+        }
+        return shards;
     }
 
     /**
-     * Takes producer from producer cache. Every producer, that was received by this method must be released with
+     * Takes producer from producer cache. Every producer profile has its own producers, that are sharded by topic, so
+     * all the publishing to the topic is done by the same producer, while publishing to other topics is spread over
+     * other producers. Every producer, that was received by this method must be released with
      * {@link #releaseProducer(Producer)} method.
      *
+     * @param topic       Topic to publish to.
+     * @param profileName Producer profile of the event type, default one is used if it is null or not configured.
      * @return Initialized kafka producer instance.
      */
-    public Producer<String, String> takeProducer() {
-        Producer<String, String> result = takeUnderLock(false);
-        if (null == result) {
-            result = takeUnderLock(true);
-        }
+    public Producer<String, byte[]> takeProducer(final String topic, @Nullable final String profileName) {
+        final String profile = null != profileName && producerProfiles.getProfiles().containsKey(profileName) ?
+                profileName : KafkaProducerProfiles.DEFAULT;
+        final Shard[] shards = shardsByProfile.computeIfAbsent(profile, this::createShards);
+        final Lease lease = shards[Math.floorMod(topic.hashCode(), shards.length)].acquire();
         useCountMetric.inc();
-        return result;
+        return lease.producer;
     }
 
     /**
-     * Release kafka producer that was obtained by {@link #takeProducer()} method. If producer was not obtained by
-     * {@link #takeProducer()} call - method will throw {@link NullPointerException}
+     * Release kafka producer that was obtained by {@link #takeProducer(String, String)} method.
      *
      * @param producer Producer to release.
      */
-    public void releaseProducer(final Producer<String, String> producer) {
+    public void releaseProducer(final Producer<String, byte[]> producer) {
         useCountMetric.dec();
-        final AtomicInteger counter = useCount.get(producer);
-        if (counter != null && 0 == counter.decrementAndGet()) {
-            final boolean deleteProducer;
-            rwLock.readLock().lock();
-            try {
-                deleteProducer = producer != activeProducer;
-            } finally {
-                rwLock.readLock().unlock();
-            }
-            if (deleteProducer) {
-                rwLock.writeLock().lock();
-                try {
-                    if (counter.get() == 0 && null != useCount.remove(producer)) {
-                        LOG.info("Stopping producer instance - It was reported that instance should be refreshed " +
-                                "and it is not used anymore: " + producer);
-                        producer.close();
-                    }
-                } finally {
-                    rwLock.writeLock().unlock();
-                }
-            }
+        final Lease lease = leases.get(producer);
+        if (null != lease) {
+            lease.shard.inFlight.decrementAndGet();
+            lease.release();
         }
     }
 
     /**
      * Notifies producer cache, that this producer should be marked as obsolete. All methods, that are using this
-     * producer instance right now can continue using it, but new calls to {@link #takeProducer()} will use some other
-     * producers.
-     * It is allowed to call this method only between {@link #takeProducer()} and {@link #releaseProducer(Producer)}
-     * method calls. (You can not terminate something that you do not own)
+     * producer instance right now can continue using it, but new calls to {@link #takeProducer(String, String)} for
+     * topics of the same shard and profile will use some other producer. Other shards are not affected.
+     * It is allowed to call this method only between {@link #takeProducer(String, String)} and
+     * {@link #releaseProducer(Producer)} method calls. (You can not terminate something that you do not own)
      *
      * @param producer Producer instance to terminate.
      */
-    public void terminateProducer(final Producer<String, String> producer) {
+    public void terminateProducer(final Producer<String, byte[]> producer) {
         LOG.info("Received signal to terminate producer " + producer);
-        rwLock.writeLock().lock();
-        try {
-            if (producer == this.activeProducer) {
-                producerTerminations.inc();
-                this.activeProducer = null;
-            } else {
-                LOG.info("Signal for producer termination already received: " + producer);
+        final Lease lease = leases.get(producer);
+        if (null != lease && lease.shard.active.compareAndSet(lease, null)) {
+            producerTerminations.inc();
+            // The shard does not reference the producer anymore
+            lease.release();
+        } else {
+            LOG.info("Signal for producer termination already received: " + producer);
+        }
+    }
+
+    /**
+     * Producer together with the amount of its users. The shard, that is using the producer, counts as one user, so
+     * the producer is closed once it is terminated and released by everyone who took it.
+     */
+    private class Lease {
+        private final Shard shard;
+        private final Producer<String, byte[]> producer;
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        private Lease(final Shard shard, final Producer<String, byte[]> producer) {
+            this.shard = shard;
+            this.producer = producer;
+        }
+
+        private boolean tryRetain() {
+            int current;
+            do {
+                current = users.get();
+                if (0 == current) {
+                    return false;
+                }
+            } while (!users.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            if (0 == users.decrementAndGet()) {
+                leases.remove(producer);
+                LOG.info("Stopping producer instance - It was reported that instance should be refreshed " +
+                        "and it is not used anymore: " + producer);
+                producer.close();
             }
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
 
+    private class Shard {
+        private final int index;
+        private final String profileName;
+        private final KafkaProducerProfiles.Profile profile;
+        private final AtomicReference<Lease> active = new AtomicReference<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Shard(final int index, final String profileName, final KafkaProducerProfiles.Profile profile) {
+            this.index = index;
+            this.profileName = profileName;
+            this.profile = profile;
+        }
+
+        private Lease acquire() {
+            while (true) {
+                final Lease lease = active.get();
+                if (null != lease) {
+                    if (lease.tryRetain()) {
+                        inFlight.incrementAndGet();
+                        return lease;
+                    }
+                    // Terminated in between, it is not active anymore
+                    continue;
+                }
+                synchronized (this) {
+                    if (null == active.get()) {
+                        final Lease created = new Lease(this, createProducerInstance(profile));
+                        leases.put(created.producer, created);
+                        active.set(created);
+                        LOG.info("New producer instance created for shard {} of profile {}: {}",
+                                index, profileName, created.producer);
+                    }
+                }
+            }
+        }
+
+        private void registerMetrics(final MetricRegistry metricRegistry, final String prefix) {
+            register(metricRegistry, MetricRegistry.name(prefix, "in_flight"), (Gauge<Integer>) inFlight::get);
+            register(metricRegistry, MetricRegistry.name(prefix, "batch_size_avg"),
+                    (Gauge<Double>) () -> getProducerMetric("batch-size-avg"));
+            register(metricRegistry, MetricRegistry.name(prefix, "record_queue_time_avg"),
+                    (Gauge<Double>) () -> getProducerMetric("record-queue-time-avg"));
+        }
+
+        private double getProducerMetric(final String name) {
+            final Lease lease = active.get();
+            if (null == lease) {
+                return 0;
+            }
+            for (final Map.Entry<MetricName, ? extends Metric> entry : lease.producer.metrics().entrySet()) {
+                if (name.equals(entry.getKey().name()) && PRODUCER_METRICS_GROUP.equals(entry.getKey().group())) {
+                    final Object value = entry.getValue().metricValue();
+                    return value instanceof Double && !((Double) value).isNaN() ? (Double) value : 0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static void register(final MetricRegistry metricRegistry, final String name, final Gauge<?> gauge) {
+        // Factory is recreated together with topic repository of the storage
+        metricRegistry.remove(name);
+        metricRegistry.register(name, gauge);
+    }
+
     public Consumer<byte[], byte[]> getConsumer(final Properties properties) {
         return new KafkaCrutchConsumer(properties, new KafkaCrutch(kafkaLocationManager));
     }
@@ -172,6 +259,18 @@ public class KafkaFactory {
             return super.poll(timeoutMs);
         }
 
+        @Override
+        public ConsumerRecords<byte[], byte[]> poll(final Duration timeout) {
+            if (kafkaCrutch.brokerIpAddressChanged) {
+                throw new KafkaCrutchException("Kafka broker ip address changed, exiting");
+            }
+            return super.poll(timeout);
+        }
+
+        public boolean isBrokerIpAddressChanged() {
+            return kafkaCrutch.brokerIpAddressChanged;
+        }
+
         @Override
         public void close() {
             kafkaCrutch.close();
@@ -185,7 +284,7 @@ public class KafkaFactory {
         }
     }
 
-    public class KafkaProducerCrutch extends KafkaProducer<String, String> {
+    public class KafkaProducerCrutch extends KafkaProducer<String, byte[]> {
 
         private final KafkaCrutch kafkaCrutch;
 
@@ -195,7 +294,7 @@ public class KafkaFactory {
         }
 
         @Override
-        public Future<RecordMetadata> send(final ProducerRecord<String, String> record, final Callback callback) {
+        public Future<RecordMetadata> send(final ProducerRecord<String, byte[]> record, final Callback callback) {
             if (kafkaCrutch.brokerIpAddressChanged) {
                 throw new KafkaCrutchException("Kafka broker ip address changed, exiting");
             }
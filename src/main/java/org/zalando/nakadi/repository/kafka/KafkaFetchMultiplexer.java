@@ -0,0 +1,384 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.InvalidOffsetException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Node-wide fetch multiplexer for one storage. Instead of creating kafka consumer for each stream, partitions are
+ * fetched by a bounded pool of shared kafka consumers, and each record is fetched once and handed out to all the
+ * streams that are reading the partition near the same position (see {@link KafkaFetchWindow}). Streams that are
+ * lagging behind the shared position are falling back to dedicated consumers, and are joining shared fetch again
+ * once they have caught up. Errors of particular partitions (e.g. offset out of range) are switching only readers of
+ * these partitions to dedicated consumers, so that each reader gets the error for its own position.
+ */
+public class KafkaFetchMultiplexer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaFetchMultiplexer.class);
+    private static final long REJOIN_CHECK_INTERVAL_MS = 1000;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private final Supplier<Consumer<byte[], byte[]>> consumerFactory;
+    private final long windowBytes;
+    private final long pollTimeoutMs;
+    private final long stalledReaderMs;
+    private final KafkaTimestampIndex timestampIndex;
+    private final SharedFetcher[] fetchers;
+    private final Map<TopicPartition, KafkaFetchWindow> windows = new HashMap<>();
+    private final MetricRegistry metricRegistry;
+    private final String metricPrefix;
+    private boolean closed;
+
+    private final Meter fetchedRecords;
+    private final Meter deliveredRecords;
+    private final Meter savedFetches;
+    private final Histogram fanOut;
+    private final Counter dedicatedPartitions;
+
+    public KafkaFetchMultiplexer(
+            final Supplier<Consumer<byte[], byte[]>> consumerFactory,
+            final int consumers,
+            final long windowBytes,
+            final long pollTimeoutMs,
+            final KafkaTimestampIndex timestampIndex,
+            final MetricRegistry metricRegistry,
+            final String metricPrefix) {
+        this.consumerFactory = consumerFactory;
+        this.windowBytes = windowBytes;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.stalledReaderMs = 10 * pollTimeoutMs;
+        this.timestampIndex = timestampIndex;
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
+        this.fetchedRecords = metricRegistry.meter(MetricRegistry.name(metricPrefix, "fetched"));
+        this.deliveredRecords = metricRegistry.meter(MetricRegistry.name(metricPrefix, "delivered"));
+        this.savedFetches = metricRegistry.meter(MetricRegistry.name(metricPrefix, "saved"));
+        this.fanOut = metricRegistry.histogram(MetricRegistry.name(metricPrefix, "fan_out"));
+        this.dedicatedPartitions = metricRegistry.counter(MetricRegistry.name(metricPrefix, "dedicated_partitions"));
+
+        this.fetchers = new SharedFetcher[consumers];
+        for (int i = 0; i < consumers; ++i) {
+            fetchers[i] = new SharedFetcher();
+            final Thread thread = new Thread(fetchers[i], metricPrefix + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates consumer, that reads partitions through shared fetch whenever it is possible.
+     *
+     * @param kafkaCursors             positions of the next records to read
+     * @param timelineMap              timelines, that are used to convert kafka offsets to nakadi ones
+     * @param dedicatedConsumerFactory factory of consumers for partitions, that can not be read through shared fetch
+     */
+    public EventConsumer.LowLevelConsumer createEventConsumer(
+            final List<KafkaCursor> kafkaCursors,
+            final Map<TopicPartition, Timeline> timelineMap,
+            final Function<List<KafkaCursor>, NakadiKafkaConsumer> dedicatedConsumerFactory) {
+        return new MultiplexedKafkaConsumer(this, kafkaCursors, timelineMap, dedicatedConsumerFactory, pollTimeoutMs);
+    }
+
+    /**
+     * Attaches reader to the window of partition. If partition is not fetched yet, shared fetch is started from the
+     * reader's position.
+     *
+     * @return window to read from, or null if reader is too far from the shared position and should use dedicated
+     * consumer
+     */
+    @Nullable
+    synchronized KafkaFetchWindow attach(
+            final TopicPartition topicPartition, final long offset, final MultiplexedKafkaConsumer reader) {
+        if (closed) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        KafkaFetchWindow window = windows.get(topicPartition);
+        if (null == window) {
+            window = new KafkaFetchWindow(topicPartition, offset, windowBytes, stalledReaderMs);
+            windows.put(topicPartition, window);
+            getFetcher(topicPartition).add(window);
+        }
+        return window.addReader(reader, offset, now) ? window : null;
+    }
+
+    synchronized void detach(final KafkaFetchWindow window, final MultiplexedKafkaConsumer reader) {
+        if (window.removeReader(reader) && windows.remove(window.getTopicPartition(), window)) {
+            getFetcher(window.getTopicPartition()).remove(window);
+        }
+    }
+
+    long getRejoinCheckIntervalMs() {
+        return REJOIN_CHECK_INTERVAL_MS;
+    }
+
+    void onRecordsDelivered(final int count) {
+        deliveredRecords.mark(count);
+    }
+
+    void onDedicatedPartitionsChanged(final int delta) {
+        dedicatedPartitions.inc(delta);
+    }
+
+    void onReaderProgress(final KafkaFetchWindow window) {
+        if (window.isPaused() && !window.isBlocked(System.currentTimeMillis())) {
+            getFetcher(window.getTopicPartition()).wakeUp();
+        }
+    }
+
+    private synchronized void onWindowsFailed(final Collection<KafkaFetchWindow> failed) {
+        for (final KafkaFetchWindow window : failed) {
+            windows.remove(window.getTopicPartition(), window);
+            window.fail();
+        }
+    }
+
+    private SharedFetcher getFetcher(final TopicPartition topicPartition) {
+        return fetchers[Math.abs(topicPartition.hashCode() % fetchers.length)];
+    }
+
+    /**
+     * Stops shared fetch, readers that are still attached are switched to dedicated consumers.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            onWindowsFailed(new ArrayList<>(windows.values()));
+        }
+        for (final SharedFetcher fetcher : fetchers) {
+            fetcher.stop();
+        }
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(metricPrefix + "."));
+    }
+
+    /**
+     * Owns one kafka consumer, that is used only from the fetcher thread. Assignment changes are passed to the
+     * thread through the queue of commands.
+     */
+    private class SharedFetcher implements Runnable {
+        private final Queue<java.util.function.Consumer<Map<TopicPartition, KafkaFetchWindow>>> commands =
+                new ConcurrentLinkedQueue<>();
+        private final Map<TopicPartition, KafkaFetchWindow> assigned = new HashMap<>();
+        private final Set<TopicPartition> toSeek = new HashSet<>();
+        private final Object signal = new Object();
+        private volatile Consumer<byte[], byte[]> consumer;
+        private volatile boolean running = true;
+        private int consecutiveFailures;
+
+        void add(final KafkaFetchWindow window) {
+            commands.add(current -> {
+                current.put(window.getTopicPartition(), window);
+                toSeek.add(window.getTopicPartition());
+            });
+            wakeUp();
+        }
+
+        void remove(final KafkaFetchWindow window) {
+            commands.add(current -> current.remove(window.getTopicPartition(), window));
+            wakeUp();
+        }
+
+        void stop() {
+            running = false;
+            wakeUp();
+        }
+
+        void wakeUp() {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+            final Consumer<byte[], byte[]> current = consumer;
+            if (null != current) {
+                current.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    if (applyCommands() && null != consumer) {
+                        reassign();
+                    }
+                    if (assigned.isEmpty()) {
+                        closeConsumer();
+                        waitForCommands();
+                        continue;
+                    }
+                    if (null == consumer) {
+                        consumer = consumerFactory.get();
+                        toSeek.addAll(assigned.keySet());
+                        assigned.values().forEach(window -> window.setPaused(false));
+                        reassign();
+                    }
+                    updatePausedPartitions();
+                    distribute(consumer.poll(pollTimeoutMs));
+                    consecutiveFailures = 0;
+                } catch (final WakeupException ignore) {
+                    // assignment changed or readers made progress, nothing to do here
+                } catch (final KafkaFactory.KafkaCrutchException kce) {
+                    LOG.info("Recreating shared kafka consumer: {}", kce.getMessage());
+                    closeConsumer();
+                } catch (final InvalidOffsetException ex) {
+                    failPartitions(ex.partitions(), ex);
+                } catch (final RecordTooLargeException ex) {
+                    if (null != ex.recordTooLargePartitions()) {
+                        failPartitions(ex.recordTooLargePartitions().keySet(), ex);
+                    } else {
+                        onFetchFailed(ex);
+                    }
+                } catch (final RuntimeException ex) {
+                    onFetchFailed(ex);
+                }
+            }
+            closeConsumer();
+        }
+
+        /**
+         * Readers of the partitions are switched to dedicated consumers, which are reading from their own positions,
+         * while the rest of partitions are fetched further.
+         */
+        private void failPartitions(final Collection<TopicPartition> partitions, final RuntimeException ex) {
+            LOG.warn("Shared fetch of {} failed, readers will switch to dedicated consumers", partitions, ex);
+            final List<KafkaFetchWindow> failed = new ArrayList<>();
+            for (final TopicPartition topicPartition : partitions) {
+                final KafkaFetchWindow window = assigned.remove(topicPartition);
+                toSeek.remove(topicPartition);
+                if (null != window) {
+                    failed.add(window);
+                }
+            }
+            onWindowsFailed(failed);
+            if (null != consumer) {
+                consumer.assign(new ArrayList<>(assigned.keySet()));
+            }
+        }
+
+        /**
+         * Failure that is not related to particular partitions (e.g. connection problems). Consumer is recreated and
+         * fetch is continued from the same positions, windows are failed only if fetch keeps failing.
+         */
+        private void onFetchFailed(final RuntimeException ex) {
+            closeConsumer();
+            ++consecutiveFailures;
+            if (consecutiveFailures < MAX_CONSECUTIVE_FAILURES) {
+                LOG.warn("Shared fetch of {} failed, recreating consumer", assigned.keySet(), ex);
+                waitForCommands();
+                return;
+            }
+            LOG.warn("Shared fetch of {} failed {} times, readers will switch to dedicated consumers",
+                    assigned.keySet(), consecutiveFailures, ex);
+            consecutiveFailures = 0;
+            onWindowsFailed(new ArrayList<>(assigned.values()));
+            assigned.clear();
+            toSeek.clear();
+        }
+
+        private boolean applyCommands() {
+            boolean changed = false;
+            java.util.function.Consumer<Map<TopicPartition, KafkaFetchWindow>> command;
+            while (null != (command = commands.poll())) {
+                command.accept(assigned);
+                changed = true;
+            }
+            return changed;
+        }
+
+        private void reassign() {
+            consumer.assign(new ArrayList<>(assigned.keySet()));
+            for (final TopicPartition topicPartition : toSeek) {
+                final KafkaFetchWindow window = assigned.get(topicPartition);
+                if (null != window) {
+                    window.setPaused(false);
+                    consumer.seek(topicPartition, window.getNextFetchOffset());
+                }
+            }
+            toSeek.clear();
+        }
+
+        private void updatePausedPartitions() {
+            final long now = System.currentTimeMillis();
+            for (final KafkaFetchWindow window : assigned.values()) {
+                final boolean blocked = window.isBlocked(now);
+                if (blocked != window.isPaused()) {
+                    if (blocked) {
+                        consumer.pause(Collections.singletonList(window.getTopicPartition()));
+                    } else {
+                        consumer.resume(Collections.singletonList(window.getTopicPartition()));
+                    }
+                    window.setPaused(blocked);
+                }
+            }
+        }
+
+        private void distribute(final ConsumerRecords<byte[], byte[]> records) {
+            timestampIndex.onRecords(records);
+            for (final TopicPartition topicPartition : records.partitions()) {
+                final KafkaFetchWindow window = assigned.get(topicPartition);
+                if (null == window) {
+                    continue;
+                }
+                final List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(topicPartition);
+                final int readers = window.append(partitionRecords);
+                fetchedRecords.mark(partitionRecords.size());
+                fanOut.update(readers);
+                if (readers > 1) {
+                    savedFetches.mark((long) partitionRecords.size() * (readers - 1));
+                }
+            }
+        }
+
+        private void waitForCommands() {
+            synchronized (signal) {
+                if (running && commands.isEmpty()) {
+                    try {
+                        signal.wait(pollTimeoutMs);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        running = false;
+                    }
+                }
+            }
+        }
+
+        private void closeConsumer() {
+            final Consumer<byte[], byte[]> current = consumer;
+            consumer = null;
+            if (null != current) {
+                try {
+                    current.close();
+                } catch (final RuntimeException ex) {
+                    LOG.warn("Failed to close shared kafka consumer", ex);
+                }
+            }
+        }
+    }
+}
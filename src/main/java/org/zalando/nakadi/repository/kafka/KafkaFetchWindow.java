@@ -0,0 +1,210 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records of one kafka partition, that were fetched by shared consumer of {@link KafkaFetchMultiplexer} and are kept
+ * in memory to be read by all the consumers, that are reading the partition near the same position. Window is
+ * guaranteed to contain everything that exists in kafka starting from {@code windowStart} and up to
+ * {@code nextFetchOffset}. Window is bounded by the total size of the records, once it is full, the oldest records
+ * are evicted, and readers that are behind are not served by the window anymore.
+ */
+class KafkaFetchWindow {
+
+    private static final int MAX_READ_RECORDS = 500;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TopicPartition topicPartition;
+    private final long maxBytes;
+    private final long stalledReaderMs;
+    private final Map<MultiplexedKafkaConsumer, ReaderState> readers = new HashMap<>();
+    private ConsumerRecord<byte[], byte[]>[] ring;
+    private int head;
+    private int size;
+    private long bytes;
+    private long lastAppendBytes;
+    private long windowStart;
+    private long nextFetchOffset;
+    private boolean failed;
+    private volatile boolean paused;
+
+    @SuppressWarnings("unchecked")
+    KafkaFetchWindow(final TopicPartition topicPartition, final long offset, final long maxBytes,
+                     final long stalledReaderMs) {
+        this.topicPartition = topicPartition;
+        this.maxBytes = maxBytes;
+        this.ring = new ConsumerRecord[INITIAL_CAPACITY];
+        this.stalledReaderMs = stalledReaderMs;
+        this.windowStart = offset;
+        this.nextFetchOffset = offset;
+    }
+
+    TopicPartition getTopicPartition() {
+        return topicPartition;
+    }
+
+    synchronized long getNextFetchOffset() {
+        return nextFetchOffset;
+    }
+
+    synchronized boolean addReader(final MultiplexedKafkaConsumer reader, final long offset, final long now) {
+        if (failed || offset < windowStart || offset > nextFetchOffset) {
+            return false;
+        }
+        readers.put(reader, new ReaderState(offset, now));
+        return true;
+    }
+
+    /**
+     * @return true if there are no readers left
+     */
+    synchronized boolean removeReader(final MultiplexedKafkaConsumer reader) {
+        readers.remove(reader);
+        return readers.isEmpty();
+    }
+
+    /**
+     * Appends freshly fetched records to the window and wakes up everyone who is reading from it.
+     *
+     * @return amount of readers the records were fetched for
+     */
+    int append(final List<ConsumerRecord<byte[], byte[]>> records) {
+        final List<MultiplexedKafkaConsumer> toNotify;
+        synchronized (this) {
+            long appendedBytes = 0;
+            for (final ConsumerRecord<byte[], byte[]> record : records) {
+                if (record.offset() < nextFetchOffset) {
+                    continue;
+                }
+                if (size == ring.length) {
+                    grow();
+                }
+                ring[(head + size) % ring.length] = record;
+                ++size;
+                bytes += sizeOf(record);
+                appendedBytes += sizeOf(record);
+                nextFetchOffset = record.offset() + 1;
+                // the newest record is kept even if it is larger than the window
+                while (bytes > maxBytes && size > 1) {
+                    evictOldest();
+                }
+            }
+            lastAppendBytes = appendedBytes;
+            toNotify = new ArrayList<>(readers.keySet());
+        }
+        toNotify.forEach(MultiplexedKafkaConsumer::wakeUp);
+        return toNotify.size();
+    }
+
+    /**
+     * Reads records that were not yet read by {@code reader}.
+     *
+     * @return records, or null in case if reader is not able to read from this window anymore (window failed or
+     * reader was left behind)
+     */
+    @Nullable
+    synchronized List<ConsumerRecord<byte[], byte[]>> read(final MultiplexedKafkaConsumer reader, final long now) {
+        final ReaderState state = readers.get(reader);
+        if (failed || null == state || state.position < windowStart) {
+            return null;
+        }
+        state.lastReadAt = now;
+        int idx = findFirstIndex(state.position);
+        if (idx == size) {
+            state.position = nextFetchOffset;
+            return Collections.emptyList();
+        }
+        final int count = Math.min(size - idx, MAX_READ_RECORDS);
+        final List<ConsumerRecord<byte[], byte[]>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i, ++idx) {
+            result.add(ring[(head + idx) % ring.length]);
+        }
+        state.position = idx == size ? nextFetchOffset : ring[(head + idx) % ring.length].offset();
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        final ConsumerRecord<byte[], byte[]>[] grown = new ConsumerRecord[ring.length * 2];
+        for (int i = 0; i < size; ++i) {
+            grown[i] = ring[(head + i) % ring.length];
+        }
+        ring = grown;
+        head = 0;
+    }
+
+    private void evictOldest() {
+        windowStart = ring[head].offset() + 1;
+        bytes -= sizeOf(ring[head]);
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        --size;
+    }
+
+    private static long sizeOf(final ConsumerRecord<byte[], byte[]> record) {
+        return (null == record.key() ? 0 : record.key().length) + (null == record.value() ? 0 : record.value().length);
+    }
+
+    private int findFirstIndex(final long offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ring[(head + mid) % ring.length].offset() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Window is blocked when the next fetch of the same size would evict records, and the oldest record is still
+     * needed by a reader that is actively reading. Readers that did not read for a while (for example, waiting for
+     * commits) are not blocking the window.
+     */
+    synchronized boolean isBlocked(final long now) {
+        if (size == 0 || bytes + lastAppendBytes <= maxBytes) {
+            return false;
+        }
+        final long oldestOffset = ring[head].offset();
+        return readers.values().stream()
+                .anyMatch(state -> state.position <= oldestOffset && now - state.lastReadAt < stalledReaderMs);
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    void setPaused(final boolean paused) {
+        this.paused = paused;
+    }
+
+    void fail() {
+        final List<MultiplexedKafkaConsumer> toNotify;
+        synchronized (this) {
+            failed = true;
+            toNotify = new ArrayList<>(readers.keySet());
+        }
+        toNotify.forEach(MultiplexedKafkaConsumer::wakeUp);
+    }
+
+    private static class ReaderState {
+        private long position;
+        private long lastReadAt;
+
+        private ReaderState(final long position, final long lastReadAt) {
+            this.position = position;
+            this.lastReadAt = lastReadAt;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Node-wide source of begin and end offsets of partitions for one storage. Offsets are read with one long-lived kafka
+ * consumer, and requests of all the callers that are waiting while offsets are being read are served with the next
+ * single round trip. Offsets of a topic are reused for a short time, callers that need exact values (e.g. to record
+ * the last position of a timeline) are asking for fresh read, which is always started after the request was made.
+ * <p>
+ * Every kafka call of a round trip is bounded by {@code timeoutMs}, so that callers do not wait for the default
+ * timeout of the consumer. Failure to read partitions of one topic fails only the callers of this topic. Offsets of all
+ * the partitions are read with one call, so its failure fails all the callers of the round trip.
+ */
+public class KafkaOffsets implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaOffsets.class);
+
+    private final Supplier<Consumer<byte[], byte[]>> consumerFactory;
+    private final long ttlNanos;
+    private final Duration timeout;
+    private final MetricRegistry metricRegistry;
+    private final String metricPrefix;
+    private final Map<String, TopicOffsets> cache = new ConcurrentHashMap<>();
+    private final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock roundTripLock = new ReentrantLock();
+    // Guarded by roundTripLock
+    private Consumer<byte[], byte[]> consumer;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Histogram batchedRequests;
+    private final Timer roundTrips;
+
+    public KafkaOffsets(
+            final Supplier<Consumer<byte[], byte[]>> consumerFactory,
+            final long ttlMs,
+            final long timeoutMs,
+            final MetricRegistry metricRegistry,
+            final String metricPrefix) {
+        this.consumerFactory = consumerFactory;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
+        this.hits = metricRegistry.meter(MetricRegistry.name(metricPrefix, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(metricPrefix, "misses"));
+        this.batchedRequests = metricRegistry.histogram(MetricRegistry.name(metricPrefix, "batched_requests"));
+        this.roundTrips = metricRegistry.timer(MetricRegistry.name(metricPrefix, "round_trips"));
+    }
+
+    /**
+     * Returns offsets of all the partitions of the topics. Topics that do not exist have no partitions.
+     *
+     * @param topics topics to get offsets for
+     * @param fresh  whether offsets must be read from kafka after the call was made, otherwise offsets read not
+     *               longer than ttl ago may be returned
+     * @return offsets of partitions by topic
+     * @throws org.apache.kafka.common.KafkaException in case if offsets could not be read
+     */
+    public Map<String, List<PartitionOffsets>> getOffsets(final Collection<String> topics, final boolean fresh) {
+        final Map<String, List<PartitionOffsets>> result = new HashMap<>();
+        final Set<String> toLoad = new HashSet<>();
+        final long now = System.nanoTime();
+        for (final String topic : topics) {
+            final TopicOffsets cached = fresh ? null : cache.get(topic);
+            if (null != cached && now - cached.loadedAt < ttlNanos) {
+                result.put(topic, cached.partitions);
+            } else {
+                toLoad.add(topic);
+            }
+        }
+        hits.mark(result.size());
+        if (toLoad.isEmpty()) {
+            return result;
+        }
+        misses.mark(toLoad.size());
+
+        final Request request = new Request(toLoad);
+        pending.add(request);
+        roundTripLock.lock();
+        try {
+            // Request may have been served by the round trip of another caller while waiting for the lock
+            if (!request.done) {
+                roundTrip();
+            }
+            for (final String topic : toLoad) {
+                final RuntimeException error = request.errors.get(topic);
+                if (null != error) {
+                    throw error;
+                }
+                result.put(topic, request.loaded.get(topic).partitions);
+            }
+        } finally {
+            roundTripLock.unlock();
+        }
+        return result;
+    }
+
+    public void removeTopic(final String topic) {
+        cache.remove(topic);
+    }
+
+    @VisibleForTesting
+    int getPendingRequests() {
+        return pending.size();
+    }
+
+    private void roundTrip() {
+        final List<Request> batch = new ArrayList<>();
+        final Set<String> topics = new HashSet<>();
+        Request request;
+        while (null != (request = pending.poll())) {
+            batch.add(request);
+            topics.addAll(request.topics);
+        }
+        batchedRequests.update(batch.size());
+        final Map<String, TopicOffsets> loaded = new HashMap<>();
+        final Map<String, RuntimeException> errors = new HashMap<>();
+        try (Timer.Context ignore = roundTrips.time()) {
+            load(topics, loaded, errors);
+            cache.putAll(loaded);
+        } finally {
+            if (!errors.isEmpty()) {
+                LOG.warn("Failed to load offsets of {}, recreating consumer", errors.keySet(),
+                        errors.values().iterator().next());
+                closeConsumer();
+            }
+            batch.forEach(r -> {
+                r.loaded = loaded;
+                r.errors = errors;
+                r.done = true;
+            });
+        }
+    }
+
+    private void load(final Set<String> topics, final Map<String, TopicOffsets> loaded,
+                      final Map<String, RuntimeException> errors) {
+        final long loadedAt = System.nanoTime();
+        final Consumer<byte[], byte[]> kafkaConsumer;
+        try {
+            kafkaConsumer = getConsumer();
+        } catch (final RuntimeException e) {
+            topics.forEach(topic -> errors.put(topic, e));
+            return;
+        }
+        final Map<String, List<TopicPartition>> partitionsByTopic = new HashMap<>();
+        final List<TopicPartition> partitions = new ArrayList<>();
+        for (final String topic : topics) {
+            try {
+                final List<PartitionInfo> infos = kafkaConsumer.partitionsFor(topic, timeout);
+                final List<TopicPartition> topicPartitions = new ArrayList<>();
+                if (null != infos) {
+                    infos.forEach(info -> topicPartitions.add(new TopicPartition(info.topic(), info.partition())));
+                }
+                partitionsByTopic.put(topic, topicPartitions);
+                partitions.addAll(topicPartitions);
+            } catch (final RuntimeException e) {
+                errors.put(topic, e);
+            }
+        }
+        Map<TopicPartition, Long> begins = Collections.emptyMap();
+        Map<TopicPartition, Long> ends = Collections.emptyMap();
+        try {
+            if (!partitions.isEmpty()) {
+                begins = kafkaConsumer.beginningOffsets(partitions, timeout);
+                ends = kafkaConsumer.endOffsets(partitions, timeout);
+            }
+        } catch (final RuntimeException e) {
+            partitionsByTopic.keySet().forEach(topic -> errors.put(topic, e));
+            return;
+        }
+        for (final Map.Entry<String, List<TopicPartition>> entry : partitionsByTopic.entrySet()) {
+            final List<PartitionOffsets> offsets = new ArrayList<>();
+            for (final TopicPartition tp : entry.getValue()) {
+                offsets.add(new PartitionOffsets(tp.partition(), begins.get(tp), ends.get(tp)));
+            }
+            loaded.put(entry.getKey(), new TopicOffsets(loadedAt, Collections.unmodifiableList(offsets)));
+        }
+    }
+
+    private Consumer<byte[], byte[]> getConsumer() {
+        if (consumer instanceof KafkaFactory.KafkaCrutchConsumer &&
+                ((KafkaFactory.KafkaCrutchConsumer) consumer).isBrokerIpAddressChanged()) {
+            LOG.info("Kafka broker ip address changed, recreating offsets consumer");
+            closeConsumer();
+        }
+        if (null == consumer) {
+            consumer = consumerFactory.get();
+        }
+        return consumer;
+    }
+
+    private void closeConsumer() {
+        if (null == consumer) {
+            return;
+        }
+        try {
+            consumer.close();
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to close offsets consumer", e);
+        }
+        consumer = null;
+    }
+
+    @Override
+    public void close() {
+        roundTripLock.lock();
+        try {
+            closeConsumer();
+        } finally {
+            roundTripLock.unlock();
+        }
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(metricPrefix + "."));
+    }
+
+    public static class PartitionOffsets {
+        private final int partition;
+        private final long begin;
+        private final long end;
+
+        public PartitionOffsets(final int partition, final long begin, final long end) {
+            this.partition = partition;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        /**
+         * @return offset of the first event in the partition
+         */
+        public long getBegin() {
+            return begin;
+        }
+
+        /**
+         * @return offset that the next event published to the partition will get
+         */
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    private static class TopicOffsets {
+        private final long loadedAt;
+        private final List<PartitionOffsets> partitions;
+
+        private TopicOffsets(final long loadedAt, final List<PartitionOffsets> partitions) {
+            this.loadedAt = loadedAt;
+            this.partitions = partitions;
+        }
+    }
+
+    /**
+     * Request of one caller. It is completed by the round trip that took it from the queue, state is published to
+     * the caller by the round trip lock.
+     */
+    private static class Request {
+        private final Set<String> topics;
+        private boolean done;
+        @Nullable
+        private Map<String, TopicOffsets> loaded;
+        @Nullable
+        private Map<String, RuntimeException> errors;
+
+        private Request(final Set<String> topics) {
+            this.topics = topics;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.record.CompressionType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Named sets of producer settings, that event types can choose with {@code options.producer_profile}. Settings that
+ * are not set in the profile are taken from the default producer configuration. Default profile is used for event
+ * types without profile and for profiles that are not configured anymore.
+ */
+@Component
+@ConfigurationProperties(prefix = "nakadi.kafka.producer")
+public class KafkaProducerProfiles {
+
+    public static final String DEFAULT = "default";
+    private static final Set<String> COMPRESSIONS = ImmutableSet.of(
+            CompressionType.NONE.name, CompressionType.LZ4.name, CompressionType.ZSTD.name, CompressionType.GZIP.name);
+
+    private final Map<String, Profile> profiles = new HashMap<>();
+
+    public Map<String, Profile> getProfiles() {
+        return profiles;
+    }
+
+    @PostConstruct
+    public void validate() {
+        if (profiles.containsKey(DEFAULT)) {
+            throw new IllegalStateException("Producer profile \"" + DEFAULT + "\" can not be redefined");
+        }
+        profiles.forEach((name, profile) -> {
+            if (null != profile.getCompression() && !COMPRESSIONS.contains(profile.getCompression())) {
+                throw new IllegalStateException("Compression " + profile.getCompression() + " of producer profile "
+                        + name + " is not one of " + COMPRESSIONS);
+            }
+        });
+    }
+
+    public boolean isKnown(@Nullable final String name) {
+        return null == name || DEFAULT.equals(name) || profiles.containsKey(name);
+    }
+
+    public Set<String> getNames() {
+        return ImmutableSet.<String>builder().add(DEFAULT).addAll(profiles.keySet()).build();
+    }
+
+    /**
+     * @return profile with the name, or default one in case if there is no such profile
+     */
+    public Profile getProfile(@Nullable final String name) {
+        final Profile profile = null == name ? null : profiles.get(name);
+        return null == profile ? Profile.DEFAULT_PROFILE : profile;
+    }
+
+    public static class Profile {
+        private static final Profile DEFAULT_PROFILE = new Profile();
+
+        private String compression;
+        private Integer lingerMs;
+        private Integer batchSize;
+
+        @Nullable
+        public String getCompression() {
+            return compression;
+        }
+
+        public void setCompression(final String compression) {
+            this.compression = compression;
+        }
+
+        @Nullable
+        public Integer getLingerMs() {
+            return lingerMs;
+        }
+
+        public void setLingerMs(final Integer lingerMs) {
+            this.lingerMs = lingerMs;
+        }
+
+        @Nullable
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(final Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Overrides settings of default producer configuration with the ones of the profile.
+         */
+        public Properties apply(final Properties producerProperties) {
+            if (null != compression) {
+                producerProperties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+            }
+            if (null != lingerMs) {
+                producerProperties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+            }
+            if (null != batchSize) {
+                producerProperties.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+            }
+            return producerProperties;
+        }
+    }
+}
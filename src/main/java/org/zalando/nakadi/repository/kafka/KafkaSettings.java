@@ -20,6 +20,13 @@ public class KafkaSettings {
     private final int maxRequestSize;
     private final int deliveryTimeoutMs;
     private final int maxBlockMs;
+    private final int fetchMultiplexerConsumers;
+    private final long fetchMultiplexerWindowBytes;
+    private final long timestampIndexSampleIntervalMs;
+    private final int timestampIndexMaxSamples;
+    private final int producerShards;
+    private final long offsetsTtlMs;
+    private final long offsetsTimeoutMs;
 
     @Autowired
     public KafkaSettings(@Value("${nakadi.kafka.request.timeout.ms}") final int requestTimeoutMs,
@@ -28,7 +35,16 @@ public class KafkaSettings {
                          @Value("${nakadi.kafka.enable.auto.commit}") final boolean enableAutoCommit,
                          @Value("${nakadi.kafka.max.request.size}") final int maxRequestSize,
                          @Value("${nakadi.kafka.delivery.timeout.ms}") final int deliveryTimeoutMs,
-                         @Value("${nakadi.kafka.max.block.ms}") final int maxBlockMs) {
+                         @Value("${nakadi.kafka.max.block.ms}") final int maxBlockMs,
+                         @Value("${nakadi.kafka.fetch.multiplexer.consumers}") final int fetchMultiplexerConsumers,
+                         @Value("${nakadi.kafka.fetch.multiplexer.window.bytes}")
+                         final long fetchMultiplexerWindowBytes,
+                         @Value("${nakadi.kafka.timestamp.index.sampleIntervalMs}")
+                         final long timestampIndexSampleIntervalMs,
+                         @Value("${nakadi.kafka.timestamp.index.maxSamples}") final int timestampIndexMaxSamples,
+                         @Value("${nakadi.kafka.producer.shards}") final int producerShards,
+                         @Value("${nakadi.kafka.offsets.ttlMs}") final long offsetsTtlMs,
+                         @Value("${nakadi.kafka.offsets.timeoutMs}") final long offsetsTimeoutMs) {
         this.requestTimeoutMs = requestTimeoutMs;
         this.batchSize = batchSize;
         this.lingerMs = lingerMs;
@@ -36,6 +52,13 @@ public class KafkaSettings {
         this.maxRequestSize = maxRequestSize;
         this.deliveryTimeoutMs = deliveryTimeoutMs;
         this.maxBlockMs = maxBlockMs;
+        this.fetchMultiplexerConsumers = fetchMultiplexerConsumers;
+        this.fetchMultiplexerWindowBytes = fetchMultiplexerWindowBytes;
+        this.timestampIndexSampleIntervalMs = timestampIndexSampleIntervalMs;
+        this.timestampIndexMaxSamples = timestampIndexMaxSamples;
+        this.producerShards = producerShards;
+        this.offsetsTtlMs = offsetsTtlMs;
+        this.offsetsTimeoutMs = offsetsTimeoutMs;
     }
 
     public int getRequestTimeoutMs() {
@@ -65,4 +88,48 @@ public class KafkaSettings {
     public int getMaxBlockMs() {
         return maxBlockMs;
     }
+
+    /**
+     * Amount of shared kafka consumers per storage, that are used to fetch data for all the streams on the node.
+     * Zero means that each stream is using its own kafka consumer.
+     */
+    public int getFetchMultiplexerConsumers() {
+        return fetchMultiplexerConsumers;
+    }
+
+    public long getFetchMultiplexerWindowBytes() {
+        return fetchMultiplexerWindowBytes;
+    }
+
+    /**
+     * Interval between samples of {@link KafkaTimestampIndex}, it defines precision of estimated event timestamps.
+     */
+    public long getTimestampIndexSampleIntervalMs() {
+        return timestampIndexSampleIntervalMs;
+    }
+
+    public int getTimestampIndexMaxSamples() {
+        return timestampIndexMaxSamples;
+    }
+
+    /**
+     * Amount of kafka producers per storage, topics are spread over them by hash of the topic name.
+     */
+    public int getProducerShards() {
+        return producerShards;
+    }
+
+    /**
+     * Time during which begin and end offsets of a topic loaded by {@link KafkaOffsets} are reused.
+     */
+    public long getOffsetsTtlMs() {
+        return offsetsTtlMs;
+    }
+
+    /**
+     * Maximum time of every kafka call made by {@link KafkaOffsets} to read partitions and their offsets.
+     */
+    public long getOffsetsTimeoutMs() {
+        return offsetsTimeoutMs;
+    }
 }
@@ -0,0 +1,180 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory offset to timestamp index of kafka partitions for one storage. It is fed with records, that are published
+ * or consumed by this node anyway, and keeps samples taken about once per sample interval, so that timestamp of an
+ * event can be estimated by interpolation between neighbour samples without reading the event from kafka.
+ * <p>
+ * The last sample of each partition always holds the latest known position. Once partition has more than
+ * {@code maxSamples} samples, every second sample is dropped and sample interval of the partition is doubled, so the
+ * index is covering all the positions, that node has seen since start, with bounded memory.
+ */
+public class KafkaTimestampIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // samples, that are further apart than that many sample intervals, are not used for interpolation, as the gap
+    // between them is usually caused by a pause in publishing or by node not seeing the records, not by steady traffic
+    private static final int MAX_GAP_INTERVALS = 4;
+
+    private final long sampleIntervalMs;
+    private final int maxSamples;
+    private final ConcurrentMap<TopicPartition, PartitionIndex> partitions = new ConcurrentHashMap<>();
+
+    public KafkaTimestampIndex(final long sampleIntervalMs, final int maxSamples) {
+        if (maxSamples < 4) {
+            throw new IllegalArgumentException("At least 4 samples per partition are required, got " + maxSamples);
+        }
+        this.sampleIntervalMs = sampleIntervalMs;
+        this.maxSamples = maxSamples;
+    }
+
+    public void onRecord(final String topic, final int partition, final long offset, final long timestamp) {
+        onRecord(new TopicPartition(topic, partition), offset, timestamp);
+    }
+
+    /**
+     * Samples fetched records. Only the first and the last record of each partition are taken into account, as
+     * records of one poll are usually published within one sample interval.
+     */
+    public void onRecords(final ConsumerRecords<byte[], byte[]> records) {
+        for (final TopicPartition topicPartition : records.partitions()) {
+            final List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(topicPartition);
+            final ConsumerRecord<byte[], byte[]> first = partitionRecords.get(0);
+            onRecord(topicPartition, first.offset(), first.timestamp());
+            if (partitionRecords.size() > 1) {
+                final ConsumerRecord<byte[], byte[]> last = partitionRecords.get(partitionRecords.size() - 1);
+                onRecord(topicPartition, last.offset(), last.timestamp());
+            }
+        }
+    }
+
+    private void onRecord(final TopicPartition topicPartition, final long offset, final long timestamp) {
+        if (timestamp < 0) {
+            // record was written without timestamp
+            return;
+        }
+        PartitionIndex index = partitions.get(topicPartition);
+        if (null == index) {
+            index = partitions.computeIfAbsent(topicPartition, tp -> new PartitionIndex(sampleIntervalMs));
+        }
+        index.add(offset, timestamp);
+    }
+
+    /**
+     * Estimates timestamp of the record at offset.
+     *
+     * @return timestamp of the record, or empty if offset is not surrounded by samples of the index or the
+     * surrounding samples are too far apart in time to interpolate between them
+     */
+    public Optional<Long> estimateTimestamp(final String topic, final int partition, final long offset) {
+        final PartitionIndex index = partitions.get(new TopicPartition(topic, partition));
+        return null == index ? Optional.empty() : index.estimate(offset);
+    }
+
+    public void removeTopic(final String topic) {
+        partitions.keySet().removeIf(topicPartition -> topicPartition.topic().equals(topic));
+    }
+
+    private class PartitionIndex {
+        private long intervalMs;
+        private long[] offsets;
+        private long[] timestamps;
+        private int size;
+
+        private PartitionIndex(final long intervalMs) {
+            this.intervalMs = intervalMs;
+            this.offsets = new long[Math.min(INITIAL_CAPACITY, maxSamples)];
+            this.timestamps = new long[offsets.length];
+        }
+
+        synchronized void add(final long offset, final long timestamp) {
+            if (size == 0) {
+                insert(0, offset, timestamp);
+                return;
+            }
+            final int last = size - 1;
+            if (offset > offsets[last]) {
+                if (size > 1 && timestamp - timestamps[last - 1] < intervalMs) {
+                    // previous sample is recent enough, only the latest known position is moved forward
+                    offsets[last] = offset;
+                    timestamps[last] = timestamp;
+                } else {
+                    insert(size, offset, timestamp);
+                }
+                return;
+            }
+            final int idx = Arrays.binarySearch(offsets, 0, size, offset);
+            if (idx >= 0) {
+                return;
+            }
+            final int insertion = -idx - 1;
+            if ((insertion > 0 && timestamp - timestamps[insertion - 1] < intervalMs)
+                    || timestamps[insertion] - timestamp < intervalMs) {
+                return;
+            }
+            insert(insertion, offset, timestamp);
+        }
+
+        synchronized Optional<Long> estimate(final long offset) {
+            final int idx = Arrays.binarySearch(offsets, 0, size, offset);
+            if (idx >= 0) {
+                return Optional.of(timestamps[idx]);
+            }
+            final int insertion = -idx - 1;
+            if (insertion == 0 || insertion == size) {
+                return Optional.empty();
+            }
+            final long fromOffset = offsets[insertion - 1];
+            final long fromTimestamp = timestamps[insertion - 1];
+            if (timestamps[insertion] - fromTimestamp > MAX_GAP_INTERVALS * intervalMs) {
+                return Optional.empty();
+            }
+            final double fraction = (double) (offset - fromOffset) / (offsets[insertion] - fromOffset);
+            return Optional.of(fromTimestamp + Math.round(fraction * (timestamps[insertion] - fromTimestamp)));
+        }
+
+        private void insert(final int position, final long offset, final long timestamp) {
+            int insertion = position;
+            if (size == maxSamples) {
+                thinOut();
+                insertion = -Arrays.binarySearch(offsets, 0, size, offset) - 1;
+            } else if (size == offsets.length) {
+                final int capacity = Math.min(offsets.length * 2, maxSamples);
+                offsets = Arrays.copyOf(offsets, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            System.arraycopy(offsets, insertion, offsets, insertion + 1, size - insertion);
+            System.arraycopy(timestamps, insertion, timestamps, insertion + 1, size - insertion);
+            offsets[insertion] = offset;
+            timestamps[insertion] = timestamp;
+            ++size;
+        }
+
+        private void thinOut() {
+            int kept = 0;
+            for (int i = 0; i < size; i += 2) {
+                offsets[kept] = offsets[i];
+                timestamps[kept] = timestamps[i];
+                ++kept;
+            }
+            if ((size - 1) % 2 != 0) {
+                // the latest known position is always kept
+                offsets[kept] = offsets[size - 1];
+                timestamps[kept] = timestamps[size - 1];
+                ++kept;
+            }
+            size = kept;
+            intervalMs *= 2;
+        }
+    }
+}
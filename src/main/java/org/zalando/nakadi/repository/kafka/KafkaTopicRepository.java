@@ -1,13 +1,13 @@
 package org.zalando.nakadi.repository.kafka;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import kafka.admin.AdminUtils;
 import kafka.server.ConfigType;
 import kafka.utils.ZkUtils;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.errors.NetworkException;
@@ -58,13 +58,15 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static com.google.common.collect.Lists.newArrayList;
 import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toList;
 import static org.zalando.nakadi.domain.CursorError.NULL_OFFSET;
@@ -83,13 +85,21 @@ public class KafkaTopicRepository implements TopicRepository {
     private final ZookeeperSettings zookeeperSettings;
     private final ConcurrentMap<String, HystrixKafkaCircuitBreaker> circuitBreakers;
     private final KafkaTopicConfigFactory kafkaTopicConfigFactory;
+    private final ScheduledExecutorService publishingExecutor;
+    private final KafkaTimestampIndex timestampIndex;
+    private final KafkaOffsets kafkaOffsets;
+    @Nullable
+    private final KafkaFetchMultiplexer fetchMultiplexer;
 
     public KafkaTopicRepository(final ZooKeeperHolder zkFactory,
                                 final KafkaFactory kafkaFactory,
                                 final NakadiSettings nakadiSettings,
                                 final KafkaSettings kafkaSettings,
                                 final ZookeeperSettings zookeeperSettings,
-                                final KafkaTopicConfigFactory kafkaTopicConfigFactory) {
+                                final KafkaTopicConfigFactory kafkaTopicConfigFactory,
+                                final KafkaTimestampIndex timestampIndex,
+                                final KafkaOffsets kafkaOffsets,
+                                @Nullable final KafkaFetchMultiplexer fetchMultiplexer) {
         this.zkFactory = zkFactory;
         this.kafkaFactory = kafkaFactory;
         this.nakadiSettings = nakadiSettings;
@@ -97,20 +107,26 @@ public class KafkaTopicRepository implements TopicRepository {
         this.zookeeperSettings = zookeeperSettings;
         this.kafkaTopicConfigFactory = kafkaTopicConfigFactory;
         this.circuitBreakers = new ConcurrentHashMap<>();
+        this.timestampIndex = timestampIndex;
+        this.kafkaOffsets = kafkaOffsets;
+        this.fetchMultiplexer = fetchMultiplexer;
+        this.publishingExecutor = Executors.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("kafka-publishing-%d").setDaemon(true).build());
     }
 
     private CompletableFuture<Exception> publishItem(
-            final Producer<String, String> producer,
+            final Producer<String, byte[]> producer,
             final String topicId,
             final BatchItem item,
             final HystrixKafkaCircuitBreaker circuitBreaker) throws EventPublishingException {
         try {
             final CompletableFuture<Exception> result = new CompletableFuture<>();
-            final ProducerRecord<String, String> kafkaRecord = new ProducerRecord<>(
+            final ProducerRecord<String, byte[]> kafkaRecord = new ProducerRecord<>(
                     topicId,
                     KafkaCursor.toKafkaPartition(item.getPartition()),
                     item.getEventKey(),
-                    item.dumpEventToString());
+                    item.dumpEvent());
 
             circuitBreaker.markStart();
             producer.send(kafkaRecord, ((metadata, exception) -> {
@@ -125,6 +141,8 @@ public class KafkaTopicRepository implements TopicRepository {
                     result.complete(exception);
                 } else {
                     item.updateStatusAndDetail(EventPublishingStatus.SUBMITTED, "");
+                    timestampIndex.onRecord(metadata.topic(), metadata.partition(), metadata.offset(),
+                            metadata.timestamp());
                     circuitBreaker.markSuccessfully();
                     result.complete(null);
                 }
@@ -212,6 +230,8 @@ public class KafkaTopicRepository implements TopicRepository {
         try {
             // this will only trigger topic deletion, but the actual deletion is asynchronous
             doWithZkUtils(zkUtils -> AdminUtils.deleteTopic(zkUtils, topic));
+            timestampIndex.removeTopic(topic);
+            kafkaOffsets.removeTopic(topic);
         } catch (final Exception e) {
             throw new TopicDeletionException("Unable to delete topic " + topic, e);
         }
@@ -225,62 +245,116 @@ public class KafkaTopicRepository implements TopicRepository {
     }
 
     @Override
-    public void syncPostBatch(final String topicId, final List<BatchItem> batch) throws EventPublishingException {
-        final Producer<String, String> producer = kafkaFactory.takeProducer();
+    public void syncPostBatch(final String topicId, final List<BatchItem> batch,
+                              @Nullable final String producerProfile) throws EventPublishingException {
         try {
-            final Map<String, String> partitionToBroker = producer.partitionsFor(topicId).stream().collect(
-                    Collectors.toMap(p -> String.valueOf(p.partition()), p -> String.valueOf(p.leader().id())));
-            batch.forEach(item -> {
-                Preconditions.checkNotNull(
-                        item.getPartition(), "BatchItem partition can't be null at the moment of publishing!");
-                item.setBrokerId(partitionToBroker.get(item.getPartition()));
-            });
-
-            int shortCircuited = 0;
-            final Map<BatchItem, CompletableFuture<Exception>> sendFutures = new HashMap<>();
-            for (final BatchItem item : batch) {
-                item.setStep(EventPublishingStep.PUBLISHING);
-                final HystrixKafkaCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(
-                        item.getBrokerId(), brokerId -> new HystrixKafkaCircuitBreaker(brokerId));
-                if (circuitBreaker.allowRequest()) {
-                    sendFutures.put(item, publishItem(producer, topicId, item, circuitBreaker));
-                } else {
-                    shortCircuited++;
-                    item.updateStatusAndDetail(EventPublishingStatus.FAILED, "short circuited");
-                }
-            }
-            if (shortCircuited > 0) {
-                LOG.warn("Short circuiting request to Kafka {} time(s) due to timeout for topic {}",
-                        shortCircuited, topicId);
-            }
-            final CompletableFuture<Void> multiFuture = CompletableFuture.allOf(
-                    sendFutures.values().toArray(new CompletableFuture<?>[sendFutures.size()]));
-            multiFuture.get(createSendTimeout(), TimeUnit.MILLISECONDS);
-
-            // Now lets check for errors
-            final Optional<Exception> needReset = sendFutures.entrySet().stream()
-                    .filter(entry -> isExceptionShouldLeadToReset(entry.getValue().getNow(null)))
-                    .map(entry -> entry.getValue().getNow(null))
-                    .findAny();
-            if (needReset.isPresent()) {
-                LOG.info("Terminating producer while publishing to topic {} because of unrecoverable exception",
-                        topicId, needReset.get());
-                kafkaFactory.terminateProducer(producer);
-            }
-        } catch (final TimeoutException ex) {
-            kafkaFactory.terminateProducer(producer);
-            failUnpublished(batch, "timed out");
-            throw new EventPublishingException("Error publishing message to kafka", ex);
+            postBatch(topicId, batch, producerProfile).get();
         } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof EventPublishingException) {
+                throw (EventPublishingException) ex.getCause();
+            }
             failUnpublished(batch, "internal error");
             throw new EventPublishingException("Error publishing message to kafka", ex);
         } catch (final InterruptedException ex) {
             Thread.currentThread().interrupt();
             failUnpublished(batch, "interrupted");
             throw new EventPublishingException("Error publishing message to kafka", ex);
-        } finally {
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> postBatch(final String topicId, final List<BatchItem> batch,
+                                             @Nullable final String producerProfile)
+            throws EventPublishingException {
+        final Producer<String, byte[]> producer = kafkaFactory.takeProducer(topicId, producerProfile);
+        final List<CompletableFuture<Exception>> sendFutures;
+        try {
+            sendFutures = sendBatch(producer, topicId, batch);
+        } catch (final RuntimeException ex) {
             kafkaFactory.releaseProducer(producer);
+            throw ex;
         }
+
+        // Acknowledgements are processed outside of kafka producer network thread, as processing may lead to
+        // producer termination and release, and closing producer from its own callback is not allowed.
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final ScheduledFuture<?> timeout = publishingExecutor.schedule(() -> {
+            if (finished.compareAndSet(false, true)) {
+                kafkaFactory.terminateProducer(producer);
+                kafkaFactory.releaseProducer(producer);
+                failUnpublished(batch, "timed out");
+                result.completeExceptionally(new EventPublishingException("Error publishing message to kafka",
+                        new TimeoutException("Timed out waiting for acknowledgement of " + topicId)));
+            }
+        }, createSendTimeout(), TimeUnit.MILLISECONDS);
+
+        CompletableFuture.allOf(sendFutures.toArray(new CompletableFuture<?>[sendFutures.size()]))
+                .whenCompleteAsync((ignore, ex) -> {
+                    if (!finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    timeout.cancel(false);
+                    try {
+                        checkSendResults(producer, topicId, batch, sendFutures);
+                    } catch (final RuntimeException e) {
+                        kafkaFactory.releaseProducer(producer);
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    kafkaFactory.releaseProducer(producer);
+                    result.complete(null);
+                }, publishingExecutor);
+        return result;
+    }
+
+    private List<CompletableFuture<Exception>> sendBatch(final Producer<String, byte[]> producer,
+                                                         final String topicId,
+                                                         final List<BatchItem> batch)
+            throws EventPublishingException {
+        final Map<String, String> partitionToBroker = producer.partitionsFor(topicId).stream().collect(
+                Collectors.toMap(p -> String.valueOf(p.partition()), p -> String.valueOf(p.leader().id())));
+        batch.forEach(item -> {
+            Preconditions.checkNotNull(
+                    item.getPartition(), "BatchItem partition can't be null at the moment of publishing!");
+            item.setBrokerId(partitionToBroker.get(item.getPartition()));
+        });
+
+        int shortCircuited = 0;
+        final List<CompletableFuture<Exception>> sendFutures = new ArrayList<>(batch.size());
+        for (final BatchItem item : batch) {
+            item.setStep(EventPublishingStep.PUBLISHING);
+            final HystrixKafkaCircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(
+                    item.getBrokerId(), brokerId -> new HystrixKafkaCircuitBreaker(brokerId));
+            if (circuitBreaker.allowRequest()) {
+                sendFutures.add(publishItem(producer, topicId, item, circuitBreaker));
+            } else {
+                shortCircuited++;
+                item.updateStatusAndDetail(EventPublishingStatus.FAILED, "short circuited");
+            }
+        }
+        if (shortCircuited > 0) {
+            LOG.warn("Short circuiting request to Kafka {} time(s) due to timeout for topic {}",
+                    shortCircuited, topicId);
+        }
+        return sendFutures;
+    }
+
+    private void checkSendResults(final Producer<String, byte[]> producer,
+                                  final String topicId,
+                                  final List<BatchItem> batch,
+                                  final List<CompletableFuture<Exception>> sendFutures)
+            throws EventPublishingException {
+        final Optional<Exception> needReset = sendFutures.stream()
+                .map(future -> future.getNow(null))
+                .filter(KafkaTopicRepository::isExceptionShouldLeadToReset)
+                .findAny();
+        if (needReset.isPresent()) {
+            LOG.info("Terminating producer while publishing to topic {} because of unrecoverable exception",
+                    topicId, needReset.get());
+            kafkaFactory.terminateProducer(producer);
+        }
+
         final boolean atLeastOneFailed = batch.stream()
                 .anyMatch(item -> item.getResponse().getPublishingStatus() == EventPublishingStatus.FAILED);
         if (atLeastOneFailed) {
@@ -348,54 +422,34 @@ public class KafkaTopicRepository implements TopicRepository {
 
     public List<Optional<PartitionStatistics>> loadPartitionStatisticsInternal(
             final Collection<TimelinePartition> partitions) {
-        final Map<String, Set<String>> topicToPartitions = partitions.stream().collect(
-                Collectors.groupingBy(
-                        tp -> tp.getTimeline().getTopic(),
-                        Collectors.mapping(TimelinePartition::getPartition, Collectors.toSet())
-                ));
-        try (Consumer<byte[], byte[]> consumer = kafkaFactory.getConsumer()) {
-            final List<PartitionInfo> allKafkaPartitions = topicToPartitions.keySet().stream()
-                    .map(consumer::partitionsFor)
-                    .flatMap(Collection::stream)
-                    .collect(Collectors.toList());
-            final List<TopicPartition> partitionsToQuery = allKafkaPartitions.stream()
-                    .filter(pi -> topicToPartitions.get(pi.topic())
-                            .contains(KafkaCursor.toNakadiPartition(pi.partition())))
-                    .map(pi -> new TopicPartition(pi.topic(), pi.partition()))
-                    .collect(Collectors.toList());
-
-            consumer.assign(partitionsToQuery);
-            consumer.seekToBeginning(partitionsToQuery);
-            final List<Long> begins = partitionsToQuery.stream().map(consumer::position).collect(toList());
-            consumer.seekToEnd(partitionsToQuery);
-            final List<Long> ends = partitionsToQuery.stream().map(consumer::position).collect(toList());
-
-            final List<Optional<PartitionStatistics>> result = new ArrayList<>(partitions.size());
-            for (final TimelinePartition tap : partitions) {
-                // Now search for an index.
-                final Optional<PartitionStatistics> itemResult = IntStream.range(0, partitionsToQuery.size())
-                        .filter(i -> {
-                            final TopicPartition info = partitionsToQuery.get(i);
-                            return info.topic().equals(tap.getTimeline().getTopic()) &&
-                                    info.partition() == KafkaCursor.toKafkaPartition(tap.getPartition());
-                        }).mapToObj(indexFound -> (PartitionStatistics) new KafkaPartitionStatistics(
-                                tap.getTimeline(),
-                                partitionsToQuery.get(indexFound).partition(),
-                                begins.get(indexFound),
-                                ends.get(indexFound) - 1L))
-                        .findAny();
-                result.add(itemResult);
-            }
-            return result;
+        final Set<String> topics = partitions.stream()
+                .map(tp -> tp.getTimeline().getTopic())
+                .collect(Collectors.toSet());
+        final Map<String, List<KafkaOffsets.PartitionOffsets>> offsets = kafkaOffsets.getOffsets(topics, false);
+
+        final List<Optional<PartitionStatistics>> result = new ArrayList<>(partitions.size());
+        for (final TimelinePartition tap : partitions) {
+            result.add(offsets.get(tap.getTimeline().getTopic()).stream()
+                    .filter(po -> KafkaCursor.toNakadiPartition(po.getPartition()).equals(tap.getPartition()))
+                    .findAny()
+                    .map(po -> new KafkaPartitionStatistics(
+                            tap.getTimeline(), po.getPartition(), po.getBegin(), po.getEnd() - 1L)));
         }
+        return result;
     }
 
     @Override
     public List<PartitionStatistics> loadTopicStatistics(final Collection<Timeline> timelines)
             throws ServiceTemporarilyUnavailableException {
+        return loadTopicStatistics(timelines, false);
+    }
+
+    @Override
+    public List<PartitionStatistics> loadTopicStatistics(final Collection<Timeline> timelines, final boolean fresh)
+            throws ServiceTemporarilyUnavailableException {
         try {
             return Retryer.executeWithRetry(() -> {
-                        return loadTopicStatisticsInternal(timelines);
+                        return loadTopicStatisticsInternal(timelines, fresh);
                     },
                     new RetryForSpecifiedCountStrategy(3)
                             .withWaitBetweenEachTry(5000)
@@ -405,39 +459,31 @@ public class KafkaTopicRepository implements TopicRepository {
         }
     }
 
-    public List<PartitionStatistics> loadTopicStatisticsInternal(final Collection<Timeline> timelines) {
-        try (Consumer<byte[], byte[]> consumer = kafkaFactory.getConsumer()) {
-            final Map<TopicPartition, Timeline> backMap = new HashMap<>();
-            for (final Timeline timeline : timelines) {
-                consumer.partitionsFor(timeline.getTopic())
-                        .stream()
-                        .map(p -> new TopicPartition(p.topic(), p.partition()))
-                        .forEach(tp -> backMap.put(tp, timeline));
-            }
-            final List<TopicPartition> kafkaTPs = new ArrayList<>(backMap.keySet());
-            consumer.assign(kafkaTPs);
-            consumer.seekToBeginning(kafkaTPs);
-            final long[] begins = kafkaTPs.stream().mapToLong(consumer::position).toArray();
-
-            consumer.seekToEnd(kafkaTPs);
-            final long[] ends = kafkaTPs.stream().mapToLong(consumer::position).toArray();
-
-            return IntStream.range(0, kafkaTPs.size())
-                    .mapToObj(i -> new KafkaPartitionStatistics(
-                            backMap.get(kafkaTPs.get(i)),
-                            kafkaTPs.get(i).partition(),
-                            begins[i],
-                            ends[i] - 1))
-                    .collect(toList());
+    public List<PartitionStatistics> loadTopicStatisticsInternal(
+            final Collection<Timeline> timelines, final boolean fresh) {
+        final Map<String, List<KafkaOffsets.PartitionOffsets>> offsets = kafkaOffsets.getOffsets(
+                timelines.stream().map(Timeline::getTopic).collect(Collectors.toSet()), fresh);
+        final List<PartitionStatistics> result = new ArrayList<>();
+        for (final Timeline timeline : timelines) {
+            offsets.get(timeline.getTopic()).forEach(po -> result.add(new KafkaPartitionStatistics(
+                    timeline, po.getPartition(), po.getBegin(), po.getEnd() - 1)));
         }
+        return result;
     }
 
     @Override
     public List<PartitionEndStatistics> loadTopicEndStatistics(final Collection<Timeline> timelines)
             throws ServiceTemporarilyUnavailableException {
+        return loadTopicEndStatistics(timelines, false);
+    }
+
+    @Override
+    public List<PartitionEndStatistics> loadTopicEndStatistics(final Collection<Timeline> timelines,
+                                                               final boolean fresh)
+            throws ServiceTemporarilyUnavailableException {
         try {
             return Retryer.executeWithRetry(() -> {
-                        return loadTopicEndStatisticsInternal(timelines);
+                        return loadTopicEndStatisticsInternal(timelines, fresh);
                     },
                     new RetryForSpecifiedCountStrategy(3)
                             .withWaitBetweenEachTry(5000)
@@ -447,26 +493,16 @@ public class KafkaTopicRepository implements TopicRepository {
         }
     }
 
-    private List<PartitionEndStatistics> loadTopicEndStatisticsInternal(final Collection<Timeline> timelines) {
-        try (Consumer<byte[], byte[]> consumer = kafkaFactory.getConsumer()) {
-            final Map<TopicPartition, Timeline> backMap = new HashMap<>();
-            for (final Timeline timeline : timelines) {
-                consumer.partitionsFor(timeline.getTopic())
-                        .stream()
-                        .map(p -> new TopicPartition(p.topic(), p.partition()))
-                        .forEach(tp -> backMap.put(tp, timeline));
-            }
-            final List<TopicPartition> kafkaTPs = newArrayList(backMap.keySet());
-            consumer.assign(kafkaTPs);
-            consumer.seekToEnd(kafkaTPs);
-            return backMap.entrySet().stream()
-                    .map(e -> {
-                        final TopicPartition tp = e.getKey();
-                        final Timeline timeline = e.getValue();
-                        return new KafkaPartitionEndStatistics(timeline, tp.partition(), consumer.position(tp) - 1);
-                    })
-                    .collect(toList());
+    private List<PartitionEndStatistics> loadTopicEndStatisticsInternal(
+            final Collection<Timeline> timelines, final boolean fresh) {
+        final Map<String, List<KafkaOffsets.PartitionOffsets>> offsets = kafkaOffsets.getOffsets(
+                timelines.stream().map(Timeline::getTopic).collect(Collectors.toSet()), fresh);
+        final List<PartitionEndStatistics> result = new ArrayList<>();
+        for (final Timeline timeline : timelines) {
+            offsets.get(timeline.getTopic()).forEach(po -> result.add(new KafkaPartitionEndStatistics(
+                    timeline, po.getPartition(), po.getEnd() - 1)));
         }
+        return result;
     }
 
     @Override
@@ -480,7 +516,7 @@ public class KafkaTopicRepository implements TopicRepository {
     }
 
     public List<String> listPartitionNamesInternal(final String topicId) {
-        final Producer<String, String> producer = kafkaFactory.takeProducer();
+        final Producer<String, byte[]> producer = kafkaFactory.takeProducer(topicId, null);
         try {
             return unmodifiableList(producer.partitionsFor(topicId)
                     .stream()
@@ -506,12 +542,35 @@ public class KafkaTopicRepository implements TopicRepository {
                 .map(kafkaCursor -> kafkaCursor.addOffset(1))
                 .collect(toList());
 
+        if (null != fetchMultiplexer) {
+            return fetchMultiplexer.createEventConsumer(kafkaCursors, timelineMap,
+                    dedicatedCursors -> new NakadiKafkaConsumer(
+                            kafkaFactory.getConsumer(clientId),
+                            dedicatedCursors,
+                            timelineMap,
+                            nakadiSettings.getKafkaPollTimeoutMs(),
+                            timestampIndex));
+        }
         return new NakadiKafkaConsumer(
                 kafkaFactory.getConsumer(clientId),
                 kafkaCursors,
                 timelineMap,
-                nakadiSettings.getKafkaPollTimeoutMs());
+                nakadiSettings.getKafkaPollTimeoutMs(),
+                timestampIndex);
+
+    }
 
+    @Override
+    public Optional<Long> estimateNextEventTimestamp(final NakadiCursor position) {
+        final long nextOffset;
+        final int partition;
+        try {
+            nextOffset = KafkaCursor.toKafkaOffset(position.getOffset()) + 1;
+            partition = KafkaCursor.toKafkaPartition(position.getPartition());
+        } catch (final NumberFormatException ex) {
+            return Optional.empty();
+        }
+        return timestampIndex.estimateTimestamp(position.getTopic(), partition, nextOffset);
     }
 
     @Override
@@ -523,8 +582,20 @@ public class KafkaTopicRepository implements TopicRepository {
     private Map<NakadiCursor, KafkaCursor> convertToKafkaCursors(final List<NakadiCursor> cursors)
             throws ServiceTemporarilyUnavailableException, InvalidCursorException {
         final List<Timeline> timelines = cursors.stream().map(NakadiCursor::getTimeline).distinct().collect(toList());
-        final List<PartitionStatistics> statistics = loadTopicStatistics(timelines);
+        try {
+            return convertToKafkaCursors(cursors, loadTopicStatistics(timelines, false));
+        } catch (final InvalidCursorException e) {
+            if (e.getError() != UNAVAILABLE && e.getError() != PARTITION_NOT_FOUND) {
+                throw e;
+            }
+            // Reused offsets may be behind cursors of just published events or of just added partitions
+            return convertToKafkaCursors(cursors, loadTopicStatistics(timelines, true));
+        }
+    }
 
+    private Map<NakadiCursor, KafkaCursor> convertToKafkaCursors(
+            final List<NakadiCursor> cursors, final List<PartitionStatistics> statistics)
+            throws InvalidCursorException {
         final Map<NakadiCursor, KafkaCursor> result = new HashMap<>();
         for (final NakadiCursor position : cursors) {
             validateCursorForNulls(position);
@@ -566,6 +637,15 @@ public class KafkaTopicRepository implements TopicRepository {
         }
     }
 
+    @Override
+    public void close() {
+        if (null != fetchMultiplexer) {
+            fetchMultiplexer.close();
+        }
+        kafkaOffsets.close();
+        publishingExecutor.shutdown();
+    }
+
     private void validateCursorForNulls(final NakadiCursor cursor) throws InvalidCursorException {
         if (cursor.getPartition() == null) {
             throw new InvalidCursorException(NULL_PARTITION, cursor);
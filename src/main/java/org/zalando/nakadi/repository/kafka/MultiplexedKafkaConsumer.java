@@ -0,0 +1,291 @@
+package org.zalando.nakadi.repository.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Consumer, that reads partitions from windows of {@link KafkaFetchMultiplexer} and switches to dedicated kafka
+ * consumer for partitions, that are lagging behind (or are ahead of) shared fetch position. Dedicated kafka consumer
+ * is created once and is reassigned when partitions are switching between shared and dedicated reads.
+ */
+public class MultiplexedKafkaConsumer implements EventConsumer.LowLevelConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiplexedKafkaConsumer.class);
+
+    private final KafkaFetchMultiplexer multiplexer;
+    private final Map<TopicPartition, Timeline> timelineMap;
+    private final Function<List<KafkaCursor>, NakadiKafkaConsumer> dedicatedConsumerFactory;
+    private final long pollTimeoutMs;
+    /**
+     * Offsets of the next records to read for each assigned partition
+     */
+    private final Map<TopicPartition, Long> positions = new HashMap<>();
+    private final Map<TopicPartition, KafkaFetchWindow> sharedPartitions = new HashMap<>();
+    private final Map<TopicPartition, EventTypePartition> eventTypePartitions = new HashMap<>();
+    private final Set<EventTypePartition> pausedPartitions = new HashSet<>();
+    private final Set<TopicPartition> dedicatedPartitions = new HashSet<>();
+    private final Object dataSignal = new Object();
+    private boolean dataAvailable;
+    private volatile Runnable dataListener;
+    private NakadiKafkaConsumer dedicatedConsumer;
+    private long lastRejoinCheck;
+
+    MultiplexedKafkaConsumer(
+            final KafkaFetchMultiplexer multiplexer,
+            final List<KafkaCursor> kafkaCursors,
+            final Map<TopicPartition, Timeline> timelineMap,
+            final Function<List<KafkaCursor>, NakadiKafkaConsumer> dedicatedConsumerFactory,
+            final long pollTimeoutMs) {
+        this.multiplexer = multiplexer;
+        this.timelineMap = timelineMap;
+        this.dedicatedConsumerFactory = dedicatedConsumerFactory;
+        this.pollTimeoutMs = pollTimeoutMs;
+        kafkaCursors.forEach(cursor ->
+                positions.put(new TopicPartition(cursor.getTopic(), cursor.getPartition()), cursor.getOffset()));
+        for (final Map.Entry<TopicPartition, Long> position : positions.entrySet()) {
+            final KafkaFetchWindow window = multiplexer.attach(position.getKey(), position.getValue(), this);
+            if (null != window) {
+                sharedPartitions.put(position.getKey(), window);
+            } else {
+                dedicatedPartitions.add(position.getKey());
+            }
+        }
+        if (!dedicatedPartitions.isEmpty()) {
+            multiplexer.onDedicatedPartitionsChanged(dedicatedPartitions.size());
+            reassignDedicatedConsumer();
+        }
+        lastRejoinCheck = System.currentTimeMillis();
+    }
+
+    @Override
+    public Set<org.zalando.nakadi.domain.TopicPartition> getAssignment() {
+        return positions.keySet().stream()
+                .map(tp -> new org.zalando.nakadi.domain.TopicPartition(
+                        tp.topic(),
+                        KafkaCursor.toNakadiPartition(tp.partition())))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<ConsumedEvent> readEvents() {
+        return read(true);
+    }
+
+    @Override
+    public List<ConsumedEvent> readAvailableEvents() {
+        return read(false);
+    }
+
+    private List<ConsumedEvent> read(final boolean wait) {
+        final List<ConsumedEvent> result = new ArrayList<>();
+        if (!dedicatedPartitions.isEmpty()) {
+            // dedicated consumer is waiting for poll timeout itself, so there is no need to wait for shared data.
+            final List<ConsumedEvent> dedicatedEvents = wait ?
+                    dedicatedConsumer.readEvents() : dedicatedConsumer.readAvailableEvents();
+            for (final ConsumedEvent event : dedicatedEvents) {
+                final NakadiCursor position = event.getPosition();
+                positions.put(
+                        new TopicPartition(position.getTopic(), KafkaCursor.toKafkaPartition(position.getPartition())),
+                        KafkaCursor.toKafkaOffset(position.getOffset()) + 1);
+                result.add(event);
+            }
+            tryRejoinSharedFetch();
+            readShared(result);
+        } else if (!sharedPartitions.isEmpty()) {
+            readShared(result);
+            if (result.isEmpty() && wait) {
+                awaitData();
+                readShared(result);
+            }
+        }
+        return result;
+    }
+
+    private void readShared(final List<ConsumedEvent> result) {
+        synchronized (dataSignal) {
+            dataAvailable = false;
+        }
+        final long now = System.currentTimeMillis();
+        List<TopicPartition> leftBehind = null;
+        for (final Map.Entry<TopicPartition, KafkaFetchWindow> entry : sharedPartitions.entrySet()) {
+            if (!pausedPartitions.isEmpty() && pausedPartitions.contains(toEventTypePartition(entry.getKey()))) {
+                // Reader of the window just stays behind, and is switched to dedicated consumer if it is too late
+                continue;
+            }
+            final List<ConsumerRecord<byte[], byte[]>> records = entry.getValue().read(this, now);
+            if (null == records) {
+                if (null == leftBehind) {
+                    leftBehind = new ArrayList<>();
+                }
+                leftBehind.add(entry.getKey());
+                continue;
+            }
+            if (records.isEmpty()) {
+                continue;
+            }
+            final Timeline timeline = timelineMap.get(entry.getKey());
+            final EventTypePartition eventTypePartition = toEventTypePartition(entry.getKey());
+            for (final ConsumerRecord<byte[], byte[]> record : records) {
+                result.add(new ConsumedEvent(
+                        record.value(),
+                        NakadiCursor.of(timeline, eventTypePartition, record.offset()),
+                        record.timestamp()));
+            }
+            positions.put(entry.getKey(), records.get(records.size() - 1).offset() + 1);
+            multiplexer.onRecordsDelivered(records.size());
+            multiplexer.onReaderProgress(entry.getValue());
+        }
+        if (null != leftBehind) {
+            LOG.debug("Partitions {} are switched to dedicated consumer", leftBehind);
+            for (final TopicPartition topicPartition : leftBehind) {
+                multiplexer.detach(sharedPartitions.remove(topicPartition), this);
+                dedicatedPartitions.add(topicPartition);
+            }
+            multiplexer.onDedicatedPartitionsChanged(leftBehind.size());
+            reassignDedicatedConsumer();
+        }
+    }
+
+    private EventTypePartition toEventTypePartition(final TopicPartition topicPartition) {
+        return eventTypePartitions.computeIfAbsent(topicPartition, tp -> new EventTypePartition(
+                timelineMap.get(tp).getEventType(), KafkaCursor.toNakadiPartition(tp.partition())));
+    }
+
+    @Override
+    public void pause(final Collection<EventTypePartition> partitions) {
+        pausedPartitions.addAll(partitions);
+        if (null != dedicatedConsumer) {
+            dedicatedConsumer.pause(partitions);
+        }
+    }
+
+    @Override
+    public void resume(final Collection<EventTypePartition> partitions) {
+        pausedPartitions.removeAll(partitions);
+        if (null != dedicatedConsumer) {
+            dedicatedConsumer.resume(partitions);
+        }
+    }
+
+    private void tryRejoinSharedFetch() {
+        final long now = System.currentTimeMillis();
+        if (now - lastRejoinCheck < multiplexer.getRejoinCheckIntervalMs()) {
+            return;
+        }
+        lastRejoinCheck = now;
+        int rejoined = 0;
+        final Iterator<TopicPartition> it = dedicatedPartitions.iterator();
+        while (it.hasNext()) {
+            final TopicPartition topicPartition = it.next();
+            final KafkaFetchWindow window = multiplexer.attach(topicPartition, positions.get(topicPartition), this);
+            if (null != window) {
+                sharedPartitions.put(topicPartition, window);
+                it.remove();
+                ++rejoined;
+            }
+        }
+        if (rejoined > 0) {
+            multiplexer.onDedicatedPartitionsChanged(-rejoined);
+            reassignDedicatedConsumer();
+        }
+    }
+
+    private void awaitData() {
+        synchronized (dataSignal) {
+            if (!dataAvailable) {
+                try {
+                    dataSignal.wait(pollTimeoutMs);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    void wakeUp() {
+        synchronized (dataSignal) {
+            dataAvailable = true;
+            dataSignal.notifyAll();
+        }
+        final Runnable listener = dataListener;
+        if (null != listener) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public void setDataListener(final Runnable listener) {
+        this.dataListener = listener;
+    }
+
+    /**
+     * Shared windows are waking readers up on every fetch, but dedicated consumer has to be polled.
+     */
+    @Override
+    public boolean notifiesAboutAllEvents() {
+        return dedicatedPartitions.isEmpty();
+    }
+
+    /**
+     * Dedicated consumer is kept open (with empty assignment) when all the partitions are read through shared fetch,
+     * so that switching partitions back does not create new kafka consumer.
+     */
+    private void reassignDedicatedConsumer() {
+        final List<KafkaCursor> cursors = dedicatedPartitions.stream()
+                .map(tp -> new KafkaCursor(tp.topic(), tp.partition(), positions.get(tp)))
+                .collect(Collectors.toList());
+        if (null == dedicatedConsumer) {
+            dedicatedConsumer = dedicatedConsumerFactory.apply(cursors);
+        } else {
+            dedicatedConsumer.reassign(cursors);
+        }
+        if (!pausedPartitions.isEmpty()) {
+            dedicatedConsumer.pause(pausedPartitions);
+        }
+    }
+
+    private void closeDedicatedConsumer() {
+        if (null != dedicatedConsumer) {
+            try {
+                dedicatedConsumer.close();
+            } catch (final RuntimeException ex) {
+                LOG.warn("Failed to close dedicated consumer", ex);
+            }
+            dedicatedConsumer = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        sharedPartitions.values().forEach(window -> multiplexer.detach(window, this));
+        sharedPartitions.clear();
+        multiplexer.onDedicatedPartitionsChanged(-dedicatedPartitions.size());
+        dedicatedPartitions.clear();
+        closeDedicatedConsumer();
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexedKafkaConsumer{shared=" + sharedPartitions.keySet() +
+                ", dedicated=" + Collections.unmodifiableSet(dedicatedPartitions) + "}";
+    }
+}
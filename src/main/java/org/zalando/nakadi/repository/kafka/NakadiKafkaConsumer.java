@@ -5,11 +5,17 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.common.TopicPartition;
 import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.repository.EventConsumer;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,15 +26,32 @@ public class NakadiKafkaConsumer implements EventConsumer.LowLevelConsumer {
     private final Consumer<byte[], byte[]> kafkaConsumer;
     private final long pollTimeout;
     private final Map<TopicPartition, Timeline> timelineMap;
+    private final KafkaTimestampIndex timestampIndex;
+    private final Map<TopicPartition, EventTypePartition> eventTypePartitions = new HashMap<>();
 
     public NakadiKafkaConsumer(
             final Consumer<byte[], byte[]> kafkaConsumer,
             final List<KafkaCursor> kafkaCursors,
             final Map<TopicPartition, Timeline> timelineMap,
-            final long pollTimeout) {
+            final long pollTimeout,
+            final KafkaTimestampIndex timestampIndex) {
         this.kafkaConsumer = kafkaConsumer;
         this.pollTimeout = pollTimeout;
         this.timelineMap = timelineMap;
+        this.timestampIndex = timestampIndex;
+        assign(kafkaCursors, Collections.emptySet());
+    }
+
+    /**
+     * Changes the set of partitions to consume from, without recreation of kafka consumer. Partitions that stay
+     * assigned are read further from their current positions, newly assigned ones are read from the cursors.
+     * Timelines of all the partitions must be known to the consumer from its creation.
+     */
+    public void reassign(final List<KafkaCursor> kafkaCursors) {
+        assign(kafkaCursors, new HashSet<>(kafkaConsumer.assignment()));
+    }
+
+    private void assign(final List<KafkaCursor> kafkaCursors, final Set<TopicPartition> assigned) {
         // define topic/partitions to consume from
         final Map<TopicPartition, KafkaCursor> topicCursors = kafkaCursors.stream().collect(
                 Collectors.toMap(
@@ -37,7 +60,11 @@ public class NakadiKafkaConsumer implements EventConsumer.LowLevelConsumer {
                         (cursor1, cursor2) -> cursor2
                 ));
         kafkaConsumer.assign(new ArrayList<>(topicCursors.keySet()));
-        topicCursors.forEach((topicPartition, cursor) -> kafkaConsumer.seek(topicPartition, cursor.getOffset()));
+        topicCursors.forEach((topicPartition, cursor) -> {
+            if (!assigned.contains(topicPartition)) {
+                kafkaConsumer.seek(topicPartition, cursor.getOffset());
+            }
+        });
     }
 
     @Override
@@ -51,19 +78,57 @@ public class NakadiKafkaConsumer implements EventConsumer.LowLevelConsumer {
 
     @Override
     public List<ConsumedEvent> readEvents() {
-        final ConsumerRecords<byte[], byte[]> records = kafkaConsumer.poll(pollTimeout);
+        return toConsumedEvents(kafkaConsumer.poll(pollTimeout));
+    }
+
+    @Override
+    public List<ConsumedEvent> readAvailableEvents() {
+        return toConsumedEvents(kafkaConsumer.poll(Duration.ZERO));
+    }
+
+    private List<ConsumedEvent> toConsumedEvents(final ConsumerRecords<byte[], byte[]> records) {
         if (records.isEmpty()) {
             return Collections.emptyList();
         }
+        timestampIndex.onRecords(records);
         final ArrayList<ConsumedEvent> result = new ArrayList<>(records.count());
-        for (final ConsumerRecord<byte[], byte[]> record : records) {
-            final KafkaCursor cursor = new KafkaCursor(record.topic(), record.partition(), record.offset());
-            final Timeline timeline = timelineMap.get(new TopicPartition(record.topic(), record.partition()));
-            result.add(new ConsumedEvent(record.value(), cursor.toNakadiCursor(timeline), record.timestamp()));
+        for (final TopicPartition topicPartition : records.partitions()) {
+            final Timeline timeline = timelineMap.get(topicPartition);
+            final EventTypePartition eventTypePartition = eventTypePartitions.computeIfAbsent(topicPartition, tp ->
+                    new EventTypePartition(timeline.getEventType(), KafkaCursor.toNakadiPartition(tp.partition())));
+            for (final ConsumerRecord<byte[], byte[]> record : records.records(topicPartition)) {
+                result.add(new ConsumedEvent(
+                        record.value(),
+                        NakadiCursor.of(timeline, eventTypePartition, record.offset()),
+                        record.timestamp()));
+            }
         }
         return result;
     }
 
+    @Override
+    public void pause(final Collection<EventTypePartition> partitions) {
+        final List<TopicPartition> toPause = toAssignedPartitions(partitions);
+        if (!toPause.isEmpty()) {
+            kafkaConsumer.pause(toPause);
+        }
+    }
+
+    @Override
+    public void resume(final Collection<EventTypePartition> partitions) {
+        final List<TopicPartition> toResume = toAssignedPartitions(partitions);
+        if (!toResume.isEmpty()) {
+            kafkaConsumer.resume(toResume);
+        }
+    }
+
+    private List<TopicPartition> toAssignedPartitions(final Collection<EventTypePartition> partitions) {
+        return kafkaConsumer.assignment().stream()
+                .filter(tp -> timelineMap.containsKey(tp) && partitions.contains(new EventTypePartition(
+                        timelineMap.get(tp).getEventType(), KafkaCursor.toNakadiPartition(tp.partition()))))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void close() {
         kafkaConsumer.close();
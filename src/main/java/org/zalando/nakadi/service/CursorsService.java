@@ -27,6 +27,7 @@ import org.zalando.nakadi.service.subscription.LogPathBuilder;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.state.StartingState;
 import org.zalando.nakadi.service.subscription.zk.SubscriptionClientFactory;
+import org.zalando.nakadi.service.subscription.zk.SubscriptionCommitCoalescer;
 import org.zalando.nakadi.service.subscription.zk.SubscriptionNotInitializedException;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
 import org.zalando.nakadi.service.timeline.TimelineService;
@@ -39,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -49,6 +51,7 @@ public class CursorsService {
     private final EventTypeCache eventTypeCache;
     private final NakadiSettings nakadiSettings;
     private final SubscriptionClientFactory zkSubscriptionFactory;
+    private final SubscriptionCommitCoalescer commitCoalescer;
     private final CursorConverter cursorConverter;
     private final UUIDGenerator uuidGenerator;
     private final TimelineService timelineService;
@@ -63,6 +66,7 @@ public class CursorsService {
                           final EventTypeCache eventTypeCache,
                           final NakadiSettings nakadiSettings,
                           final SubscriptionClientFactory zkSubscriptionFactory,
+                          final SubscriptionCommitCoalescer commitCoalescer,
                           final CursorConverter cursorConverter,
                           final UUIDGenerator uuidGenerator,
                           final TimelineService timelineService,
@@ -71,6 +75,7 @@ public class CursorsService {
         this.eventTypeCache = eventTypeCache;
         this.nakadiSettings = nakadiSettings;
         this.zkSubscriptionFactory = zkSubscriptionFactory;
+        this.commitCoalescer = commitCoalescer;
         this.cursorConverter = cursorConverter;
         this.uuidGenerator = uuidGenerator;
         this.timelineService = timelineService;
@@ -95,20 +100,17 @@ public class CursorsService {
 
         validateSubscriptionCommitCursors(subscription, cursors);
 
-        final ZkSubscriptionClient zkClient = zkSubscriptionFactory.createClient(
-                subscription, LogPathBuilder.build(subscriptionId, streamId, "offsets"));
-
-        validateStreamId(cursors, streamId, zkClient, subscriptionId);
+        validateStreamId(cursors, streamId, subscription);
 
-        return zkClient.commitOffsets(
+        return commitCoalescer.commitOffsets(
+                subscription,
                 cursors.stream().map(cursorConverter::convertToNoToken).collect(Collectors.toList()),
                 new SubscriptionCursorComparator(new NakadiCursorComparator(eventTypeCache)));
     }
 
     private void validateStreamId(final List<NakadiCursor> cursors,
                                   final String streamId,
-                                  final ZkSubscriptionClient subscriptionClient,
-                                  final String subscriptionId)
+                                  final Subscription subscription)
             throws ServiceTemporarilyUnavailableException,
             InvalidCursorException,
             InvalidStreamIdException,
@@ -119,13 +121,34 @@ public class CursorsService {
                     String.format("Stream id has to be valid UUID, but `%s was provided", streamId), streamId);
         }
 
-        if (!subscriptionClient.isActiveSession(streamId)) {
-            subscriptionCache.invalidateSubscription(subscriptionId);
+        try {
+            validateStreamSession(cursors, streamId,
+                    commitCoalescer.isActiveSession(subscription, streamId),
+                    () -> commitCoalescer.getTopology(subscription));
+        } catch (final InvalidStreamIdException | InvalidCursorException ex) {
+            // Cached session data could miss the latest changes, so commit is rejected only after checking
+            // with zookeeper directly
+            final ZkSubscriptionClient zkClient = zkSubscriptionFactory.createClient(
+                    subscription, LogPathBuilder.build(subscription.getId(), streamId, "offsets"));
+            final boolean activeSession = zkClient.isActiveSession(streamId);
+            if (!activeSession) {
+                subscriptionCache.invalidateSubscription(subscription.getId());
+            }
+            validateStreamSession(cursors, streamId, activeSession, zkClient::getTopology);
+        }
+    }
+
+    private void validateStreamSession(final List<NakadiCursor> cursors,
+                                       final String streamId,
+                                       final boolean activeSession,
+                                       final Supplier<ZkSubscriptionClient.Topology> topology)
+            throws InvalidCursorException, InvalidStreamIdException {
+        if (!activeSession) {
             throw new InvalidStreamIdException("Session with stream id " + streamId + " not found", streamId);
         }
 
         final Map<EventTypePartition, String> partitionSessions = Stream
-                .of(subscriptionClient.getTopology().getPartitions())
+                .of(topology.get().getPartitions())
                 .filter(p -> p.getSession() != null)
                 .collect(Collectors.toMap(Partition::getKey, Partition::getSession));
         for (final NakadiCursor cursor : cursors) {
@@ -35,10 +35,14 @@ import org.zalando.nakadi.util.JsonPathAccess;
 import org.zalando.nakadi.validation.EventTypeValidator;
 import org.zalando.nakadi.validation.ValidationError;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
@@ -82,48 +86,130 @@ public class EventPublisher {
             EventTypeTimeoutException,
             AccessDeniedException,
             ServiceTemporarilyUnavailableException,
-            PartitioningException{
+            PartitioningException {
+        return publish(events.getBytes(StandardCharsets.UTF_8), eventTypeName);
+    }
+
+    public EventPublishResult publish(final byte[] events, final String eventTypeName)
+            throws NoSuchEventTypeException,
+            InternalNakadiException,
+            EnrichmentException,
+            EventTypeTimeoutException,
+            AccessDeniedException,
+            ServiceTemporarilyUnavailableException,
+            PartitioningException {
         return publishInternal(events, eventTypeName, true);
     }
 
-    EventPublishResult publishInternal(final String events,
+    /**
+     * Publishes events the same way as {@link #publish(byte[], String)} does, but does not wait for storage to
+     * acknowledge the batch. Validation, partitioning and enrichment are performed in the calling thread, and the
+     * returned future is completed when storage confirms (or rejects) the events.
+     */
+    public CompletableFuture<EventPublishResult> publishAsync(final byte[] events, final String eventTypeName)
+            throws NoSuchEventTypeException,
+            InternalNakadiException,
+            EventTypeTimeoutException,
+            AccessDeniedException,
+            ServiceTemporarilyUnavailableException {
+        final List<BatchItem> batch = BatchFactory.from(events);
+        final Closeable publishingCloser = startPublishing(eventTypeName);
+        boolean submitted = false;
+        try {
+            final EventType eventType = eventTypeCache.getEventType(eventTypeName);
+            authValidator.authorizeEventTypeWrite(eventType);
+
+            final Optional<EventPublishResult> rejected = prepare(batch, eventType);
+            if (rejected.isPresent()) {
+                return CompletableFuture.completedFuture(rejected.get());
+            }
+
+            final Timeline activeTimeline = timelineService.getActiveTimeline(eventType);
+            final CompletableFuture<Void> acknowledgement = timelineService.getTopicRepository(eventType)
+                    .postBatch(activeTimeline.getTopic(), batch, getProducerProfile(eventType));
+            submitted = true;
+            return acknowledgement.handle((ignore, ex) -> {
+                finishPublishing(publishingCloser);
+                if (null == ex) {
+                    return ok(batch);
+                }
+                final Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                if (!(cause instanceof EventPublishingException)) {
+                    throw new CompletionException(cause);
+                }
+                LOG.error("error publishing event", cause);
+                return failed(batch);
+            });
+        } catch (final EventPublishingException e) {
+            LOG.error("error publishing event", e);
+            return CompletableFuture.completedFuture(failed(batch));
+        } finally {
+            if (!submitted) {
+                finishPublishing(publishingCloser);
+            }
+        }
+    }
+
+    EventPublishResult publishInternal(final byte[] events,
                                        final String eventTypeName,
                                        final boolean useAuthz)
             throws NoSuchEventTypeException, InternalNakadiException, EventTypeTimeoutException,
             AccessDeniedException, ServiceTemporarilyUnavailableException, EnrichmentException, PartitioningException {
 
-        Closeable publishingCloser = null;
         final List<BatchItem> batch = BatchFactory.from(events);
+        final Closeable publishingCloser = startPublishing(eventTypeName);
         try {
-            publishingCloser = timelineSync.workWithEventType(eventTypeName, nakadiSettings.getTimelineWaitTimeoutMs());
-
             final EventType eventType = eventTypeCache.getEventType(eventTypeName);
             if (useAuthz) {
                 authValidator.authorizeEventTypeWrite(eventType);
             }
 
+            final Optional<EventPublishResult> rejected = prepare(batch, eventType);
+            if (rejected.isPresent()) {
+                return rejected.get();
+            }
+            submit(batch, eventType);
+
+            return ok(batch);
+        } catch (final EventPublishingException e) {
+            LOG.error("error publishing event", e);
+            return failed(batch);
+        } finally {
+            finishPublishing(publishingCloser);
+        }
+    }
+
+    /**
+     * Runs all the steps that are preceding submission of the batch to storage.
+     *
+     * @return Result of publishing in case if batch was rejected by one of the steps, empty otherwise
+     */
+    private Optional<EventPublishResult> prepare(final List<BatchItem> batch, final EventType eventType)
+            throws InternalNakadiException, NoSuchEventTypeException {
+        try {
             validate(batch, eventType);
             partition(batch, eventType);
             setEventKey(batch, eventType);
             enrich(batch, eventType);
-            submit(batch, eventType);
-
-            return ok(batch);
+            return Optional.empty();
         } catch (final EventValidationException e) {
             LOG.info(
                     "Event validation error: {}",
                     Optional.ofNullable(e.getMessage()).map(s -> s.replaceAll("\n", "; ")).orElse(null)
             );
-            return aborted(EventPublishingStep.VALIDATING, batch);
+            return Optional.of(aborted(EventPublishingStep.VALIDATING, batch));
         } catch (final PartitioningException e) {
             LOG.debug("Event partition error: {}", e.getMessage());
-            return aborted(EventPublishingStep.PARTITIONING, batch);
+            return Optional.of(aborted(EventPublishingStep.PARTITIONING, batch));
         } catch (final EnrichmentException e) {
             LOG.debug("Event enrichment error: {}", e.getMessage());
-            return aborted(EventPublishingStep.ENRICHING, batch);
-        } catch (final EventPublishingException e) {
-            LOG.error("error publishing event", e);
-            return failed(batch);
+            return Optional.of(aborted(EventPublishingStep.ENRICHING, batch));
+        }
+    }
+
+    private Closeable startPublishing(final String eventTypeName) throws EventTypeTimeoutException {
+        try {
+            return timelineSync.workWithEventType(eventTypeName, nakadiSettings.getTimelineWaitTimeoutMs());
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             LOG.error("Failed to wait for timeline switch", e);
@@ -131,14 +217,16 @@ public class EventPublisher {
         } catch (final TimeoutException e) {
             LOG.error("Failed to wait for timeline switch", e);
             throw new EventTypeTimeoutException("Event type is currently in maintenance, please repeat request");
-        } finally {
-            try {
-                if (publishingCloser != null) {
-                    publishingCloser.close();
-                }
-            } catch (final IOException e) {
-                LOG.error("Exception occurred when releasing usage of event-type", e);
+        }
+    }
+
+    private void finishPublishing(final Closeable publishingCloser) {
+        try {
+            if (publishingCloser != null) {
+                publishingCloser.close();
             }
+        } catch (final IOException e) {
+            LOG.error("Exception occurred when releasing usage of event-type", e);
         }
     }
 
@@ -191,9 +279,9 @@ public class EventPublisher {
                 if (EventCategory.DATA.equals(eventType.getCategory())) {
                     partitionKeyField = DATA_PATH_PREFIX + partitionKeyField;
                 }
+                final String[] partitionKeyPath = JsonPathAccess.compilePath(partitionKeyField);
                 for (final BatchItem item : batch) {
-                    final JsonPathAccess jsonPath = new JsonPathAccess(item.getEvent());
-                    final String eventKey = jsonPath.get(partitionKeyField).toString();
+                    final String eventKey = JsonPathAccess.get(item.getEvent(), partitionKeyPath).toString();
                     item.setEventKey(eventKey);
                 }
             }
@@ -216,7 +304,13 @@ public class EventPublisher {
 
     private void submit(final List<BatchItem> batch, final EventType eventType) throws EventPublishingException {
         final Timeline activeTimeline = timelineService.getActiveTimeline(eventType);
-        timelineService.getTopicRepository(eventType).syncPostBatch(activeTimeline.getTopic(), batch);
+        timelineService.getTopicRepository(eventType)
+                .syncPostBatch(activeTimeline.getTopic(), batch, getProducerProfile(eventType));
+    }
+
+    @Nullable
+    private static String getProducerProfile(final EventType eventType) {
+        return null == eventType.getOptions() ? null : eventType.getOptions().getProducerProfile();
     }
 
     private void validateSchema(final JSONObject event, final EventType eventType) throws EventValidationException,
@@ -7,11 +7,13 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.domain.NakadiCursor;
 import org.zalando.nakadi.metrics.StreamKpiData;
 import org.zalando.nakadi.repository.EventConsumer;
 import org.zalando.nakadi.security.Client;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Comparator;
@@ -19,8 +21,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.lang.System.currentTimeMillis;
@@ -41,6 +46,24 @@ public class EventStream {
     private final String kpiDataStreamedEventType;
     private final long kpiFrequencyMs;
     private final NakadiKpiPublisher kpiPublisher;
+    private final SerialExecutor executor;
+    private final long idlePollMs;
+    private final long maxIdlePollMs;
+    private final StreamMemoryGovernor.Account memoryAccount;
+
+    // State of the stream, it is accessed by one thread at a time
+    private final List<ConsumedEvent> consumedEvents = new LinkedList<>();
+    private int messagesRead;
+    private Map<String, Integer> keepAliveInARow;
+    private Map<String, List<byte[]>> currentBatches;
+    // Partition to NakadiCursor.
+    private Map<String, NakadiCursor> latestOffsets;
+    private long start;
+    private Map<String, Long> batchStartTimes;
+    private long lastKpiEventSent;
+    private long bytesInMemory;
+    private boolean idle;
+    private StreamPollScheduler poller;
 
     public EventStream(final EventConsumer eventConsumer,
                        final OutputStream outputStream,
@@ -49,7 +72,8 @@ public class EventStream {
                        final CursorConverter cursorConverter, final Meter bytesFlushedMeter,
                        final EventStreamWriter eventStreamWriter,
                        final NakadiKpiPublisher kpiPublisher, final String kpiDataStreamedEventType,
-                       final long kpiFrequencyMs) {
+                       final long kpiFrequencyMs, final SerialExecutor executor, final long idlePollMs,
+                       final long maxIdlePollMs, @Nullable final StreamMemoryGovernor.Account memoryAccount) {
         this.eventConsumer = eventConsumer;
         this.outputStream = outputStream;
         this.config = config;
@@ -61,137 +85,245 @@ public class EventStream {
         this.kpiData = new StreamKpiData();
         this.kpiDataStreamedEventType = kpiDataStreamedEventType;
         this.kpiFrequencyMs = kpiFrequencyMs;
+        this.executor = executor;
+        this.idlePollMs = idlePollMs;
+        this.maxIdlePollMs = maxIdlePollMs;
+        this.memoryAccount = memoryAccount;
     }
 
     public void streamEvents(final AtomicBoolean connectionReady, final Runnable checkAuthorization) {
         try {
-            int messagesRead = 0;
-            final Map<String, Integer> keepAliveInARow = createMapWithPartitionKeys(partition -> 0);
-
-            final Map<String, List<byte[]>> currentBatches =
-                    createMapWithPartitionKeys(partition -> Lists.newArrayList());
-            // Partition to NakadiCursor.
-            final Map<String, NakadiCursor> latestOffsets = config.getCursors().stream().collect(
-                    Collectors.toMap(NakadiCursor::getPartition, c -> c));
-
-            final long start = currentTimeMillis();
-            final Map<String, Long> batchStartTimes = createMapWithPartitionKeys(partition -> start);
-            final List<ConsumedEvent> consumedEvents = new LinkedList<>();
-            long lastKpiEventSent = System.currentTimeMillis();
-            long bytesInMemory = 0;
-
-            while (connectionReady.get() &&
-                    !blacklistService.isConsumptionBlocked(config.getEtName(), config.getConsumingClient()
-                            .getClientId())) {
-
-                checkAuthorization.run();
-
-                if (consumedEvents.isEmpty()) {
-                    // TODO: There are a lot of optimizations here, one can significantly improve code by processing
-                    // all events at the same time, instead of processing one by one.
-                    consumedEvents.addAll(eventConsumer.readEvents());
+            startStreaming();
+            while (iterateSafely(connectionReady, checkAuthorization, eventConsumer::readEvents)) {
+                // all the work is done in iterations
+            }
+        } finally {
+            publishFinalKpi();
+        }
+    }
+
+    /**
+     * Streams events using executor of the stream instead of blocking calling thread. Events are read without
+     * waiting for them, once the consumer notifies about new events or the next batch is to be flushed (consumers,
+     * that are not notifying, are polled starting with {@code idlePollMs}). Nothing is read while the client is not
+     * keeping up with the output.
+     *
+     * @return future, that is completed once streaming is finished
+     */
+    public CompletableFuture<Void> streamEventsAsync(final NonBlockingOutputStream output,
+                                                     final AtomicBoolean connectionReady,
+                                                     final Runnable checkAuthorization) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        poller = new StreamPollScheduler(
+                executor,
+                (task, delayMs) -> executor.schedule(task, delayMs, TimeUnit.MILLISECONDS),
+                () -> continueStreaming(output, connectionReady, checkAuthorization, result),
+                idlePollMs,
+                maxIdlePollMs);
+        executor.execute(this::startStreaming);
+        eventConsumer.setDataListener(poller::pollNow);
+        output.setWritableListener(poller::pollNow);
+        poller.pollNow();
+        return result;
+    }
+
+    private void continueStreaming(final NonBlockingOutputStream output, final AtomicBoolean connectionReady,
+                                   final Runnable checkAuthorization, final CompletableFuture<Void> result) {
+        if (result.isDone()) {
+            return;
+        }
+        boolean proceed = true;
+        boolean eventsRead = false;
+        boolean backpressured = false;
+        try {
+            // process everything that was read, one event per iteration, the same way as blocking streaming does
+            do {
+                backpressured = output.isBackpressured();
+                if (!backpressured) {
+                    proceed = iterateSafely(connectionReady, checkAuthorization, eventConsumer::readAvailableEvents);
+                    eventsRead |= !idle;
                 }
-                final Optional<ConsumedEvent> eventOrEmpty = consumedEvents.isEmpty() ?
-                        Optional.empty() : Optional.of(consumedEvents.remove(0));
+            } while (proceed && !backpressured && !consumedEvents.isEmpty());
+        } catch (final RuntimeException ex) {
+            publishFinalKpi();
+            result.completeExceptionally(ex);
+            return;
+        }
+        if (!proceed) {
+            publishFinalKpi();
+            result.complete(null);
+        } else if (backpressured) {
+            // continued by writable listener of the output, or after idle timeout to check the connection
+            poller.scheduleNext(false, false, Long.MAX_VALUE);
+        } else {
+            poller.scheduleNext(eventsRead, !eventConsumer.notifiesAboutAllEvents(), getNextDeadline());
+        }
+    }
 
-                if (eventOrEmpty.isPresent()) {
-                    final ConsumedEvent event = eventOrEmpty.get();
+    /**
+     * @return time, when the next batch is to be flushed or the stream is to be closed
+     */
+    private long getNextDeadline() {
+        long deadline = batchStartTimes.values().stream()
+                .mapToLong(batchStart -> batchStart + config.getBatchTimeout() * 1000L)
+                .min()
+                .orElse(Long.MAX_VALUE);
+        if (config.getStreamTimeout() != 0) {
+            deadline = Math.min(deadline, start + config.getStreamTimeout() * 1000L);
+        }
+        return deadline;
+    }
 
-                    // update offset for the partition of event that was read
-                    latestOffsets.put(event.getPosition().getPartition(), event.getPosition());
+    private void startStreaming() {
+        messagesRead = 0;
+        keepAliveInARow = createMapWithPartitionKeys(partition -> 0);
+        currentBatches = createMapWithPartitionKeys(partition -> Lists.newArrayList());
+        latestOffsets = config.getCursors().stream().collect(Collectors.toMap(NakadiCursor::getPartition, c -> c));
+        start = currentTimeMillis();
+        batchStartTimes = createMapWithPartitionKeys(partition -> start);
+        consumedEvents.clear();
+        lastKpiEventSent = System.currentTimeMillis();
+        bytesInMemory = 0;
+    }
 
-                    // put message to batch
-                    currentBatches.get(event.getPosition().getPartition()).add(event.getEvent());
-                    messagesRead++;
-                    bytesInMemory += event.getEvent().length;
+    /**
+     * @return true if streaming should be continued
+     */
+    private boolean iterateSafely(final AtomicBoolean connectionReady, final Runnable checkAuthorization,
+                                  final Supplier<List<ConsumedEvent>> reader) {
+        try {
+            return iterate(connectionReady, checkAuthorization, reader);
+        } catch (final IOException e) {
+            LOG.info("I/O error occurred when streaming events (possibly client closed connection)", e);
+        } catch (final IllegalStateException e) {
+            LOG.info("Error occurred when streaming events (possibly server closed connection)", e);
+        } catch (final KafkaException e) {
+            LOG.error("Error occurred when polling events from kafka; consumer: {}, event-type: {}",
+                    config.getConsumingClient().getClientId(), config.getEtName(), e);
+        }
+        return false;
+    }
 
-                    // if we read the message - reset keep alive counter for this partition
-                    keepAliveInARow.put(event.getPosition().getPartition(), 0);
-                }
+    private boolean iterate(final AtomicBoolean connectionReady, final Runnable checkAuthorization,
+                            final Supplier<List<ConsumedEvent>> reader) throws IOException {
+        if (!connectionReady.get() ||
+                blacklistService.isConsumptionBlocked(config.getEtName(), config.getConsumingClient().getClientId())) {
+            return false;
+        }
 
-                // for each partition check if it's time to send the batch
-                for (final String partition : latestOffsets.keySet()) {
-                    final long timeSinceBatchStart = currentTimeMillis() - batchStartTimes.get(partition);
-                    if (config.getBatchTimeout() * 1000 <= timeSinceBatchStart
-                            || currentBatches.get(partition).size() >= config.getBatchLimit()) {
-                        final List<byte[]> eventsToSend = currentBatches.get(partition);
-                        sendBatch(latestOffsets.get(partition), eventsToSend);
-
-                        if (!eventsToSend.isEmpty()) {
-                            bytesInMemory -= eventsToSend.stream().mapToLong(v -> v.length).sum();
-                            eventsToSend.clear();
-                        } else {
-                            // if we hit keep alive count limit - close the stream
-                            keepAliveInARow.put(partition, keepAliveInARow.get(partition) + 1);
-                        }
-
-                        batchStartTimes.put(partition, currentTimeMillis());
-                    }
-                }
-                // Dump some data that is exceeding memory limits
-                while (isMemoryLimitReached(bytesInMemory)) {
-                    final Map.Entry<String, List<byte[]>> heaviestPartition = currentBatches.entrySet().stream()
-                            .max(Comparator.comparing(
-                                    entry -> entry.getValue().stream().mapToLong(event -> event.length).sum()))
-                            .get();
-                    sendBatch(latestOffsets.get(heaviestPartition.getKey()), heaviestPartition.getValue());
-                    final long freed = heaviestPartition.getValue().stream().mapToLong(v -> v.length).sum();
-                    LOG.info("Memory limit reached for event type {}: {} bytes. Freed: {} bytes, {} messages",
-                            config.getEtName(), bytesInMemory, freed, heaviestPartition.getValue().size());
-                    bytesInMemory -= freed;
-                    // Init new batch for subscription
-                    heaviestPartition.getValue().clear();
-                    batchStartTimes.put(heaviestPartition.getKey(), currentTimeMillis());
-                }
+        checkAuthorization.run();
 
-                if (lastKpiEventSent + kpiFrequencyMs < System.currentTimeMillis()) {
-                    final long count = kpiData.getAndResetNumberOfEventsSent();
-                    final long bytes = kpiData.getAndResetBytesSent();
+        if (consumedEvents.isEmpty()) {
+            // TODO: There are a lot of optimizations here, one can significantly improve code by processing
+            // all events at the same time, instead of processing one by one.
+            consumedEvents.addAll(reader.get());
+            idle = consumedEvents.isEmpty();
+        }
+        final Optional<ConsumedEvent> eventOrEmpty = consumedEvents.isEmpty() ?
+                Optional.empty() : Optional.of(consumedEvents.remove(0));
 
-                    publishKpi(config.getConsumingClient(), count, bytes);
+        if (eventOrEmpty.isPresent()) {
+            final ConsumedEvent event = eventOrEmpty.get();
 
-                    lastKpiEventSent = System.currentTimeMillis();
-                }
+            // update offset for the partition of event that was read
+            latestOffsets.put(event.getPosition().getPartition(), event.getPosition());
+
+            // put message to batch
+            currentBatches.get(event.getPosition().getPartition()).add(event.getEvent());
+            messagesRead++;
+            bytesInMemory += event.getEvent().length;
 
-                // check if we reached keepAliveInARow for all the partitions; if yes - then close stream
-                if (config.getStreamKeepAliveLimit() != 0) {
-                    final boolean keepAliveLimitReachedForAllPartitions = keepAliveInARow
-                            .values()
-                            .stream()
-                            .allMatch(keepAlives -> keepAlives >= config.getStreamKeepAliveLimit());
+            // if we read the message - reset keep alive counter for this partition
+            keepAliveInARow.put(event.getPosition().getPartition(), 0);
+        }
 
-                    if (keepAliveLimitReachedForAllPartitions) {
-                        break;
-                    }
+        // for each partition check if it's time to send the batch
+        for (final String partition : latestOffsets.keySet()) {
+            final long timeSinceBatchStart = currentTimeMillis() - batchStartTimes.get(partition);
+            if (config.getBatchTimeout() * 1000 <= timeSinceBatchStart
+                    || currentBatches.get(partition).size() >= config.getBatchLimit()) {
+                final List<byte[]> eventsToSend = currentBatches.get(partition);
+                sendBatch(latestOffsets.get(partition), eventsToSend);
+
+                if (!eventsToSend.isEmpty()) {
+                    bytesInMemory -= eventsToSend.stream().mapToLong(v -> v.length).sum();
+                    eventsToSend.clear();
+                } else {
+                    // if we hit keep alive count limit - close the stream
+                    keepAliveInARow.put(partition, keepAliveInARow.get(partition) + 1);
                 }
 
-                // check if we reached the stream timeout or message count limit
-                final long timeSinceStart = currentTimeMillis() - start;
-                if (config.getStreamTimeout() != 0 && timeSinceStart >= config.getStreamTimeout() * 1000
-                        || config.getStreamLimit() != 0 && messagesRead >= config.getStreamLimit()) {
+                batchStartTimes.put(partition, currentTimeMillis());
+            }
+        }
+        // Dump some data that is exceeding memory limits
+        while (isMemoryLimitReached(bytesInMemory)) {
+            final Map.Entry<String, List<byte[]>> heaviestPartition = currentBatches.entrySet().stream()
+                    .max(Comparator.comparing(
+                            entry -> entry.getValue().stream().mapToLong(event -> event.length).sum()))
+                    .get();
+            sendBatch(latestOffsets.get(heaviestPartition.getKey()), heaviestPartition.getValue());
+            final long freed = heaviestPartition.getValue().stream().mapToLong(v -> v.length).sum();
+            LOG.info("Memory limit reached for event type {}: {} bytes. Freed: {} bytes, {} messages",
+                    config.getEtName(), bytesInMemory, freed, heaviestPartition.getValue().size());
+            bytesInMemory -= freed;
+            // Init new batch for subscription
+            heaviestPartition.getValue().clear();
+            batchStartTimes.put(heaviestPartition.getKey(), currentTimeMillis());
+        }
+        if (null != memoryAccount) {
+            memoryAccount.update(bytesInMemory, this::getBufferedPartitions, eventConsumer);
+        }
+
+        if (lastKpiEventSent + kpiFrequencyMs < System.currentTimeMillis()) {
+            final long count = kpiData.getAndResetNumberOfEventsSent();
+            final long bytes = kpiData.getAndResetBytesSent();
+
+            publishKpi(config.getConsumingClient(), count, bytes);
+
+            lastKpiEventSent = System.currentTimeMillis();
+        }
+
+        // check if we reached keepAliveInARow for all the partitions; if yes - then close stream
+        if (config.getStreamKeepAliveLimit() != 0) {
+            final boolean keepAliveLimitReachedForAllPartitions = keepAliveInARow
+                    .values()
+                    .stream()
+                    .allMatch(keepAlives -> keepAlives >= config.getStreamKeepAliveLimit());
+
+            if (keepAliveLimitReachedForAllPartitions) {
+                return false;
+            }
+        }
 
-                    for (final String partition : latestOffsets.keySet()) {
-                        if (currentBatches.get(partition).size() > 0) {
-                            sendBatch(latestOffsets.get(partition), currentBatches.get(partition));
-                        }
-                    }
+        // check if we reached the stream timeout or message count limit
+        final long timeSinceStart = currentTimeMillis() - start;
+        if (config.getStreamTimeout() != 0 && timeSinceStart >= config.getStreamTimeout() * 1000
+                || config.getStreamLimit() != 0 && messagesRead >= config.getStreamLimit()) {
 
-                    break;
+            for (final String partition : latestOffsets.keySet()) {
+                if (currentBatches.get(partition).size() > 0) {
+                    sendBatch(latestOffsets.get(partition), currentBatches.get(partition));
                 }
             }
-        } catch (final IOException e) {
-            LOG.info("I/O error occurred when streaming events (possibly client closed connection)", e);
-        } catch (final IllegalStateException e) {
-            LOG.info("Error occurred when streaming events (possibly server closed connection)", e);
-        } catch (final KafkaException e) {
-            LOG.error("Error occurred when polling events from kafka; consumer: {}, event-type: {}",
-                    config.getConsumingClient().getClientId(), config.getEtName(), e);
-        } finally {
-            publishKpi(
-                    config.getConsumingClient(),
-                    kpiData.getAndResetNumberOfEventsSent(),
-                    kpiData.getAndResetBytesSent());
+
+            return false;
         }
+        return true;
+    }
+
+    private void publishFinalKpi() {
+        publishKpi(
+                config.getConsumingClient(),
+                kpiData.getAndResetNumberOfEventsSent(),
+                kpiData.getAndResetBytesSent());
+    }
+
+    private List<EventTypePartition> getBufferedPartitions() {
+        return currentBatches.entrySet().stream()
+                .filter(e -> !e.getValue().isEmpty())
+                .map(e -> latestOffsets.get(e.getKey()).getEventTypePartition())
+                .collect(Collectors.toList());
     }
 
     private boolean isMemoryLimitReached(final long memoryUsed) {
@@ -233,6 +365,9 @@ public class EventStream {
 
 
     public void close() throws IOException {
+        if (null != memoryAccount) {
+            memoryAccount.close();
+        }
         this.eventConsumer.close();
     }
 
@@ -18,6 +18,10 @@ public class EventStreamFactory {
     private final NakadiKpiPublisher nakadiKpiPublisher;
     private final String kpiDataStreamedEventType;
     private final long kpiFrequencyMs;
+    private final StreamingScheduler streamingScheduler;
+    private final long kafkaPollTimeoutMs;
+    private final long maxIdlePollMs;
+    private final StreamMemoryGovernor memoryGovernor;
 
     @Autowired
     public EventStreamFactory(
@@ -26,13 +30,21 @@ public class EventStreamFactory {
             final BlacklistService blacklistService,
             final NakadiKpiPublisher nakadiKpiPublisher,
             @Value("${nakadi.kpi.event-types.nakadiDataStreamed}") final String kpiDataStreamedEventType,
-            @Value("${nakadi.kpi.config.stream-data-collection-frequency-ms}") final long kpiFrequencyMs) {
+            @Value("${nakadi.kpi.config.stream-data-collection-frequency-ms}") final long kpiFrequencyMs,
+            final StreamingScheduler streamingScheduler,
+            @Value("${nakadi.kafka.poll.timeoutMs}") final long kafkaPollTimeoutMs,
+            @Value("${nakadi.stream.maxIdlePollMs}") final long maxIdlePollMs,
+            final StreamMemoryGovernor memoryGovernor) {
         this.cursorConverter = cursorConverter;
         this.eventStreamWriter = eventStreamWriter;
         this.blacklistService = blacklistService;
         this.nakadiKpiPublisher = nakadiKpiPublisher;
         this.kpiDataStreamedEventType = kpiDataStreamedEventType;
         this.kpiFrequencyMs = kpiFrequencyMs;
+        this.streamingScheduler = streamingScheduler;
+        this.kafkaPollTimeoutMs = kafkaPollTimeoutMs;
+        this.maxIdlePollMs = maxIdlePollMs;
+        this.memoryGovernor = memoryGovernor;
     }
 
     public EventStream createEventStream(final OutputStream outputStream, final EventConsumer eventConsumer,
@@ -48,6 +60,11 @@ public class EventStreamFactory {
                 eventStreamWriter,
                 nakadiKpiPublisher,
                 kpiDataStreamedEventType,
-                kpiFrequencyMs);
+                kpiFrequencyMs,
+                streamingScheduler.createSerialExecutor(),
+                kafkaPollTimeoutMs,
+                maxIdlePollMs,
+                memoryGovernor.register(
+                        "event type " + config.getEtName() + " client " + config.getConsumingClient().getClientId()));
     }
 }
@@ -153,6 +153,7 @@ public class EventTypeService {
                     FeatureToggleService.Feature.DISABLE_LOG_COMPACTION);
         }
         eventTypeOptionsValidator.checkRetentionTime(eventType.getOptions());
+        eventTypeOptionsValidator.checkProducerProfile(eventType.getOptions());
         setDefaultEventTypeOptions(eventType);
         validateSchema(eventType);
         validateCompaction(eventType);
@@ -350,6 +351,7 @@ public class EventTypeService {
                 eventTypeOptionsValidator.checkRetentionTime(eventTypeBase.getOptions());
                 authorizationValidator.authorizeEventTypeAdmin(original);
             }
+            eventTypeOptionsValidator.checkProducerProfile(eventTypeBase.getOptions());
             authorizationValidator.validateAuthorization(original.asResource(), eventTypeBase.asBaseResource());
             validateName(eventTypeName, eventTypeBase);
             validateCompactionUpdate(original, eventTypeBase);
@@ -393,6 +395,10 @@ public class EventTypeService {
     }
 
     private void updateRetentionTime(final EventType original, final EventType eventType) {
+        if (null == eventType.getOptions().getProducerProfile()) {
+            // Clients, that do not know about producer profiles, should not reset it
+            eventType.getOptions().setProducerProfile(original.getOptions().getProducerProfile());
+        }
         final Long newRetentionTime = eventType.getOptions().getRetentionTime();
         final Long oldRetentionTime = original.getOptions().getRetentionTime();
         if (oldRetentionTime == null) {
@@ -404,7 +410,7 @@ public class EventTypeService {
             if (newRetentionTime != null && !newRetentionTime.equals(oldRetentionTime)) {
                 updateTopicRetentionTime(original.getName(), newRetentionTime);
             } else {
-                eventType.setOptions(original.getOptions());
+                eventType.getOptions().setRetentionTime(oldRetentionTime);
             }
             updateEventTypeInDB(eventType, newRetentionTime, oldRetentionTime);
             retentionTimeUpdated = true;
@@ -39,7 +39,16 @@ public interface FeatureToggleService {
         KPI_COLLECTION("kpi_collection"),
         AUDIT_LOG_COLLECTION("audit_log_collection"),
         DISABLE_DB_WRITE_OPERATIONS("disable_db_write_operations"),
-        DISABLE_LOG_COMPACTION("disable_log_compaction");
+        DISABLE_LOG_COMPACTION("disable_log_compaction"),
+        STREAM_COMPRESSION("stream_compression"),
+        COMPACT_TOPOLOGY("compact_topology"),
+        /**
+         * Keeps offsets of new subscriptions in database, and moves offsets of existing ones there with the next
+         * cursor reset, deleting them from zookeeper. Instances, that do not know about the database store, are not
+         * able to read such subscriptions anymore, so the feature may be enabled only once all the instances of the
+         * cluster run a version that supports it. It is not possible to move offsets back to zookeeper.
+         */
+        DB_OFFSET_STORE("db_offset_store");
 
         private final String id;
 
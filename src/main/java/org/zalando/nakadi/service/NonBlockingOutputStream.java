@@ -0,0 +1,236 @@
+package org.zalando.nakadi.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Output of the streaming response, that is written by the threads of {@link StreamingScheduler} without blocking
+ * them on slow clients. Until {@link #start()} is called, the data is passed to the response as it is (e.g. problem
+ * responses written by the request thread). After that, the response is switched to non-blocking mode: written data
+ * is buffered and sent from {@link WriteListener} callbacks whenever the servlet container is ready to accept it.
+ * Streams are not reading new events while the output {@link #isBackpressured()}, and continue once the writable
+ * listener is called.
+ * <p>
+ * Closing the stream does not close the response: it is closed by the container, once async processing of the
+ * request is completed after {@link #getFinished()}.
+ */
+public class NonBlockingOutputStream extends OutputStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NonBlockingOutputStream.class);
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final HttpServletRequest request;
+    private final ServletOutputStream out;
+    private final long maxPendingBytes;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private final Deque<byte[]> chunks = new ArrayDeque<>();
+    private final ByteArrayOutputStream tail = new ByteArrayOutputStream();
+    private long pendingBytes;
+    private boolean nonBlocking;
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+    private boolean backpressured;
+    private Runnable writableListener;
+
+    public NonBlockingOutputStream(final HttpServletRequest request, final ServletOutputStream out,
+                                   final long maxPendingBytes) {
+        this.request = request;
+        this.out = out;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Switches the response to non-blocking mode. Output stays blocking, if request is not processed
+     * asynchronously.
+     */
+    public synchronized void start() {
+        if (nonBlocking || closed || !request.isAsyncStarted()) {
+            return;
+        }
+        nonBlocking = true;
+        out.setWriteListener(new Listener());
+    }
+
+    /**
+     * Sets listener, that is called from the threads of servlet container once backpressured output is able to
+     * accept more data, or once writing failed.
+     */
+    public synchronized void setWritableListener(final Runnable writableListener) {
+        this.writableListener = writableListener;
+    }
+
+    /**
+     * @return true if the client is not reading the data as fast as it is written, and writing should be paused
+     * until the writable listener is called
+     */
+    public synchronized boolean isBackpressured() {
+        if (nonBlocking && null == failure && pendingBytes > maxPendingBytes) {
+            try {
+                // Data is left pending only if container is not ready, and then it calls the listener later
+                drain();
+            } catch (final IOException ex) {
+                LOG.debug("Failed to write pending data", ex);
+            }
+        }
+        backpressured = nonBlocking && null == failure && pendingBytes > maxPendingBytes;
+        return backpressured;
+    }
+
+    /**
+     * @return future, that is completed once the stream is closed and everything that was written is sent to the
+     * client, or once writing failed
+     */
+    public CompletableFuture<Void> getFinished() {
+        return finished;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        if (!nonBlocking) {
+            out.write(b, off, len);
+            return;
+        }
+        checkWritable();
+        tail.write(b, off, len);
+        pendingBytes += len;
+        if (tail.size() >= CHUNK_SIZE) {
+            drain();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!nonBlocking) {
+            out.flush();
+            return;
+        }
+        checkWritable();
+        flushRequested = true;
+        drain();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!nonBlocking) {
+            try {
+                out.close();
+            } finally {
+                finished.complete(null);
+            }
+        } else if (null == failure) {
+            flushRequested = true;
+            drain();
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (null != failure) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Output is already closed");
+        }
+    }
+
+    /**
+     * Writes pending data while the container is ready to accept it. If it is not, container is calling
+     * {@link WriteListener#onWritePossible()} later.
+     */
+    private void drain() throws IOException {
+        if (tail.size() > 0) {
+            chunks.add(tail.toByteArray());
+            tail.reset();
+        }
+        try {
+            while (!chunks.isEmpty()) {
+                if (!out.isReady()) {
+                    return;
+                }
+                // Container may keep the array until it is sent, so chunks are never reused
+                final byte[] chunk = chunks.poll();
+                pendingBytes -= chunk.length;
+                out.write(chunk);
+            }
+            if (flushRequested) {
+                if (!out.isReady()) {
+                    return;
+                }
+                flushRequested = false;
+                out.flush();
+            }
+            if (closed && out.isReady()) {
+                finished.complete(null);
+            }
+        } catch (final IOException | RuntimeException ex) {
+            fail(ex);
+            throw failure;
+        }
+    }
+
+    private void fail(final Throwable ex) {
+        if (null == failure) {
+            failure = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+        }
+        chunks.clear();
+        tail.reset();
+        pendingBytes = 0;
+        finished.complete(null);
+    }
+
+    private class Listener implements WriteListener {
+
+        @Override
+        public void onWritePossible() {
+            final Runnable listener;
+            synchronized (NonBlockingOutputStream.this) {
+                try {
+                    drain();
+                } catch (final IOException ex) {
+                    LOG.debug("Failed to write pending data", ex);
+                }
+                if (backpressured && (null != failure || pendingBytes <= maxPendingBytes)) {
+                    backpressured = false;
+                    listener = writableListener;
+                } else {
+                    listener = null;
+                }
+            }
+            if (null != listener) {
+                listener.run();
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            final Runnable listener;
+            synchronized (NonBlockingOutputStream.this) {
+                fail(t);
+                backpressured = false;
+                listener = writableListener;
+            }
+            if (null != listener) {
+                listener.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.zalando.nakadi.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.zalando.nakadi.util.FlowIdUtils;
+
+import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes tasks of one stream on the shared pools of {@link StreamingScheduler}. Tasks are executed in the order
+ * they were submitted and never concurrently, so the stream is processing them as if it had its own thread.
+ * In order not to starve other streams, the executor is giving away the thread after {@link #MAX_TASKS_PER_RUN}
+ * tasks. Tasks, that may block on remote calls (zookeeper, database, storage metadata), are submitted with
+ * {@link #executeBlocking(Runnable)} and are run on the separate pool, so that they are not holding the threads,
+ * that are streaming events to the clients.
+ */
+public class SerialExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialExecutor.class);
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor blockingExecutor;
+    private final SecurityContext securityContext;
+    private final String flowId;
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    SerialExecutor(final ScheduledExecutorService scheduler, final Executor blockingExecutor,
+                   final SecurityContext securityContext, @Nullable final String flowId) {
+        this.scheduler = scheduler;
+        this.blockingExecutor = blockingExecutor;
+        this.securityContext = securityContext;
+        this.flowId = flowId;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        tasks.offer(new Task(task, false));
+        trySchedule();
+    }
+
+    /**
+     * Executes task, that may block, in the order of this executor, but on the pool of blocking tasks.
+     */
+    public void executeBlocking(final Runnable task) {
+        tasks.offer(new Task(task, true));
+        trySchedule();
+    }
+
+    /**
+     * Adds task to the queue of this executor once the delay elapses.
+     */
+    public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        scheduler.schedule(() -> execute(task), delay, unit);
+    }
+
+    /**
+     * Adds blocking task to the queue of this executor once the delay elapses.
+     */
+    public void scheduleBlocking(final Runnable task, final long delay, final TimeUnit unit) {
+        scheduler.schedule(() -> executeBlocking(task), delay, unit);
+    }
+
+    /**
+     * Starts processing of the queue, unless it is processed already. Only the owner of the flag is taking tasks
+     * from the queue, but the queue could have been drained by the previous owner right before the flag was taken,
+     * so the flag is released again if there is nothing to run.
+     */
+    @VisibleForTesting
+    void trySchedule() {
+        while (running.compareAndSet(false, true)) {
+            final Task head = tasks.peek();
+            if (null != head) {
+                dispatch(head.blocking);
+                return;
+            }
+            running.set(false);
+            if (tasks.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void dispatch(final boolean blocking) {
+        if (blocking) {
+            blockingExecutor.execute(() -> runTasks(true));
+        } else {
+            scheduler.execute(() -> runTasks(false));
+        }
+    }
+
+    private void runTasks(final boolean blocking) {
+        SecurityContextHolder.setContext(securityContext);
+        if (null != flowId) {
+            FlowIdUtils.push(flowId);
+        }
+        boolean handedOver = false;
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; ++i) {
+                final Task task = tasks.peek();
+                if (null == task) {
+                    break;
+                }
+                if (task.blocking != blocking) {
+                    // The flag stays set, the rest of the queue is processed by the other pool.
+                    handedOver = true;
+                    dispatch(task.blocking);
+                    break;
+                }
+                tasks.poll();
+                try {
+                    task.runnable.run();
+                } catch (final RuntimeException ex) {
+                    LOG.error("Unexpected exception while running streaming task {}", task.runnable, ex);
+                }
+            }
+        } finally {
+            FlowIdUtils.clear();
+            SecurityContextHolder.clearContext();
+            if (!handedOver) {
+                running.set(false);
+            }
+        }
+        // Tasks could be added while the flag was still set, they should not be forgotten.
+        if (!handedOver && !tasks.isEmpty()) {
+            trySchedule();
+        }
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final boolean blocking;
+
+        private Task(final Runnable runnable, final boolean blocking) {
+            this.runnable = runnable;
+            this.blocking = blocking;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.zalando.nakadi.exceptions.runtime.RepositoryProblemException;
 import org.zalando.nakadi.exceptions.runtime.StorageIsUsedException;
 import org.zalando.nakadi.exceptions.runtime.UnknownStorageTypeException;
 import org.zalando.nakadi.exceptions.runtime.UnprocessableEntityException;
+import org.zalando.nakadi.repository.TopicRepositoryHolder;
 import org.zalando.nakadi.repository.db.StorageDbRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 
@@ -42,6 +43,7 @@ public class StorageService {
     private final CuratorFramework curator;
     private final FeatureToggleService featureToggleService;
     private final NakadiAuditLogPublisher auditLogPublisher;
+    private final TopicRepositoryHolder topicRepositoryHolder;
 
     @Autowired
     public StorageService(final ObjectMapper objectMapper,
@@ -49,13 +51,15 @@ public class StorageService {
                           @Qualifier("default_storage") final DefaultStorage defaultStorage,
                           final ZooKeeperHolder zooKeeperHolder,
                           final FeatureToggleService featureToggleService,
-                          final NakadiAuditLogPublisher auditLogPublisher) {
+                          final NakadiAuditLogPublisher auditLogPublisher,
+                          final TopicRepositoryHolder topicRepositoryHolder) {
         this.objectMapper = objectMapper;
         this.storageDbRepository = storageDbRepository;
         this.defaultStorage = defaultStorage;
         this.curator = zooKeeperHolder.get();
         this.featureToggleService = featureToggleService;
         this.auditLogPublisher = auditLogPublisher;
+        this.topicRepositoryHolder = topicRepositoryHolder;
     }
 
     @PostConstruct
@@ -161,6 +165,7 @@ public class StorageService {
                     .map(Function.identity());
 
             storageDbRepository.deleteStorage(id);
+            topicRepositoryHolder.removeTopicRepository(id);
 
             auditLogPublisher.publish(
                     storageOrNone,
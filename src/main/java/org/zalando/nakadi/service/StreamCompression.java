@@ -0,0 +1,370 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.metrics.MetricUtils;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.VARY;
+
+/**
+ * Compression of streaming responses, negotiated with Accept-Encoding header. Everything written to the stream between
+ * two flushes is compressed and flushed as one frame, so batches reach the client as soon as they would without
+ * compression. Compression context lives as long as the connection, deflaters are returned to the pool afterwards.
+ */
+@Component
+public class StreamCompression {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamCompression.class);
+    private static final String BYTES_COMPRESSED = "bytes-compressed";
+    private static final String COMPRESSION_CPU = "compression-cpu-ns";
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    enum Encoding {
+        GZIP("gzip"),
+        ZSTD("zstd");
+
+        private final String coding;
+
+        Encoding(final String coding) {
+            this.coding = coding;
+        }
+
+        public String getCoding() {
+            return coding;
+        }
+    }
+
+    private final FeatureToggleService featureToggleService;
+    private final MetricRegistry streamMetrics;
+    private final int gzipLevel;
+    private final int zstdLevel;
+    private final BlockingQueue<Deflater> deflaters;
+    private final boolean zstdAvailable;
+
+    @Autowired
+    public StreamCompression(final FeatureToggleService featureToggleService,
+                             @Qualifier("streamMetricsRegistry") final MetricRegistry streamMetrics,
+                             @Value("${nakadi.stream.compression.gzipLevel}") final int gzipLevel,
+                             @Value("${nakadi.stream.compression.zstdLevel}") final int zstdLevel,
+                             @Value("${nakadi.stream.compression.deflaterPoolSize}") final int deflaterPoolSize) {
+        this.featureToggleService = featureToggleService;
+        this.streamMetrics = streamMetrics;
+        this.gzipLevel = gzipLevel;
+        this.zstdLevel = zstdLevel;
+        this.deflaters = new ArrayBlockingQueue<>(deflaterPoolSize);
+        this.zstdAvailable = loadZstd();
+    }
+
+    private static boolean loadZstd() {
+        try {
+            Native.load();
+            return true;
+        } catch (final UnsatisfiedLinkError | RuntimeException e) {
+            LOG.warn("Zstd is not available, streams will be compressed with gzip only", e);
+            return false;
+        }
+    }
+
+    /**
+     * Wraps output stream of the response with compressing one, if client accepts any of supported encodings.
+     * Must be called before anything is written to the response.
+     *
+     * @param clientId   consuming application, compression metrics are aggregated per application, so that they
+     *                   are not left behind by every closed stream
+     * @param streamName name of the stream used for logging
+     * @return output stream to write the response to
+     */
+    public OutputStream compress(final HttpServletRequest request, final HttpServletResponse response,
+                                 final OutputStream out, final String clientId, final String streamName)
+            throws IOException {
+        if (!featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.STREAM_COMPRESSION)) {
+            return out;
+        }
+        final Encoding encoding = negotiate(request.getHeader(ACCEPT_ENCODING));
+        if (null == encoding) {
+            return out;
+        }
+        response.setHeader(CONTENT_ENCODING, encoding.getCoding());
+        response.setHeader(VARY, ACCEPT_ENCODING);
+        final String metricPrefix = MetricUtils.compressionNameForClient(clientId);
+        final Meter bytesCompressed = streamMetrics.meter(MetricRegistry.name(metricPrefix, BYTES_COMPRESSED));
+        final Meter cpu = streamMetrics.meter(MetricRegistry.name(metricPrefix, COMPRESSION_CPU));
+        return encoding == Encoding.ZSTD ?
+                new ZstdFrameOutputStream(out, streamName, bytesCompressed, cpu) :
+                new GzipFrameOutputStream(out, streamName, bytesCompressed, cpu);
+    }
+
+    /**
+     * @return the most preferred by client of supported encodings, zstd wins in case of equal preference
+     */
+    @Nullable
+    @VisibleForTesting
+    Encoding negotiate(@Nullable final String acceptEncoding) {
+        if (null == acceptEncoding) {
+            return null;
+        }
+        float gzipQuality = 0;
+        float zstdQuality = 0;
+        float anyQuality = 0;
+        boolean gzipListed = false;
+        for (final String entry : acceptEncoding.split(",")) {
+            final String[] parts = entry.split(";");
+            final String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            final float quality = parseQuality(parts);
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                gzipQuality = Math.max(gzipQuality, quality);
+                gzipListed = true;
+            } else if ("zstd".equals(coding)) {
+                zstdQuality = quality;
+            } else if ("*".equals(coding)) {
+                anyQuality = quality;
+            }
+        }
+        if (!gzipListed) {
+            gzipQuality = anyQuality;
+        }
+        if (zstdAvailable && zstdQuality > 0 && zstdQuality >= gzipQuality) {
+            return Encoding.ZSTD;
+        }
+        return gzipQuality > 0 ? Encoding.GZIP : null;
+    }
+
+    private static float parseQuality(final String[] parts) {
+        for (int i = 1; i < parts.length; ++i) {
+            final String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2));
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private Deflater borrowDeflater() {
+        final Deflater deflater = deflaters.poll();
+        return null != deflater ? deflater : new Deflater(gzipLevel, true);
+    }
+
+    private void releaseDeflater(final Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static long currentThreadCpuNanos() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ?
+                THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(final int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Collects everything written between flushes and writes it to the response as one compressed frame on flush.
+     * Streams are written by one thread at a time, the same way as the response itself.
+     */
+    private abstract static class FrameOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String streamName;
+        private final Meter bytesCompressedMeter;
+        private final Meter cpuMeter;
+        private final Buffer raw = new Buffer(8192);
+        protected final Buffer compressed = new Buffer(8192);
+        private long bytesIn;
+        private long bytesOut;
+        private long cpuNanos;
+        private boolean closed;
+
+        FrameOutputStream(final OutputStream out, final String streamName, final Meter bytesCompressedMeter,
+                          final Meter cpuMeter) {
+            this.out = out;
+            this.streamName = streamName;
+            this.bytesCompressedMeter = bytesCompressedMeter;
+            this.cpuMeter = cpuMeter;
+        }
+
+        protected abstract void compressFrame(byte[] data, int length, boolean last) throws IOException;
+
+        protected abstract void release();
+
+        @Override
+        public void write(final int b) throws IOException {
+            checkOpen();
+            raw.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            checkOpen();
+            raw.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (raw.size() > 0) {
+                writeFrame(false);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeFrame(true);
+                out.flush();
+            } finally {
+                release();
+                out.close();
+                LOG.info("Stream {} compressed {} bytes into {} bytes using {} ms of cpu", streamName, bytesIn,
+                        bytesOut, TimeUnit.NANOSECONDS.toMillis(cpuNanos));
+            }
+        }
+
+        private void writeFrame(final boolean last) throws IOException {
+            final long start = currentThreadCpuNanos();
+            compressFrame(raw.array(), raw.size(), last);
+            final long spent = currentThreadCpuNanos() - start;
+            cpuNanos += spent;
+            cpuMeter.mark(spent);
+            bytesIn += raw.size();
+            bytesOut += compressed.size();
+            bytesCompressedMeter.mark(compressed.size());
+            raw.reset();
+            try {
+                out.write(compressed.array(), 0, compressed.size());
+            } finally {
+                compressed.reset();
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream " + streamName + " is closed");
+            }
+        }
+    }
+
+    /**
+     * Gzip member, which deflate stream is sync flushed on every frame.
+     */
+    private class GzipFrameOutputStream extends FrameOutputStream {
+        private final byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private final Deflater deflater = borrowDeflater();
+        private final CRC32 crc = new CRC32();
+        private final byte[] chunk = new byte[8192];
+        private boolean headerWritten;
+
+        GzipFrameOutputStream(final OutputStream out, final String streamName, final Meter bytesCompressedMeter,
+                              final Meter cpuMeter) {
+            super(out, streamName, bytesCompressedMeter, cpuMeter);
+        }
+
+        @Override
+        protected void compressFrame(final byte[] data, final int length, final boolean last) {
+            if (!headerWritten) {
+                compressed.write(header, 0, header.length);
+                headerWritten = true;
+            }
+            crc.update(data, 0, length);
+            deflater.setInput(data, 0, length);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(chunk, 0, deflater.deflate(chunk));
+                }
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead());
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    compressed.write(chunk, 0, written);
+                } while (written == chunk.length);
+            }
+        }
+
+        private void writeIntLE(final int value) {
+            compressed.write(value);
+            compressed.write(value >> 8);
+            compressed.write(value >> 16);
+            compressed.write(value >> 24);
+        }
+
+        @Override
+        protected void release() {
+            releaseDeflater(deflater);
+        }
+    }
+
+    private class ZstdFrameOutputStream extends FrameOutputStream {
+        private final ZstdOutputStream zstd;
+
+        ZstdFrameOutputStream(final OutputStream out, final String streamName, final Meter bytesCompressedMeter,
+                              final Meter cpuMeter) throws IOException {
+            super(out, streamName, bytesCompressedMeter, cpuMeter);
+            this.zstd = new ZstdOutputStream(compressed, zstdLevel, false);
+        }
+
+        @Override
+        protected void compressFrame(final byte[] data, final int length, final boolean last) throws IOException {
+            zstd.write(data, 0, length);
+            if (last) {
+                zstd.close();
+            } else {
+                zstd.flush();
+            }
+        }
+
+        @Override
+        protected void release() {
+            try {
+                zstd.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to release zstd context", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Budget of bytes buffered by all the streams of the node, both low level and subscription ones. Every stream has an
+ * account with the amount of bytes it keeps in memory. Once the budget is exceeded, streams that hold more than their
+ * fair share of the budget (credit) pause fetching of partitions they are buffering data for, until they are back
+ * within credit or the node is back within budget. Memory limits of the streams themselves are not affected.
+ */
+@Component
+public class StreamMemoryGovernor {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamMemoryGovernor.class);
+    private static final int TOP_CONSUMERS = 10;
+
+    private final long budgetBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Set<Account> accounts = ConcurrentHashMap.newKeySet();
+    private final Meter pauses;
+    private final Counter pausedPartitions;
+
+    @Autowired
+    public StreamMemoryGovernor(
+            @Value("${nakadi.stream.maxNodeMemoryBytes}") final long budgetBytes,
+            final MetricRegistry metricRegistry) {
+        this.budgetBytes = budgetBytes;
+        this.pauses = metricRegistry.meter("nakadi.stream.memory.pauses");
+        this.pausedPartitions = metricRegistry.counter("nakadi.stream.memory.paused_partitions");
+        metricRegistry.register("nakadi.stream.memory.budget_bytes", (Gauge<Long>) () -> budgetBytes);
+        metricRegistry.register("nakadi.stream.memory.used_bytes", (Gauge<Long>) usedBytes::get);
+        metricRegistry.register("nakadi.stream.memory.top_consumers", (Gauge<Map<String, Long>>) this::getTopConsumers);
+    }
+
+    public Account register(final String name) {
+        final Account account = new Account(name);
+        accounts.add(account);
+        return account;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return bytes buffered by the streams that use most of the budget, by name of the stream
+     */
+    public Map<String, Long> getTopConsumers() {
+        final List<Account> snapshot = new ArrayList<>(accounts);
+        final Map<String, Long> result = new LinkedHashMap<>();
+        snapshot.stream()
+                .sorted(Comparator.comparingLong(Account::getBufferedBytes).reversed())
+                .limit(TOP_CONSUMERS)
+                .forEach(account -> result.put(account.name, account.getBufferedBytes()));
+        return result;
+    }
+
+    /**
+     * Account of one stream. It is updated by the thread that is working with the stream at the moment, the same way
+     * as the rest of the stream state.
+     */
+    public class Account implements Closeable {
+        private final String name;
+        private final AtomicLong bufferedBytes = new AtomicLong();
+        private final Set<EventTypePartition> paused = new HashSet<>();
+
+        private Account(final String name) {
+            this.name = name;
+        }
+
+        public long getBufferedBytes() {
+            return bufferedBytes.get();
+        }
+
+        /**
+         * @return share of the budget, that the stream can use when budget is exceeded
+         */
+        public long getCredit() {
+            return budgetBytes / Math.max(1, accounts.size());
+        }
+
+        public boolean isOverCredit() {
+            return usedBytes.get() > budgetBytes && bufferedBytes.get() > getCredit();
+        }
+
+        public Set<EventTypePartition> getPaused() {
+            return paused;
+        }
+
+        /**
+         * Updates amount of bytes buffered by the stream and pauses or resumes partitions of its consumer.
+         *
+         * @param bytes               bytes buffered by the stream
+         * @param bufferedPartitions  partitions, that currently have buffered data, they are paused when the stream
+         *                            is over credit
+         * @param consumer            consumer of the stream
+         */
+        public void update(final long bytes, final Supplier<Collection<EventTypePartition>> bufferedPartitions,
+                           final EventConsumer consumer) {
+            usedBytes.addAndGet(bytes - bufferedBytes.getAndSet(bytes));
+            if (isOverCredit()) {
+                final List<EventTypePartition> toPause = bufferedPartitions.get().stream()
+                        .filter(paused::add)
+                        .collect(Collectors.toList());
+                if (!toPause.isEmpty()) {
+                    LOG.info("Node memory budget of {} bytes is exceeded, stream {} holds {} bytes with credit of " +
+                            "{} bytes, pausing {}", budgetBytes, name, bytes, getCredit(), toPause);
+                    consumer.pause(toPause);
+                    pauses.mark(toPause.size());
+                    pausedPartitions.inc(toPause.size());
+                }
+            } else if (!paused.isEmpty()) {
+                LOG.info("Resuming {} of stream {}", paused, name);
+                consumer.resume(new ArrayList<>(paused));
+                pausedPartitions.dec(paused.size());
+                paused.clear();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (accounts.remove(this)) {
+                usedBytes.addAndGet(-bufferedBytes.getAndSet(0));
+                pausedPartitions.dec(paused.size());
+                paused.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.zalando.nakadi.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when the stream is reading its consumer next time. Reading is started right away once the consumer (or
+ * the output of the stream) notifies, that there is something to do, and not later than the deadline of the stream
+ * (e.g. the next batch flush). Consumers, that are not notifying about all the events, are polled with the delay,
+ * that grows from {@code minIdleMs} up to {@code maxIdleMs} while nothing is read. Idle streams are waking up at
+ * least every {@code maxIdleMs} anyway, as closed connections and blocked consumption are only checked on reading.
+ */
+public class StreamPollScheduler {
+
+    /**
+     * Schedules runnable in the executor of the stream after the delay.
+     */
+    public interface DelayedExecutor {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private final Executor executor;
+    private final DelayedExecutor delayedExecutor;
+    private final Runnable poll;
+    private final long minIdleMs;
+    private final long maxIdleMs;
+    private final AtomicBoolean pollQueued = new AtomicBoolean(false);
+    private final AtomicLong polls = new AtomicLong();
+    // Accessed by the thread of the stream only
+    private long idleMs;
+
+    public StreamPollScheduler(final Executor executor, final DelayedExecutor delayedExecutor, final Runnable poll,
+                               final long minIdleMs, final long maxIdleMs) {
+        this.executor = executor;
+        this.delayedExecutor = delayedExecutor;
+        this.poll = poll;
+        this.minIdleMs = minIdleMs;
+        this.maxIdleMs = Math.max(minIdleMs, maxIdleMs);
+        this.idleMs = minIdleMs;
+    }
+
+    /**
+     * Reads the consumer as soon as possible. Could be called from any thread, several calls before the reading
+     * starts are resulting in one reading.
+     */
+    public void pollNow() {
+        if (pollQueued.compareAndSet(false, true)) {
+            executor.execute(this::runPoll);
+        }
+    }
+
+    private void runPoll() {
+        pollQueued.set(false);
+        // Delayed polls, that were scheduled before, are not needed anymore
+        polls.incrementAndGet();
+        poll.run();
+    }
+
+    /**
+     * Schedules next reading, once the stream processed everything, that was read.
+     *
+     * @param eventsRead      whether the last reading returned any events
+     * @param pollingRequired whether the consumer has to be polled to get new events
+     * @param deadline        time in millis, when the stream should be woken up the latest
+     */
+    public void scheduleNext(final boolean eventsRead, final boolean pollingRequired, final long deadline) {
+        if (eventsRead) {
+            idleMs = minIdleMs;
+            pollNow();
+            return;
+        }
+        long delay = pollingRequired ? idleMs : maxIdleMs;
+        if (pollingRequired) {
+            idleMs = Math.min(Math.max(idleMs * 2, 1), maxIdleMs);
+        }
+        delay = Math.max(0, Math.min(delay, deadline - System.currentTimeMillis()));
+        final long pollsBefore = polls.get();
+        delayedExecutor.schedule(() -> {
+            if (polls.get() == pollsBefore) {
+                pollNow();
+            }
+        }, delay);
+    }
+}
@@ -0,0 +1,61 @@
+package org.zalando.nakadi.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.util.FlowIdUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Small node-wide pool of threads, that is running all the open streams (both low-level and subscription ones).
+ * Each stream is processing its tasks in {@link SerialExecutor}, so the amount of threads is not depending on the
+ * amount of connections, and tasks of one stream are still executed one after another. Tasks, that are waiting for
+ * zookeeper or other remote systems, are run on the separate pool of blocking threads.
+ */
+@Component
+public class StreamingScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final ExecutorService blockingExecutor;
+    private final int threads;
+
+    @Autowired
+    public StreamingScheduler(@Value("${nakadi.stream.scheduler.threads}") final int threads,
+                              @Value("${nakadi.stream.scheduler.blockingThreads}") final int blockingThreads) {
+        this.threads = threads;
+        this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactoryBuilder()
+                .setNameFormat("streaming-scheduler-%d")
+                .setDaemon(true)
+                .build());
+        this.blockingExecutor = Executors.newFixedThreadPool(blockingThreads, new ThreadFactoryBuilder()
+                .setNameFormat("streaming-blocking-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Creates executor for one stream. Security context and flow id of the calling thread are captured, and are
+     * available to all the tasks of the stream, as they were while streaming in a request thread.
+     */
+    public SerialExecutor createSerialExecutor() {
+        return new SerialExecutor(
+                executor, blockingExecutor, SecurityContextHolder.getContext(), FlowIdUtils.peek());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        blockingExecutor.shutdownNow();
+    }
+}
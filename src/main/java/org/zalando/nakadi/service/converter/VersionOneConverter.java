@@ -104,10 +104,14 @@ class VersionOneConverter implements VersionedConverter {
         // version - 3 symbols
         // order - 4 symbols
         // offset data - everything else
-        return String.format(
-                "%s-%04x-%s",
-                CursorConverter.Version.ONE.code,
-                nakadiCursor.getTimeline().getOrder(),
-                nakadiCursor.getOffset());
+        final String order = Integer.toHexString(nakadiCursor.getTimeline().getOrder());
+        final String offset = nakadiCursor.getOffset();
+        final StringBuilder result = new StringBuilder(
+                CursorConverter.VERSION_LENGTH + TIMELINE_ORDER_LENGTH + offset.length() + 2);
+        result.append(CursorConverter.Version.ONE.code).append('-');
+        for (int i = order.length(); i < TIMELINE_ORDER_LENGTH; ++i) {
+            result.append('0');
+        }
+        return result.append(order).append('-').append(offset).toString();
     }
 }
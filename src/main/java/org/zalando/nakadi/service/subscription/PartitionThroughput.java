@@ -0,0 +1,57 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Meter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.EventTypePartition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes per second streamed from partitions of subscriptions by the streams of this node. Rates are used by
+ * rebalance to distribute partitions by the load they produce instead of by count. Rates of partitions that were not
+ * streamed by the node for a while are forgotten.
+ */
+@Component
+public class PartitionThroughput {
+
+    private static final long STALE_AFTER_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private final Map<String, Map<EventTypePartition, Rate>> rates = new ConcurrentHashMap<>();
+
+    public void record(final String subscriptionId, final EventTypePartition partition, final long bytes) {
+        rates.computeIfAbsent(subscriptionId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(partition, p -> new Rate())
+                .mark(bytes);
+    }
+
+    /**
+     * @return bytes per second streamed from the partition over the last minute, or 0 if the partition was not
+     * streamed by the node recently
+     */
+    public double getBytesPerSecond(final String subscriptionId, final EventTypePartition partition) {
+        final Map<EventTypePartition, Rate> subscriptionRates = rates.get(subscriptionId);
+        final Rate rate = null == subscriptionRates ? null : subscriptionRates.get(partition);
+        return null == rate ? 0 : rate.meter.getOneMinuteRate();
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void removeStale() {
+        final long staleBefore = System.currentTimeMillis() - STALE_AFTER_MS;
+        rates.values().forEach(subscriptionRates ->
+                subscriptionRates.values().removeIf(rate -> rate.lastMarked < staleBefore));
+        rates.values().removeIf(Map::isEmpty);
+    }
+
+    private static class Rate {
+        private final Meter meter = new Meter();
+        private volatile long lastMarked;
+
+        private void mark(final long bytes) {
+            meter.mark(bytes);
+            lastMarked = System.currentTimeMillis();
+        }
+    }
+}
@@ -17,6 +17,8 @@ import org.zalando.nakadi.service.CursorTokenService;
 import org.zalando.nakadi.service.EventStreamWriter;
 import org.zalando.nakadi.service.EventTypeChangeListener;
 import org.zalando.nakadi.service.NakadiKpiPublisher;
+import org.zalando.nakadi.service.StreamMemoryGovernor;
+import org.zalando.nakadi.service.SerialExecutor;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.model.Session;
 import org.zalando.nakadi.service.subscription.state.CleanupState;
@@ -32,9 +34,8 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
@@ -49,13 +50,14 @@ public class StreamingContext implements SubscriptionStreamer {
     private final ZkSubscriptionClient zkClient;
     private final SubscriptionOutput out;
     private final long kafkaPollTimeout;
+    private final long maxIdlePollMs;
     private final AtomicBoolean connectionReady;
     private final TimelineService timelineService;
     private final CursorTokenService cursorTokenService;
     private final ObjectMapper objectMapper;
     private final BlacklistService blacklistService;
-    private final ScheduledExecutorService timer;
-    private final BlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>();
+    private final SerialExecutor executor;
+    private final CompletableFuture<Void> streamingFinished = new CompletableFuture<>();
     private final BiFunction<Collection<Session>, Partition[], Partition[]> rebalancer;
     private final CursorConverter cursorConverter;
     private final Subscription subscription;
@@ -70,6 +72,8 @@ public class StreamingContext implements SubscriptionStreamer {
     private final long kpiCollectionFrequencyMs;
 
     private final long streamMemoryLimitBytes;
+    private final StreamMemoryGovernor memoryGovernor;
+    private final PartitionThroughput partitionThroughput;
 
     private State currentState = new DummyState();
     private ZkSubscription<List<String>> sessionListSubscription;
@@ -82,9 +86,10 @@ public class StreamingContext implements SubscriptionStreamer {
         this.parameters = builder.parameters;
         this.session = builder.session;
         this.rebalancer = builder.rebalancer;
-        this.timer = builder.timer;
+        this.executor = builder.executor;
         this.zkClient = builder.zkClient;
         this.kafkaPollTimeout = builder.kafkaPollTimeout;
+        this.maxIdlePollMs = builder.maxIdlePollMs;
         this.log = LoggerFactory.getLogger(LogPathBuilder.build(builder.subscription.getId(), builder.session.getId()));
         this.connectionReady = builder.connectionReady;
         this.timelineService = builder.timelineService;
@@ -102,6 +107,8 @@ public class StreamingContext implements SubscriptionStreamer {
         this.kpiDataStreamedEventType = builder.kpiDataStremedEventType;
         this.kpiCollectionFrequencyMs = builder.kpiCollectionFrequencyMs;
         this.streamMemoryLimitBytes = builder.streamMemoryLimitBytes;
+        this.memoryGovernor = builder.memoryGovernor;
+        this.partitionThroughput = builder.partitionThroughput;
     }
 
     public TimelineService getTimelineService() {
@@ -128,6 +135,10 @@ public class StreamingContext implements SubscriptionStreamer {
         return kafkaPollTimeout;
     }
 
+    public long getMaxIdlePollMs() {
+        return maxIdlePollMs;
+    }
+
     public CursorConverter getCursorConverter() {
         return cursorConverter;
     }
@@ -157,15 +168,17 @@ public class StreamingContext implements SubscriptionStreamer {
     }
 
     @Override
-    public void stream() throws InterruptedException {
-        try (Closeable ignore = ShutdownHooks.addHook(this::onNodeShutdown)) { // bugfix ARUHA-485
-            streamInternal(new StartingState());
-        } catch (final IOException ex) {
-            log.error(
-                    "Failed to delete shutdown hook for subscription {}. This method should not throw any exception",
-                    getSubscription(),
-                    ex);
-        }
+    public CompletableFuture<Void> stream() {
+        final Closeable shutdownHook = ShutdownHooks.addHook(this::onNodeShutdown); // bugfix ARUHA-485
+        return startStreaming(new StartingState()).whenComplete((ignore, ignoreEx) -> {
+            try {
+                shutdownHook.close();
+            } catch (final IOException ex) {
+                log.error(
+                        "Failed to delete shutdown hook for subscription {}. This method should not throw any " +
+                                "exception", getSubscription(), ex);
+            }
+        });
     }
 
     void onNodeShutdown() {
@@ -173,24 +186,39 @@ public class StreamingContext implements SubscriptionStreamer {
         switchState(new CleanupState(null));
     }
 
+    /**
+     * Blocks calling thread until streaming, that is started from {@code firstState}, is finished.
+     */
     void streamInternal(final State firstState) throws InterruptedException {
+        try {
+            startStreaming(firstState).get();
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException("Streaming is never finished exceptionally", ex);
+        }
+    }
+
+    private CompletableFuture<Void> startStreaming(final State firstState) {
         // Add first task - switch to starting state.
         switchState(firstState);
+        return streamingFinished;
+    }
 
-        while (currentState != DEAD_STATE) {
-            // Wait forever
-            final Runnable task = taskQueue.poll(1, TimeUnit.HOURS);
-            try {
-                if (task != null) {
-                    task.run();
-                }
-            } catch (final NakadiRuntimeException ex) {
-                log.error("Failed to process task " + task + ", will rethrow original error", ex);
-                switchState(new CleanupState(ex.getException()));
-            } catch (final RuntimeException ex) {
-                log.error("Failed to process task " + task + ", code carefully!", ex);
-                switchState(new CleanupState(ex));
-            }
+    private void processTask(final Runnable task) {
+        if (currentState == DEAD_STATE) {
+            // Streaming is already finished, tasks that are left are not relevant anymore.
+            return;
+        }
+        try {
+            task.run();
+        } catch (final NakadiRuntimeException ex) {
+            log.error("Failed to process task " + task + ", will rethrow original error", ex);
+            switchState(new CleanupState(ex.getException()));
+        } catch (final RuntimeException ex) {
+            log.error("Failed to process task " + task + ", code carefully!", ex);
+            switchState(new CleanupState(ex));
+        }
+        if (currentState == DEAD_STATE) {
+            streamingFinished.complete(null);
         }
     }
 
@@ -236,12 +264,27 @@ public class StreamingContext implements SubscriptionStreamer {
         return currentState == state;
     }
 
+    /**
+     * Adds task, that may wait for zookeeper or other remote systems. Such tasks are run on the blocking pool of the
+     * executor, so that the threads streaming events are not waiting for them.
+     */
     public void addTask(final Runnable task) {
-        taskQueue.offer(task);
+        executor.executeBlocking(() -> processTask(task));
     }
 
     public void scheduleTask(final Runnable task, final long timeout, final TimeUnit unit) {
-        timer.schedule(() -> this.addTask(task), timeout, unit);
+        executor.scheduleBlocking(() -> processTask(task), timeout, unit);
+    }
+
+    /**
+     * Adds task, that is only reading events and writing them to the output, without blocking on anything.
+     */
+    public void addStreamingTask(final Runnable task) {
+        executor.execute(() -> processTask(task));
+    }
+
+    public void scheduleStreamingTask(final Runnable task, final long timeout, final TimeUnit unit) {
+        executor.schedule(() -> processTask(task), timeout, unit);
     }
 
     public boolean isConnectionReady() {
@@ -305,7 +348,8 @@ public class StreamingContext implements SubscriptionStreamer {
         Preconditions.checkArgument(authorizationCheckSubscription == null);
         // In case of Authorization exception there will be a switch to CleanupState, cause it is a generic rule
         // for each task - switch to CleanupState with exception as a parameter
-        // The reason for adding task is to execute this check on thread that still owns security context.
+        // The reason for adding task is to execute this check with security context of the stream, that is owned by
+        // the executor of the stream.
         authorizationCheckSubscription = eventTypeChangeListener.registerListener(
                 (eventType) -> addTask(this::checkAccessAuthorized), subscription.getEventTypes());
     }
@@ -323,14 +367,23 @@ public class StreamingContext implements SubscriptionStreamer {
         return streamMemoryLimitBytes;
     }
 
+    public StreamMemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    public PartitionThroughput getPartitionThroughput() {
+        return partitionThroughput;
+    }
+
     public static final class Builder {
         private SubscriptionOutput out;
         private StreamParameters parameters;
         private Session session;
-        private ScheduledExecutorService timer;
+        private SerialExecutor executor;
         private ZkSubscriptionClient zkClient;
         private BiFunction<Collection<Session>, Partition[], Partition[]> rebalancer;
         private long kafkaPollTimeout;
+        private long maxIdlePollMs;
         private AtomicBoolean connectionReady;
         private CursorTokenService cursorTokenService;
         private ObjectMapper objectMapper;
@@ -347,6 +400,8 @@ public class StreamingContext implements SubscriptionStreamer {
         private String kpiDataStremedEventType;
         private long kpiCollectionFrequencyMs;
         private long streamMemoryLimitBytes;
+        private StreamMemoryGovernor memoryGovernor;
+        private PartitionThroughput partitionThroughput;
 
         public Builder setOut(final SubscriptionOutput out) {
             this.out = out;
@@ -373,8 +428,8 @@ public class StreamingContext implements SubscriptionStreamer {
             return this;
         }
 
-        public Builder setTimer(final ScheduledExecutorService timer) {
-            this.timer = timer;
+        public Builder setExecutor(final SerialExecutor executor) {
+            this.executor = executor;
             return this;
         }
 
@@ -393,6 +448,11 @@ public class StreamingContext implements SubscriptionStreamer {
             return this;
         }
 
+        public Builder setMaxIdlePollMs(final long maxIdlePollMs) {
+            this.maxIdlePollMs = maxIdlePollMs;
+            return this;
+        }
+
         public Builder setConnectionReady(final AtomicBoolean connectionReady) {
             this.connectionReady = connectionReady;
             return this;
@@ -463,6 +523,16 @@ public class StreamingContext implements SubscriptionStreamer {
             return this;
         }
 
+        public Builder setMemoryGovernor(final StreamMemoryGovernor memoryGovernor) {
+            this.memoryGovernor = memoryGovernor;
+            return this;
+        }
+
+        public Builder setPartitionThroughput(final PartitionThroughput partitionThroughput) {
+            this.partitionThroughput = partitionThroughput;
+            return this;
+        }
+
         public StreamingContext build() {
             return new StreamingContext(this);
         }
@@ -0,0 +1,398 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.PartitionEndStatistics;
+import org.zalando.nakadi.domain.Subscription;
+import org.zalando.nakadi.domain.SubscriptionEventTypeStats;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
+import org.zalando.nakadi.exceptions.runtime.InvalidCursorOperation;
+import org.zalando.nakadi.exceptions.runtime.NakadiBaseException;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.service.CursorConverter;
+import org.zalando.nakadi.service.CursorOperationsService;
+import org.zalando.nakadi.service.subscription.model.Partition;
+import org.zalando.nakadi.service.subscription.zk.SubscriptionClientFactory;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionNode;
+import org.zalando.nakadi.service.timeline.TimelineService;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps consumer lag of subscriptions, that were asked for recently, computed in background. End offsets of all the
+ * event types of tracked subscriptions are loaded once per interval, and are joined with committed offsets, that are
+ * kept in memory and refreshed from zookeeper only after watches report that they were changed. Subscriptions that
+ * were not asked for during idle time stop being tracked. Besides the stats, unconsumed events and time lag of every
+ * tracked subscription are exposed as gauges.
+ * <p>
+ * Setting up tracking of a subscription takes several zookeeper reads, so only {@code maxSetupsPerRequest} new
+ * subscriptions are set up by the request that asked for them, the rest are set up in background and are reported as
+ * not computed until then.
+ */
+@Component
+public class SubscriptionLagCalculator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionLagCalculator.class);
+
+    private final SubscriptionClientFactory subscriptionClientFactory;
+    private final TimelineService timelineService;
+    private final CursorConverter cursorConverter;
+    private final CursorOperationsService cursorOperationsService;
+    private final MetricRegistry metricRegistry;
+    private final long idleMs;
+    private final int maxSetupsPerRequest;
+    private final Map<String, TrackedSubscription> tracked = new ConcurrentHashMap<>();
+    private final ExecutorService setupExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("subscription-lag-setup").setDaemon(true).build());
+
+    @Autowired
+    public SubscriptionLagCalculator(final SubscriptionClientFactory subscriptionClientFactory,
+                                     final TimelineService timelineService,
+                                     final CursorConverter cursorConverter,
+                                     final CursorOperationsService cursorOperationsService,
+                                     final MetricRegistry metricRegistry,
+                                     @Value("${nakadi.subscription.lag.idleMs}") final long idleMs,
+                                     @Value("${nakadi.subscription.lag.maxSetupsPerRequest}")
+                                     final int maxSetupsPerRequest) {
+        this.subscriptionClientFactory = subscriptionClientFactory;
+        this.timelineService = timelineService;
+        this.cursorConverter = cursorConverter;
+        this.cursorOperationsService = cursorOperationsService;
+        this.metricRegistry = metricRegistry;
+        this.idleMs = idleMs;
+        this.maxSetupsPerRequest = maxSetupsPerRequest;
+    }
+
+    /**
+     * Returns stats of the subscriptions as they were computed last time. Subscriptions that are not tracked yet
+     * start being tracked, and stats of up to {@code maxSetupsPerRequest} of them are computed right away.
+     *
+     * @return stats by subscription id, subscriptions which stats are not computed yet are missing
+     */
+    public Map<String, List<SubscriptionEventTypeStats>> getStats(final Collection<Subscription> subscriptions)
+            throws ServiceTemporarilyUnavailableException {
+        final long now = System.currentTimeMillis();
+        final List<TrackedSubscription> added = new ArrayList<>();
+        final Map<String, TrackedSubscription> requested = new HashMap<>();
+        for (final Subscription subscription : subscriptions) {
+            TrackedSubscription item = tracked.get(subscription.getId());
+            if (null == item) {
+                item = startTracking(subscription);
+                if (null == tracked.putIfAbsent(subscription.getId(), item)) {
+                    added.add(item);
+                } else {
+                    item = tracked.get(subscription.getId());
+                }
+            }
+            item.lastAccess = now;
+            requested.put(subscription.getId(), item);
+        }
+        if (!added.isEmpty()) {
+            added.forEach(TrackedSubscription::registerMetrics);
+            final List<TrackedSubscription> setUpNow =
+                    new ArrayList<>(added.subList(0, Math.min(added.size(), maxSetupsPerRequest)));
+            final List<TrackedSubscription> later = new ArrayList<>(added.subList(setUpNow.size(), added.size()));
+            if (!setUpNow.isEmpty()) {
+                refresh(setUpNow, loadEndPositions(setUpNow));
+            }
+            if (!later.isEmpty()) {
+                setupExecutor.execute(() -> {
+                    try {
+                        refresh(later, loadEndPositions(later));
+                    } catch (final RuntimeException e) {
+                        // Stats are computed with the next scheduled refresh
+                        LOG.warn("Failed to compute lag of {} new subscriptions", later.size(), e);
+                    }
+                });
+            }
+        }
+
+        final Map<String, List<SubscriptionEventTypeStats>> result = new HashMap<>();
+        requested.forEach((id, item) -> {
+            final List<SubscriptionEventTypeStats> stats = item.stats;
+            if (null != stats) {
+                result.put(id, stats);
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        setupExecutor.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${nakadi.subscription.lag.intervalMs}")
+    public void refresh() {
+        final long idleSince = System.currentTimeMillis() - idleMs;
+        final Iterator<TrackedSubscription> it = tracked.values().iterator();
+        while (it.hasNext()) {
+            final TrackedSubscription item = it.next();
+            if (item.lastAccess < idleSince) {
+                it.remove();
+                item.close();
+            }
+        }
+        if (tracked.isEmpty()) {
+            return;
+        }
+        final List<TrackedSubscription> toRefresh = new ArrayList<>(tracked.values());
+        try {
+            refresh(toRefresh, loadEndPositions(toRefresh));
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to refresh lag of {} subscriptions", toRefresh.size(), e);
+        }
+    }
+
+    @VisibleForTesting
+    int getTrackedCount() {
+        return tracked.size();
+    }
+
+    private TrackedSubscription startTracking(final Subscription subscription)
+            throws ServiceTemporarilyUnavailableException {
+        try {
+            return new TrackedSubscription(subscription, subscriptionClientFactory.createClient(
+                    subscription, LogPathBuilder.build(subscription.getId(), "lag")));
+        } catch (final InternalNakadiException | NoSuchEventTypeException e) {
+            throw new ServiceTemporarilyUnavailableException(e);
+        }
+    }
+
+    /**
+     * Loads end positions of active timelines of all the event types of subscriptions, once per storage.
+     *
+     * @return end positions of partitions by event type
+     */
+    private Map<String, List<NakadiCursor>> loadEndPositions(final Collection<TrackedSubscription> items)
+            throws ServiceTemporarilyUnavailableException {
+        final Set<String> eventTypes = items.stream()
+                .flatMap(item -> item.subscription.getEventTypes().stream())
+                .collect(Collectors.toSet());
+        final Map<TopicRepository, List<Timeline>> timelinesByRepo = new HashMap<>();
+        for (final String eventType : eventTypes) {
+            try {
+                final Timeline timeline = timelineService.getActiveTimeline(eventType);
+                timelinesByRepo.computeIfAbsent(timelineService.getTopicRepository(timeline), r -> new ArrayList<>())
+                        .add(timeline);
+            } catch (final NakadiBaseException | NakadiRuntimeException e) {
+                LOG.warn("Failed to get active timeline of {}, lag of its subscriptions is not computed", eventType, e);
+            }
+        }
+        final Map<String, List<NakadiCursor>> result = new HashMap<>();
+        for (final Map.Entry<TopicRepository, List<Timeline>> entry : timelinesByRepo.entrySet()) {
+            for (final PartitionEndStatistics stats : entry.getKey().loadTopicEndStatistics(entry.getValue())) {
+                result.computeIfAbsent(stats.getLast().getEventType(), et -> new ArrayList<>()).add(stats.getLast());
+            }
+        }
+        return result;
+    }
+
+    private void refresh(final Collection<TrackedSubscription> items,
+                         final Map<String, List<NakadiCursor>> endPositions) {
+        for (final TrackedSubscription item : items) {
+            try {
+                item.refresh(endPositions);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to refresh lag of subscription {}", item.subscription.getId(), e);
+            }
+        }
+    }
+
+    @Nullable
+    private Long computeDistance(@Nullable final NakadiCursor committed, final NakadiCursor last) {
+        if (null == committed) {
+            return null;
+        }
+        try {
+            return cursorOperationsService.calculateDistance(committed, last);
+        } catch (final InvalidCursorOperation e) {
+            LOG.warn("Failed to calculate distance between {} and {}", committed, last, e);
+            return null;
+        }
+    }
+
+    /**
+     * Time lag is known when there is nothing to consume, or when it can be estimated without reading events.
+     */
+    @Nullable
+    private Long computeTimeLagSeconds(@Nullable final NakadiCursor committed, @Nullable final Long distance) {
+        if (null == committed || null == distance) {
+            return null;
+        }
+        if (distance <= 0) {
+            return 0L;
+        }
+        return timelineService.getTopicRepository(committed.getTimeline())
+                .estimateNextEventTimestamp(committed)
+                .map(timestamp -> TimeUnit.MILLISECONDS.toSeconds(
+                        Math.max(0, System.currentTimeMillis() - timestamp)))
+                .orElse(null);
+    }
+
+    private class TrackedSubscription {
+        private final Subscription subscription;
+        private final ZkSubscriptionClient client;
+        private final String unconsumedEventsMetric;
+        private final String timeLagMetric;
+        private final Map<EventTypePartition, ZkSubscription<SubscriptionCursorWithoutToken>> offsets =
+                new HashMap<>();
+        private volatile long lastAccess;
+        private volatile boolean nodeChanged = true;
+        // Not computed yet while null
+        @Nullable
+        private volatile List<SubscriptionEventTypeStats> stats;
+        private volatile long unconsumedEvents;
+        private volatile long timeLagSeconds;
+        // Guarded by this
+        private ZkSubscription<ZkSubscriptionClient.Topology> topology;
+        private ZkSubscription<List<String>> sessions;
+        private Optional<ZkSubscriptionNode> node = Optional.empty();
+
+        private TrackedSubscription(final Subscription subscription, final ZkSubscriptionClient client) {
+            this.subscription = subscription;
+            this.client = client;
+            this.unconsumedEventsMetric =
+                    MetricRegistry.name("nakadi.subscriptions", subscription.getId(), "unconsumed_events");
+            this.timeLagMetric = MetricRegistry.name("nakadi.subscriptions", subscription.getId(), "time_lag_seconds");
+        }
+
+        private void registerMetrics() {
+            metricRegistry.remove(unconsumedEventsMetric);
+            metricRegistry.register(unconsumedEventsMetric, (Gauge<Long>) () -> unconsumedEvents);
+            metricRegistry.remove(timeLagMetric);
+            metricRegistry.register(timeLagMetric, (Gauge<Long>) () -> timeLagSeconds);
+        }
+
+        private synchronized void refresh(final Map<String, List<NakadiCursor>> endPositions) {
+            if (nodeChanged) {
+                refreshNode();
+            }
+            final Map<EventTypePartition, NakadiCursor> committed = loadCommitted();
+
+            final List<SubscriptionEventTypeStats> result = new ArrayList<>();
+            long totalUnconsumed = 0;
+            long maxTimeLag = 0;
+            for (final String eventType : new TreeSet<>(subscription.getEventTypes())) {
+                final List<SubscriptionEventTypeStats.Partition> partitions = new ArrayList<>();
+                for (final NakadiCursor last : endPositions.getOrDefault(eventType, Collections.emptyList())) {
+                    final NakadiCursor committedCursor = committed.get(last.getEventTypePartition());
+                    final Long distance = computeDistance(committedCursor, last);
+                    final Long timeLag = computeTimeLagSeconds(committedCursor, distance);
+                    totalUnconsumed += null == distance ? 0 : Math.max(0, distance);
+                    maxTimeLag = Math.max(maxTimeLag, null == timeLag ? 0 : timeLag);
+                    partitions.add(SubscriptionService.createPartitionStats(
+                            node, eventType, last.getPartition(), distance, timeLag));
+                }
+                partitions.sort(Comparator.comparing(SubscriptionEventTypeStats.Partition::getPartition));
+                result.add(new SubscriptionEventTypeStats(eventType, partitions));
+            }
+            stats = result;
+            unconsumedEvents = totalUnconsumed;
+            timeLagSeconds = maxTimeLag;
+        }
+
+        /**
+         * Reloads topology and sessions, and starts watching offsets of partitions that appeared in topology.
+         * Watches of topology and sessions are only marking that node has changed, they are rearmed with the next
+         * read of the data.
+         */
+        private void refreshNode() {
+            nodeChanged = false;
+            node = client.getZkSubscriptionNode();
+            if (!node.isPresent()) {
+                // Not initialized yet, there is nothing to watch
+                nodeChanged = true;
+                return;
+            }
+            if (null == topology) {
+                topology = client.subscribeForTopologyChanges(() -> nodeChanged = true);
+                sessions = client.subscribeForSessionListChanges(() -> nodeChanged = true);
+            } else {
+                topology.getData();
+                sessions.getData();
+            }
+            final Set<EventTypePartition> keys = node.get().getPartitions().stream()
+                    .map(Partition::getKey)
+                    .collect(Collectors.toCollection(HashSet::new));
+            final Iterator<Map.Entry<EventTypePartition, ZkSubscription<SubscriptionCursorWithoutToken>>> it =
+                    offsets.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<EventTypePartition, ZkSubscription<SubscriptionCursorWithoutToken>> entry = it.next();
+                if (!keys.remove(entry.getKey())) {
+                    entry.getValue().close();
+                    it.remove();
+                }
+            }
+            // Offsets are reread on the next refresh after they were changed, so no need to react on changes
+            keys.forEach(key -> offsets.put(key, client.subscribeForOffsetChanges(key, () -> {
+            })));
+        }
+
+        private Map<EventTypePartition, NakadiCursor> loadCommitted() {
+            final Map<EventTypePartition, NakadiCursor> result = new HashMap<>();
+            final Iterator<Map.Entry<EventTypePartition, ZkSubscription<SubscriptionCursorWithoutToken>>> it =
+                    offsets.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<EventTypePartition, ZkSubscription<SubscriptionCursorWithoutToken>> entry = it.next();
+                try {
+                    result.put(entry.getKey(), cursorConverter.convert(entry.getValue().getData()));
+                } catch (final NakadiBaseException | NakadiRuntimeException e) {
+                    LOG.warn("Failed to load committed offset of {} for subscription {}",
+                            entry.getKey(), subscription.getId(), e);
+                    // offsets could be moved to another store, so the offset is watched again on the next refresh
+                    entry.getValue().close();
+                    it.remove();
+                    nodeChanged = true;
+                }
+            }
+            return result;
+        }
+
+        private synchronized void close() {
+            metricRegistry.remove(unconsumedEventsMetric);
+            metricRegistry.remove(timeLagMetric);
+            offsets.values().forEach(ZkSubscription::close);
+            offsets.clear();
+            if (null != topology) {
+                topology.close();
+                sessions.close();
+            }
+        }
+    }
+}
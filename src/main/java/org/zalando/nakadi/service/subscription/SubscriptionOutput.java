@@ -9,4 +9,15 @@ public interface SubscriptionOutput {
     void onException(Exception ex);
 
     OutputStream getOutputStream();
+
+    /**
+     * @return true if the client is not reading the data as fast as it is written, so that no more events should be
+     * read until writable listener is called
+     */
+    default boolean isBackpressured() {
+        return false;
+    }
+
+    default void setWritableListener(final Runnable listener) {
+    }
 }
@@ -1,153 +1,249 @@
 package org.zalando.nakadi.service.subscription;
 
-import com.google.common.collect.Lists;
 import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.exceptions.runtime.RebalanceConflictException;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.model.Session;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.BiFunction;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
+/**
+ * Distributes partitions between sessions proportionally to the weight of sessions and to the load of partitions.
+ * Load of a partition is its throughput in bytes per second, partitions with unknown throughput are considered to be
+ * as loaded as an average partition with known throughput, or all equal if nothing is known.
+ * <p>
+ * Rebalance is sticky: partitions stay with the sessions they are assigned to, partitions of sessions that are gone
+ * are handed to the least loaded sessions, and after that partitions are moved from the most loaded session to the
+ * least loaded one only while the least loaded one stays below the most loaded one by more than {@link #TOLERANCE} of
+ * the average load. It takes O(P * log(P)) for P partitions, instead of O(P^2) of count based rebalance.
+ */
 class SubscriptionRebalancer implements BiFunction<Collection<Session>, Partition[], Partition[]> {
 
+    /**
+     * Share of average load per weight unit, that moving a partition has to gain to be worth it.
+     */
+    static final double TOLERANCE = 0.1;
+    /**
+     * Share of average load, that a partition with known throughput is considered to have at least, as every
+     * streamed partition costs something even without events.
+     */
+    private static final double MIN_LOAD_SHARE = 0.1;
+
+    private final ToDoubleFunction<EventTypePartition> throughput;
+
+    SubscriptionRebalancer() {
+        this(partition -> 0);
+    }
+
+    /**
+     * @param throughput bytes per second of the partition, or 0 if it is not known
+     */
+    SubscriptionRebalancer(final ToDoubleFunction<EventTypePartition> throughput) {
+        this.throughput = throughput;
+    }
+
     @Override
     public Partition[] apply(final Collection<Session> sessions, final Partition[] currentPartitions) {
 
-        final List<String> activeSessions = sessions.stream()
+        final Set<String> activeSessions = sessions.stream()
                 .map(Session::getId)
-                .collect(Collectors.toList());
-        final List<Partition> partitionsLeft = Lists.newArrayList(currentPartitions);
+                .collect(Collectors.toSet());
+        final Map<EventTypePartition, Partition> partitionsLeft = new LinkedHashMap<>();
+        for (final Partition partition : currentPartitions) {
+            partitionsLeft.put(partition.getKey(), partition);
+        }
         final List<Partition> changedPartitions = new ArrayList<>();
 
-        final List<Session> sessionsWithSpecifiedPartitions = sessions.stream()
-                .filter(s -> !s.getRequestedPartitions().isEmpty())
-                .collect(Collectors.toList());
-
         // go through all sessions that directly requested partitions to stream
-        for (final Session session : sessionsWithSpecifiedPartitions) {
+        for (final Session session : sessions) {
             for (final EventTypePartition requestedPartition : session.getRequestedPartitions()) {
 
                 // find a partition that is requested and assign it to a session that requests it
-                final Partition partition = partitionsLeft.stream()
-                        .filter(p -> p.getKey().equals(requestedPartition))
-                        .findFirst()
-                        .orElseThrow(() -> new RebalanceConflictException(
-                                "Two existing sessions request the same partition: " + requestedPartition));
-                partitionsLeft.remove(partition);
+                final Partition partition = partitionsLeft.remove(requestedPartition);
+                if (null == partition) {
+                    throw new RebalanceConflictException(
+                            "Two existing sessions request the same partition: " + requestedPartition);
+                }
 
                 // if this partition is not assigned to this session - move it
                 if (!session.getId().equals(partition.getSession())) {
-                    final Partition movedPartition = partition.moveToSessionId(session.getId(), activeSessions);
-                    changedPartitions.add(movedPartition);
+                    changedPartitions.add(partition.moveToSessionId(session.getId(), activeSessions));
                 }
             }
         }
 
-        // for the rest of partitions/sessions perform a rebalance based on partitions count
+        // for the rest of partitions/sessions perform a rebalance based on partitions load
         final List<Session> autoBalanceSessions = sessions.stream()
                 .filter(s -> s.getRequestedPartitions().isEmpty())
                 .collect(Collectors.toList());
 
         if (!autoBalanceSessions.isEmpty() && !partitionsLeft.isEmpty()) {
-            final Partition[] partitionsChangedByAutoRebalance = rebalanceByWeight(
-                    autoBalanceSessions,
-                    partitionsLeft.toArray(new Partition[partitionsLeft.size()]));
-            changedPartitions.addAll(Arrays.asList(partitionsChangedByAutoRebalance));
+            changedPartitions.addAll(rebalanceByLoad(autoBalanceSessions, partitionsLeft.values(), activeSessions));
         }
         return changedPartitions.toArray(new Partition[changedPartitions.size()]);
     }
 
-    private Partition[] rebalanceByWeight(final Collection<Session> sessions, final Partition[] currentPartitions) {
-        final Map<String, Integer> activeSessionWeights = sessions.stream()
-                .collect(Collectors.toMap(Session::getId, Session::getWeight));
-        // sorted session ids.
-        final List<String> activeSessionIds = activeSessionWeights.keySet().stream().sorted()
-                .collect(Collectors.toList());
-        // the main part of rebalance - calculate count for each partition.
-        final int[] partitionsPerSession = splitByWeight(
-                currentPartitions.length,
-                activeSessionIds.stream().mapToInt(activeSessionWeights::get).toArray());
-
-        // Stage 1. Select partitions that are not assigned to any EXISTING session.
-        final List<Partition> toRebalance = Stream.of(currentPartitions)
-                .filter(p -> p.mustBeRebalanced(activeSessionIds))
-                .collect(Collectors.toList());
-
-        // State 2. Remove partitions from sessions that have too many of them.
-        // 2.1. collect information per session.
-        final Map<String, List<Partition>> partitions = Stream.of(currentPartitions)
-                .filter(p -> !toRebalance.contains(p))
-                .collect(Collectors.groupingBy(Partition::getEffectiveSession));
-        // 2.2. Remove
-        for (int idx = 0; idx < activeSessionIds.size(); ++idx) {
-            final String sessionId = activeSessionIds.get(idx);
-            final int suggestedCount = partitionsPerSession[idx];
-            int toTake = (partitions.containsKey(sessionId) ? partitions.get(sessionId).size() : 0) - suggestedCount;
-            while (toTake > 0) {
-                final List<Partition> candidates = partitions.get(sessionId);
-                final Partition toTakeItem = candidates.stream()
-                        .filter(p -> p.getState() == Partition.State.REASSIGNING)
-                        .findAny()
-                        .orElse(candidates.get(candidates.size() - 1));
-                candidates.remove(toTakeItem);
-                toRebalance.add(toTakeItem);
-                toTake -= 1;
+    private List<Partition> rebalanceByLoad(
+            final Collection<Session> sessions,
+            final Collection<Partition> partitions,
+            final Set<String> activeSessions) {
+        final Map<String, SessionLoad> sessionLoads = new HashMap<>();
+        for (final Session session : sessions) {
+            if (session.getWeight() <= 0) {
+                throw new IllegalArgumentException("Weight can not be below zero: " + session);
             }
+            sessionLoads.put(session.getId(), new SessionLoad(session.getId(), session.getWeight()));
+        }
+        final List<PartitionLoad> items = measure(partitions);
+        final double totalLoad = items.stream().mapToDouble(item -> item.load).sum();
+        final int totalWeight = sessions.stream().mapToInt(Session::getWeight).sum();
+        final double minGain = TOLERANCE * totalLoad / totalWeight;
+
+        // Stage 1. Partitions stay with the sessions they are assigned to, others are to be assigned.
+        final List<PartitionLoad> toAssign = new ArrayList<>();
+        for (final PartitionLoad item : items) {
+            final SessionLoad owner = item.partition.mustBeRebalanced(activeSessions) ?
+                    null : sessionLoads.get(item.partition.getEffectiveSession());
+            if (null == owner) {
+                toAssign.add(item);
+            } else {
+                owner.add(item);
+            }
+        }
+        final TreeSet<SessionLoad> byLoad = new TreeSet<>(SessionLoad.BY_LOAD);
+        byLoad.addAll(sessionLoads.values());
+
+        // Stage 2. Assign partitions to the least loaded sessions, the most loaded partitions first.
+        toAssign.sort(Comparator.comparingDouble((PartitionLoad item) -> item.load).reversed());
+        for (final PartitionLoad item : toAssign) {
+            final SessionLoad target = byLoad.pollFirst();
+            target.add(item);
+            byLoad.add(target);
         }
 
-        if (!toRebalance.isEmpty()) {
-            // 3. Assign partitions to any nodes who are waiting for it.
-            final List<Partition> result = new ArrayList<>();
-            for (int idx = 0; idx < activeSessionIds.size(); ++idx) {
-                final String sessionId = activeSessionIds.get(idx);
+        // Stage 3. Move partitions from the most loaded session to the least loaded one while it is worth it.
+        while (byLoad.size() > 1) {
+            final SessionLoad donor = byLoad.last();
+            final SessionLoad receiver = byLoad.first();
+            // receiver, that takes the partition, must stay noticeably less loaded than donor was
+            final double maxLoad = (donor.getLoadPerWeight() - minGain) * receiver.weight - receiver.load;
+            final PartitionLoad item = donor.partitions.floor(PartitionLoad.upperBound(maxLoad));
+            byLoad.remove(donor);
+            if (null == item) {
+                // Nothing can be taken from this session, e.g. it streams one hot partition, but the rest of
+                // sessions may still be balanced between each other.
+                continue;
+            }
+            byLoad.remove(receiver);
+            donor.remove(item);
+            receiver.add(item);
+            byLoad.add(donor);
+            byLoad.add(receiver);
+        }
 
-                final int suggestedCount = partitionsPerSession[idx];
-                final int currentCount = partitions.containsKey(sessionId) ? partitions.get(sessionId).size() : 0;
-                for (int i = 0; i < suggestedCount - currentCount; ++i) {
-                    final Partition toMove = toRebalance.iterator().next();
-                    toRebalance.remove(toMove);
-                    result.add(toMove.moveToSessionId(sessionId, activeSessionIds));
-                }
+        final List<Partition> result = new ArrayList<>();
+        for (final PartitionLoad item : items) {
+            if (!item.isKeptBy(activeSessions)) {
+                result.add(item.partition.moveToSessionId(item.session, activeSessions));
             }
-            return result.toArray(new Partition[result.size()]);
-        } else {
-            return new Partition[0];
         }
+        return result;
     }
 
-    static int[] splitByWeight(final int itemCount, final int[] weigths) {
-        if (itemCount < weigths.length) {
-            throw new IllegalArgumentException("Can not rebalance " + itemCount + " onto " + weigths.length);
+    private List<PartitionLoad> measure(final Collection<Partition> partitions) {
+        final double[] loads = new double[partitions.size()];
+        double knownLoad = 0;
+        int knownCount = 0;
+        int idx = 0;
+        for (final Partition partition : partitions) {
+            loads[idx] = Math.max(0, throughput.applyAsDouble(partition.getKey()));
+            if (loads[idx] > 0) {
+                knownLoad += loads[idx];
+                knownCount += 1;
+            }
+            idx += 1;
         }
-        if (IntStream.of(weigths).filter(w -> w <= 0).findAny().isPresent()) {
-            throw new IllegalArgumentException("Weight can not be below zero: " + Arrays.toString(weigths));
+        final double averageLoad = knownCount == 0 ? 1 : knownLoad / knownCount;
+        final List<PartitionLoad> result = new ArrayList<>(partitions.size());
+        idx = 0;
+        for (final Partition partition : partitions) {
+            final double load = loads[idx] > 0 ? Math.max(loads[idx], averageLoad * MIN_LOAD_SHARE) : averageLoad;
+            result.add(new PartitionLoad(idx, partition, load));
+            idx += 1;
         }
-        final int totalWeight = IntStream.of(weigths).sum();
-        final int fixed = itemCount / totalWeight;
-        final int[] result = IntStream.of(weigths).map(w -> fixed * w).toArray();
-        if (fixed == 0) {
-            Arrays.fill(result, 1);
+        return result;
+    }
+
+    private static class PartitionLoad {
+        /**
+         * Among partitions with the same load, partitions that are already being reassigned are the best ones to
+         * move again, as the session they are moved to did not start to stream them yet.
+         */
+        private static final Comparator<PartitionLoad> BY_LOAD = Comparator
+                .comparingDouble((PartitionLoad item) -> item.load)
+                .thenComparing(item -> item.partition.getState() == Partition.State.REASSIGNING)
+                .thenComparingInt(item -> item.index);
+
+        private final int index;
+        private final Partition partition;
+        private final double load;
+        private String session;
+
+        private PartitionLoad(final int index, final Partition partition, final double load) {
+            this.index = index;
+            this.partition = partition;
+            this.load = load;
         }
 
-        int left = itemCount - IntStream.of(result).sum();
+        private static PartitionLoad upperBound(final double load) {
+            return new PartitionLoad(Integer.MAX_VALUE,
+                    new Partition(null, null, null, null, Partition.State.REASSIGNING), load);
+        }
 
-        // Yes, it's bad way, I know. But failed to figure out other simple way for exact case.
-        while (left > 0) {
-            for (int i = 0; i < result.length && left > 0; ++i) {
-                final int v = Math.min(left, weigths[i]);
-                result[i] += v;
-                left -= v;
-            }
+        private boolean isKeptBy(final Set<String> activeSessions) {
+            return !partition.mustBeRebalanced(activeSessions) && session.equals(partition.getEffectiveSession());
         }
-        return result;
     }
 
+    private static class SessionLoad {
+        private static final Comparator<SessionLoad> BY_LOAD = Comparator
+                .comparingDouble(SessionLoad::getLoadPerWeight)
+                .thenComparing(session -> session.id);
+
+        private final String id;
+        private final int weight;
+        private final TreeSet<PartitionLoad> partitions = new TreeSet<>(PartitionLoad.BY_LOAD);
+        private double load;
+
+        private SessionLoad(final String id, final int weight) {
+            this.id = id;
+            this.weight = weight;
+        }
+
+        private double getLoadPerWeight() {
+            return load / weight;
+        }
+
+        private void add(final PartitionLoad item) {
+            partitions.add(item);
+            item.session = id;
+            load += item.load;
+        }
+
+        private void remove(final PartitionLoad item) {
+            partitions.remove(item);
+            load -= item.load;
+        }
+    }
 }
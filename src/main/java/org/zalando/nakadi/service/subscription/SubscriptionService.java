@@ -21,6 +21,7 @@ import org.zalando.nakadi.domain.PartitionEndStatistics;
 import org.zalando.nakadi.domain.Subscription;
 import org.zalando.nakadi.domain.SubscriptionBase;
 import org.zalando.nakadi.domain.SubscriptionEventTypeStats;
+import org.zalando.nakadi.domain.SubscriptionStats;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.Try;
 import org.zalando.nakadi.exceptions.runtime.DbWriteOperationsBlockedException;
@@ -65,6 +66,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -72,6 +74,7 @@ public class SubscriptionService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SubscriptionService.class);
     private static final UriComponentsBuilder SUBSCRIPTION_PATH = UriComponentsBuilder.fromPath("/subscriptions/{id}");
+    private static final int MAX_SUBSCRIPTIONS_IN_STATS = 1000;
 
     private final SubscriptionDbRepository subscriptionRepository;
     private final EventTypeRepository eventTypeRepository;
@@ -84,6 +87,7 @@ public class SubscriptionService {
     private final FeatureToggleService featureToggleService;
     private final String subLogEventType;
     private final SubscriptionTimeLagService subscriptionTimeLagService;
+    private final SubscriptionLagCalculator subscriptionLagCalculator;
     private final AuthorizationValidator authorizationValidator;
     private final NakadiAuditLogPublisher nakadiAuditLogPublisher;
 
@@ -98,6 +102,7 @@ public class SubscriptionService {
                                final NakadiKpiPublisher nakadiKpiPublisher,
                                final FeatureToggleService featureToggleService,
                                final SubscriptionTimeLagService subscriptionTimeLagService,
+                               final SubscriptionLagCalculator subscriptionLagCalculator,
                                @Value("${nakadi.kpi.event-types.nakadiSubscriptionLog}") final String subLogEventType,
                                final NakadiAuditLogPublisher nakadiAuditLogPublisher,
                                final AuthorizationValidator authorizationValidator) {
@@ -111,6 +116,7 @@ public class SubscriptionService {
         this.nakadiKpiPublisher = nakadiKpiPublisher;
         this.featureToggleService = featureToggleService;
         this.subscriptionTimeLagService = subscriptionTimeLagService;
+        this.subscriptionLagCalculator = subscriptionLagCalculator;
         this.subLogEventType = subLogEventType;
         this.nakadiAuditLogPublisher = nakadiAuditLogPublisher;
         this.authorizationValidator = authorizationValidator;
@@ -254,6 +260,44 @@ public class SubscriptionService {
         return new ItemsWrapper<>(subscriptionStat);
     }
 
+    /**
+     * Returns stats of many subscriptions at once. Unlike {@link #getSubscriptionStat(String, StatsMode)} stats are
+     * not computed on request, but are taken from {@link SubscriptionLagCalculator}, so they are behind by up to its
+     * interval, and time lag is present only for partitions where it is known without reading events.
+     */
+    public ItemsWrapper<SubscriptionStats> getSubscriptionsStats(final List<String> subscriptionIds)
+            throws InvalidLimitException, InconsistentStateException, NoSuchEventTypeException,
+            NoSuchSubscriptionException, ServiceTemporarilyUnavailableException {
+        if (subscriptionIds.isEmpty() || subscriptionIds.size() > MAX_SUBSCRIPTIONS_IN_STATS) {
+            throw new InvalidLimitException("'subscription_id' parameter should be present from 1 to " +
+                    MAX_SUBSCRIPTIONS_IN_STATS + " times");
+        }
+        final List<String> distinctIds = subscriptionIds.stream().distinct().collect(Collectors.toList());
+        final Map<String, Subscription> loaded;
+        try {
+            loaded = subscriptionRepository.getSubscriptions(distinctIds).stream()
+                    .collect(Collectors.toMap(Subscription::getId, Function.identity()));
+        } catch (final ServiceTemporarilyUnavailableException ex) {
+            throw new InconsistentStateException(ex.getMessage());
+        }
+        final List<Subscription> subscriptions = new ArrayList<>(distinctIds.size());
+        for (final String subscriptionId : distinctIds) {
+            final Subscription subscription = loaded.get(subscriptionId);
+            if (null == subscription) {
+                throw NoSuchSubscriptionException.withSubscriptionId(subscriptionId, null);
+            }
+            authorizationValidator.authorizeSubscriptionView(subscription);
+            subscriptionValidationService.verifyViewAccessOnEventTypes(getEventTypesForSubscription(subscription));
+            subscriptions.add(subscription);
+        }
+        final Map<String, List<SubscriptionEventTypeStats>> stats = subscriptionLagCalculator.getStats(subscriptions);
+        return new ItemsWrapper<>(subscriptions.stream()
+                .map(subscription -> stats.containsKey(subscription.getId()) ?
+                        new SubscriptionStats(subscription.getId(), stats.get(subscription.getId())) :
+                        SubscriptionStats.notComputed(subscription.getId()))
+                .collect(Collectors.toList()));
+    }
+
     private List<SubscriptionEventTypeStats> createSubscriptionStat(final Subscription subscription,
                                                                     final StatsMode statsMode)
             throws InconsistentStateException, NoSuchEventTypeException, ServiceTemporarilyUnavailableException {
@@ -360,7 +404,8 @@ public class SubscriptionService {
             final Long lagSeconds = Optional.ofNullable(timeLags.get(new EventTypePartition(eventTypeName, partition)))
                     .map(Duration::getSeconds)
                     .orElse(null);
-            resultPartitions.add(getPartitionStats(subscriptionNode, eventTypeName, partition, distance, lagSeconds));
+            resultPartitions.add(createPartitionStats(subscriptionNode, eventTypeName, partition, distance,
+                    lagSeconds));
         }
         resultPartitions.sort(Comparator.comparing(SubscriptionEventTypeStats.Partition::getPartition));
         return new SubscriptionEventTypeStats(eventTypeName, resultPartitions);
@@ -377,15 +422,15 @@ public class SubscriptionService {
                 .orElseGet(() -> getPartitionsList(eventType));
 
         for (final String partition : partitionsList) {
-            resultPartitions.add(getPartitionStats(subscriptionNode, eventType.getName(), partition, null, null));
+            resultPartitions.add(createPartitionStats(subscriptionNode, eventType.getName(), partition, null, null));
         }
         resultPartitions.sort(Comparator.comparing(SubscriptionEventTypeStats.Partition::getPartition));
         return new SubscriptionEventTypeStats(eventType.getName(), resultPartitions);
     }
 
-    private SubscriptionEventTypeStats.Partition getPartitionStats(final Optional<ZkSubscriptionNode> subscriptionNode,
-                                                                   final String eventTypeName, final String partition,
-                                                                   final Long distance, final Long lagSeconds) {
+    static SubscriptionEventTypeStats.Partition createPartitionStats(
+            final Optional<ZkSubscriptionNode> subscriptionNode, final String eventTypeName, final String partition,
+            final Long distance, final Long lagSeconds) {
         final Partition.State state = getState(subscriptionNode, eventTypeName, partition);
         final String streamId = getStreamId(subscriptionNode, eventTypeName, partition);
         final SubscriptionEventTypeStats.Partition.AssignmentType assignmentType =
@@ -401,20 +446,20 @@ public class SubscriptionService {
                 .orElse(Collections.emptyList());
     }
 
-    private Partition.State getState(final Optional<ZkSubscriptionNode> subscriptionNode, final String eventType,
+    private static Partition.State getState(final Optional<ZkSubscriptionNode> subscriptionNode, final String eventType,
                                      final String partition) {
         return subscriptionNode.map(node -> node.guessState(eventType, partition))
                 .orElse(Partition.State.UNASSIGNED);
     }
 
-    private SubscriptionEventTypeStats.Partition.AssignmentType getAssignmentType(
+    private static SubscriptionEventTypeStats.Partition.AssignmentType getAssignmentType(
             final Optional<ZkSubscriptionNode> subscriptionNode, final String eventType, final String partition) {
         return subscriptionNode
                 .map(node -> node.getPartitionAssignmentType(eventType, partition))
                 .orElse(null);
     }
 
-    private String getStreamId(final Optional<ZkSubscriptionNode> subscriptionNode,
+    private static String getStreamId(final Optional<ZkSubscriptionNode> subscriptionNode,
                                final String eventType, final String partition) {
         return subscriptionNode
                 .map(node -> node.guessStream(eventType, partition))
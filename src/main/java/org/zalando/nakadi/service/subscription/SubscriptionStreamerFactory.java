@@ -18,20 +18,22 @@ import org.zalando.nakadi.service.EventStreamWriter;
 import org.zalando.nakadi.service.EventTypeChangeListener;
 import org.zalando.nakadi.service.NakadiCursorComparator;
 import org.zalando.nakadi.service.NakadiKpiPublisher;
+import org.zalando.nakadi.service.StreamMemoryGovernor;
+import org.zalando.nakadi.service.StreamingScheduler;
 import org.zalando.nakadi.service.subscription.model.Session;
 import org.zalando.nakadi.service.subscription.zk.SubscriptionClientFactory;
 import org.zalando.nakadi.service.timeline.TimelineService;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class SubscriptionStreamerFactory {
     @Value("${nakadi.kafka.poll.timeoutMs}")
     private long kafkaPollTimeout;
+    @Value("${nakadi.stream.maxIdlePollMs}")
+    private long maxIdlePollMs;
     private final TimelineService timelineService;
-    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final StreamingScheduler streamingScheduler;
     private final CursorTokenService cursorTokenService;
     private final ObjectMapper objectMapper;
     private final CursorConverter cursorConverter;
@@ -45,6 +47,8 @@ public class SubscriptionStreamerFactory {
     private final String kpiDataStreamedEventType;
     private final long kpiCollectionFrequencyMs;
     private final long streamMemoryLimitBytes;
+    private final StreamMemoryGovernor memoryGovernor;
+    private final PartitionThroughput partitionThroughput;
 
     @Autowired
     public SubscriptionStreamerFactory(
@@ -59,9 +63,12 @@ public class SubscriptionStreamerFactory {
             final EventTypeChangeListener eventTypeChangeListener,
             final EventTypeCache eventTypeCache,
             final NakadiKpiPublisher nakadiKpiPublisher,
+            final StreamingScheduler streamingScheduler,
             @Value("${nakadi.kpi.event-types.nakadiDataStreamed}") final String kpiDataStreamedEventType,
             @Value("${nakadi.kpi.config.stream-data-collection-frequency-ms}") final long kpiCollectionFrequencyMs,
-            @Value("${nakadi.subscription.maxStreamMemoryBytes}") final long streamMemoryLimitBytes) {
+            @Value("${nakadi.subscription.maxStreamMemoryBytes}") final long streamMemoryLimitBytes,
+            final StreamMemoryGovernor memoryGovernor,
+            final PartitionThroughput partitionThroughput) {
         this.timelineService = timelineService;
         this.cursorTokenService = cursorTokenService;
         this.objectMapper = objectMapper;
@@ -73,9 +80,12 @@ public class SubscriptionStreamerFactory {
         this.eventTypeChangeListener = eventTypeChangeListener;
         this.eventTypeCache = eventTypeCache;
         this.nakadiKpiPublisher = nakadiKpiPublisher;
+        this.streamingScheduler = streamingScheduler;
         this.kpiDataStreamedEventType = kpiDataStreamedEventType;
         this.kpiCollectionFrequencyMs = kpiCollectionFrequencyMs;
         this.streamMemoryLimitBytes = streamMemoryLimitBytes;
+        this.memoryGovernor = memoryGovernor;
+        this.partitionThroughput = partitionThroughput;
     }
 
     public SubscriptionStreamer build(
@@ -90,13 +100,17 @@ public class SubscriptionStreamerFactory {
         return new StreamingContext.Builder()
                 .setOut(output)
                 .setStreamMemoryLimitBytes(streamMemoryLimitBytes)
+                .setMemoryGovernor(memoryGovernor)
                 .setParameters(streamParameters)
                 .setSession(session)
-                .setTimer(executorService)
+                .setExecutor(streamingScheduler.createSerialExecutor())
                 .setZkClient(zkClientFactory.createClient(
                         subscription, LogPathBuilder.build(subscription.getId(), session.getId())))
-                .setRebalancer(new SubscriptionRebalancer())
+                .setRebalancer(new SubscriptionRebalancer(
+                        partition -> partitionThroughput.getBytesPerSecond(subscription.getId(), partition)))
+                .setPartitionThroughput(partitionThroughput)
                 .setKafkaPollTimeout(kafkaPollTimeout)
+                .setMaxIdlePollMs(maxIdlePollMs)
                 .setConnectionReady(connectionReady)
                 .setCursorTokenService(cursorTokenService)
                 .setObjectMapper(objectMapper)
@@ -24,6 +24,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -68,8 +69,14 @@ public class SubscriptionTimeLagService {
                 if (isCursorAtTail(cursor, endPositions)) {
                     timeLags.put(cursor.getEventTypePartition(), Duration.ZERO);
                 } else {
-                    final CompletableFuture<Duration> timeLagFuture = timeLagHandler.getCursorTimeLagFuture(cursor);
-                    futureTimeLags.put(cursor.getEventTypePartition(), timeLagFuture);
+                    final Optional<Duration> estimatedTimeLag = estimateTimeLag(cursor);
+                    if (estimatedTimeLag.isPresent()) {
+                        timeLags.put(cursor.getEventTypePartition(), estimatedTimeLag.get());
+                    } else {
+                        final CompletableFuture<Duration> timeLagFuture =
+                                timeLagHandler.getCursorTimeLagFuture(cursor);
+                        futureTimeLags.put(cursor.getEventTypePartition(), timeLagFuture);
+                    }
                 }
             }
             CompletableFuture
@@ -87,6 +94,16 @@ public class SubscriptionTimeLagService {
         return timeLags;
     }
 
+    /**
+     * Time lag is estimated from timestamps of events, that were published or consumed by this node, so that
+     * consumer is created only for partitions, that node knows nothing about at the committed position.
+     */
+    private Optional<Duration> estimateTimeLag(final NakadiCursor cursor) {
+        return timelineService.getTopicRepository(cursor.getTimeline())
+                .estimateNextEventTimestamp(cursor)
+                .map(timestamp -> Duration.ofMillis(Math.max(0, System.currentTimeMillis() - timestamp)));
+    }
+
     private boolean isCursorAtTail(final NakadiCursor cursor, final List<PartitionEndStatistics> endPositions) {
         return endPositions.stream()
                 .map(PartitionEndStatistics::getLast)
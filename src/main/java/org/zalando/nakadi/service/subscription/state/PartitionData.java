@@ -9,19 +9,16 @@ import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
 import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.Set;
-import java.util.TreeSet;
 
 class PartitionData {
     private final Comparator<NakadiCursor> comparator;
     private final ZkSubscription<SubscriptionCursorWithoutToken> subscription;
-    private final List<ConsumedEvent> nakadiEvents = new LinkedList<>();
-    private final NavigableSet<NakadiCursor> allCursorsOrdered;
+    // Events that are not sent yet
+    private final RingBuffer<ConsumedEvent> nakadiEvents = new RingBuffer<>();
+    // Positions of all the events that are not committed yet, ordered by comparator
+    private final RingBuffer<NakadiCursor> allCursorsOrdered = new RingBuffer<>();
     private final Logger log;
 
     private NakadiCursor commitOffset;
@@ -29,6 +26,9 @@ class PartitionData {
     private long lastSendMillis;
     private int keepAliveInARow;
     private long bytesInMemory;
+    private int unconfirmed;
+    private PartitionsAccounting accounting;
+    private int heapIndex;
 
     @VisibleForTesting
     PartitionData(final Comparator<NakadiCursor> comparator,
@@ -45,7 +45,6 @@ class PartitionData {
             final Logger log,
             final long currentTime) {
         this.comparator = comparator;
-        this.allCursorsOrdered = new TreeSet<>(comparator);
         this.subscription = subscription;
         this.log = log;
 
@@ -96,19 +95,41 @@ class PartitionData {
         return bytesInMemory;
     }
 
+    @Nullable
+    PartitionsAccounting getAccounting() {
+        return accounting;
+    }
+
+    void setAccounting(@Nullable final PartitionsAccounting accounting) {
+        this.accounting = accounting;
+    }
+
+    int getHeapIndex() {
+        return heapIndex;
+    }
+
+    void setHeapIndex(final int heapIndex) {
+        this.heapIndex = heapIndex;
+    }
+
+    /**
+     * Returned list is a view of pending events, that stays valid until the next modification of partition data.
+     */
     private List<ConsumedEvent> extract(final int count) {
-        final List<ConsumedEvent> result = new ArrayList<>();
-        for (int i = 0; i < count && !nakadiEvents.isEmpty(); ++i) {
-            final ConsumedEvent event = nakadiEvents.remove(0);
-            bytesInMemory -= event.getEvent().length;
-            result.add(event);
+        final long bytesBefore = bytesInMemory;
+        final int unconfirmedBefore = unconfirmed;
+        final List<ConsumedEvent> result = nakadiEvents.removeFirst(Math.max(0, Math.min(count, nakadiEvents.size())));
+        for (int i = 0; i < result.size(); ++i) {
+            bytesInMemory -= result.get(i).getEvent().length;
         }
         if (!result.isEmpty()) {
             this.sentOffset = result.get(result.size() - 1).getPosition();
             this.keepAliveInARow = 0;
+            this.unconfirmed = countNotAfter(sentOffset);
         } else {
             this.keepAliveInARow += 1;
         }
+        onChanged(bytesBefore, unconfirmedBefore);
         return result;
     }
 
@@ -134,6 +155,7 @@ class PartitionData {
      * @param beforeFirst Position to check against (last inaccessible position in stream)
      */
     void ensureDataAvailable(final NakadiCursor beforeFirst) {
+        final int unconfirmedBefore = unconfirmed;
         if (comparator.compare(beforeFirst, commitOffset) > 0) {
             log.warn("Oldest kafka position is {} and commit offset is {}, updating", beforeFirst, commitOffset);
             commitOffset = beforeFirst;
@@ -141,7 +163,9 @@ class PartitionData {
         if (comparator.compare(beforeFirst, sentOffset) > 0) {
             log.warn("Oldest kafka position is {} and sent offset is {}, updating", beforeFirst, sentOffset);
             sentOffset = beforeFirst;
+            unconfirmed = countNotAfter(sentOffset);
         }
+        onChanged(bytesInMemory, unconfirmedBefore);
     }
 
     static class CommitResult {
@@ -155,6 +179,8 @@ class PartitionData {
     }
 
     CommitResult onCommitOffset(final NakadiCursor offset) {
+        final long bytesBefore = bytesInMemory;
+        final int unconfirmedBefore = unconfirmed;
         boolean seekKafka = false;
         if (comparator.compare(offset, sentOffset) > 0) {
             log.error("Commit in future: current: {}, committed {} will skip sending obsolete data", sentOffset,
@@ -164,11 +190,9 @@ class PartitionData {
         }
         final long committed;
         if (comparator.compare(offset, commitOffset) >= 0) {
-            final Set<NakadiCursor> committedCursors = allCursorsOrdered.headSet(offset, true);
-            committed = committedCursors.size();
+            committed = countNotAfter(offset);
             commitOffset = offset;
-            // Operation is cascaded to allCursorsOrdered set.
-            committedCursors.clear();
+            allCursorsOrdered.dropFirst((int) committed);
         } else {
             log.error("Commits in past are evil!: Committing in {} while current commit is {}", offset, commitOffset);
             // Commit in past occurred. One should move storage pointer to sentOffset.
@@ -180,17 +204,67 @@ class PartitionData {
             bytesInMemory = 0L;
             committed = 0;
         }
-        while (!nakadiEvents.isEmpty() && comparator.compare(nakadiEvents.get(0).getPosition(), commitOffset) <= 0) {
-            final ConsumedEvent evt = nakadiEvents.remove(0);
-            bytesInMemory -= evt.getEvent().length;
+        int alreadyCommitted = 0;
+        while (alreadyCommitted < nakadiEvents.size() &&
+                comparator.compare(nakadiEvents.get(alreadyCommitted).getPosition(), commitOffset) <= 0) {
+            bytesInMemory -= nakadiEvents.get(alreadyCommitted).getEvent().length;
+            ++alreadyCommitted;
         }
+        nakadiEvents.dropFirst(alreadyCommitted);
+        unconfirmed = countNotAfter(sentOffset);
+        onChanged(bytesBefore, unconfirmedBefore);
         return new CommitResult(seekKafka, committed);
     }
 
     void addEvent(final ConsumedEvent event) {
-        nakadiEvents.add(event);
+        final long bytesBefore = bytesInMemory;
+        final int unconfirmedBefore = unconfirmed;
+        nakadiEvents.addLast(event);
         bytesInMemory += event.getEvent().length;
-        allCursorsOrdered.add(event.getPosition());
+        if (addCursor(event.getPosition()) && comparator.compare(event.getPosition(), sentOffset) <= 0) {
+            ++unconfirmed;
+        }
+        onChanged(bytesBefore, unconfirmedBefore);
+    }
+
+    /**
+     * Adds cursor to ordered cursors, unless it is already there. Cursors are expected to come in order, so
+     * anything but appending is a rare case.
+     */
+    private boolean addCursor(final NakadiCursor cursor) {
+        if (allCursorsOrdered.isEmpty() || comparator.compare(cursor, allCursorsOrdered.getLast()) > 0) {
+            allCursorsOrdered.addLast(cursor);
+            return true;
+        }
+        final int index = countNotAfter(cursor);
+        if (index > 0 && comparator.compare(allCursorsOrdered.get(index - 1), cursor) == 0) {
+            return false;
+        }
+        allCursorsOrdered.insert(index, cursor);
+        return true;
+    }
+
+    /**
+     * Returns number of ordered cursors, that are not after {@code cursor}
+     */
+    private int countNotAfter(final NakadiCursor cursor) {
+        int low = 0;
+        int high = allCursorsOrdered.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comparator.compare(allCursorsOrdered.get(middle), cursor) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void onChanged(final long bytesBefore, final int unconfirmedBefore) {
+        if (null != accounting && (bytesBefore != bytesInMemory || unconfirmedBefore != unconfirmed)) {
+            accounting.onChanged(this, bytesInMemory - bytesBefore, unconfirmed - unconfirmedBefore);
+        }
     }
 
     boolean isCommitted() {
@@ -198,7 +272,7 @@ class PartitionData {
     }
 
     int getUnconfirmed() {
-        return allCursorsOrdered.headSet(sentOffset, true).size();
+        return unconfirmed;
     }
 
     public ZkSubscription<SubscriptionCursorWithoutToken> getSubscription() {
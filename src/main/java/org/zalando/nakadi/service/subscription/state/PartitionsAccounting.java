@@ -0,0 +1,115 @@
+package org.zalando.nakadi.service.subscription.state;
+
+import org.zalando.nakadi.domain.EventTypePartition;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Totals of all the partitions of a stream, that are updated by {@link PartitionData} on every change instead of
+ * being summed up over all the partitions, together with max-heap of partitions by bytes in memory to find the
+ * heaviest partition when memory limit is reached.
+ */
+class PartitionsAccounting {
+    private PartitionData[] heap = new PartitionData[16];
+    private EventTypePartition[] keys = new EventTypePartition[16];
+    private int size;
+    private long bytesInMemory;
+    private long unconfirmed;
+
+    void add(final EventTypePartition key, final PartitionData data) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        set(size++, key, data);
+        data.setAccounting(this);
+        siftUp(data.getHeapIndex());
+        bytesInMemory += data.getBytesInMemory();
+        unconfirmed += data.getUnconfirmed();
+    }
+
+    void remove(final PartitionData data) {
+        final int index = data.getHeapIndex();
+        if (data.getAccounting() != this || index >= size || heap[index] != data) {
+            return;
+        }
+        bytesInMemory -= data.getBytesInMemory();
+        unconfirmed -= data.getUnconfirmed();
+        data.setAccounting(null);
+        --size;
+        if (index != size) {
+            set(index, keys[size], heap[size]);
+            siftUp(index);
+            siftDown(heap[index].getHeapIndex());
+        }
+        heap[size] = null;
+        keys[size] = null;
+    }
+
+    void onChanged(final PartitionData data, final long bytesDelta, final long unconfirmedDelta) {
+        bytesInMemory += bytesDelta;
+        unconfirmed += unconfirmedDelta;
+        if (bytesDelta > 0) {
+            siftUp(data.getHeapIndex());
+        } else if (bytesDelta < 0) {
+            siftDown(data.getHeapIndex());
+        }
+    }
+
+    long getBytesInMemory() {
+        return bytesInMemory;
+    }
+
+    long getUnconfirmed() {
+        return unconfirmed;
+    }
+
+    @Nullable
+    EventTypePartition getHeaviest() {
+        return size > 0 ? keys[0] : null;
+    }
+
+    private void siftUp(final int from) {
+        int index = from;
+        while (index > 0) {
+            final int parent = (index - 1) / 2;
+            if (heap[parent].getBytesInMemory() >= heap[index].getBytesInMemory()) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(final int from) {
+        int index = from;
+        while (true) {
+            final int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            final int right = left + 1;
+            final int child = right < size && heap[right].getBytesInMemory() > heap[left].getBytesInMemory() ?
+                    right : left;
+            if (heap[index].getBytesInMemory() >= heap[child].getBytesInMemory()) {
+                break;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final PartitionData data = heap[i];
+        final EventTypePartition key = keys[i];
+        set(i, keys[j], heap[j]);
+        set(j, key, data);
+    }
+
+    private void set(final int index, final EventTypePartition key, final PartitionData data) {
+        heap[index] = data;
+        keys[index] = key;
+        data.setHeapIndex(index);
+    }
+}
@@ -0,0 +1,158 @@
+package org.zalando.nakadi.service.subscription.state;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable array-backed queue. Elements are removed from the head in batches, that are returned as views of the
+ * underlying array, so nothing is copied. The view stays valid until the next modification of the buffer: slots of
+ * removed elements are cleared only then, so that removed elements are not kept reachable for longer than that.
+ */
+class RingBuffer<T> {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] elements;
+    private int head;
+    private int size;
+    // Slots of elements removed with the last view, that are not cleared yet
+    private int staleFrom;
+    private int staleCount;
+
+    RingBuffer() {
+        this.elements = new Object[MIN_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return 0 == size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return (T) elements[slot(index)];
+    }
+
+    T getLast() {
+        return get(size - 1);
+    }
+
+    void addLast(final T element) {
+        insert(size, element);
+    }
+
+    /**
+     * Inserts element at position {@code index}, shifting elements after it. Intended for the rare cases when
+     * elements come out of order, as it takes linear time for anything but the tail.
+     */
+    void insert(final int index, final T element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        clearStale();
+        if (size == elements.length) {
+            grow();
+        }
+        for (int i = size; i > index; --i) {
+            elements[slot(i)] = elements[slot(i - 1)];
+        }
+        elements[slot(index)] = element;
+        ++size;
+    }
+
+    /**
+     * Removes {@code count} elements from the head and returns them as a view, that is valid until the next
+     * modification of the buffer.
+     */
+    List<T> removeFirst(final int count) {
+        checkRemoval(count);
+        clearStale();
+        if (0 == count) {
+            return Collections.emptyList();
+        }
+        final View<T> view = new View<>(elements, head, count);
+        staleFrom = head;
+        staleCount = count;
+        head = slot(count);
+        size -= count;
+        return view;
+    }
+
+    /**
+     * Removes {@code count} elements from the head without returning them.
+     */
+    void dropFirst(final int count) {
+        checkRemoval(count);
+        clearStale();
+        for (int i = 0; i < count; ++i) {
+            elements[slot(i)] = null;
+        }
+        head = slot(count);
+        size -= count;
+    }
+
+    void clear() {
+        dropFirst(size);
+        head = 0;
+    }
+
+    private void checkRemoval(final int count) {
+        if (count < 0 || count > size) {
+            throw new IllegalArgumentException("Can not remove " + count + " elements out of " + size);
+        }
+    }
+
+    private void clearStale() {
+        // Nothing is added between removal and clearing, so stale slots can not be reused yet
+        for (int i = 0; i < staleCount; ++i) {
+            elements[(staleFrom + i) & (elements.length - 1)] = null;
+        }
+        staleCount = 0;
+    }
+
+    private void grow() {
+        final Object[] grown = new Object[elements.length * 2];
+        for (int i = 0; i < size; ++i) {
+            grown[i] = elements[slot(i)];
+        }
+        elements = grown;
+        head = 0;
+    }
+
+    private int slot(final int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    private static class View<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] elements;
+        private final int from;
+        private final int size;
+
+        private View(final Object[] elements, final int from, final int size) {
+            this.elements = elements;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return (T) elements[(from + index) & (elements.length - 1)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -196,7 +196,7 @@ public class StartingState extends State {
                     .flatMap(timelines -> {
                         try {
                             return timelineService.getTopicRepository(timelines.get(0))
-                                    .loadTopicEndStatistics(timelines).stream();
+                                    .loadTopicEndStatistics(timelines, true).stream();
                         } catch (final ServiceTemporarilyUnavailableException e) {
                             throw new NakadiRuntimeException(e);
                         }
@@ -77,6 +77,14 @@ public abstract class State {
         context.addTask(linkTaskToState(task));
     }
 
+    public void scheduleStreamingTask(final Runnable task, final long timeout, final TimeUnit unit) {
+        context.scheduleStreamingTask(linkTaskToState(task), timeout, unit);
+    }
+
+    public void addStreamingTask(final Runnable task) {
+        context.addStreamingTask(linkTaskToState(task));
+    }
+
     private Runnable linkTaskToState(final Runnable task) {
         return () -> {
             if (!isCurrent()) {
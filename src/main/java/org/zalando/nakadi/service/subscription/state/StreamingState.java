@@ -18,6 +18,8 @@ import org.zalando.nakadi.metrics.StreamKpiData;
 import org.zalando.nakadi.repository.EventConsumer;
 import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.NakadiKpiPublisher;
+import org.zalando.nakadi.service.StreamMemoryGovernor;
+import org.zalando.nakadi.service.StreamPollScheduler;
 import org.zalando.nakadi.service.subscription.IdleStreamWatcher;
 import org.zalando.nakadi.service.subscription.LogPathBuilder;
 import org.zalando.nakadi.service.subscription.model.Partition;
@@ -30,7 +32,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -47,6 +48,7 @@ import static java.util.stream.Collectors.groupingBy;
 
 class StreamingState extends State {
     private final Map<EventTypePartition, PartitionData> offsets = new HashMap<>();
+    private final PartitionsAccounting accounting = new PartitionsAccounting();
     // Maps partition barrier when releasing must be completed or stream will be closed.
     // The reasons for that if there are two partitions (p0, p1) and p0 is reassigned, if p1 is working
     // correctly, and p0 is not receiving any updates - reassignment won't complete.
@@ -65,6 +67,8 @@ class StreamingState extends State {
     private Closeable cursorResetSubscription;
     private IdleStreamWatcher idleStreamWatcher;
     private boolean commitTimeoutReached = false;
+    private StreamMemoryGovernor.Account memoryAccount;
+    private StreamPollScheduler pollScheduler;
 
     /**
      * Time that is used for commit timeout check. Commit timeout check is working only in case when there is something
@@ -90,11 +94,23 @@ class StreamingState extends State {
         idleStreamWatcher = new IdleStreamWatcher(getParameters().commitTimeoutMillis * 2);
 
         this.eventConsumer = getContext().getTimelineService().createEventConsumer(null);
+        pollScheduler = new StreamPollScheduler(
+                this::addStreamingTask,
+                (task, delayMs) -> scheduleStreamingTask(task, delayMs, TimeUnit.MILLISECONDS),
+                this::pollDataFromKafka,
+                getKafkaPollTimeout(),
+                getContext().getMaxIdlePollMs());
+        eventConsumer.setDataListener(pollScheduler::pollNow);
+        getOut().setWritableListener(pollScheduler::pollNow);
+        if (null != getContext().getMemoryGovernor()) {
+            memoryAccount = getContext().getMemoryGovernor().register(
+                    "subscription " + getContext().getSubscription().getId() + " session " + getSessionId());
+        }
 
         recreateTopologySubscription();
         addTask(this::recheckTopology);
-        addTask(this::pollDataFromKafka);
-        scheduleTask(this::checkBatchTimeouts, getParameters().batchTimeoutMillis, TimeUnit.MILLISECONDS);
+        pollScheduler.pollNow();
+        scheduleStreamingTask(this::checkBatchTimeouts, getParameters().batchTimeoutMillis, TimeUnit.MILLISECONDS);
 
         scheduleTask(() -> {
                     streamToOutput(true);
@@ -183,21 +199,21 @@ class StreamingState extends State {
             return;
         }
 
-        if (eventConsumer.getAssignment().isEmpty() || pollPaused) {
-            // Small optimization not to waste CPU while not yet assigned to any partitions
-            scheduleTask(this::pollDataFromKafka, getKafkaPollTimeout(), TimeUnit.MILLISECONDS);
+        if (eventConsumer.getAssignment().isEmpty() || pollPaused || getOut().isBackpressured()) {
+            // Polling is continued once partitions are assigned, events are committed or the client has read the
+            // data. Until then the stream is only waking up from time to time to check the connection.
+            pollScheduler.scheduleNext(false, false, Long.MAX_VALUE);
             return;
         }
-        final List<ConsumedEvent> events = eventConsumer.readEvents();
+        final List<ConsumedEvent> events = eventConsumer.readAvailableEvents();
         events.forEach(this::rememberEvent);
         if (!events.isEmpty()) {
-            addTask(this::streamToOutput);
+            addStreamingTask(this::streamToOutput);
         }
-
-        // Yep, no timeout. All waits are in kafka.
-        // It works because only one pollDataFromKafka task is present in queue each time. Poll process will stop
-        // when this state will be changed to any other state.
-        addTask(this::pollDataFromKafka);
+        // Batch timeouts are checked by their own schedule, so polling is only waiting for new events. It works
+        // because only one poll is queued each time. Poll process will stop when this state will be changed to any
+        // other state.
+        pollScheduler.scheduleNext(!events.isEmpty(), !eventConsumer.notifiesAboutAllEvents(), Long.MAX_VALUE);
     }
 
     private void rememberEvent(final ConsumedEvent event) {
@@ -206,8 +222,7 @@ class StreamingState extends State {
     }
 
     private long getMessagesAllowedToSend() {
-        final long unconfirmed = offsets.values().stream().mapToLong(PartitionData::getUnconfirmed).sum();
-        final long limit = getParameters().maxUncommittedMessages - unconfirmed;
+        final long limit = getParameters().maxUncommittedMessages - accounting.getUnconfirmed();
         return getParameters().getMessagesAllowedToSend(limit, this.sentEvents);
     }
 
@@ -217,10 +232,10 @@ class StreamingState extends State {
         final long nextCall = lastSent.orElse(System.currentTimeMillis()) + getParameters().batchTimeoutMillis;
         final long delta = nextCall - System.currentTimeMillis();
         if (delta > 0) {
-            scheduleTask(this::checkBatchTimeouts, delta, TimeUnit.MILLISECONDS);
+            scheduleStreamingTask(this::checkBatchTimeouts, delta, TimeUnit.MILLISECONDS);
         } else {
             getLog().debug("Probably acting too slow, stream timeouts are constantly rescheduled");
-            addTask(this::checkBatchTimeouts);
+            addStreamingTask(this::checkBatchTimeouts);
         }
     }
 
@@ -251,29 +266,27 @@ class StreamingState extends State {
             }
         }
 
-        long memoryConsumed = offsets.values().stream().mapToLong(PartitionData::getBytesInMemory).sum();
-        while (memoryConsumed > getContext().getStreamMemoryLimitBytes() && getMessagesAllowedToSend() > 0) {
+        while (accounting.getBytesInMemory() > getContext().getStreamMemoryLimitBytes()
+                && getMessagesAllowedToSend() > 0) {
+            final long memoryConsumed = accounting.getBytesInMemory();
             // Select heaviest guy (and on previous step we figured out that we can not send anymore full batches,
             // therefore we can take all the events from one partition.
-            final Map.Entry<EventTypePartition, PartitionData> heaviestPartition = offsets.entrySet().stream().max(
-                    Comparator.comparing(e -> e.getValue().getBytesInMemory())
-            ).get(); // There is always at least 1 item in list
+            final EventTypePartition heaviestPartition = accounting.getHeaviest(); // Memory is used by someone
+            final PartitionData heaviestData = offsets.get(heaviestPartition);
 
-            long deltaSize = heaviestPartition.getValue().getBytesInMemory();
-            final List<ConsumedEvent> events = heaviestPartition.getValue().extractMaxEvents(currentTimeMillis,
+            final List<ConsumedEvent> events = heaviestData.extractMaxEvents(currentTimeMillis,
                     (int) getMessagesAllowedToSend());
-            deltaSize -= heaviestPartition.getValue().getBytesInMemory();
+            final long deltaSize = memoryConsumed - accounting.getBytesInMemory();
 
             sentSomething = true;
             flushData(
-                    heaviestPartition.getKey(),
+                    heaviestPartition,
                     events,
                     batchesSent == 0 ?
                             Optional.of("Stream started with memory overflow") :
                             Optional.of("Stream parameters are causing overflow"));
             getLog().warn("Memory limit reached: {} bytes. Dumped events from {}. Freed: {} bytes, {} messages",
-                    memoryConsumed, heaviestPartition.getKey(), deltaSize, events.size());
-            memoryConsumed -= deltaSize;
+                    memoryConsumed, heaviestPartition, deltaSize, events.size());
         }
 
         if (lastKpiEventSent + getContext().getKpiCollectionFrequencyMs() < System.currentTimeMillis()) {
@@ -283,7 +296,14 @@ class StreamingState extends State {
         if (wasCommitted && sentSomething) {
             this.lastCommitMillis = System.currentTimeMillis();
         }
+        final boolean wasPaused = pollPaused;
         pollPaused = getMessagesAllowedToSend() <= 0;
+        if (wasPaused && !pollPaused) {
+            pollScheduler.pollNow();
+        }
+        if (null != memoryAccount && null != eventConsumer) {
+            memoryAccount.update(accounting.getBytesInMemory(), this::getBufferedPartitions, eventConsumer);
+        }
         if (!offsets.isEmpty() &&
                 getParameters().isKeepAliveLimitReached(offsets.values().stream()
                         .mapToInt(PartitionData::getKeepAliveInARow))) {
@@ -291,6 +311,13 @@ class StreamingState extends State {
         }
     }
 
+    private List<EventTypePartition> getBufferedPartitions() {
+        return offsets.entrySet().stream()
+                .filter(e -> e.getValue().getBytesInMemory() > 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
     private void publishKpi(final String eventTypeName) {
         final Client client = getContext().getParameters().getConsumingClient();
         final NakadiKpiPublisher kpiPublisher = getContext().getKpiPublisher();
@@ -331,6 +358,9 @@ class StreamingState extends State {
                     metadata);
 
             bytesSentMeterPerSubscription.mark(batchSize);
+            if (null != getContext().getPartitionThroughput()) {
+                getContext().getPartitionThroughput().record(getContext().getSubscription().getId(), pk, batchSize);
+            }
 
             final StreamKpiData kpiData = kpiDataPerEventType.get(pk.getEventType());
             kpiData.addBytesSent(batchSize);
@@ -398,6 +428,7 @@ class StreamingState extends State {
                 new HashSet<>(offsets.keySet()).forEach(this::removeFromStreaming);
             }
         }
+        getOut().setWritableListener(null);
         if (null != eventConsumer) {
             try {
                 eventConsumer.close();
@@ -415,6 +446,10 @@ class StreamingState extends State {
             }
             cursorResetSubscription = null;
         }
+        if (null != memoryAccount) {
+            memoryAccount.close();
+            memoryAccount = null;
+        }
     }
 
     void reactOnTopologyChange() {
@@ -581,6 +616,7 @@ class StreamingState extends State {
             } catch (InvalidCursorException ex) {
                 throw new NakadiRuntimeException(ex);
             }
+            pollScheduler.pollNow();
         }
     }
 
@@ -634,6 +670,7 @@ class StreamingState extends State {
                 System.currentTimeMillis());
 
         offsets.put(partition.getKey(), pd);
+        accounting.add(partition.getKey(), pd);
     }
 
     private void reassignCommitted() {
@@ -682,6 +719,7 @@ class StreamingState extends State {
         releasingPartitions.remove(key);
         final PartitionData data = offsets.remove(key);
         if (null != data) {
+            accounting.remove(data);
             try {
                 if (data.getUnconfirmed() > 0) {
                     getLog().warn("Skipping commits: {}, commit={}, sent={}",
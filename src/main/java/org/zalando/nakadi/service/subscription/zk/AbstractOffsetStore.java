@@ -0,0 +1,167 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.Lists;
+import org.echocat.jomon.runtime.concurrent.RetryForSpecifiedCountStrategy;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.NakadiBaseException;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
+
+/**
+ * Commits cursors with optimistic concurrency: current offsets are read along with their versions, and the greater
+ * cursors are written all at once, only if none of offsets was changed in the meantime. Otherwise partitions are
+ * committed one by one, so that only the partitions, that were changed concurrently, are retried.
+ *
+ * @param <V> current offset along with its version
+ */
+abstract class AbstractOffsetStore<V> implements OffsetStore {
+    private static final int COMMIT_CONFLICT_RETRY_TIMES = 5;
+    // Conflicting offset is read again on retry, so there is no need to wait long for the other writer
+    private static final long COMMIT_CONFLICT_MAX_WAIT_MS = 50;
+
+    private final Class<? extends Exception> conflictException;
+
+    /**
+     * @param conflictException exception, that is thrown by {@link #writeOffsets(Map, List)}, when offsets were
+     *                          changed concurrently
+     */
+    AbstractOffsetStore(final Class<? extends Exception> conflictException) {
+        this.conflictException = conflictException;
+    }
+
+    @Override
+    public final List<Boolean> commitOffsets(
+            final List<SubscriptionCursorWithoutToken> cursors,
+            final Comparator<SubscriptionCursorWithoutToken> comparator) {
+        final Map<EventTypePartition, List<SubscriptionCursorWithoutToken>> grouped =
+                cursors.stream().collect(Collectors.groupingBy(SubscriptionCursorWithoutToken::getEventTypePartition));
+        try {
+            Map<EventTypePartition, List<Boolean>> committed;
+            try {
+                committed = commitOffsetsOnce(grouped, comparator);
+            } catch (final Exception ex) {
+                if (!conflictException.isInstance(ex)) {
+                    throw ex;
+                }
+                committed = commitPartitionsSeparately(grouped, comparator);
+            }
+
+            final Map<EventTypePartition, Iterator<Boolean>> committedOverall = new HashMap<>();
+            for (final Map.Entry<EventTypePartition, List<SubscriptionCursorWithoutToken>> entry : grouped.entrySet()) {
+                committedOverall.put(
+                        entry.getKey(),
+                        Optional.ofNullable(committed.get(entry.getKey()))
+                                .orElse(Collections.nCopies(entry.getValue().size(), false))
+                                .iterator());
+            }
+            return cursors.stream()
+                    .map(cursor -> committedOverall.get(cursor.getEventTypePartition()).next())
+                    .collect(Collectors.toList());
+
+        } catch (final NakadiRuntimeException | NakadiBaseException ex) {
+            throw ex;
+        } catch (final Exception ex) {
+            throw new NakadiRuntimeException(ex);
+        }
+    }
+
+    /**
+     * Commits each partition with its own write, retrying only the partitions, that keep being changed concurrently.
+     * Conflict in one partition does not prevent the other partitions from being committed, the failure is thrown
+     * once all of them were tried.
+     */
+    private Map<EventTypePartition, List<Boolean>> commitPartitionsSeparately(
+            final Map<EventTypePartition, List<SubscriptionCursorWithoutToken>> grouped,
+            final Comparator<SubscriptionCursorWithoutToken> comparator) throws Exception {
+        final Map<EventTypePartition, List<Boolean>> result = new HashMap<>();
+        Exception failure = null;
+        for (final Map.Entry<EventTypePartition, List<SubscriptionCursorWithoutToken>> entry : grouped.entrySet()) {
+            final Map<EventTypePartition, List<SubscriptionCursorWithoutToken>> single =
+                    Collections.singletonMap(entry.getKey(), entry.getValue());
+            try {
+                final Map<EventTypePartition, List<Boolean>> committed = executeWithRetry(
+                        () -> commitOffsetsOnce(single, comparator),
+                        new RetryForSpecifiedCountStrategy<Map<EventTypePartition, List<Boolean>>>(
+                                COMMIT_CONFLICT_RETRY_TIMES)
+                                .withWaitBetweenEachTry(0L, COMMIT_CONFLICT_MAX_WAIT_MS)
+                                .withExceptionsThatForceRetry(conflictException));
+                if (null != committed) {
+                    result.putAll(committed);
+                }
+            } catch (final Exception ex) {
+                failure = ex;
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+        return result;
+    }
+
+    private Map<EventTypePartition, List<Boolean>> commitOffsetsOnce(
+            final Map<EventTypePartition, List<SubscriptionCursorWithoutToken>> grouped,
+            final Comparator<SubscriptionCursorWithoutToken> comparator) throws Exception {
+        final Map<EventTypePartition, V> current = loadCurrentOffsets(grouped.keySet());
+        if (current.size() != grouped.size()) {
+            throw new ServiceTemporarilyUnavailableException("Failed to get all the offsets " +
+                    grouped.keySet() + " from offset store.", null);
+        }
+
+        final Map<EventTypePartition, List<Boolean>> result = new HashMap<>();
+        final List<SubscriptionCursorWithoutToken> toWrite = new ArrayList<>();
+        for (final Map.Entry<EventTypePartition, List<SubscriptionCursorWithoutToken>> entry : grouped.entrySet()) {
+            final String currentMaxOffset = getOffset(current.get(entry.getKey()));
+            SubscriptionCursorWithoutToken currentMaxCursor = new SubscriptionCursorWithoutToken(
+                    entry.getKey().getEventType(),
+                    entry.getKey().getPartition(),
+                    currentMaxOffset
+            );
+            final List<Boolean> commits = Lists.newArrayList();
+
+            for (final SubscriptionCursorWithoutToken cursor : entry.getValue()) {
+                if (comparator.compare(cursor, currentMaxCursor) > 0) {
+                    currentMaxCursor = cursor;
+                    commits.add(true);
+                } else {
+                    commits.add(false);
+                }
+            }
+            if (!currentMaxCursor.getOffset().equals(currentMaxOffset)) {
+                toWrite.add(currentMaxCursor);
+            }
+            result.put(entry.getKey(), commits);
+        }
+        if (!toWrite.isEmpty()) {
+            writeOffsets(current, toWrite);
+        }
+        return result;
+    }
+
+    /**
+     * @return current offsets along with their versions, partitions without offsets are skipped
+     */
+    protected abstract Map<EventTypePartition, V> loadCurrentOffsets(Collection<EventTypePartition> keys)
+            throws Exception;
+
+    protected abstract String getOffset(V current);
+
+    /**
+     * Writes all the cursors at once, if none of offsets was changed since they were loaded.
+     */
+    protected abstract void writeOffsets(Map<EventTypePartition, V> current,
+                                         List<SubscriptionCursorWithoutToken> cursors) throws Exception;
+}
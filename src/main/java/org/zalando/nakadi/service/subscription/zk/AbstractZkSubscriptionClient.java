@@ -1,14 +1,11 @@
 package org.zalando.nakadi.service.subscription.zk;
 
-import com.google.common.base.Charsets;
-import com.google.common.collect.Lists;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorOp;
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.data.Stat;
-import org.echocat.jomon.runtime.concurrent.RetryForSpecifiedCountStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.nakadi.domain.EventTypePartition;
@@ -20,17 +17,17 @@ import org.zalando.nakadi.exceptions.runtime.RequestInProgressException;
 import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
 import org.zalando.nakadi.exceptions.runtime.UnableProcessException;
 import org.zalando.nakadi.exceptions.runtime.ZookeeperException;
+import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.model.Session;
 import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -39,31 +36,59 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Charsets.UTF_8;
-import static org.echocat.jomon.runtime.concurrent.Retryer.executeWithRetry;
 
 public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClient {
     public static final int SECONDS_TO_WAIT_FOR_LOCK = 15;
     protected static final String NODE_TOPOLOGY = "/topology";
+    private static final String NODE_OFFSET_STORE = "/offset_store";
+    private static final String OFFSET_STORE_DB = "db";
     private static final String STATE_INITIALIZED = "INITIALIZED";
-    private static final int COMMIT_CONFLICT_RETRY_TIMES = 5;
     private static final int MAX_ZK_RESPONSE_SECONDS = 5;
 
     private final String subscriptionId;
     private final CuratorFramework curatorFramework;
     private final String resetCursorPath;
+    private final ZkWatchHub watchHub;
+    private final OffsetStore zkOffsetStore = new ZkOffsetStore();
+    private final OffsetStore dbOffsetStore;
+    private final BooleanSupplier useDbOffsetStore;
     private final Logger log;
     private InterProcessSemaphoreMutex lock;
+    // Store, that offsets of subscription are kept in, it is taken from the marker cached by watch hub on first use
+    private volatile OffsetStore offsetStore;
 
     public AbstractZkSubscriptionClient(
             final String subscriptionId,
             final CuratorFramework curatorFramework,
             final String loggingPath) {
+        this(subscriptionId, curatorFramework, loggingPath, new ZkWatchHub(curatorFramework), null, () -> false);
+    }
+
+    /**
+     * @param watchHub         watches shared with the other clients of the node, that use the same curator framework
+     * @param dbOffsetStore    store of offsets in database, or null if offsets can be kept only in zookeeper
+     * @param useDbOffsetStore whether offsets of new subscriptions are kept in database, and offsets of existing
+     *                         subscriptions are moved there with the next cursor reset, it should be
+     *                         enabled only when all the nodes are able to read offsets from database
+     */
+    public AbstractZkSubscriptionClient(
+            final String subscriptionId,
+            final CuratorFramework curatorFramework,
+            final String loggingPath,
+            final ZkWatchHub watchHub,
+            @Nullable final OffsetStore dbOffsetStore,
+            final BooleanSupplier useDbOffsetStore) {
         this.subscriptionId = subscriptionId;
         this.curatorFramework = curatorFramework;
+        this.watchHub = watchHub;
+        this.dbOffsetStore = dbOffsetStore;
+        this.useDbOffsetStore = useDbOffsetStore;
         this.resetCursorPath = getSubscriptionPath("/cursor_reset");
         this.log = LoggerFactory.getLogger(loggingPath + ".zk");
     }
@@ -72,6 +97,68 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
         return this.curatorFramework;
     }
 
+    protected ZkWatchHub getWatchHub() {
+        return watchHub;
+    }
+
+    /**
+     * Returns the store, that offsets of subscription are kept in. Subscriptions, which offsets were moved to
+     * database, are marked with /nakadi/subscriptions/{subscriptionId}/offset_store node. The marker is never changed
+     * once created, so it is read once for all the clients of the node.
+     */
+    protected final OffsetStore getOffsetStore() throws NakadiRuntimeException {
+        OffsetStore result = offsetStore;
+        if (null == result) {
+            result = readOffsetStore();
+            offsetStore = result;
+        }
+        return result;
+    }
+
+    private OffsetStore readOffsetStore() throws NakadiRuntimeException {
+        final Optional<byte[]> data = watchHub.getCreateOnceValue(getSubscriptionPath(NODE_OFFSET_STORE));
+        if (!data.isPresent()) {
+            return zkOffsetStore;
+        }
+        final String store = new String(data.get(), UTF_8);
+        if (!OFFSET_STORE_DB.equals(store) || null == dbOffsetStore) {
+            throw new NakadiRuntimeException(new IllegalStateException(
+                    "Offset store " + store + " of subscription " + subscriptionId + " is not available"));
+        }
+        return dbOffsetStore;
+    }
+
+    /**
+     * Makes the next operation read the offset store marker from zookeeper again, e.g. because it was created or
+     * deleted meanwhile.
+     */
+    private void forgetOffsetStore() {
+        offsetStore = null;
+        watchHub.invalidateCreateOnceValue(getSubscriptionPath(NODE_OFFSET_STORE));
+    }
+
+    /**
+     * Offsets could be moved to database by another node after the store was chosen. In this case offset nodes in
+     * zookeeper are gone, and the operation is repeated with the actual store.
+     */
+    private <T> T withOffsetStore(final Function<OffsetStore, T> operation) {
+        final OffsetStore store = getOffsetStore();
+        try {
+            return operation.apply(store);
+        } catch (final NakadiRuntimeException | NakadiBaseException ex) {
+            if (store != zkOffsetStore) {
+                throw ex;
+            }
+            forgetOffsetStore();
+            final OffsetStore actualStore = getOffsetStore();
+            if (actualStore == store) {
+                throw ex;
+            }
+            getLog().info("Offsets were moved to database, repeating the operation");
+            return operation.apply(actualStore);
+        }
+    }
+
     protected String getSubscriptionId() {
         return subscriptionId;
     }
@@ -123,7 +210,12 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
     public final void deleteSubscription() {
         try {
             final String subscriptionPath = getSubscriptionPath("");
+            forgetOffsetStore();
+            if (null != dbOffsetStore && getOffsetStore() == dbOffsetStore) {
+                dbOffsetStore.deleteOffsets();
+            }
             getCurator().delete().guaranteed().deletingChildrenIfNeeded().forPath(subscriptionPath);
+            forgetOffsetStore();
         } catch (final KeeperException.NoNodeException nne) {
             getLog().warn("Subscription to delete is not found in Zookeeper: {}", subscriptionId);
         } catch (final Exception e) {
@@ -157,7 +249,17 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
                     .withMode(CreateMode.PERSISTENT)
                     .forPath(getSubscriptionPath("/sessions"));
 
-            final byte[] topologyData = createTopologyAndOffsets(cursors);
+            final OffsetStore store = null != dbOffsetStore && useDbOffsetStore.getAsBoolean() ?
+                    dbOffsetStore : zkOffsetStore;
+            store.createOffsets(cursors);
+            if (store == dbOffsetStore) {
+                getCurator().create().forPath(
+                        getSubscriptionPath(NODE_OFFSET_STORE), OFFSET_STORE_DB.getBytes(UTF_8));
+            }
+            forgetOffsetStore();
+            offsetStore = store;
+
+            final byte[] topologyData = createTopology(cursors);
             getCurator().create()
                     .withMode(CreateMode.PERSISTENT)
                     .forPath(getSubscriptionPath(NODE_TOPOLOGY), topologyData);
@@ -194,6 +296,13 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
                                              final Function<K, String> keyConverter,
                                              final BiFunction<K, byte[], V> valueConverter)
             throws ServiceTemporarilyUnavailableException, NakadiRuntimeException {
+        return loadEventsAsync(keys, keyConverter, (key, event) -> valueConverter.apply(key, event.getData()));
+    }
+
+    private <K, V> Map<K, V> loadEventsAsync(final Collection<K> keys,
+                                             final Function<K, String> keyConverter,
+                                             final BiFunction<K, CuratorEvent, V> valueConverter)
+            throws ServiceTemporarilyUnavailableException, NakadiRuntimeException {
         final Map<K, V> result = new HashMap<>();
         final CountDownLatch latch = new CountDownLatch(keys.size());
         try {
@@ -202,7 +311,7 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
                 getCurator().getData().inBackground((client, event) -> {
                     try {
                         if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
-                            final V value = valueConverter.apply(key, event.getData());
+                            final V value = valueConverter.apply(key, event);
                             synchronized (result) {
                                 result.put(key, value);
                             }
@@ -278,36 +387,27 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
     @Override
     public final Closeable subscribeForCursorsReset(final Runnable listener)
             throws NakadiRuntimeException, UnsupportedOperationException {
-        final NodeCache cursorResetCache = new NodeCache(getCurator(), resetCursorPath);
-        cursorResetCache.getListenable().addListener(listener::run);
-
-        try {
-            cursorResetCache.start();
-        } catch (final Exception e) {
-            throw new NakadiRuntimeException(e);
-        }
-
-        return () -> {
-            try {
-                cursorResetCache.getListenable().clear();
-                cursorResetCache.close();
-            } catch (final IOException e) {
-                throw new NakadiRuntimeException(e);
-            }
-        };
+        return watchHub.subscribeForNodeChanges(resetCursorPath, listener);
     }
 
     @Override
     public ZkSubscription<SubscriptionCursorWithoutToken> subscribeForOffsetChanges(
             final EventTypePartition key, final Runnable commitListener) {
-        final String path = getOffsetPath(key);
-        getLog().info("subscribeForOffsetChanges: {}, path: {}", key, path);
-        return new ZkSubscriptionImpl.ZkSubscriptionValueImpl<>(
-                getCurator(),
-                commitListener,
-                data -> new SubscriptionCursorWithoutToken(
-                        key.getEventType(), key.getPartition(), new String(data, UTF_8)),
-                path);
+        return withOffsetStore(store -> store.subscribeForOffsetChanges(key, commitListener));
+    }
+
+    @Override
+    public final Map<EventTypePartition, SubscriptionCursorWithoutToken> getOffsets(
+            final Collection<EventTypePartition> keys)
+            throws NakadiRuntimeException, ServiceTemporarilyUnavailableException {
+        return withOffsetStore(store -> store.getOffsets(keys));
+    }
+
+    @Override
+    public final List<Boolean> commitOffsets(
+            final List<SubscriptionCursorWithoutToken> cursors,
+            final Comparator<SubscriptionCursorWithoutToken> comparator) {
+        return withOffsetStore(store -> store.commitOffsets(cursors, comparator));
     }
 
     @Override
@@ -332,7 +432,14 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
             while (finishAt > System.currentTimeMillis()) {
                 if (sessionsChanged.compareAndSet(true, false)) {
                     if (sessionsListener.getData().isEmpty()) {
-                        forceCommitOffsets(cursors);
+                        // Offsets could have been moved to database by another instance
+                        forgetOffsetStore();
+                        if (null != dbOffsetStore && useDbOffsetStore.getAsBoolean()
+                                && getOffsetStore() == zkOffsetStore) {
+                            moveOffsetsToDb(cursors);
+                        } else {
+                            getOffsetStore().forceCommitOffsets(cursors);
+                        }
                         return;
                     }
                 }
@@ -372,8 +479,7 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
     public final ZkSubscription<List<String>> subscribeForSessionListChanges(final Runnable listener)
             throws NakadiRuntimeException {
         getLog().info("subscribeForSessionListChanges: " + listener.hashCode());
-        return new ZkSubscriptionImpl.ZkSubscriptionChildrenImpl(
-                getCurator(), listener, getSubscriptionPath("/sessions"));
+        return watchHub.subscribeForChildren(getSubscriptionPath("/sessions"), listener);
     }
 
     @Override
@@ -388,77 +494,134 @@ public abstract class AbstractZkSubscriptionClient implements ZkSubscriptionClie
                 listSessions()));
     }
 
-    private void forceCommitOffsets(final List<SubscriptionCursorWithoutToken> cursors) throws Exception {
-        for (final SubscriptionCursorWithoutToken cursor : cursors) {
-            getCurator().setData().forPath(
-                    getOffsetPath(cursor.getEventTypePartition()),
-                    cursor.getOffset().getBytes(UTF_8));
-        }
+    /**
+     * Moves offsets of all the partitions to database, replacing the offsets of reset cursors. It is done during
+     * cursor reset, when there are no sessions and new ones can not be started, so nobody commits offsets to zookeeper
+     * while they are copied. Offset nodes in zookeeper are removed after the subscription is marked, so that clients,
+     * which still use zookeeper offsets, fail and switch to database.
+     */
+    private void moveOffsetsToDb(final List<SubscriptionCursorWithoutToken> cursors) throws Exception {
+        final List<EventTypePartition> keys = Stream.of(getTopology().getPartitions())
+                .map(Partition::getKey)
+                .collect(Collectors.toList());
+        final Map<EventTypePartition, SubscriptionCursorWithoutToken> offsets =
+                new HashMap<>(zkOffsetStore.getOffsets(keys));
+        cursors.forEach(cursor -> offsets.put(cursor.getEventTypePartition(), cursor));
+        getLog().info("Moving offsets of {} partitions to database", offsets.size());
+        dbOffsetStore.createOffsets(offsets.values());
+        getCurator().create().forPath(getSubscriptionPath(NODE_OFFSET_STORE), OFFSET_STORE_DB.getBytes(UTF_8));
+        forgetOffsetStore();
+        offsetStore = dbOffsetStore;
+        zkOffsetStore.deleteOffsets();
     }
 
-    @Override
-    public List<Boolean> commitOffsets(
-            final List<SubscriptionCursorWithoutToken> cursors,
-            final Comparator<SubscriptionCursorWithoutToken> comparator) {
-        final Map<EventTypePartition, List<SubscriptionCursorWithoutToken>> grouped =
-                cursors.stream().collect(Collectors.groupingBy(SubscriptionCursorWithoutToken::getEventTypePartition));
-        try {
-            final Map<EventTypePartition, Iterator<Boolean>> committedOverall = new HashMap<>();
-            for (final Map.Entry<EventTypePartition, List<SubscriptionCursorWithoutToken>> entry : grouped.entrySet()) {
-                final String offsetPath = getOffsetPath(entry.getKey());
-                final List<Boolean> committed;
-                committed = executeWithRetry(() -> {
-                            final Stat stat = new Stat();
-                            final byte[] currentOffsetData = getCurator().getData().storingStatIn(stat)
-                                    .forPath(offsetPath);
-                            final String currentMaxOffset = new String(currentOffsetData, UTF_8);
-                            SubscriptionCursorWithoutToken currentMaxCursor = new SubscriptionCursorWithoutToken(
-                                    entry.getKey().getEventType(),
-                                    entry.getKey().getPartition(),
-                                    currentMaxOffset
-                            );
-                            final List<Boolean> commits = Lists.newArrayList();
-
-                            for (final SubscriptionCursorWithoutToken cursor : entry.getValue()) {
-                                if (comparator.compare(cursor, currentMaxCursor) > 0) {
-                                    currentMaxCursor = cursor;
-                                    commits.add(true);
-                                } else {
-                                    commits.add(false);
-                                }
-                            }
-                            if (!currentMaxCursor.getOffset().equals(currentMaxOffset)) {
-                                getLog().info("Committing {} to {}/{}",
-                                        currentMaxCursor.getOffset(),
-                                        entry.getKey().getEventType(),
-                                        entry.getKey().getPartition());
-
-                                getCurator()
-                                        .setData()
-                                        .withVersion(stat.getVersion())
-                                        .forPath(offsetPath, currentMaxCursor.getOffset().getBytes(Charsets.UTF_8));
-                            }
-                            return commits;
-                        },
-                        new RetryForSpecifiedCountStrategy<List<Boolean>>(COMMIT_CONFLICT_RETRY_TIMES)
-                                .withExceptionsThatForceRetry(KeeperException.BadVersionException.class));
-                committedOverall.put(
-                        entry.getKey(),
-                        Optional.ofNullable(committed)
-                                .orElse(Collections.nCopies(entry.getValue().size(), false))
-                                .iterator());
+    /**
+     * Offsets kept in zookeeper, one node per partition.
+     */
+    private class ZkOffsetStore extends AbstractOffsetStore<CuratorEvent> {
 
+        private ZkOffsetStore() {
+            super(KeeperException.BadVersionException.class);
+        }
+
+        @Override
+        public void createOffsets(final Collection<SubscriptionCursorWithoutToken> cursors) {
+            try {
+                for (final SubscriptionCursorWithoutToken cursor : cursors) {
+                    getCurator().create().creatingParentsIfNeeded().forPath(
+                            getOffsetPath(cursor.getEventTypePartition()),
+                            cursor.getOffset().getBytes(UTF_8));
+                }
+            } catch (final Exception e) {
+                throw new NakadiRuntimeException(e);
             }
-            return cursors.stream()
-                    .map(cursor -> committedOverall.get(cursor.getEventTypePartition()).next())
-                    .collect(Collectors.toList());
+        }
 
-        } catch (final Exception ex) {
-            throw new NakadiRuntimeException(ex);
+        @Override
+        public Map<EventTypePartition, SubscriptionCursorWithoutToken> getOffsets(
+                final Collection<EventTypePartition> keys)
+                throws NakadiRuntimeException, ServiceTemporarilyUnavailableException {
+            final Map<EventTypePartition, SubscriptionCursorWithoutToken> offSets = loadDataAsync(keys,
+                    AbstractZkSubscriptionClient.this::getOffsetPath, (etp, value) ->
+                            new SubscriptionCursorWithoutToken(etp.getEventType(), etp.getPartition(),
+                                    new String(value, UTF_8)));
+
+            if (offSets.size() != keys.size()) {
+                throw new ServiceTemporarilyUnavailableException("Failed to get all the keys " +
+                        keys.stream()
+                                .filter(v -> !offSets.containsKey(v))
+                                .map(String::valueOf)
+                                .collect(Collectors.joining(", "))
+                        + " from ZK.", null);
+            }
+
+            return offSets;
+        }
+
+        @Override
+        public void forceCommitOffsets(final Collection<SubscriptionCursorWithoutToken> cursors) {
+            try {
+                for (final SubscriptionCursorWithoutToken cursor : cursors) {
+                    getCurator().setData().forPath(
+                            getOffsetPath(cursor.getEventTypePartition()),
+                            cursor.getOffset().getBytes(UTF_8));
+                }
+            } catch (final Exception e) {
+                throw new NakadiRuntimeException(e);
+            }
+        }
+
+        @Override
+        public ZkSubscription<SubscriptionCursorWithoutToken> subscribeForOffsetChanges(
+                final EventTypePartition key, final Runnable commitListener) {
+            final String path = getOffsetPath(key);
+            getLog().info("subscribeForOffsetChanges: {}, path: {}", key, path);
+            return watchHub.subscribeForValue(
+                    path,
+                    commitListener,
+                    data -> new SubscriptionCursorWithoutToken(
+                            key.getEventType(), key.getPartition(), new String(data, UTF_8)));
+        }
+
+        @Override
+        public void deleteOffsets() {
+            try {
+                getCurator().delete().guaranteed().deletingChildrenIfNeeded().forPath(getSubscriptionPath("/offsets"));
+            } catch (final KeeperException.NoNodeException nne) {
+                getLog().warn("Offsets to delete are not found in Zookeeper: {}", subscriptionId);
+            } catch (final Exception e) {
+                throw new NakadiRuntimeException(e);
+            }
+        }
+
+        @Override
+        protected Map<EventTypePartition, CuratorEvent> loadCurrentOffsets(final Collection<EventTypePartition> keys) {
+            return loadEventsAsync(keys, AbstractZkSubscriptionClient.this::getOffsetPath, (key, event) -> event);
+        }
+
+        @Override
+        protected String getOffset(final CuratorEvent current) {
+            return new String(current.getData(), UTF_8);
+        }
+
+        @Override
+        protected void writeOffsets(final Map<EventTypePartition, CuratorEvent> current,
+                                    final List<SubscriptionCursorWithoutToken> cursors) throws Exception {
+            final List<CuratorOp> operations = new ArrayList<>();
+            for (final SubscriptionCursorWithoutToken cursor : cursors) {
+                getLog().info("Committing {} to {}/{}", cursor.getOffset(), cursor.getEventType(),
+                        cursor.getPartition());
+                operations.add(getCurator().transactionOp()
+                        .setData()
+                        .withVersion(current.get(cursor.getEventTypePartition()).getStat().getVersion())
+                        .forPath(getOffsetPath(cursor.getEventTypePartition()),
+                                cursor.getOffset().getBytes(UTF_8)));
+            }
+            getCurator().transaction().forOperations(operations);
         }
     }
 
-    protected abstract byte[] createTopologyAndOffsets(Collection<SubscriptionCursorWithoutToken> cursors)
+    protected abstract byte[] createTopology(Collection<SubscriptionCursorWithoutToken> cursors)
             throws Exception;
 
     protected abstract String getOffsetPath(EventTypePartition etp);
@@ -0,0 +1,91 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Offsets of subscription, that are kept in database. All the cursors of a commit are written with one batched
+ * statement in one transaction, and offset changes are delivered to sessions by {@link DbOffsetWatcher}.
+ */
+class DbOffsetStore extends AbstractOffsetStore<String> {
+
+    private final String subscriptionId;
+    private final SubscriptionOffsetDbRepository repository;
+    private final DbOffsetWatcher watcher;
+
+    DbOffsetStore(final String subscriptionId,
+                  final SubscriptionOffsetDbRepository repository,
+                  final DbOffsetWatcher watcher) {
+        super(OptimisticLockingFailureException.class);
+        this.subscriptionId = subscriptionId;
+        this.repository = repository;
+        this.watcher = watcher;
+    }
+
+    @Override
+    public void createOffsets(final Collection<SubscriptionCursorWithoutToken> cursors) {
+        repository.upsertOffsets(subscriptionId, cursors);
+        watcher.offsetsChanged(subscriptionId, cursors);
+    }
+
+    @Override
+    public Map<EventTypePartition, SubscriptionCursorWithoutToken> getOffsets(
+            final Collection<EventTypePartition> keys) throws ServiceTemporarilyUnavailableException {
+        final Map<EventTypePartition, String> offsets = repository.getOffsets(subscriptionId, keys);
+        if (offsets.size() != keys.size()) {
+            throw new ServiceTemporarilyUnavailableException("Failed to get all the keys " +
+                    keys.stream()
+                            .filter(v -> !offsets.containsKey(v))
+                            .map(String::valueOf)
+                            .collect(Collectors.joining(", "))
+                    + " from database.", null);
+        }
+        final Map<EventTypePartition, SubscriptionCursorWithoutToken> result = new HashMap<>();
+        offsets.forEach((key, offset) -> result.put(
+                key, new SubscriptionCursorWithoutToken(key.getEventType(), key.getPartition(), offset)));
+        return result;
+    }
+
+    @Override
+    public void forceCommitOffsets(final Collection<SubscriptionCursorWithoutToken> cursors) {
+        createOffsets(cursors);
+    }
+
+    @Override
+    public ZkSubscription<SubscriptionCursorWithoutToken> subscribeForOffsetChanges(
+            final EventTypePartition key, final Runnable commitListener) throws NakadiRuntimeException {
+        return watcher.subscribe(subscriptionId, key, commitListener);
+    }
+
+    @Override
+    public void deleteOffsets() {
+        repository.deleteOffsets(subscriptionId);
+    }
+
+    @Override
+    protected Map<EventTypePartition, String> loadCurrentOffsets(final Collection<EventTypePartition> keys) {
+        return repository.getOffsets(subscriptionId, keys);
+    }
+
+    @Override
+    protected String getOffset(final String current) {
+        return current;
+    }
+
+    @Override
+    protected void writeOffsets(final Map<EventTypePartition, String> current,
+                                final List<SubscriptionCursorWithoutToken> cursors) {
+        repository.compareAndSetOffsets(subscriptionId, current, cursors);
+        watcher.offsetsChanged(subscriptionId, cursors);
+    }
+}
@@ -0,0 +1,227 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.Iterables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.NakadiBaseException;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches offsets, that are kept in database, for the sessions of the node. Database has no watches, so offsets of
+ * all the watched subscriptions are polled, with one query per {@value #POLL_BATCH_SIZE} subscriptions, and listeners
+ * of changed offsets are notified. Commits, that are made by this node, are notified right away.
+ */
+@Component
+public class DbOffsetWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DbOffsetWatcher.class);
+    private static final int POLL_BATCH_SIZE = 500;
+
+    private final SubscriptionOffsetDbRepository repository;
+    // guarded by itself
+    private final Map<String, Map<EventTypePartition, WatchedOffset>> watched = new HashMap<>();
+
+    @Autowired
+    public DbOffsetWatcher(final SubscriptionOffsetDbRepository repository) {
+        this.repository = repository;
+    }
+
+    public ZkSubscription<SubscriptionCursorWithoutToken> subscribe(
+            final String subscriptionId, final EventTypePartition key, final Runnable listener)
+            throws NakadiRuntimeException {
+        final OffsetSubscription subscription;
+        synchronized (watched) {
+            final WatchedOffset offset = watched.computeIfAbsent(subscriptionId, id -> new HashMap<>())
+                    .computeIfAbsent(key, k -> new WatchedOffset(subscriptionId, k));
+            subscription = new OffsetSubscription(offset, listener);
+            offset.subscriptions.add(subscription);
+        }
+        try {
+            subscription.getData();
+        } catch (final RuntimeException ex) {
+            subscription.close();
+            throw ex;
+        }
+        return subscription;
+    }
+
+    /**
+     * Notifies local listeners about offsets, that were just committed, without waiting for the next poll.
+     */
+    public void offsetsChanged(final String subscriptionId, final Collection<SubscriptionCursorWithoutToken> cursors) {
+        final List<WatchedOffset> changed = new ArrayList<>();
+        synchronized (watched) {
+            final Map<EventTypePartition, WatchedOffset> offsets = watched.get(subscriptionId);
+            if (null == offsets) {
+                return;
+            }
+            for (final SubscriptionCursorWithoutToken cursor : cursors) {
+                final WatchedOffset offset = offsets.get(cursor.getEventTypePartition());
+                if (null != offset) {
+                    changed.add(offset);
+                }
+            }
+        }
+        final Map<EventTypePartition, String> values = new HashMap<>();
+        cursors.forEach(cursor -> values.put(cursor.getEventTypePartition(), cursor.getOffset()));
+        changed.forEach(offset -> offset.committed(values.get(offset.key)));
+    }
+
+    @Scheduled(fixedDelayString = "${nakadi.subscription.offsets.pollMs}")
+    public void poll() {
+        final Map<String, List<WatchedOffset>> snapshot = new HashMap<>();
+        synchronized (watched) {
+            watched.forEach((id, offsets) -> snapshot.put(id, new ArrayList<>(offsets.values())));
+        }
+        for (final List<String> batch : Iterables.partition(snapshot.keySet(), POLL_BATCH_SIZE)) {
+            final Map<WatchedOffset, Long> commitsBefore = new HashMap<>();
+            batch.forEach(id -> snapshot.get(id).forEach(offset -> commitsBefore.put(offset, offset.getCommits())));
+            final Map<String, Map<EventTypePartition, String>> current;
+            try {
+                current = repository.getOffsetsOfSubscriptions(batch);
+            } catch (final NakadiBaseException | NakadiRuntimeException ex) {
+                LOG.warn("Failed to poll offsets of {} subscriptions", batch.size(), ex);
+                continue;
+            }
+            commitsBefore.forEach((offset, commits) -> {
+                final String value = current.getOrDefault(offset.subscriptionId, Collections.emptyMap())
+                        .get(offset.key);
+                if (null != value) {
+                    offset.polled(value, commits);
+                }
+            });
+        }
+    }
+
+    int getWatchedCount() {
+        synchronized (watched) {
+            return watched.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    private void unsubscribe(final OffsetSubscription subscription) {
+        final WatchedOffset offset = subscription.offset;
+        synchronized (watched) {
+            if (!offset.subscriptions.remove(subscription) || !offset.subscriptions.isEmpty()) {
+                return;
+            }
+            final Map<EventTypePartition, WatchedOffset> offsets = watched.get(offset.subscriptionId);
+            if (null != offsets && offsets.get(offset.key) == offset) {
+                offsets.remove(offset.key);
+                if (offsets.isEmpty()) {
+                    watched.remove(offset.subscriptionId);
+                }
+            }
+        }
+    }
+
+    private class WatchedOffset {
+        private final String subscriptionId;
+        private final EventTypePartition key;
+        private final List<OffsetSubscription> subscriptions = new CopyOnWriteArrayList<>();
+        private volatile String offset;
+        // guarded by this
+        private long commits;
+
+        private WatchedOffset(final String subscriptionId, final EventTypePartition key) {
+            this.subscriptionId = subscriptionId;
+            this.key = key;
+        }
+
+        private String getOffset() throws NakadiRuntimeException {
+            String result = offset;
+            if (null == result) {
+                synchronized (this) {
+                    result = offset;
+                    if (null == result) {
+                        result = repository.getOffsets(subscriptionId, Collections.singletonList(key)).get(key);
+                        if (null == result) {
+                            throw new NakadiRuntimeException(new NoSuchElementException(
+                                    "Offset of " + key + " is not found for subscription " + subscriptionId));
+                        }
+                        offset = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private synchronized long getCommits() {
+            return commits;
+        }
+
+        private synchronized void committed(final String value) {
+            commits += 1;
+            update(value);
+        }
+
+        /**
+         * Polled value is skipped, if this node committed the offset while the poll was running, as the polled value
+         * could be older than the committed one.
+         */
+        private synchronized void polled(final String value, final long commitsBeforePoll) {
+            if (commits == commitsBeforePoll) {
+                update(value);
+            }
+        }
+
+        private void update(final String value) {
+            if (!value.equals(offset)) {
+                offset = value;
+                subscriptions.forEach(OffsetSubscription::notifyListener);
+            }
+        }
+    }
+
+    private class OffsetSubscription implements ZkSubscription<SubscriptionCursorWithoutToken> {
+        private final WatchedOffset offset;
+        private final Runnable listener;
+        private volatile boolean closed;
+
+        private OffsetSubscription(final WatchedOffset offset, final Runnable listener) {
+            this.offset = offset;
+            this.listener = listener;
+        }
+
+        @Override
+        public SubscriptionCursorWithoutToken getData() throws NakadiRuntimeException {
+            return new SubscriptionCursorWithoutToken(
+                    offset.key.getEventType(), offset.key.getPartition(), offset.getOffset());
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unsubscribe(this);
+            }
+        }
+
+        private void notifyListener() {
+            if (closed) {
+                return;
+            }
+            try {
+                listener.run();
+            } catch (final RuntimeException ex) {
+                LOG.error("Failed to notify listener of offset {} of subscription {}",
+                        offset.key, offset.subscriptionId, ex);
+            }
+        }
+    }
+}
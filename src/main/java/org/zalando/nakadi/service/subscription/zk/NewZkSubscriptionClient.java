@@ -5,18 +5,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
-import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.model.Session;
 import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,7 +44,8 @@ import static com.google.common.base.Charsets.UTF_8;
  *     | |- {session_N}                     // Ephemeral node of session_N
  *     |
  *     |- topology                          // Persistent node that holds all assignment information about partitions
- *     |                                    // Content is json serialized {@link Topology} object.
+ *     |                                    // Content is {@link Topology} object serialized to json, or to compact
+ *     |                                    // binary form of {@link TopologyCodec}. Both forms are readable.
  *     |
  *     |- offsets                           // Node that holds up all the dynamic data for this subscription (offsets)
  *       |- {event_type_1}
@@ -62,24 +65,45 @@ import static com.google.common.base.Charsets.UTF_8;
 public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
 
     private final ObjectMapper objectMapper;
+    private final BooleanSupplier compactTopology;
+    // Last topology that was read or written, so that the same version is not parsed again
+    private volatile CachedTopology cachedTopology;
 
     public NewZkSubscriptionClient(
             final String subscriptionId,
             final CuratorFramework curatorFramework,
             final String loggingPath,
             final ObjectMapper objectMapper) {
-        super(subscriptionId, curatorFramework, loggingPath);
+        this(subscriptionId, curatorFramework, loggingPath, objectMapper, () -> false,
+                new ZkWatchHub(curatorFramework), null, () -> false);
+    }
+
+    /**
+     * @param compactTopology whether topology is written in compact form, it should be enabled only when all the
+     *                        nodes are able to read it
+     * @param watchHub        watches shared with the other clients of the node
+     * @param dbOffsetStore   store of offsets in database, or null if offsets can be kept only in zookeeper
+     * @param useDbOffsets    whether offsets of new subscriptions are kept in database, and offsets of existing
+     *                        subscriptions are moved there with the next cursor reset, it should be
+     *                        enabled only when all the nodes are able to read offsets from database
+     */
+    public NewZkSubscriptionClient(
+            final String subscriptionId,
+            final CuratorFramework curatorFramework,
+            final String loggingPath,
+            final ObjectMapper objectMapper,
+            final BooleanSupplier compactTopology,
+            final ZkWatchHub watchHub,
+            @Nullable final OffsetStore dbOffsetStore,
+            final BooleanSupplier useDbOffsets) {
+        super(subscriptionId, curatorFramework, loggingPath, watchHub, dbOffsetStore, useDbOffsets);
         this.objectMapper = objectMapper;
+        this.compactTopology = compactTopology;
     }
 
     @Override
-    protected byte[] createTopologyAndOffsets(final Collection<SubscriptionCursorWithoutToken> cursors)
-            throws Exception {
-        for (final SubscriptionCursorWithoutToken cursor : cursors) {
-            getCurator().create().creatingParentsIfNeeded().forPath(
-                    getOffsetPath(cursor.getEventTypePartition()),
-                    cursor.getOffset().getBytes(UTF_8));
-        }
+    protected byte[] createTopology(final Collection<SubscriptionCursorWithoutToken> cursors)
+            throws JsonProcessingException {
         final Partition[] partitions = cursors.stream().map(cursor -> new Partition(
                 cursor.getEventType(),
                 cursor.getPartition(),
@@ -89,7 +113,7 @@ public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
         )).toArray(Partition[]::new);
         final Topology topology = new Topology(partitions, "", 0);
         getLog().info("Generating topology {}", topology);
-        return objectMapper.writeValueAsBytes(topology);
+        return serializeTopology(topology);
     }
 
     @Override
@@ -99,27 +123,67 @@ public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
         final Topology newTopology = getTopology().withUpdatedPartitions(newSessionsHash, partitions);
         try {
             getLog().info("Updating topology to {}", newTopology);
-            getCurator().setData().forPath(
+            final Stat stat = getCurator().setData().forPath(
                     getSubscriptionPath(NODE_TOPOLOGY),
-                    objectMapper.writeValueAsBytes(newTopology));
+                    serializeTopology(newTopology));
+            cachedTopology = new CachedTopology(newTopology, null == stat ? -1 : stat.getVersion());
         } catch (final Exception ex) {
             throw new NakadiRuntimeException(ex);
         }
     }
 
+    /**
+     * Reads topology only if zk node was changed since the last time topology was read or written by this client,
+     * otherwise just checks the version of the node.
+     */
     @Override
     public Topology getTopology() throws NakadiRuntimeException,
             SubscriptionNotInitializedException {
         try {
-            return parseTopology(getCurator().getData().forPath(getSubscriptionPath(NODE_TOPOLOGY)));
+            final CachedTopology cached = cachedTopology;
+            if (null != cached && cached.zkVersion >= 0) {
+                final Stat current = getCurator().checkExists().forPath(getSubscriptionPath(NODE_TOPOLOGY));
+                if (null == current) {
+                    throw new SubscriptionNotInitializedException(getSubscriptionId());
+                }
+                if (current.getVersion() == cached.zkVersion) {
+                    return cached.topology;
+                }
+            }
+            final Stat stat = new Stat();
+            final byte[] data = getCurator().getData().storingStatIn(stat)
+                    .forPath(getSubscriptionPath(NODE_TOPOLOGY));
+            final Topology topology = parseTopology(data);
+            cachedTopology = new CachedTopology(topology, stat.getVersion());
+            return topology;
         } catch (KeeperException.NoNodeException ex) {
             throw new SubscriptionNotInitializedException(getSubscriptionId());
+        } catch (final SubscriptionNotInitializedException ex) {
+            throw ex;
         } catch (final Exception ex) {
             throw new NakadiRuntimeException(ex);
         }
     }
 
+    private byte[] serializeTopology(final Topology topology) throws JsonProcessingException {
+        return compactTopology.getAsBoolean() ?
+                TopologyCodec.encode(topology) : objectMapper.writeValueAsBytes(topology);
+    }
+
+    /**
+     * Compact topology of the same version as the cached one is not decoded again, json topology is always parsed.
+     */
     private Topology parseTopology(final byte[] data) {
+        final Integer version = TopologyCodec.peekVersion(data);
+        if (null != version) {
+            final CachedTopology cached = cachedTopology;
+            if (null != cached && version.equals(cached.topology.getVersion())) {
+                return cached.topology;
+            }
+            final Topology topology = TopologyCodec.decode(data);
+            cachedTopology = new CachedTopology(topology, -1);
+            return topology;
+        }
         try {
             return objectMapper.readValue(data, Topology.class);
         } catch (IOException e) {
@@ -131,11 +195,10 @@ public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
     public final ZkSubscription<Topology> subscribeForTopologyChanges(final Runnable onTopologyChanged)
             throws NakadiRuntimeException {
         getLog().info("subscribeForTopologyChanges");
-        return new ZkSubscriptionImpl.ZkSubscriptionValueImpl<>(
-                getCurator(),
+        return getWatchHub().subscribeForValue(
+                getSubscriptionPath(NODE_TOPOLOGY),
                 onTopologyChanged,
-                this::parseTopology,
-                getSubscriptionPath(NODE_TOPOLOGY));
+                this::parseTopology);
     }
 
     protected byte[] serializeSession(final Session session)
@@ -167,39 +230,18 @@ public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
         return getSubscriptionPath("/offsets/" + etp.getEventType() + "/" + etp.getPartition());
     }
 
-    @Override
-    public Map<EventTypePartition, SubscriptionCursorWithoutToken> getOffsets(
-            final Collection<EventTypePartition> keys)
-            throws NakadiRuntimeException, ServiceTemporarilyUnavailableException {
-        final Map<EventTypePartition, SubscriptionCursorWithoutToken> offSets = loadDataAsync(keys,
-                this::getOffsetPath, (etp, value) ->
-                        new SubscriptionCursorWithoutToken(etp.getEventType(), etp.getPartition(),
-                                new String(value, UTF_8)));
-
-        if (offSets.size() != keys.size()) {
-            throw new ServiceTemporarilyUnavailableException("Failed to get all the keys " +
-                    keys.stream()
-                            .filter(v -> !offSets.containsKey(v))
-                            .map(String::valueOf)
-                            .collect(Collectors.joining(", "))
-                    + " from ZK.", null);
-        }
-
-        return offSets;
-    }
-
     @Override
     public void transfer(final String sessionId, final Collection<EventTypePartition> partitions)
             throws NakadiRuntimeException, SubscriptionNotInitializedException {
         getLog().info("session " + sessionId + " releases partitions " + partitions);
         final Topology topology = getTopology();
+        final Map<EventTypePartition, Partition> topologyPartitions = Stream.of(topology.getPartitions())
+                .collect(Collectors.toMap(Partition::getKey, p -> p));
 
         final List<Partition> changeSet = new ArrayList<>();
         for (final EventTypePartition etp : partitions) {
-            final Partition candidate = Stream.of(topology.getPartitions())
-                    .filter(p -> p.getKey().equals(etp))
-                    .findAny().get();
-            if (sessionId.equals(candidate.getSession())
+            final Partition candidate = topologyPartitions.get(etp);
+            if (null != candidate && sessionId.equals(candidate.getSession())
                     && candidate.getState() == Partition.State.REASSIGNING) {
                 changeSet.add(candidate.toState(
                         Partition.State.ASSIGNED,
@@ -215,4 +257,14 @@ public class NewZkSubscriptionClient extends AbstractZkSubscriptionClient {
         }
     }
 
+    private static class CachedTopology {
+        private final Topology topology;
+        // Version of zk node the topology was read from, or -1 if it is not known
+        private final int zkVersion;
+
+        private CachedTopology(final Topology topology, final int zkVersion) {
+            this.topology = topology;
+            this.zkVersion = zkVersion;
+        }
+    }
 }
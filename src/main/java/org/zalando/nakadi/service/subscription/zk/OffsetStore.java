@@ -0,0 +1,44 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of committed offsets of one subscription. Offsets are kept either in zookeeper, next to the rest of
+ * subscription data, or in database, that takes much higher commit rate than zookeeper does.
+ */
+public interface OffsetStore {
+
+    /**
+     * Creates offsets of a new subscription, or overwrites existing ones.
+     */
+    void createOffsets(Collection<SubscriptionCursorWithoutToken> cursors) throws NakadiRuntimeException;
+
+    Map<EventTypePartition, SubscriptionCursorWithoutToken> getOffsets(Collection<EventTypePartition> keys)
+            throws NakadiRuntimeException, ServiceTemporarilyUnavailableException;
+
+    /**
+     * Commits cursors, that are greater than the committed ones according to comparator.
+     *
+     * @return list of flags, whether each of cursors was committed, in the same order as cursors
+     */
+    List<Boolean> commitOffsets(List<SubscriptionCursorWithoutToken> cursors,
+                                Comparator<SubscriptionCursorWithoutToken> comparator);
+
+    /**
+     * Sets offsets regardless of the committed ones. Is used to reset cursors, when there are no sessions.
+     */
+    void forceCommitOffsets(Collection<SubscriptionCursorWithoutToken> cursors) throws NakadiRuntimeException;
+
+    ZkSubscription<SubscriptionCursorWithoutToken> subscribeForOffsetChanges(
+            EventTypePartition key, Runnable commitListener) throws NakadiRuntimeException;
+
+    void deleteOffsets() throws NakadiRuntimeException;
+}
@@ -7,19 +7,33 @@ import org.springframework.stereotype.Service;
 import org.zalando.nakadi.domain.Subscription;
 import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
+import org.zalando.nakadi.service.FeatureToggleService;
 
 @Service
 public class SubscriptionClientFactory {
     private final ZooKeeperHolder zkHolder;
     private final ObjectMapper objectMapper;
+    private final FeatureToggleService featureToggleService;
+    private final ZkWatchHub watchHub;
+    private final SubscriptionOffsetDbRepository offsetRepository;
+    private final DbOffsetWatcher offsetWatcher;
 
     @Autowired
     public SubscriptionClientFactory(
             final ZooKeeperHolder zkHolder,
-            final ObjectMapper objectMapper) {
+            final ObjectMapper objectMapper,
+            final FeatureToggleService featureToggleService,
+            final ZkWatchHub watchHub,
+            final SubscriptionOffsetDbRepository offsetRepository,
+            final DbOffsetWatcher offsetWatcher) {
         this.zkHolder = zkHolder;
         this.objectMapper = objectMapper;
+        this.featureToggleService = featureToggleService;
+        this.watchHub = watchHub;
+        this.offsetRepository = offsetRepository;
+        this.offsetWatcher = offsetWatcher;
     }
 
     public ZkSubscriptionClient createClient(final Subscription subscription, final String loggingPath)
@@ -29,6 +43,10 @@ public class SubscriptionClientFactory {
                 subscription.getId(),
                 zkHolder.get(),
                 loggingPath,
-                objectMapper);
+                objectMapper,
+                () -> featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.COMPACT_TOPOLOGY),
+                watchHub,
+                new DbOffsetStore(subscription.getId(), offsetRepository, offsetWatcher),
+                () -> featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.DB_OFFSET_STORE));
     }
 }
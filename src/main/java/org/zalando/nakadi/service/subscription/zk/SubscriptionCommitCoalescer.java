@@ -0,0 +1,259 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.domain.Subscription;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.service.subscription.LogPathBuilder;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Node-wide entry point for committing cursors of subscriptions. Commits of one subscription are written by one
+ * thread at a time: commits, that arrive while previous ones are being written, are queued and then written all
+ * together with one call to {@link ZkSubscriptionClient#commitOffsets(List, Comparator)}, so that concurrent commits
+ * of the same partition end up in one zookeeper write of the greatest cursor. Each caller gets the results of its own
+ * cursors.
+ * <p>
+ * Topology and session list, that are used to validate commits, are kept in memory and are refreshed by zookeeper
+ * watches. Subscriptions, that were not used for {@code idleTimeoutMs}, are dropped from memory.
+ */
+@Component
+public class SubscriptionCommitCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionCommitCoalescer.class);
+
+    private final SubscriptionClientFactory clientFactory;
+    private final long idleTimeoutMs;
+    private final long commitTimeoutMs;
+    private final ExecutorService commitExecutor;
+    private final ScheduledExecutorService cleanupExecutor;
+    private final ConcurrentMap<String, SubscriptionCommits> subscriptions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SubscriptionCommitCoalescer(
+            final SubscriptionClientFactory clientFactory,
+            @Value("${nakadi.subscription.commit.threads}") final int threads,
+            @Value("${nakadi.subscription.commit.idleTimeoutMs}") final long idleTimeoutMs,
+            @Value("${nakadi.subscription.commit.timeoutMs}") final long commitTimeoutMs) {
+        this.clientFactory = clientFactory;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.commitTimeoutMs = commitTimeoutMs;
+        this.commitExecutor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("subscription-commit-%d").setDaemon(true).build());
+        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("subscription-commit-cleanup").setDaemon(true).build());
+        this.cleanupExecutor.scheduleWithFixedDelay(
+                this::removeIdleSubscriptions, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commits cursors along with the other commits of the subscription, that are made at the same time.
+     *
+     * @param comparator comparator of cursors, all the commits of the subscription are expected to use comparators
+     *                   with the same ordering
+     * @return list of flags, whether each of cursors was committed, in the same order as cursors
+     */
+    public List<Boolean> commitOffsets(
+            final Subscription subscription,
+            final List<SubscriptionCursorWithoutToken> cursors,
+            final Comparator<SubscriptionCursorWithoutToken> comparator)
+            throws ServiceTemporarilyUnavailableException {
+        final PendingCommit commit = new PendingCommit(cursors, comparator);
+        getSubscriptionCommits(subscription).commit(commit);
+        try {
+            return commit.result.get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NakadiRuntimeException(e);
+        } catch (final TimeoutException e) {
+            throw new ServiceTemporarilyUnavailableException("Timeout committing cursors", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceTemporarilyUnavailableException("Interrupted while committing cursors", e);
+        }
+    }
+
+    /**
+     * Checks if session is registered, according to the latest session list, that was received from zookeeper.
+     */
+    public boolean isActiveSession(final Subscription subscription, final String streamId)
+            throws ServiceTemporarilyUnavailableException {
+        return getSubscriptionCommits(subscription).getSessions().contains(streamId);
+    }
+
+    /**
+     * Returns the latest topology of subscription, that was received from zookeeper.
+     */
+    public ZkSubscriptionClient.Topology getTopology(final Subscription subscription)
+            throws SubscriptionNotInitializedException, NakadiRuntimeException {
+        return getSubscriptionCommits(subscription).getTopology();
+    }
+
+    private SubscriptionCommits getSubscriptionCommits(final Subscription subscription) {
+        SubscriptionCommits commits = subscriptions.get(subscription.getId());
+        if (null == commits) {
+            commits = subscriptions.computeIfAbsent(subscription.getId(), id -> new SubscriptionCommits(
+                    clientFactory.createClient(subscription, LogPathBuilder.build(id, "offsets"))));
+        }
+        commits.lastUsedAt = System.currentTimeMillis();
+        return commits;
+    }
+
+    private void removeIdleSubscriptions() {
+        final long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        subscriptions.values().removeIf(commits -> {
+            if (commits.lastUsedAt < idleSince) {
+                commits.closeWatches();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleanupExecutor.shutdownNow();
+        commitExecutor.shutdown();
+    }
+
+    private static class PendingCommit {
+        private final List<SubscriptionCursorWithoutToken> cursors;
+        private final Comparator<SubscriptionCursorWithoutToken> comparator;
+        private final CompletableFuture<List<Boolean>> result = new CompletableFuture<>();
+
+        private PendingCommit(final List<SubscriptionCursorWithoutToken> cursors,
+                              final Comparator<SubscriptionCursorWithoutToken> comparator) {
+            this.cursors = cursors;
+            this.comparator = comparator;
+        }
+    }
+
+    private class SubscriptionCommits {
+        private final ZkSubscriptionClient client;
+        private final Queue<PendingCommit> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private ZkSubscription<ZkSubscriptionClient.Topology> topology;
+        private ZkSubscription<List<String>> sessions;
+        private volatile long lastUsedAt;
+
+        private SubscriptionCommits(final ZkSubscriptionClient client) {
+            this.client = client;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+
+        void commit(final PendingCommit commit) {
+            pending.add(commit);
+            scheduleFlush();
+        }
+
+        private void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                commitExecutor.execute(this::flush);
+            }
+        }
+
+        private void flush() {
+            final List<PendingCommit> batch = new ArrayList<>();
+            PendingCommit commit;
+            while (null != (commit = pending.poll())) {
+                batch.add(commit);
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    final List<Boolean> committed = client.commitOffsets(
+                            batch.stream().flatMap(c -> c.cursors.stream()).collect(Collectors.toList()),
+                            batch.get(0).comparator);
+                    int from = 0;
+                    for (final PendingCommit item : batch) {
+                        final int to = from + item.cursors.size();
+                        item.result.complete(new ArrayList<>(committed.subList(from, to)));
+                        from = to;
+                    }
+                }
+            } catch (final RuntimeException ex) {
+                LOG.warn("Failed to commit {} batches of cursors", batch.size(), ex);
+                batch.forEach(item -> item.result.completeExceptionally(ex));
+            } finally {
+                flushScheduled.set(false);
+            }
+            // commits could be added after the queue was drained, but before the flag was reset
+            if (!pending.isEmpty()) {
+                scheduleFlush();
+            }
+        }
+
+        synchronized ZkSubscriptionClient.Topology getTopology() {
+            if (null == topology) {
+                // fails with proper exception in case if subscription is not initialized yet
+                client.getTopology();
+                topology = client.subscribeForTopologyChanges(() -> {
+                });
+            }
+            try {
+                return topology.getData();
+            } catch (final NakadiRuntimeException ex) {
+                // failed read is not retried by watch, so it should be recreated on next call
+                topology.close();
+                topology = null;
+                throw ex;
+            }
+        }
+
+        synchronized List<String> getSessions() {
+            try {
+                if (null == sessions) {
+                    sessions = client.subscribeForSessionListChanges(() -> {
+                    });
+                }
+                return sessions.getData();
+            } catch (final NakadiRuntimeException ex) {
+                if (null != sessions) {
+                    sessions.close();
+                    sessions = null;
+                }
+                if (ex.getException() instanceof KeeperException.NoNodeException) {
+                    return Collections.emptyList();
+                }
+                throw new ServiceTemporarilyUnavailableException("Error communicating with zookeeper", ex);
+            }
+        }
+
+        synchronized void closeWatches() {
+            if (null != topology) {
+                topology.close();
+                topology = null;
+            }
+            if (null != sessions) {
+                sessions.close();
+                sessions = null;
+            }
+        }
+    }
+}
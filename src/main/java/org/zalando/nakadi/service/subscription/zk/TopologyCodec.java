@@ -0,0 +1,196 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.service.subscription.model.Partition;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of {@link ZkSubscriptionClient.Topology}. Event types and sessions are written once and
+ * referenced by index from partitions, numeric partition ids are written as numbers, so that a partition takes
+ * several bytes instead of more than a hundred in json. The layout is:
+ * <pre>
+ * byte     marker, never '{', so that json topology can be told apart
+ * byte     format version
+ * int      topology version, at fixed position so that it can be read without decoding the rest
+ * boolean  whether sessions hash is present, followed by the hash
+ * varint   amount of sessions, followed by session ids
+ * varint   amount of event types, followed by event type names
+ * varint   amount of partitions, followed by partitions:
+ *   varint event type index
+ *   varint partition id + 1 for numeric ids, or 0 followed by the id
+ *   byte   state
+ *   varint session index + 1, or 0 if there is no session
+ *   varint next session index + 1, or 0 if there is no next session
+ * </pre>
+ */
+final class TopologyCodec {
+
+    private static final byte MARKER = 0;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int VERSION_OFFSET = 2;
+    private static final Partition.State[] STATES = Partition.State.values();
+
+    private TopologyCodec() {
+    }
+
+    static boolean isCompact(final byte[] data) {
+        return data.length > VERSION_OFFSET + 4 && data[0] == MARKER;
+    }
+
+    /**
+     * @return version of compact topology, or null if data is not in compact form
+     */
+    @Nullable
+    static Integer peekVersion(final byte[] data) {
+        if (!isCompact(data)) {
+            return null;
+        }
+        return ((data[VERSION_OFFSET] & 0xFF) << 24) | ((data[VERSION_OFFSET + 1] & 0xFF) << 16) |
+                ((data[VERSION_OFFSET + 2] & 0xFF) << 8) | (data[VERSION_OFFSET + 3] & 0xFF);
+    }
+
+    static byte[] encode(final ZkSubscriptionClient.Topology topology) {
+        final Map<String, Integer> sessions = new HashMap<>();
+        final List<String> sessionIds = new ArrayList<>();
+        final Map<String, Integer> eventTypes = new HashMap<>();
+        final List<String> eventTypeNames = new ArrayList<>();
+        for (final Partition partition : topology.getPartitions()) {
+            index(partition.getEventType(), eventTypes, eventTypeNames);
+            index(partition.getSession(), sessions, sessionIds);
+            index(partition.getNextSession(), sessions, sessionIds);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + topology.getPartitions().length * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MARKER);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(null == topology.getVersion() ? 0 : topology.getVersion());
+            out.writeBoolean(null != topology.getSessionsHash());
+            if (null != topology.getSessionsHash()) {
+                out.writeUTF(topology.getSessionsHash());
+            }
+            writeStrings(out, sessionIds);
+            writeStrings(out, eventTypeNames);
+            writeVarInt(out, topology.getPartitions().length);
+            for (final Partition partition : topology.getPartitions()) {
+                writeVarInt(out, eventTypes.get(partition.getEventType()));
+                final int numericId = toNumber(partition.getPartition());
+                writeVarInt(out, numericId + 1);
+                if (numericId < 0) {
+                    out.writeUTF(partition.getPartition());
+                }
+                out.writeByte(partition.getState().ordinal());
+                writeVarInt(out, null == partition.getSession() ? 0 : sessions.get(partition.getSession()) + 1);
+                writeVarInt(out,
+                        null == partition.getNextSession() ? 0 : sessions.get(partition.getNextSession()) + 1);
+            }
+        } catch (final IOException e) {
+            throw new NakadiRuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ZkSubscriptionClient.Topology decode(final byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != MARKER) {
+                throw new IOException("Topology is not in compact form");
+            }
+            final byte formatVersion = in.readByte();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported topology format version " + formatVersion);
+            }
+            final int version = in.readInt();
+            final String sessionsHash = in.readBoolean() ? in.readUTF() : null;
+            final String[] sessionIds = readStrings(in);
+            final String[] eventTypeNames = readStrings(in);
+            final Partition[] partitions = new Partition[readVarInt(in)];
+            for (int i = 0; i < partitions.length; ++i) {
+                final String eventType = eventTypeNames[readVarInt(in)];
+                final int numericId = readVarInt(in) - 1;
+                final String partition = numericId < 0 ? in.readUTF() : String.valueOf(numericId);
+                final Partition.State state = STATES[in.readByte()];
+                final int session = readVarInt(in);
+                final int nextSession = readVarInt(in);
+                partitions[i] = new Partition(eventType, partition,
+                        session == 0 ? null : sessionIds[session - 1],
+                        nextSession == 0 ? null : sessionIds[nextSession - 1],
+                        state);
+            }
+            return new ZkSubscriptionClient.Topology(partitions, sessionsHash, version);
+        } catch (final IOException | RuntimeException e) {
+            throw new NakadiRuntimeException(new IOException("Failed to decode compact topology", e));
+        }
+    }
+
+    private static void index(@Nullable final String value, final Map<String, Integer> indexes,
+                              final List<String> values) {
+        if (null != value && !indexes.containsKey(value)) {
+            indexes.put(value, values.size());
+            values.add(value);
+        }
+    }
+
+    /**
+     * @return value of partition id if it is written exactly as the number would be, -1 otherwise
+     */
+    private static int toNumber(final String partition) {
+        if (partition.isEmpty() || partition.length() > 9 || (partition.length() > 1 && partition.charAt(0) == '0')) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < partition.length(); ++i) {
+            final char c = partition.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void writeStrings(final DataOutputStream out, final List<String> values) throws IOException {
+        writeVarInt(out, values.size());
+        for (final String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String[] readStrings(final DataInputStream in) throws IOException {
+        final String[] result = new String[readVarInt(in)];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+    private static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+        int left = value;
+        while ((left & ~0x7F) != 0) {
+            out.writeByte((left & 0x7F) | 0x80);
+            left >>>= 7;
+        }
+        out.writeByte(left);
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
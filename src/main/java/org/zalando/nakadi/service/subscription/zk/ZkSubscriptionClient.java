@@ -19,6 +19,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -204,16 +205,20 @@ public interface ZkSubscriptionClient {
             return partitions;
         }
 
+        @Nullable
+        public Integer getVersion() {
+            return version;
+        }
+
         public Topology withUpdatedPartitions(final String newHash, final Partition[] partitions) {
             final Partition[] resultPartitions = Arrays.copyOf(this.partitions, this.partitions.length);
+            final Map<EventTypePartition, Integer> indexes = new HashMap<>(resultPartitions.length * 2);
+            for (int idx = 0; idx < resultPartitions.length; ++idx) {
+                indexes.put(resultPartitions[idx].getKey(), idx);
+            }
             for (final Partition newValue : partitions) {
-                int selectedIdx = -1;
-                for (int idx = 0; idx < resultPartitions.length; ++idx) {
-                    if (resultPartitions[idx].getKey().equals(newValue.getKey())) {
-                        selectedIdx = idx;
-                    }
-                }
-                if (selectedIdx < 0) {
+                final Integer selectedIdx = indexes.get(newValue.getKey());
+                if (null == selectedIdx) {
                     throw new NakadiBaseException(
                             "Failed to find partition " + newValue.getKey() + " in " + this);
                 }
@@ -0,0 +1,328 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps one zookeeper watch and one cached value per znode for all the streaming sessions of the node. Sessions of
+ * the same subscription are watching the same nodes (session list, topology, cursor reset, offsets), so instead of
+ * installing N identical watches and making N identical reads on every change, the watch is installed once, change
+ * notification is fanned out to all the local listeners, and the first of them to ask for the data reads it for
+ * everybody. Shared watch is released when the last local listener is closed.
+ * <p>
+ * Nodes, that are never changed once created, are not watched at all: their values are read once and cached for all
+ * the clients of the node.
+ */
+@Component
+public class ZkWatchHub {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZkWatchHub.class);
+    private static final long CREATE_ONCE_VALUES_EXPIRE_MINUTES = 10;
+
+    private final CuratorFramework curatorFramework;
+    // guarded by itself
+    private final Map<String, SharedWatch<?>> watches = new HashMap<>();
+    // Absent nodes are cached as empty values
+    private final Cache<String, Optional<byte[]>> createOnceValues = CacheBuilder.newBuilder()
+            .expireAfterAccess(CREATE_ONCE_VALUES_EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    @Autowired
+    public ZkWatchHub(final ZooKeeperHolder zooKeeperHolder) {
+        this(zooKeeperHolder.get());
+    }
+
+    public ZkWatchHub(final CuratorFramework curatorFramework) {
+        this.curatorFramework = curatorFramework;
+    }
+
+    public <T> ZkSubscription<T> subscribeForValue(
+            final String path, final Runnable listener, final Function<byte[], T> converter)
+            throws NakadiRuntimeException {
+        return subscribe("value:" + path, () -> new ValueWatch(path), listener, converter);
+    }
+
+    public ZkSubscription<List<String>> subscribeForChildren(final String path, final Runnable listener)
+            throws NakadiRuntimeException {
+        return subscribe("children:" + path, () -> new ChildrenWatch(path), listener, Function.identity());
+    }
+
+    /**
+     * Notifies the listener when the node is created, changed or deleted.
+     */
+    public Closeable subscribeForNodeChanges(final String path, final Runnable listener)
+            throws NakadiRuntimeException {
+        return subscribe("node:" + path, () -> new NodeCacheWatch(path), listener, Function.identity())::close;
+    }
+
+    /**
+     * Returns the value of the node, that is never changed once it is created, e.g. offset store marker of a
+     * subscription. Neither the value, nor the absence of the node is read again, until it is invalidated, so the
+     * client, that creates or deletes the node, or finds out that it was created meanwhile by another instance, has
+     * to {@link #invalidateCreateOnceValue(String) invalidate} it.
+     */
+    public Optional<byte[]> getCreateOnceValue(final String path) throws NakadiRuntimeException {
+        Optional<byte[]> result = createOnceValues.getIfPresent(path);
+        if (null != result) {
+            return result;
+        }
+        try {
+            result = Optional.of(curatorFramework.getData().forPath(path));
+        } catch (final KeeperException.NoNodeException ex) {
+            result = Optional.empty();
+        } catch (final Exception ex) {
+            throw new NakadiRuntimeException(ex);
+        }
+        createOnceValues.put(path, result);
+        return result;
+    }
+
+    public void invalidateCreateOnceValue(final String path) {
+        createOnceValues.invalidate(path);
+    }
+
+    int getWatchCount() {
+        synchronized (watches) {
+            return watches.size();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <Z, T> Subscription<Z, T> subscribe(
+            final String key,
+            final WatchFactory<Z> watchFactory,
+            final Runnable listener,
+            final Function<Z, T> converter) throws NakadiRuntimeException {
+        final Subscription<Z, T> subscription;
+        synchronized (watches) {
+            SharedWatch<Z> watch = (SharedWatch<Z>) watches.get(key);
+            if (null == watch) {
+                watch = watchFactory.create();
+                watch.start();
+                watches.put(key, watch);
+            }
+            subscription = new Subscription<>(key, watch, listener, converter);
+            watch.subscriptions.add(subscription);
+        }
+        try {
+            // The very first call is used to install the watch, if it is not installed yet
+            subscription.getData();
+        } catch (final RuntimeException ex) {
+            subscription.close();
+            throw ex;
+        }
+        return subscription;
+    }
+
+    private void unsubscribe(final Subscription<?, ?> subscription) {
+        synchronized (watches) {
+            final SharedWatch<?> watch = subscription.watch;
+            if (watch.subscriptions.remove(subscription) && watch.subscriptions.isEmpty()) {
+                watches.remove(subscription.key);
+                watch.stop();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface WatchFactory<Z> {
+        SharedWatch<Z> create() throws NakadiRuntimeException;
+    }
+
+    private class Subscription<Z, T> implements ZkSubscription<T> {
+        private final String key;
+        private final SharedWatch<Z> watch;
+        private final Runnable listener;
+        private final Function<Z, T> converter;
+        private volatile boolean closed;
+        private Z lastData;
+        private T lastConverted;
+
+        private Subscription(final String key, final SharedWatch<Z> watch, final Runnable listener,
+                             final Function<Z, T> converter) {
+            this.key = key;
+            this.watch = watch;
+            this.listener = listener;
+            this.converter = converter;
+        }
+
+        @Override
+        public synchronized T getData() throws NakadiRuntimeException {
+            // create watch only in case if subscription is still active.
+            final Z data = watch.getData(!closed);
+            if (data != lastData) {
+                lastConverted = converter.apply(data);
+                lastData = data;
+            }
+            return lastConverted;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unsubscribe(this);
+            }
+        }
+
+        private void notifyListener() {
+            if (closed) {
+                return;
+            }
+            try {
+                listener.run();
+            } catch (final RuntimeException ex) {
+                LOG.error("Failed to notify listener of {}", key, ex);
+            }
+        }
+    }
+
+    private abstract static class SharedWatch<Z> implements Watcher {
+        protected final String path;
+        private final List<Subscription<Z, ?>> subscriptions = new CopyOnWriteArrayList<>();
+        private final AtomicLong changes = new AtomicLong();
+        private volatile Z data;
+
+        private SharedWatch(final String path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns cached data, or reads it, if it was changed since the last read. Data is cached only when it was
+         * read along with the watch and no change happened during the read, so cached data is always up to date.
+         * Failed reads are not cached, the next call is going to retry.
+         */
+        Z getData(final boolean createWatch) throws NakadiRuntimeException {
+            Z result = data;
+            if (null != result) {
+                return result;
+            }
+            synchronized (this) {
+                result = data;
+                if (null != result) {
+                    return result;
+                }
+                final long changesBefore = changes.get();
+                try {
+                    result = query(createWatch);
+                } catch (final NakadiRuntimeException ex) {
+                    throw ex;
+                } catch (final Exception ex) {
+                    throw new NakadiRuntimeException(ex);
+                }
+                if (createWatch && changes.get() == changesBefore) {
+                    data = result;
+                }
+                return result;
+            }
+        }
+
+        @Override
+        public void process(final WatchedEvent event) {
+            // on this call one actually notifies that data has changed and waits for refresh call.
+            // The reason for that is that sometimes it is not possible to query data from zk while being called from
+            // notification callback.
+            changes.incrementAndGet();
+            data = null;
+            notifySubscriptions();
+        }
+
+        protected void notifySubscriptions() {
+            subscriptions.forEach(Subscription::notifyListener);
+        }
+
+        protected void start() throws NakadiRuntimeException {
+        }
+
+        protected void stop() {
+        }
+
+        protected abstract Z query(boolean createWatch) throws Exception;
+    }
+
+    private class ValueWatch extends SharedWatch<byte[]> {
+        private ValueWatch(final String path) {
+            super(path);
+        }
+
+        @Override
+        protected byte[] query(final boolean createWatch) throws Exception {
+            return createWatch ?
+                    curatorFramework.getData().usingWatcher(this).forPath(path) :
+                    curatorFramework.getData().forPath(path);
+        }
+    }
+
+    private class ChildrenWatch extends SharedWatch<List<String>> {
+        private ChildrenWatch(final String path) {
+            super(path);
+        }
+
+        @Override
+        protected List<String> query(final boolean createWatch) throws Exception {
+            return createWatch ?
+                    curatorFramework.getChildren().usingWatcher(this).forPath(path) :
+                    curatorFramework.getChildren().forPath(path);
+        }
+    }
+
+    /**
+     * Node cache watches the node even while it does not exist, and is notifying about changes by itself, so there
+     * is no data to be read by the listeners.
+     */
+    private class NodeCacheWatch extends SharedWatch<Boolean> {
+        private final NodeCache nodeCache;
+
+        private NodeCacheWatch(final String path) {
+            super(path);
+            this.nodeCache = new NodeCache(curatorFramework, path);
+        }
+
+        @Override
+        protected void start() throws NakadiRuntimeException {
+            nodeCache.getListenable().addListener(this::notifySubscriptions);
+            try {
+                nodeCache.start();
+            } catch (final Exception e) {
+                throw new NakadiRuntimeException(e);
+            }
+        }
+
+        @Override
+        protected void stop() {
+            try {
+                nodeCache.getListenable().clear();
+                nodeCache.close();
+            } catch (final IOException e) {
+                LOG.error("Failed to close node cache of {}", path, e);
+            }
+        }
+
+        @Override
+        protected Boolean query(final boolean createWatch) {
+            return Boolean.TRUE;
+        }
+    }
+}
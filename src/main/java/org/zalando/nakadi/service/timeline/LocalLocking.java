@@ -1,67 +1,96 @@
 package org.zalando.nakadi.service.timeline;
 
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+/**
+ * Gate between publishers and timeline switches of event types. Each event type has its own gate: counter of
+ * publishers in flight and a flag whether the event type is locked. Publisher increments the counter and then checks
+ * the flag, while lock is set first and then counter is checked, so that one of them always sees the other one without
+ * any shared lock on the publishing path. Monitor is only used to wait while event type is locked and to wait for
+ * publishers to leave locked event types.
+ */
 public class LocalLocking {
     private static final Logger LOG = LoggerFactory.getLogger(LocalLocking.class);
-    private final Set<String> lockedEventTypes = new HashSet<>();
-    private final Map<String, Integer> eventTypesBeingPublished = new HashMap<>();
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+    private volatile Set<String> lockedEventTypes = ImmutableSet.of();
     private final Object lock = new Object();
 
+    private static class Gate {
+        private final LongAdder inFlight = new LongAdder();
+        private volatile boolean locked;
+    }
+
     public Closeable workWithEventType(final String eventType, final long timeoutMs)
             throws InterruptedException, TimeoutException {
         final long finishAt = System.currentTimeMillis() + timeoutMs;
-        synchronized (lock) {
-            long now = System.currentTimeMillis();
-            while (now < finishAt && lockedEventTypes.contains(eventType)) {
-                lock.wait(finishAt - now);
-                now = System.currentTimeMillis();
+        final Gate gate = getGate(eventType);
+        while (true) {
+            gate.inFlight.increment();
+            if (!gate.locked) {
+                return () -> leave(gate);
             }
-            if (lockedEventTypes.contains(eventType)) {
-                throw new TimeoutException("Timed out while waiting for event type " + eventType +
-                        " to unlock within " + timeoutMs + " ms");
+            leave(gate);
+            synchronized (lock) {
+                long now = System.currentTimeMillis();
+                while (now < finishAt && gate.locked) {
+                    lock.wait(finishAt - now);
+                    now = System.currentTimeMillis();
+                }
+                if (gate.locked) {
+                    throw new TimeoutException("Timed out while waiting for event type " + eventType +
+                            " to unlock within " + timeoutMs + " ms");
+                }
             }
-            eventTypesBeingPublished.put(eventType, eventTypesBeingPublished.getOrDefault(eventType, 0) + 1);
         }
-        return () -> {
+    }
+
+    private Gate getGate(final String eventType) {
+        final Gate gate = gates.get(eventType);
+        return null != gate ? gate : gates.computeIfAbsent(eventType, et -> new Gate());
+    }
+
+    private void leave(final Gate gate) {
+        gate.inFlight.decrement();
+        if (gate.locked) {
+            // timeline switch may be waiting for publishers to leave
             synchronized (lock) {
-                final int currentCount = eventTypesBeingPublished.get(eventType);
-                if (1 == currentCount) {
-                    eventTypesBeingPublished.remove(eventType);
-                    lock.notifyAll();
-                } else {
-                    eventTypesBeingPublished.put(eventType, currentCount - 1);
-                }
+                lock.notifyAll();
             }
-        };
+        }
     }
 
     public Set<String> getUnlockedEventTypes(final Set<String> lockedEventTypesUpdated) {
-        synchronized (lock) {
-            return this.lockedEventTypes.stream()
-                    .filter(v -> !lockedEventTypesUpdated.contains(v))
-                    .collect(Collectors.toSet());
-        }
+        return this.lockedEventTypes.stream()
+                .filter(v -> !lockedEventTypesUpdated.contains(v))
+                .collect(Collectors.toSet());
     }
 
     public void updateLockedEventTypes(final Set<String> lockedEventTypes) throws InterruptedException {
         synchronized (lock) {
-            this.lockedEventTypes.clear();
-            this.lockedEventTypes.addAll(lockedEventTypes);
+            for (final Map.Entry<String, Gate> gate : gates.entrySet()) {
+                gate.getValue().locked = lockedEventTypes.contains(gate.getKey());
+            }
+            for (final String eventType : lockedEventTypes) {
+                getGate(eventType).locked = true;
+            }
+            this.lockedEventTypes = ImmutableSet.copyOf(lockedEventTypes);
+            // publishers of unlocked event types can proceed without waiting for the rest to be drained
+            lock.notifyAll();
             boolean haveUsage = true;
             while (haveUsage) {
                 final List<String> stillLocked = this.lockedEventTypes.stream()
-                        .filter(eventTypesBeingPublished::containsKey).collect(Collectors.toList());
+                        .filter(et -> gates.get(et).inFlight.sum() > 0).collect(Collectors.toList());
                 haveUsage = !stillLocked.isEmpty();
                 if (haveUsage) {
                     LOG.info("Event types are still locked: {}", stillLocked);
@@ -3,15 +3,20 @@ package org.zalando.nakadi.service.validation;
 import org.zalando.nakadi.domain.EventTypeOptions;
 import org.zalando.nakadi.exceptions.runtime.EventTypeOptionsValidationException;
 
+import java.util.Set;
+
 public final class EventTypeOptionsValidator {
 
     private final long minTopicRetentionMs;
     private final long maxTopicRetentionMs;
+    private final Set<String> producerProfiles;
 
     public EventTypeOptionsValidator(final long minTopicRetentionMs,
-                                     final long maxTopicRetentionMs) {
+                                     final long maxTopicRetentionMs,
+                                     final Set<String> producerProfiles) {
         this.minTopicRetentionMs = minTopicRetentionMs;
         this.maxTopicRetentionMs = maxTopicRetentionMs;
+        this.producerProfiles = producerProfiles;
     }
 
     public void checkRetentionTime(final EventTypeOptions options) throws EventTypeOptionsValidationException {
@@ -31,4 +36,15 @@ public final class EventTypeOptionsValidator {
         }
     }
 
+    public void checkProducerProfile(final EventTypeOptions options) throws EventTypeOptionsValidationException {
+        if (options == null || options.getProducerProfile() == null) {
+            return;
+        }
+
+        if (!producerProfiles.contains(options.getProducerProfile())) {
+            throw new EventTypeOptionsValidationException(
+                    "Field \"options.producer_profile\" must be one of " + producerProfiles);
+        }
+    }
+
 }
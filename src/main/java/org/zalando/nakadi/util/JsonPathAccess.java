@@ -4,6 +4,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.zalando.nakadi.exceptions.runtime.InvalidPartitionKeyFieldsException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /*
  One could use JsonPath Lib instead: https://github.com/jayway/JsonPath
 
@@ -19,13 +22,26 @@ public class JsonPathAccess {
     }
 
     public Object get(final String path) throws InvalidPartitionKeyFieldsException {
+        return get(jsonObject, compilePath(path));
+    }
 
+    /**
+     * Splits path into field names, so that it can be reused to access many json objects.
+     */
+    public static String[] compilePath(final String path) {
         final JsonPathTokenizer pathTokenizer = new JsonPathTokenizer(path);
-
-        Object curr = this.jsonObject;
+        final List<String> fields = new ArrayList<>();
         String field;
-
         while ((field = pathTokenizer.nextToken()) != null) {
+            fields.add(field);
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    public static Object get(final JSONObject jsonObject, final String[] path)
+            throws InvalidPartitionKeyFieldsException {
+        Object curr = jsonObject;
+        for (final String field : path) {
             if (!(curr instanceof JSONObject)) {
                 throw new InvalidPartitionKeyFieldsException("field " + field + " doesn't exist.");
             }
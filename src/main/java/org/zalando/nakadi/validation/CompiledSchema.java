@@ -0,0 +1,671 @@
+package org.zalando.nakadi.validation;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Json schema compiled into a tree of checks, that are specialized for the keywords used in the schema: properties
+ * are looked up in hash maps, required properties are tracked with a bit mask while walking the event once, regular
+ * expressions and references are resolved on compilation.
+ * <p>
+ * Compiled schema comes to a decision only when it is sure that everit would come to the same one, otherwise (e.g.
+ * for non-string value of enum with non-string values) the result is unknown. Only confirmed valid events skip
+ * everit, all the others are validated by everit, which is also producing error messages, so validation results are
+ * the same as without compilation, while valid events, that are the vast majority, are validated with the compiled
+ * schema only. Schemas, that are using keywords not supported by compilation, are not compiled at all.
+ */
+final class CompiledSchema {
+
+    private static final Set<String> DRAFT_4 = ImmutableSet.of(
+            "http://json-schema.org/draft-04/schema#", "http://json-schema.org/draft-04/schema");
+    private static final Set<String> ANNOTATIONS = ImmutableSet.of(
+            "title", "description", "default", "example", "examples", "$comment");
+    // validation keywords, that are ignored by compilation, everit is ignoring all the unknown keywords
+    private static final Set<String> UNSUPPORTED = ImmutableSet.of(
+            "not", "patternProperties", "dependencies", "multipleOf", "uniqueItems", "const", "contains",
+            "propertyNames", "if", "then", "else");
+    private static final String DEFINITIONS_PREFIX = "#/definitions/";
+
+    static final int VALID = 0;
+    static final int UNKNOWN = 1;
+    static final int INVALID = 2;
+
+    private static final int NULL = 1;
+    private static final int BOOLEAN = 1 << 1;
+    private static final int OBJECT = 1 << 2;
+    private static final int ARRAY = 1 << 3;
+    private static final int STRING = 1 << 4;
+    private static final int NUMBER = 1 << 5;
+    private static final int INTEGER = 1 << 6;
+
+    private static final RFC3339DateTimeValidator DATE_TIME_VALIDATOR = new RFC3339DateTimeValidator();
+
+    private final Node root;
+
+    private CompiledSchema(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles schema.
+     *
+     * @return compiled schema or empty if schema is using keywords, that are not supported by compilation
+     */
+    static Optional<CompiledSchema> compile(final JSONObject schema) {
+        try {
+            return Optional.of(new CompiledSchema(new Compiler(schema).compileRoot()));
+        } catch (final UnsupportedSchemaException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return true if event is confirmed to be valid, false if event is invalid or its validity can not be confirmed
+     */
+    boolean isValid(final Object event) {
+        return root.validate(event) == VALID;
+    }
+
+    /**
+     * @return {@link #VALID} or {@link #INVALID} if compiled schema comes to a decision, {@link #UNKNOWN} otherwise
+     */
+    @VisibleForTesting
+    int validate(final Object event) {
+        return root.validate(event);
+    }
+
+    private static int typeOf(final Object value) {
+        if (value instanceof String) {
+            return STRING;
+        } else if (value instanceof JSONObject) {
+            return OBJECT;
+        } else if (value instanceof JSONArray) {
+            return ARRAY;
+        } else if (value instanceof Integer || value instanceof Long) {
+            return INTEGER | NUMBER;
+        } else if (value instanceof Double) {
+            return NUMBER;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            return NULL;
+        }
+        return 0;
+    }
+
+    private static class UnsupportedSchemaException extends Exception {
+        UnsupportedSchemaException(final String message) {
+            super(message);
+        }
+    }
+
+    private interface Node {
+        /**
+         * @return {@link #VALID}, {@link #INVALID} or {@link #UNKNOWN}, results can be combined with Math.max
+         */
+        int validate(Object value);
+    }
+
+    private static class Reference implements Node {
+        private Node target;
+
+        @Override
+        public int validate(final Object value) {
+            return target.validate(value);
+        }
+    }
+
+    private static class Property {
+        private final boolean declared;
+        private final Node schema;
+        private final long requiredBit;
+
+        private Property(final boolean declared, final Node schema, final long requiredBit) {
+            this.declared = declared;
+            this.schema = schema;
+            this.requiredBit = requiredBit;
+        }
+    }
+
+    private static class SchemaNode implements Node {
+        private int types;
+        private Set<String> stringEnum;
+        private boolean enumHasOnlyStrings;
+        private List<Node> allOf;
+        private List<Node> anyOf;
+        private List<Node> oneOf;
+
+        // object keywords
+        private Map<String, Property> properties;
+        private long requiredMask;
+        private String[] required;
+        private boolean additionalPropertiesAllowed = true;
+        private Node additionalProperties;
+        private int minProperties = -1;
+        private int maxProperties = -1;
+
+        // array keywords
+        private Node items;
+        private int minItems = -1;
+        private int maxItems = -1;
+
+        // string keywords
+        private Pattern pattern;
+        private int minLength = -1;
+        private int maxLength = -1;
+        private boolean dateTime;
+
+        // number keywords
+        private BigDecimal minimum;
+        private boolean exclusiveMinimum;
+        private BigDecimal maximum;
+        private boolean exclusiveMaximum;
+
+        @Override
+        public int validate(final Object value) {
+            final int type = typeOf(value);
+            if (type == 0) {
+                return UNKNOWN;
+            }
+            int result = validateType(value, type);
+            if (result == INVALID) {
+                return INVALID;
+            }
+            if (null != stringEnum) {
+                if (type == STRING) {
+                    if (!stringEnum.contains(value)) {
+                        return INVALID;
+                    }
+                } else {
+                    // non-string value can only be equal to non-string enum value
+                    result = Math.max(result, enumHasOnlyStrings ? INVALID : UNKNOWN);
+                }
+            }
+            switch (type) {
+                case OBJECT:
+                    result = Math.max(result, validateObject((JSONObject) value));
+                    break;
+                case ARRAY:
+                    result = Math.max(result, validateArray((JSONArray) value));
+                    break;
+                case STRING:
+                    result = Math.max(result, validateString((String) value));
+                    break;
+                case NUMBER:
+                case NUMBER | INTEGER:
+                    result = Math.max(result, validateNumber((Number) value));
+                    break;
+                default:
+                    break;
+            }
+            if (result == INVALID) {
+                return INVALID;
+            }
+            if (null != allOf) {
+                for (final Node node : allOf) {
+                    result = Math.max(result, node.validate(value));
+                    if (result == INVALID) {
+                        return INVALID;
+                    }
+                }
+            }
+            if (null != anyOf) {
+                int anyOfResult = INVALID;
+                for (final Node node : anyOf) {
+                    anyOfResult = Math.min(anyOfResult, node.validate(value));
+                    if (anyOfResult == VALID) {
+                        break;
+                    }
+                }
+                result = Math.max(result, anyOfResult);
+            }
+            if (null != oneOf) {
+                result = Math.max(result, validateOneOf(value));
+            }
+            return result;
+        }
+
+        private int validateType(final Object value, final int type) {
+            if (types == 0 || (types & type) != 0) {
+                return VALID;
+            }
+            if ((types & INTEGER) != 0 && type == NUMBER) {
+                // integral floating point numbers are not guaranteed to be treated the same way everywhere
+                final double number = (Double) value;
+                return number == Math.rint(number) ? UNKNOWN : INVALID;
+            }
+            return INVALID;
+        }
+
+        private int validateOneOf(final Object value) {
+            int valid = 0;
+            boolean unknown = false;
+            for (final Node node : oneOf) {
+                final int nodeResult = node.validate(value);
+                if (nodeResult == VALID) {
+                    ++valid;
+                } else if (nodeResult == UNKNOWN) {
+                    unknown = true;
+                }
+            }
+            if (valid > 1) {
+                return INVALID;
+            } else if (unknown) {
+                return UNKNOWN;
+            }
+            return valid == 1 ? VALID : INVALID;
+        }
+
+        private int validateObject(final JSONObject object) {
+            final int size = object.length();
+            if ((minProperties >= 0 && size < minProperties) || (maxProperties >= 0 && size > maxProperties)) {
+                return INVALID;
+            }
+            int result = VALID;
+            long foundRequired = 0;
+            for (final String key : object.keySet()) {
+                final Property property = null == properties ? null : properties.get(key);
+                final Node schema;
+                if (null != property) {
+                    foundRequired |= property.requiredBit;
+                }
+                if (null != property && property.declared) {
+                    schema = property.schema;
+                } else if (!additionalPropertiesAllowed) {
+                    return INVALID;
+                } else {
+                    schema = additionalProperties;
+                }
+                if (null != schema) {
+                    result = Math.max(result, schema.validate(object.opt(key)));
+                    if (result == INVALID) {
+                        return INVALID;
+                    }
+                }
+            }
+            if (foundRequired != requiredMask) {
+                return INVALID;
+            }
+            if (null != required) {
+                for (final String key : required) {
+                    if (!object.has(key)) {
+                        return INVALID;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private int validateArray(final JSONArray array) {
+            final int size = array.length();
+            if ((minItems >= 0 && size < minItems) || (maxItems >= 0 && size > maxItems)) {
+                return INVALID;
+            }
+            int result = VALID;
+            if (null != items) {
+                for (int i = 0; i < size && result != INVALID; ++i) {
+                    result = Math.max(result, items.validate(array.opt(i)));
+                }
+            }
+            return result;
+        }
+
+        private int validateString(final String string) {
+            if (minLength >= 0 || maxLength >= 0) {
+                final int length = string.codePointCount(0, string.length());
+                if ((minLength >= 0 && length < minLength) || (maxLength >= 0 && length > maxLength)) {
+                    return INVALID;
+                }
+            }
+            if (null != pattern && !pattern.matcher(string).find()) {
+                return INVALID;
+            }
+            return dateTime && DATE_TIME_VALIDATOR.validate(string).isPresent() ? INVALID : VALID;
+        }
+
+        private int validateNumber(final Number number) {
+            if (null == minimum && null == maximum) {
+                return VALID;
+            }
+            // decision is made only if exact and floating point comparisons agree, so that it does not depend on the
+            // way numbers are compared by everit
+            final BigDecimal exact = new BigDecimal(number.toString());
+            final double approximate = number.doubleValue();
+            int result = VALID;
+            if (null != minimum) {
+                result = Math.max(result, decide(
+                        isAboveMinimum(exact.compareTo(minimum)),
+                        isAboveMinimum(Double.compare(approximate, minimum.doubleValue()))));
+            }
+            if (null != maximum) {
+                result = Math.max(result, decide(
+                        isBelowMaximum(exact.compareTo(maximum)),
+                        isBelowMaximum(Double.compare(approximate, maximum.doubleValue()))));
+            }
+            return result;
+        }
+
+        private boolean isAboveMinimum(final int cmp) {
+            return exclusiveMinimum ? cmp > 0 : cmp >= 0;
+        }
+
+        private boolean isBelowMaximum(final int cmp) {
+            return exclusiveMaximum ? cmp < 0 : cmp <= 0;
+        }
+
+        private static int decide(final boolean exact, final boolean approximate) {
+            if (exact != approximate) {
+                return UNKNOWN;
+            }
+            return exact ? VALID : INVALID;
+        }
+    }
+
+    private static class Compiler {
+        private final JSONObject rootSchema;
+        private final Map<String, Reference> references = new HashMap<>();
+
+        private Compiler(final JSONObject rootSchema) {
+            this.rootSchema = rootSchema;
+        }
+
+        private Node compileRoot() throws UnsupportedSchemaException {
+            final Node root = compile(rootSchema, true);
+            for (final Map.Entry<String, Reference> reference : new ArrayList<>(references.entrySet())) {
+                resolve(reference.getKey(), reference.getValue(), root);
+            }
+            return root;
+        }
+
+        private void resolve(final String ref, final Reference reference, final Node root)
+                throws UnsupportedSchemaException {
+            if (null != reference.target) {
+                return;
+            }
+            if ("#".equals(ref)) {
+                reference.target = root;
+                return;
+            }
+            final JSONObject definitions = rootSchema.optJSONObject("definitions");
+            final String name = ref.substring(DEFINITIONS_PREFIX.length());
+            if (null == definitions || null == definitions.optJSONObject(name)) {
+                throw new UnsupportedSchemaException("Unresolvable reference " + ref);
+            }
+            reference.target = compile(definitions.getJSONObject(name), false);
+            // definition can reference other definitions, that were not seen before
+            for (final Map.Entry<String, Reference> other : new ArrayList<>(references.entrySet())) {
+                resolve(other.getKey(), other.getValue(), root);
+            }
+        }
+
+        private Node compile(final Object schemaObject, final boolean isRoot) throws UnsupportedSchemaException {
+            if (!(schemaObject instanceof JSONObject)) {
+                throw new UnsupportedSchemaException("Schema is expected to be an object");
+            }
+            final JSONObject schema = (JSONObject) schemaObject;
+            if (schema.has("$ref")) {
+                return compileReference(schema);
+            }
+            final SchemaNode node = new SchemaNode();
+            for (final String keyword : schema.keySet()) {
+                final Object value = schema.get(keyword);
+                switch (keyword) {
+                    case "type":
+                        node.types = compileTypes(value);
+                        break;
+                    case "enum":
+                        compileEnum(node, value);
+                        break;
+                    case "allOf":
+                        node.allOf = compileList(value);
+                        break;
+                    case "anyOf":
+                        node.anyOf = compileList(value);
+                        break;
+                    case "oneOf":
+                        node.oneOf = compileList(value);
+                        break;
+                    case "properties":
+                    case "required":
+                    case "additionalProperties":
+                        // compiled together
+                        break;
+                    case "minProperties":
+                        node.minProperties = asCount(value);
+                        break;
+                    case "maxProperties":
+                        node.maxProperties = asCount(value);
+                        break;
+                    case "items":
+                        node.items = compile(value, false);
+                        break;
+                    case "additionalItems":
+                        // only applies to tuple validation, that is not supported
+                        break;
+                    case "minItems":
+                        node.minItems = asCount(value);
+                        break;
+                    case "maxItems":
+                        node.maxItems = asCount(value);
+                        break;
+                    case "pattern":
+                        node.pattern = compilePattern(value);
+                        break;
+                    case "minLength":
+                        node.minLength = asCount(value);
+                        break;
+                    case "maxLength":
+                        node.maxLength = asCount(value);
+                        break;
+                    case "format":
+                        if (!"date-time".equals(value)) {
+                            throw new UnsupportedSchemaException("Unsupported format " + value);
+                        }
+                        node.dateTime = true;
+                        break;
+                    case "minimum":
+                        node.minimum = asNumber(value);
+                        break;
+                    case "maximum":
+                        node.maximum = asNumber(value);
+                        break;
+                    case "exclusiveMinimum":
+                        node.exclusiveMinimum = asBoolean(value);
+                        break;
+                    case "exclusiveMaximum":
+                        node.exclusiveMaximum = asBoolean(value);
+                        break;
+                    case "definitions":
+                        // compiled when referenced
+                        break;
+                    case "$schema":
+                        // data change event schemas are nested into the wrapper together with version
+                        if (!DRAFT_4.contains(value)) {
+                            throw new UnsupportedSchemaException("Only draft 4 schemas are supported");
+                        }
+                        break;
+                    case "id":
+                        if (!isRoot) {
+                            throw new UnsupportedSchemaException("Nested resolution scope is not supported");
+                        }
+                        break;
+                    default:
+                        if (UNSUPPORTED.contains(keyword)) {
+                            throw new UnsupportedSchemaException("Unsupported keyword " + keyword);
+                        }
+                }
+            }
+            compileProperties(node, schema);
+            return node;
+        }
+
+        private Node compileReference(final JSONObject schema) throws UnsupportedSchemaException {
+            for (final String keyword : schema.keySet()) {
+                if (!"$ref".equals(keyword) && !ANNOTATIONS.contains(keyword) && !keyword.startsWith("x-")) {
+                    throw new UnsupportedSchemaException("Keywords next to $ref are not supported");
+                }
+            }
+            final Object ref = schema.get("$ref");
+            if (!"#".equals(ref) && !(ref instanceof String && ((String) ref).startsWith(DEFINITIONS_PREFIX)
+                    && ((String) ref).indexOf('/', DEFINITIONS_PREFIX.length()) < 0
+                    && ((String) ref).indexOf('~') < 0 && ((String) ref).indexOf('%') < 0)) {
+                throw new UnsupportedSchemaException("Only references to definitions are supported");
+            }
+            return references.computeIfAbsent((String) ref, r -> new Reference());
+        }
+
+        private void compileProperties(final SchemaNode node, final JSONObject schema)
+                throws UnsupportedSchemaException {
+            final Object additionalProperties = schema.opt("additionalProperties");
+            if (additionalProperties instanceof Boolean) {
+                node.additionalPropertiesAllowed = (Boolean) additionalProperties;
+            } else if (null != additionalProperties) {
+                node.additionalProperties = compile(additionalProperties, false);
+            }
+            final Object schemaProperties = schema.opt("properties");
+            final Object requiredProperties = schema.opt("required");
+            if (null == schemaProperties && null == requiredProperties) {
+                return;
+            }
+            if ((null != schemaProperties && !(schemaProperties instanceof JSONObject))
+                    || (null != requiredProperties && !(requiredProperties instanceof JSONArray))) {
+                throw new UnsupportedSchemaException("Unexpected type of properties or required");
+            }
+            node.properties = new HashMap<>();
+            if (null != schemaProperties) {
+                final JSONObject properties = (JSONObject) schemaProperties;
+                for (final String name : properties.keySet()) {
+                    node.properties.put(name, new Property(true, compile(properties.get(name), false), 0L));
+                }
+            }
+            final Set<String> required = new HashSet<>();
+            if (null != requiredProperties) {
+                for (final Object name : (JSONArray) requiredProperties) {
+                    if (!(name instanceof String)) {
+                        throw new UnsupportedSchemaException("Required property name is expected to be a string");
+                    }
+                    required.add((String) name);
+                }
+            }
+            if (required.size() > Long.SIZE) {
+                node.required = required.toArray(new String[0]);
+                return;
+            }
+            for (final String name : required) {
+                final long bit = 1L << Long.numberOfTrailingZeros(~node.requiredMask);
+                node.requiredMask |= bit;
+                final Property property = node.properties.get(name);
+                node.properties.put(name, null == property ?
+                        new Property(false, null, bit) : new Property(true, property.schema, bit));
+            }
+        }
+
+        private List<Node> compileList(final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof JSONArray) || ((JSONArray) value).length() == 0) {
+                throw new UnsupportedSchemaException("Non-empty array of schemas is expected");
+            }
+            final List<Node> result = new ArrayList<>();
+            for (final Object schema : (JSONArray) value) {
+                result.add(compile(schema, false));
+            }
+            return result;
+        }
+
+        private static int compileTypes(final Object value) throws UnsupportedSchemaException {
+            if (value instanceof String) {
+                return compileType((String) value);
+            } else if (value instanceof JSONArray && ((JSONArray) value).length() > 0) {
+                int types = 0;
+                for (final Object type : (JSONArray) value) {
+                    if (!(type instanceof String)) {
+                        throw new UnsupportedSchemaException("Type is expected to be a string");
+                    }
+                    types |= compileType((String) type);
+                }
+                return types;
+            }
+            throw new UnsupportedSchemaException("Unexpected type " + value);
+        }
+
+        private static int compileType(final String type) throws UnsupportedSchemaException {
+            switch (type) {
+                case "null":
+                    return NULL;
+                case "boolean":
+                    return BOOLEAN;
+                case "object":
+                    return OBJECT;
+                case "array":
+                    return ARRAY;
+                case "string":
+                    return STRING;
+                case "number":
+                    return NUMBER;
+                case "integer":
+                    return INTEGER;
+                default:
+                    throw new UnsupportedSchemaException("Unknown type " + type);
+            }
+        }
+
+        private static void compileEnum(final SchemaNode node, final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof JSONArray)) {
+                throw new UnsupportedSchemaException("Enum is expected to be an array");
+            }
+            node.stringEnum = new HashSet<>();
+            node.enumHasOnlyStrings = true;
+            for (final Object item : (JSONArray) value) {
+                if (item instanceof String) {
+                    node.stringEnum.add((String) item);
+                } else {
+                    node.enumHasOnlyStrings = false;
+                }
+            }
+        }
+
+        private static Pattern compilePattern(final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof String)) {
+                throw new UnsupportedSchemaException("Pattern is expected to be a string");
+            }
+            try {
+                return Pattern.compile((String) value);
+            } catch (final PatternSyntaxException e) {
+                throw new UnsupportedSchemaException("Invalid pattern " + value);
+            }
+        }
+
+        private static int asCount(final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof Integer) || (Integer) value < 0) {
+                throw new UnsupportedSchemaException("Non-negative integer is expected, got " + value);
+            }
+            return (Integer) value;
+        }
+
+        private static BigDecimal asNumber(final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof Number)) {
+                throw new UnsupportedSchemaException("Number is expected, got " + value);
+            }
+            return new BigDecimal(value.toString());
+        }
+
+        private static boolean asBoolean(final Object value) throws UnsupportedSchemaException {
+            if (!(value instanceof Boolean)) {
+                throw new UnsupportedSchemaException("Boolean is expected, got " + value);
+            }
+            return (Boolean) value;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.json.JSONObject;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.ValidationStrategyConfiguration;
 
+import javax.annotation.Nullable;
 import java.util.Optional;
 
 public class EventBodyMustRespectSchema extends ValidationStrategy {
@@ -34,10 +35,13 @@ public class EventBodyMustRespectSchema extends ValidationStrategy {
 class JSONSchemaValidator implements EventValidator {
 
     private final Schema schema;
+    @Nullable
+    private final CompiledSchema compiledSchema;
 
     private static final FormatValidator DATE_TIME_VALIDATOR = new RFC3339DateTimeValidator();
 
     JSONSchemaValidator(final JSONObject effectiveSchema) {
+        compiledSchema = CompiledSchema.compile(effectiveSchema).orElse(null);
         schema = SchemaLoader
                 .builder()
                 .schemaJson(effectiveSchema)
@@ -49,6 +53,10 @@ class JSONSchemaValidator implements EventValidator {
 
     @Override
     public Optional<ValidationError> accepts(final JSONObject event) {
+        if (null != compiledSchema && compiledSchema.isValid(event)) {
+            return Optional.empty();
+        }
+        // everit is deciding on the events, that are not confirmed by compiled schema, and builds error messages
         try {
             schema.validate(event);
 
@@ -7,8 +7,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.zalando.nakadi.config.SecuritySettings;
@@ -33,8 +35,10 @@ import org.zalando.nakadi.utils.TestUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -46,8 +50,10 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static org.zalando.nakadi.config.SecuritySettings.AuthMode.OFF;
@@ -94,7 +100,8 @@ public class EventPublishingControllerTest {
                         "kpiEventTypeName");
 
         mockMvc = standaloneSetup(controller)
-                .setMessageConverters(new StringHttpMessageConverter(), TestUtils.JACKSON_2_HTTP_MESSAGE_CONVERTER)
+                .setMessageConverters(new StringHttpMessageConverter(), new ByteArrayHttpMessageConverter(),
+                        TestUtils.JACKSON_2_HTTP_MESSAGE_CONVERTER)
                 .setCustomArgumentResolvers(new ClientResolver(settings, authorizationService))
                 .setControllerAdvice(new NakadiProblemExceptionHandler(), new EventPublishingExceptionHandler())
                 .build();
@@ -105,28 +112,59 @@ public class EventPublishingControllerTest {
         final EventPublishResult result = new EventPublishResult(SUBMITTED, null, submittedResponses(1));
 
         Mockito
-                .doReturn(result)
+                .doReturn(completedFuture(result))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC));
+                .publishAsync(any(byte[].class), eq(TOPIC));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isOk())
                 .andExpect(content().string(""));
     }
 
+    @Test
+    public void whenResultIsNotReadyThenResponseIsDeferred() throws Exception {
+        final CompletableFuture<EventPublishResult> publishing = new CompletableFuture<>();
+        when(publisher.publishAsync(any(byte[].class), eq(TOPIC))).thenReturn(publishing);
+
+        final MvcResult mvcResult = mockMvc.perform(post("/event-types/" + TOPIC + "/events")
+                .contentType(APPLICATION_JSON)
+                .content(EVENT_BATCH))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        publishing.complete(new EventPublishResult(SUBMITTED, null, submittedResponses(1)));
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+        assertThat(eventTypeMetricRegistry.metricsFor(TOPIC).getResponseCount(200), equalTo(1L));
+    }
+
+    @Test
+    public void whenPublishingCompletesExceptionallyThen500() throws Exception {
+        final CompletableFuture<EventPublishResult> publishing = new CompletableFuture<>();
+        publishing.completeExceptionally(new InternalNakadiException("storage failure"));
+        when(publisher.publishAsync(any(byte[].class), eq(TOPIC))).thenReturn(publishing);
+
+        postBatch(TOPIC, EVENT_BATCH)
+                .andExpect(content().contentType("application/problem+json"))
+                .andExpect(status().isInternalServerError());
+        assertThat(eventTypeMetricRegistry.metricsFor(TOPIC).getResponseCount(500), equalTo(1L));
+    }
+
     @Test
     public void whenInvalidPostBodyThen400() throws Exception {
 
         Mockito.doThrow(new JSONException("Error"))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC));
+                .publishAsync(any(byte[].class), eq(TOPIC));
 
         postBatch(TOPIC, "invalid json array").andExpect(status().isBadRequest());
     }
 
     @Test
     public void whenEventPublishTimeoutThen503() throws Exception {
-        when(publisher.publish(any(), any())).thenThrow(new EventTypeTimeoutException(""));
+        when(publisher.publishAsync(any(byte[].class), any())).thenThrow(new EventTypeTimeoutException(""));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(content().contentType("application/problem+json"))
@@ -138,9 +176,9 @@ public class EventPublishingControllerTest {
         final EventPublishResult result = new EventPublishResult(ABORTED, PARTITIONING, responses());
 
         Mockito
-                .doReturn(result)
+                .doReturn(completedFuture(result))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC));
+                .publishAsync(any(byte[].class), eq(TOPIC));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isUnprocessableEntity())
@@ -152,9 +190,9 @@ public class EventPublishingControllerTest {
         final EventPublishResult result = new EventPublishResult(FAILED, PUBLISHING, responses());
 
         Mockito
-                .doReturn(result)
+                .doReturn(completedFuture(result))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC));
+                .publishAsync(any(byte[].class), eq(TOPIC));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(status().isMultiStatus())
@@ -166,7 +204,7 @@ public class EventPublishingControllerTest {
         Mockito
                 .doThrow(new NoSuchEventTypeException("topic not found"))
                 .when(publisher)
-                .publish(any(String.class), eq(TOPIC));
+                .publishAsync(any(byte[].class), eq(TOPIC));
 
         postBatch(TOPIC, EVENT_BATCH)
                 .andExpect(content().contentType("application/problem+json"))
@@ -177,11 +215,11 @@ public class EventPublishingControllerTest {
     public void publishedEventsAreReportedPerEventType() throws Exception {
         final EventPublishResult success = new EventPublishResult(SUBMITTED, null, submittedResponses(3));
         Mockito
-                .doReturn(success)
-                .doReturn(success)
+                .doReturn(completedFuture(success))
+                .doReturn(completedFuture(success))
                 .doThrow(InternalNakadiException.class)
                 .when(publisher)
-                .publish(any(), any());
+                .publishAsync(any(byte[].class), any());
 
         postBatch(TOPIC, EVENT_BATCH);
         postBatch(TOPIC, EVENT_BATCH);
@@ -197,11 +235,11 @@ public class EventPublishingControllerTest {
     public void publishedEventsKPIReported() throws Exception {
         final EventPublishResult success = new EventPublishResult(SUBMITTED, null, submittedResponses(3));
         Mockito
-                .doReturn(success)
-                .doReturn(success)
+                .doReturn(completedFuture(success))
+                .doReturn(completedFuture(success))
                 .doThrow(InternalNakadiException.class)
                 .when(publisher)
-                .publish(any(), any());
+                .publishAsync(any(byte[].class), any());
 
         when(kpiPublisher.hash(any())).thenReturn("hashed-application-name");
 
@@ -259,6 +297,11 @@ public class EventPublishingControllerTest {
                 .contentType(APPLICATION_JSON)
                 .content(batch);
 
-        return mockMvc.perform(requestBuilder);
+        final ResultActions resultActions = mockMvc.perform(requestBuilder);
+        final MvcResult mvcResult = resultActions.andReturn();
+        if (mvcResult.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(mvcResult));
+        }
+        return resultActions;
     }
 }
@@ -10,7 +10,9 @@ import org.mockito.Mockito;
 import org.mockito.exceptions.base.MockitoException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.DelegatingServletOutputStream;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.zalando.nakadi.config.SecuritySettings;
 import org.zalando.nakadi.domain.CursorError;
@@ -42,11 +44,15 @@ import org.zalando.nakadi.service.EventStream;
 import org.zalando.nakadi.service.EventStreamConfig;
 import org.zalando.nakadi.service.EventStreamFactory;
 import org.zalando.nakadi.service.EventTypeChangeListener;
+import org.zalando.nakadi.service.FeatureToggleService;
+import org.zalando.nakadi.service.NonBlockingOutputStream;
+import org.zalando.nakadi.service.StreamCompression;
 import org.zalando.nakadi.service.converter.CursorConverterImpl;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.utils.TestUtils;
 import org.zalando.problem.Problem;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
@@ -59,7 +65,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -163,7 +169,8 @@ public class EventStreamControllerTest {
                 eventTypeRepository, timelineService, TestUtils.OBJECT_MAPPER, eventStreamFactoryMock, metricRegistry,
                 streamMetrics, crutch, blacklistService,
                 new CursorConverterImpl(eventTypeCache, timelineService), authorizationValidator,
-                eventTypeChangeListener, null);
+                eventTypeChangeListener, null, 1_000_000L,
+                new StreamCompression(mock(FeatureToggleService.class), streamMetrics, 6, 3, 1));
 
         settings = mock(SecuritySettings.class);
         when(settings.getAuthMode()).thenReturn(OFF);
@@ -305,7 +312,7 @@ public class EventStreamControllerTest {
                 .thenReturn(tps2);
 
         final ArgumentCaptor<EventStreamConfig> configCaptor = ArgumentCaptor.forClass(EventStreamConfig.class);
-        final EventStream eventStreamMock = mock(EventStream.class);
+        final EventStream eventStreamMock = mockEventStream();
         when(eventStreamFactoryMock.createEventStream(any(), any(), configCaptor.capture(), any()))
                 .thenReturn(eventStreamMock);
 
@@ -331,13 +338,13 @@ public class EventStreamControllerTest {
         final ArgumentCaptor<String> contentTypeCaptor = getContentTypeCaptor();
 
         final ArgumentCaptor<EventStreamConfig> configCaptor = ArgumentCaptor.forClass(EventStreamConfig.class);
-        final EventStream eventStreamMock = mock(EventStream.class);
+        final EventStream eventStreamMock = mockEventStream();
         when(eventStreamFactoryMock.createEventStream(any(), any(), configCaptor.capture(), any()))
                 .thenReturn(eventStreamMock);
 
         final StreamingResponseBody responseBody = createStreamingResponseBody(1, 2, 3, 4, 5,
                 "[{\"partition\":\"0\",\"offset\":\"000000000000000000\"}]");
-        final OutputStream outputStream = mock(OutputStream.class);
+        final OutputStream outputStream = mock(ServletOutputStream.class);
         responseBody.writeTo(outputStream);
 
         final EventStreamConfig streamConfig = configCaptor.getValue();
@@ -360,9 +367,9 @@ public class EventStreamControllerTest {
 
         verify(timelineService, times(1)).createEventConsumer(eq(KAFKA_CLIENT_ID),
                 eq(ImmutableList.of(NakadiCursor.of(timeline, "0", "000000000000000000"))));
-        verify(eventStreamFactoryMock, times(1)).createEventStream(eq(outputStream),
+        verify(eventStreamFactoryMock, times(1)).createEventStream(any(NonBlockingOutputStream.class),
                 eq(eventConsumerMock), eq(streamConfig), any());
-        verify(eventStreamMock, times(1)).streamEvents(any(), any());
+        verify(eventStreamMock, times(1)).streamEventsAsync(any(), any(), any());
         verify(outputStream, times(2)).flush();
         verify(outputStream, times(1)).close();
     }
@@ -393,46 +400,31 @@ public class EventStreamControllerTest {
         when(eventTypeRepository.findByName(TEST_EVENT_TYPE_NAME)).thenReturn(EVENT_TYPE);
         final EventStream eventStream = mock(EventStream.class);
 
-        // block to simulate the streaming until thread is interrupted
+        // streaming lasts until the future is completed
+        final LinkedList<CompletableFuture<Void>> clients = new LinkedList<>();
         Mockito.doAnswer(invocation -> {
-            while (!Thread.interrupted()) {
-                Thread.sleep(100);
-            }
-            return null;
-        }).when(eventStream).streamEvents(any(), any());
+            final CompletableFuture<Void> streaming = new CompletableFuture<>();
+            clients.add(streaming);
+            return streaming;
+        }).when(eventStream).streamEventsAsync(any(), any(), any());
         when(eventStreamFactoryMock.createEventStream(any(), any(), any(), any())).thenReturn(eventStream);
 
-        // "connect" to the server
-        final StreamingResponseBody responseBody = createStreamingResponseBody();
-
-        final LinkedList<Thread> clients = new LinkedList<>();
         final Counter counter = metricRegistry.counter(metricNameFor(TEST_EVENT_TYPE_NAME,
                 EventStreamController.CONSUMERS_COUNT_METRIC_NAME));
 
-        // create clients...
+        // "connect" to the server
+        when(responseMock.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
         for (int i = 0; i < 3; i++) {
-            final Thread client = new Thread(() -> {
-                try {
-                    responseBody.writeTo(new ByteArrayOutputStream());
-                } catch (final IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-            client.start();
-            clients.add(client);
-
-            TestUtils.waitFor(
-                    () -> assertThat(counter.getCount(), equalTo((long) clients.size())),
-                    TimeUnit.SECONDS.toMillis(5)
-            );
+            final DeferredResult<Void> result = controller.streamEvents(TEST_EVENT_TYPE_NAME, 1, 0, 0, 0, 0, null,
+                    requestMock, responseMock, FULL_ACCESS_CLIENT);
+            ((StreamingDeferredResult) result).start();
 
+            assertThat(counter.getCount(), equalTo((long) clients.size()));
         }
 
         // ...and disconnect them one by one
         while (!clients.isEmpty()) {
-            final Thread client = clients.pop();
-            client.interrupt();
-            client.join();
+            clients.pop().complete(null);
 
             assertThat(counter.getCount(), equalTo((long) clients.size()));
         }
@@ -444,8 +436,9 @@ public class EventStreamControllerTest {
         final ArgumentCaptor<Integer> statusCaptor = getStatusCaptor();
         final ArgumentCaptor<String> contentTypeCaptor = getContentTypeCaptor();
 
+        final EventStream eventStreamMock = mockEventStream();
         when(eventStreamFactoryMock.createEventStream(any(), any(), any(), any()))
-                .thenReturn(mock(EventStream.class));
+                .thenReturn(eventStreamMock);
 
         writeStream();
 
@@ -475,8 +468,9 @@ public class EventStreamControllerTest {
         final ArgumentCaptor<Integer> statusCaptor = getStatusCaptor();
         final ArgumentCaptor<String> contentTypeCaptor = getContentTypeCaptor();
 
+        final EventStream eventStreamMock = mockEventStream();
         when(eventStreamFactoryMock.createEventStream(any(), any(), any(), any()))
-                .thenReturn(mock(EventStream.class));
+                .thenReturn(eventStreamMock);
 
         writeStream();
 
@@ -517,20 +511,23 @@ public class EventStreamControllerTest {
         return out.toString();
     }
 
+    private EventStream mockEventStream() {
+        final EventStream eventStream = mock(EventStream.class);
+        when(eventStream.streamEventsAsync(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        return eventStream;
+    }
+
     protected StreamingResponseBody createStreamingResponseBody() throws IOException {
-        return controller.streamEvents(TEST_EVENT_TYPE_NAME, 1, 0, 0, 0, 0, null, requestMock, responseMock,
-                FULL_ACCESS_CLIENT);
+        return createStreamingResponseBody(1, 0, 0, 0, 0, null);
     }
 
     private StreamingResponseBody createStreamingResponseBody(final Client client) throws Exception {
-        return controller.streamEvents(
-                TEST_EVENT_TYPE_NAME, 1, 2, 3, 4, 5, "[{\"partition\":\"0\",\"offset\":\"000000000000000000\"}]",
-                requestMock, responseMock, client);
+        return outputStream -> stream(outputStream, 1, 2, 3, 4, 5,
+                "[{\"partition\":\"0\",\"offset\":\"000000000000000000\"}]", client);
     }
 
     private StreamingResponseBody createStreamingResponseBody(final String cursorsStr) throws Exception {
-        return controller.streamEvents(TEST_EVENT_TYPE_NAME, 1, 2, 3, 4, 5, cursorsStr,
-                requestMock, responseMock, FULL_ACCESS_CLIENT);
+        return createStreamingResponseBody(1, 2, 3, 4, 5, cursorsStr);
     }
 
     private StreamingResponseBody createStreamingResponseBody(final Integer batchLimit,
@@ -539,8 +536,29 @@ public class EventStreamControllerTest {
                                                               final Integer streamTimeout,
                                                               final Integer streamKeepAliveLimit,
                                                               final String cursorsStr) throws IOException {
-        return controller.streamEvents(TEST_EVENT_TYPE_NAME, batchLimit, streamLimit, batchTimeout, streamTimeout,
-                streamKeepAliveLimit, cursorsStr, requestMock, responseMock, FULL_ACCESS_CLIENT);
+        return outputStream -> stream(outputStream, batchLimit, streamLimit, batchTimeout, streamTimeout,
+                streamKeepAliveLimit, cursorsStr, FULL_ACCESS_CLIENT);
+    }
+
+    /**
+     * Calls controller and processes its result the same way as it is done by spring: streaming is started once the
+     * request is turned to async mode, and the response is written until the deferred result is set.
+     */
+    private void stream(final OutputStream outputStream,
+                        final Integer batchLimit,
+                        final Integer streamLimit,
+                        final Integer batchTimeout,
+                        final Integer streamTimeout,
+                        final Integer streamKeepAliveLimit,
+                        final String cursorsStr,
+                        final Client client) throws IOException {
+        when(responseMock.getOutputStream()).thenReturn(outputStream instanceof ServletOutputStream ?
+                (ServletOutputStream) outputStream : new DelegatingServletOutputStream(outputStream));
+        final DeferredResult<Void> result = controller.streamEvents(TEST_EVENT_TYPE_NAME, batchLimit, streamLimit,
+                batchTimeout, streamTimeout, streamKeepAliveLimit, cursorsStr, requestMock, responseMock, client);
+        if (null != result) {
+            ((StreamingDeferredResult) result).start().join();
+        }
     }
 
 }
@@ -23,6 +23,7 @@ import org.zalando.nakadi.domain.PaginationWrapper;
 import org.zalando.nakadi.domain.PartitionEndStatistics;
 import org.zalando.nakadi.domain.Subscription;
 import org.zalando.nakadi.domain.SubscriptionEventTypeStats;
+import org.zalando.nakadi.domain.SubscriptionStats;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.NoSuchEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchSubscriptionException;
@@ -39,6 +40,7 @@ import org.zalando.nakadi.service.CursorOperationsService;
 import org.zalando.nakadi.service.FeatureToggleService;
 import org.zalando.nakadi.service.NakadiAuditLogPublisher;
 import org.zalando.nakadi.service.NakadiKpiPublisher;
+import org.zalando.nakadi.service.subscription.SubscriptionLagCalculator;
 import org.zalando.nakadi.service.subscription.SubscriptionService;
 import org.zalando.nakadi.service.subscription.SubscriptionValidationService;
 import org.zalando.nakadi.service.subscription.model.Partition;
@@ -103,6 +105,7 @@ public class SubscriptionControllerTest {
     private final CursorOperationsService cursorOperationsService;
     private final TimelineService timelineService;
     private final SubscriptionValidationService subscriptionValidationService;
+    private final SubscriptionLagCalculator subscriptionLagCalculator;
 
     public SubscriptionControllerTest() throws Exception {
         final FeatureToggleService featureToggleService = mock(FeatureToggleService.class);
@@ -125,12 +128,14 @@ public class SubscriptionControllerTest {
         cursorOperationsService = mock(CursorOperationsService.class);
         cursorConverter = mock(CursorConverter.class);
         subscriptionValidationService = mock(SubscriptionValidationService.class);
+        subscriptionLagCalculator = mock(SubscriptionLagCalculator.class);
         final NakadiKpiPublisher nakadiKpiPublisher = mock(NakadiKpiPublisher.class);
         final NakadiAuditLogPublisher nakadiAuditLogPublisher = mock(NakadiAuditLogPublisher.class);
         final SubscriptionService subscriptionService = new SubscriptionService(subscriptionRepository,
                 zkSubscriptionClientFactory, timelineService, eventTypeRepository, subscriptionValidationService,
                 cursorConverter, cursorOperationsService, nakadiKpiPublisher, featureToggleService, null,
-                "subscription_log_et", nakadiAuditLogPublisher, mock(AuthorizationValidator.class));
+                subscriptionLagCalculator, "subscription_log_et", nakadiAuditLogPublisher,
+                mock(AuthorizationValidator.class));
         final SubscriptionController controller = new SubscriptionController(subscriptionService);
         final ApplicationService applicationService = mock(ApplicationService.class);
         doReturn(true).when(applicationService).exists(any());
@@ -296,6 +301,30 @@ public class SubscriptionControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void whenGetStatsOfManySubscriptionsThenTheyAreTakenFromLagCalculatorOrNotComputedYet() throws Exception {
+        final Subscription first = builder().withEventType(TIMELINE.getEventType()).build();
+        final Subscription second = builder().withEventType(TIMELINE.getEventType()).build();
+        when(subscriptionRepository.getSubscriptions(any())).thenReturn(Arrays.asList(second, first));
+        when(eventTypeRepository.findByName(TIMELINE.getEventType()))
+                .thenReturn(EventTypeTestBuilder.builder().name(TIMELINE.getEventType()).build());
+        final List<SubscriptionEventTypeStats> firstStats = Collections.singletonList(new SubscriptionEventTypeStats(
+                TIMELINE.getEventType(),
+                Collections.singletonList(
+                        new SubscriptionEventTypeStats.Partition("0", "assigned", 10L, 2L, "xz", AUTO))));
+        final Map<String, List<SubscriptionEventTypeStats>> stats = new HashMap<>();
+        stats.put(first.getId(), firstStats);
+        when(subscriptionLagCalculator.getStats(Arrays.asList(first, second))).thenReturn(stats);
+
+        final ItemsWrapper<SubscriptionStats> expected = new ItemsWrapper<>(Arrays.asList(
+                new SubscriptionStats(first.getId(), firstStats),
+                SubscriptionStats.notComputed(second.getId())));
+        mockMvc.perform(get(format("/subscriptions/stats?subscription_id={0}&subscription_id={1}",
+                first.getId(), second.getId())))
+                .andExpect(status().isOk())
+                .andExpect(content().string(TestUtils.JSON_TEST_HELPER.matchesObject(expected)));
+    }
+
     private ResultActions getSubscriptionStats(final String subscriptionId) throws Exception {
         return mockMvc.perform(get(format("/subscriptions/{0}/stats", subscriptionId)));
     }
@@ -1,8 +1,13 @@
 package org.zalando.nakadi.domain;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
+import org.springframework.util.StreamUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static junit.framework.TestCase.fail;
@@ -138,4 +143,46 @@ public class BatchFactoryTest {
         final String events = "[{\"number\": 9223372036854775808 }]";
         BatchFactory.from(events);
     }
+
+    @Test
+    public void testMultiByteCharactersSizeAndContent() {
+        final byte[] events = "[{\"name\":\"香港\"}, {\"name\": \"\\u9999\\u6e2f\"}]"
+                .getBytes(StandardCharsets.UTF_8);
+        final List<BatchItem> batch = BatchFactory.from(events);
+        assertEquals(2, batch.size());
+        assertEquals(17, batch.get(0).getEventSize());
+        assertEquals("香港", batch.get(0).getEvent().getString("name"));
+        assertEquals("香港", batch.get(1).getEvent().getString("name"));
+    }
+
+    @Test
+    public void testSameResultAsStrictJsonParser() throws IOException {
+        final String veryComplexString;
+        try (InputStream veryComplexInput =
+                     BatchFactoryTest.class.getClassLoader().getResourceAsStream("very_complex.json")) {
+            veryComplexString = StreamUtils.copyToString(veryComplexInput, StandardCharsets.UTF_8);
+        }
+        final List<BatchItem> batch = BatchFactory.from("[" + veryComplexString + "]");
+        assertEquals(1, batch.size());
+        assertEquals(StrictJsonParser.parseObject(veryComplexString).toString(),
+                batch.get(0).getEvent().toString());
+        assertEquals(new JSONObject(veryComplexString).toString(),
+                new JSONObject(batch.get(0).dumpEventToString()).toString());
+    }
+
+    @Test
+    public void testWhitespacesAreSkippedOnlyOutsideOfStrings() {
+        final List<BatchItem> batch = BatchFactory.from("[{ \"na me\" :\t[ 1 , \"a b\" ]\n}]");
+        assertEquals("{\"na me\":[1,\"a b\"]}", batch.get(0).dumpEventToString());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testUnclosedObject() {
+        BatchFactory.from("[{\"name\":\"MyEvent\"]");
+    }
+
+    @Test(expected = JSONException.class)
+    public void testEmptyBody() {
+        BatchFactory.from("");
+    }
 }
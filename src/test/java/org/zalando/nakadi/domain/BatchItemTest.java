@@ -7,7 +7,7 @@ import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -23,10 +23,12 @@ public class BatchItemTest {
 
     @Test
     public void testBatchItemSizeWithMultiByteChar() {
-        final BatchItem item = new BatchItem("{ \"name\": \"香港\"} ",
+        final byte[] payload = "{ \"name\": \"香港\"} ".getBytes(StandardCharsets.UTF_8);
+        final BatchItem item = new BatchItem(payload, 0, payload.length,
+                new JSONObject().put("name", "香港"),
                 BatchItem.EmptyInjectionConfiguration.build(1, false),
                 new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+                new int[0]);
         assertEquals(20, item.getEventSize());
     }
 
@@ -164,4 +166,22 @@ public class BatchItemTest {
         final JSONObject result = restoreJsonObject(bi);
         Assert.assertFalse(result.keys().hasNext());
     }
+
+    @Test
+    public void testDumpEventWithMultiByteCharsAndInjection() {
+        final BatchItem bi = BatchFactory.from(
+                "[{\"metadata\" : {\"x\":\"y\"},\n \"name\": \"香港\"}]").get(0);
+        bi.inject(BatchItem.Injection.METADATA, "{\"z\":\"ü\"}");
+
+        final byte[] result = bi.dumpEvent();
+        Assert.assertArrayEquals(
+                "{\"metadata\":{\"z\":\"ü\"},\"name\":\"香港\"}".getBytes(StandardCharsets.UTF_8),
+                result);
+    }
+
+    @Test
+    public void testDumpEventWithoutChangesIsPayloadSlice() {
+        final BatchItem bi = BatchFactory.from("[{\"a\":1},{\"b\":\"香\"}]").get(1);
+        Assert.assertArrayEquals("{\"b\":\"香\"}".getBytes(StandardCharsets.UTF_8), bi.dumpEvent());
+    }
 }
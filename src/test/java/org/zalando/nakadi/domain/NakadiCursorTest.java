@@ -30,4 +30,28 @@ public class NakadiCursorTest {
                 });
     }
 
-}
\ No newline at end of file
+    @Test
+    public void whenCursorIsCreatedFromStorageOffsetThenItIsTheSameAsFormattedOne() {
+        final Timeline timeline = buildTimelineWithTopic("tmp");
+        final NakadiCursor fromOffset = NakadiCursor.of(timeline, new EventTypePartition("et", "0"), 23L);
+        final NakadiCursor fromString = NakadiCursor.of(timeline, "0", "000000000000000023");
+
+        assertThat(fromOffset.getOffset(), equalTo("000000000000000023"));
+        assertThat(fromOffset, equalTo(fromString));
+        assertThat(fromOffset.hashCode(), equalTo(fromString.hashCode()));
+        assertThat(fromOffset.compareOffset(fromString), equalTo(0));
+    }
+
+    @Test
+    public void whenOffsetsAreComparedThenTheyAreComparedAsNumbers() {
+        final Timeline timeline = buildTimelineWithTopic("tmp");
+
+        assertThat(NakadiCursor.of(timeline, "0", "9").compareOffset(NakadiCursor.of(timeline, "0", "10")),
+                equalTo(-1));
+        assertThat(NakadiCursor.of(timeline, "0", "-1").compareOffset(NakadiCursor.of(timeline, "0", "0")),
+                equalTo(-1));
+        assertThat(NakadiCursor.of(timeline, "0", "abc").compareOffset(NakadiCursor.of(timeline, "0", "abd")),
+                equalTo(-1));
+    }
+
+}
@@ -11,6 +11,7 @@ import org.zalando.nakadi.exceptions.runtime.InvalidEventTypeException;
 import org.zalando.nakadi.exceptions.runtime.NoSuchPartitionStrategyException;
 import org.zalando.nakadi.exceptions.runtime.PartitioningException;
 import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.repository.db.EventTypeCache;
 import org.zalando.nakadi.service.timeline.TimelineService;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -37,13 +38,16 @@ public class PartitionResolverTest {
         timelineService = Mockito.mock(TimelineService.class);
         when(timelineService.getTopicRepository((Timeline) any())).thenReturn(topicRepository);
         when(timelineService.getTopicRepository((EventType) any())).thenReturn(topicRepository);
-        partitionResolver = new PartitionResolver(timelineService, mock(HashPartitionStrategy.class));
+        final PartitionRoutingCache partitionRoutingCache = new PartitionRoutingCache(
+                timelineService, mock(EventTypeCache.class), mock(HashPartitionStrategyCrutch.class), 60_000);
+        partitionResolver = new PartitionResolver(partitionRoutingCache, mock(HashPartitionStrategy.class));
     }
 
     @Test
     public void whenResolvePartitionWithKnownStrategyThenOk() {
 
         final EventType eventType = new EventType();
+        eventType.setName("et");
         eventType.setPartitionStrategy(RANDOM_STRATEGY);
 
         when(timelineService.getActiveTimeline(eq(eventType))).thenReturn(mock(Timeline.class));
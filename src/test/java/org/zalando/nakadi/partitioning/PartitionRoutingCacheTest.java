@@ -0,0 +1,140 @@
+package org.zalando.nakadi.partitioning;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.repository.db.EventTypeCache;
+import org.zalando.nakadi.service.timeline.TimelineService;
+
+import java.util.function.Consumer;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.zalando.nakadi.utils.TestUtils.buildDefaultEventType;
+
+public class PartitionRoutingCacheTest {
+
+    private final TopicRepository topicRepository = mock(TopicRepository.class);
+    private final TimelineService timelineService = mock(TimelineService.class);
+    private final EventTypeCache eventTypeCache = mock(EventTypeCache.class);
+    private final HashPartitionStrategyCrutch hashPartitioningCrutch = mock(HashPartitionStrategyCrutch.class);
+    private final Timeline timeline = mock(Timeline.class);
+    private EventType eventType;
+    private PartitionRoutingCache partitionRoutingCache;
+
+    @Before
+    public void before() {
+        eventType = buildDefaultEventType();
+        eventType.setPartitionKeyFields(ImmutableList.of("sku"));
+        when(timeline.getTopic()).thenReturn("topic-1");
+        when(timelineService.getActiveTimeline(any(EventType.class))).thenReturn(timeline);
+        when(timelineService.getTopicRepository(any(EventType.class))).thenReturn(topicRepository);
+        when(topicRepository.listPartitionNames(any())).thenReturn(ImmutableList.of("0", "1"));
+        when(hashPartitioningCrutch.adjustPartitionIndex(anyInt(), anyInt()))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        partitionRoutingCache = new PartitionRoutingCache(
+                timelineService, eventTypeCache, hashPartitioningCrutch, 60_000);
+    }
+
+    @Test
+    public void whenRoutingTableRequestedTwiceThenPartitionsAreListedOnce() {
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+        final PartitionRoutingTable second = partitionRoutingCache.getRoutingTable(eventType);
+
+        assertThat(second, sameInstance(first));
+        assertThat(second.getPartitions(), equalTo(ImmutableList.of("0", "1")));
+        verify(topicRepository, times(1)).listPartitionNames(eq("topic-1"));
+    }
+
+    @Test
+    public void whenTimelineIsSwitchedThenRoutingTableIsRebuilt() {
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+
+        when(timeline.getTopic()).thenReturn("topic-2");
+        when(topicRepository.listPartitionNames(eq("topic-2"))).thenReturn(ImmutableList.of("0", "1", "2"));
+        final PartitionRoutingTable second = partitionRoutingCache.getRoutingTable(eventType);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getPartitions(), equalTo(ImmutableList.of("0", "1", "2")));
+    }
+
+    @Test
+    public void whenPartitionKeyFieldsChangedThenRoutingTableIsRebuilt() {
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+
+        eventType.setPartitionKeyFields(ImmutableList.of("sku", "name"));
+        final PartitionRoutingTable second = partitionRoutingCache.getRoutingTable(eventType);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getPartitionKeyPaths().length, equalTo(2));
+    }
+
+    @Test
+    public void whenEventTypeIsUpdatedWithoutInvalidationThenRoutingTableIsRebuilt() {
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+
+        eventType.setUpdatedAt(new DateTime().plusMinutes(1));
+        final PartitionRoutingTable second = partitionRoutingCache.getRoutingTable(eventType);
+
+        assertThat(second, not(sameInstance(first)));
+        verify(topicRepository, times(2)).listPartitionNames(eq("topic-1"));
+    }
+
+    @Test
+    public void whenTtlIsExpiredThenPartitionCountIsChecked() {
+        partitionRoutingCache = new PartitionRoutingCache(timelineService, eventTypeCache, hashPartitioningCrutch, 0);
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+        assertThat(partitionRoutingCache.getRoutingTable(eventType), sameInstance(first));
+
+        when(topicRepository.listPartitionNames(eq("topic-1"))).thenReturn(ImmutableList.of("0", "1", "2"));
+        final PartitionRoutingTable second = partitionRoutingCache.getRoutingTable(eventType);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getPartitions(), equalTo(ImmutableList.of("0", "1", "2")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenEventTypeIsInvalidatedThenRoutingTableIsRebuilt() {
+        final ArgumentCaptor<Consumer> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(eventTypeCache).addInvalidationListener(listener.capture());
+        final PartitionRoutingTable first = partitionRoutingCache.getRoutingTable(eventType);
+
+        listener.getValue().accept(eventType.getName());
+
+        assertThat(partitionRoutingCache.getRoutingTable(eventType), not(sameInstance(first)));
+        verify(topicRepository, times(2)).listPartitionNames(eq("topic-1"));
+    }
+
+    @Test
+    public void whenHashRoutingThenPartitionsAreSortedAndReordered() {
+        final HashPartitionStrategyCrutch reverseOrder = mock(HashPartitionStrategyCrutch.class);
+        when(reverseOrder.adjustPartitionIndex(anyInt(), anyInt()))
+                .thenAnswer(invocation -> (int) invocation.getArguments()[1] - 1 - (int) invocation.getArguments()[0]);
+
+        final PartitionRoutingTable routingTable = new PartitionRoutingTable(
+                eventType, "topic-1", asList("2", "10", "1", "0"), reverseOrder);
+
+        // sorted order is "0", "1", "10", "2", reversed by crutch
+        assertThat(routingTable.getPartitionForHash(0), equalTo("2"));
+        assertThat(routingTable.getPartitionForHash(1), equalTo("10"));
+        assertThat(routingTable.getPartitionForHash(-2), equalTo("1"));
+        assertThat(routingTable.getPartitionForHash(7), equalTo("0"));
+    }
+}
@@ -1,12 +1,23 @@
 package org.zalando.nakadi.repository.db;
 
+import com.codahale.metrics.MetricRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.zalando.nakadi.domain.EventType;
 import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.exceptions.runtime.InternalNakadiException;
 import org.zalando.nakadi.repository.EventTypeRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 import org.zalando.nakadi.service.timeline.TimelineSync;
@@ -16,8 +27,13 @@ import org.zalando.nakadi.validation.EventMetadataValidationStrategy;
 import org.zalando.nakadi.validation.JsonSchemaEnrichment;
 import org.zalando.nakadi.validation.ValidationStrategy;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class EventTypeCacheTest {
     @BeforeClass
@@ -43,7 +59,7 @@ public class EventTypeCacheTest {
         Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()), Mockito.any()))
                 .thenReturn(() -> {});
         final EventTypeCache eventTypeCache = new EventTypeCache(etRepo, timelineRepository, zkHolder,
-                null, timelineSync) {
+                null, timelineSync, new MetricRegistry(), 0) {
             @Override
             public void created(final String name) throws Exception {
                 // ignore this call, because mocking is too complex
@@ -60,4 +76,236 @@ public class EventTypeCacheTest {
         Mockito.verify(timelineRepository, Mockito.times(0)).listTimelinesOrdered(Mockito.any());
         Mockito.verify(timelineRepository, Mockito.times(1)).listTimelinesOrdered();
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void whenEventTypeChangedThenPreviousValueIsServedUntilRefreshed() throws Exception {
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        final TimelineDbRepository timelineRepository = Mockito.mock(TimelineDbRepository.class);
+        final TimelineSync timelineSync = Mockito.mock(TimelineSync.class);
+        final ListenerContainer<PathChildrenCacheListener> zkListeners = Mockito.mock(ListenerContainer.class);
+        final PathChildrenCache zkCache = Mockito.mock(PathChildrenCache.class);
+        Mockito.when(zkCache.getListenable()).thenReturn(zkListeners);
+        final EventType et = TestUtils.buildDefaultEventType();
+        Mockito.when(zkCache.getCurrentData()).thenReturn(Collections.singletonList(
+                new ChildData(EventTypeCache.ZKNODE_PATH + "/" + et.getName(), null, null)));
+        final EventType updated = TestUtils.buildDefaultEventType();
+        updated.setName(et.getName());
+        Mockito.when(etRepo.list()).thenReturn(Collections.singletonList(et));
+        Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()), Mockito.any()))
+                .thenReturn(() -> {});
+        final CountDownLatch refreshStarted = new CountDownLatch(1);
+        final CountDownLatch dbResponds = new CountDownLatch(1);
+        Mockito.when(etRepo.findByName(et.getName())).thenAnswer(invocation -> {
+            refreshStarted.countDown();
+            dbResponds.await();
+            return updated;
+        });
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final EventTypeCache eventTypeCache = createCache(etRepo, timelineRepository, zkCache, timelineSync,
+                metricRegistry);
+        final CountDownLatch notified = new CountDownLatch(1);
+        eventTypeCache.addInvalidationListener(name -> notified.countDown());
+
+        final ArgumentCaptor<PathChildrenCacheListener> zkListener =
+                ArgumentCaptor.forClass(PathChildrenCacheListener.class);
+        Mockito.verify(zkListeners).addListener(zkListener.capture());
+        zkListener.getValue().childEvent(null, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED,
+                new ChildData(EventTypeCache.ZKNODE_PATH + "/" + et.getName(), null, null)));
+        Assert.assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(et, eventTypeCache.getEventType(et.getName()));
+        Assert.assertEquals(1, notified.getCount());
+
+        dbResponds.countDown();
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(updated, eventTypeCache.getEventType(et.getName()));
+        Assert.assertEquals(2, metricRegistry.meter("nakadi.eventtypes." + et.getName().replace('.', '#') +
+                ".cache.hits").getCount());
+        Assert.assertEquals(1, metricRegistry.timer("nakadi.eventtypes." + et.getName().replace('.', '#') +
+                ".cache.reload_time").getCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void whenRefreshFailsThenItIsRetried() throws Exception {
+        final EventType et = TestUtils.buildDefaultEventType();
+        final EventType updated = TestUtils.buildDefaultEventType();
+        updated.setName(et.getName());
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        Mockito.when(etRepo.findByName(et.getName()))
+                .thenThrow(new InternalNakadiException("database is not available"))
+                .thenReturn(updated);
+        final ListenerContainer<PathChildrenCacheListener> zkListeners = Mockito.mock(ListenerContainer.class);
+        final EventTypeCache eventTypeCache = createChangedCache(etRepo, et, zkListeners);
+        final CountDownLatch notified = new CountDownLatch(1);
+        eventTypeCache.addInvalidationListener(name -> notified.countDown());
+
+        changeEventType(zkListeners, et);
+
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(updated, eventTypeCache.getEventType(et.getName()));
+        Mockito.verify(etRepo, Mockito.times(2)).findByName(et.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void whenRefreshKeepsFailingThenCachedValueIsDropped() throws Exception {
+        final EventType et = TestUtils.buildDefaultEventType();
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        Mockito.when(etRepo.findByName(et.getName()))
+                .thenThrow(new InternalNakadiException("database is not available"));
+        final ListenerContainer<PathChildrenCacheListener> zkListeners = Mockito.mock(ListenerContainer.class);
+        final EventTypeCache eventTypeCache = createChangedCache(etRepo, et, zkListeners);
+        final CountDownLatch notified = new CountDownLatch(1);
+        eventTypeCache.addInvalidationListener(name -> notified.countDown());
+
+        changeEventType(zkListeners, et);
+
+        Assert.assertTrue(notified.await(10, TimeUnit.SECONDS));
+        try {
+            eventTypeCache.getEventType(et.getName());
+            Assert.fail("Stale event type should not be served once refresh gave up");
+        } catch (final InternalNakadiException expected) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void whenEventTypeIsUpdatedThenUpdatingNodeSeesItRightAfterCommit() throws Exception {
+        final EventType et = TestUtils.buildDefaultEventType();
+        final EventType updated = TestUtils.buildDefaultEventType();
+        updated.setName(et.getName());
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        Mockito.when(etRepo.list()).thenReturn(Collections.singletonList(et));
+        Mockito.when(etRepo.findByName(et.getName())).thenReturn(updated);
+        final TimelineSync timelineSync = Mockito.mock(TimelineSync.class);
+        Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()), Mockito.any()))
+                .thenReturn(() -> {});
+        final ZooKeeperHolder zkHolder = Mockito.mock(ZooKeeperHolder.class);
+        Mockito.when(zkHolder.get()).thenReturn(Mockito.mock(CuratorFramework.class, Mockito.RETURNS_DEEP_STUBS));
+        // Remote nodes would not refresh the entry within the test
+        final EventTypeCache eventTypeCache = new EventTypeCache(etRepo, Mockito.mock(TimelineDbRepository.class),
+                zkHolder, null, timelineSync, new MetricRegistry(), 600_000) {
+            @Override
+            public void created(final String name) throws Exception {
+                // ignore this call, because mocking is too complex
+            }
+        };
+        final List<String> notified = new CopyOnWriteArrayList<>();
+        eventTypeCache.addInvalidationListener(notified::add);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            eventTypeCache.updated(et.getName());
+            Assert.assertSame(et, eventTypeCache.getEventType(et.getName()));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Assert.assertSame(updated, eventTypeCache.getEventType(et.getName()));
+        Assert.assertEquals(Collections.singletonList(et.getName()), notified);
+
+        eventTypeCache.updated(et.getName());
+        Mockito.verify(etRepo, Mockito.times(2)).findByName(et.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void whenTimelineChangedThenTimelinesAreNotServedStale() throws Exception {
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        final TimelineDbRepository timelineRepository = Mockito.mock(TimelineDbRepository.class);
+        final TimelineSync timelineSync = Mockito.mock(TimelineSync.class);
+        final EventType et = TestUtils.buildDefaultEventType();
+        final List<Timeline> initial = Collections.singletonList(TestUtils.buildTimeline(et.getName()));
+        final List<Timeline> switched = Collections.singletonList(TestUtils.buildTimeline(et.getName()));
+        Mockito.when(etRepo.list()).thenReturn(Collections.emptyList());
+        Mockito.when(etRepo.findByName(et.getName())).thenReturn(et);
+        Mockito.when(timelineRepository.listTimelinesOrdered(et.getName())).thenReturn(initial, switched);
+        final ArgumentCaptor<Consumer> timelineListener = ArgumentCaptor.forClass(Consumer.class);
+        Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()),
+                timelineListener.capture())).thenReturn(() -> {});
+        final EventTypeCache eventTypeCache = createCache(etRepo, timelineRepository, null, timelineSync,
+                new MetricRegistry());
+        Assert.assertSame(initial, eventTypeCache.getTimelinesOrdered(et.getName()));
+
+        timelineListener.getValue().accept(et.getName());
+
+        Assert.assertSame(switched, eventTypeCache.getTimelinesOrdered(et.getName()));
+    }
+
+    @Test
+    public void whenPreloadedThenOnlyMissingZNodesAreCreatedInBackground() throws Exception {
+        final EventTypeRepository etRepo = Mockito.mock(EventTypeRepository.class);
+        final TimelineDbRepository timelineRepository = Mockito.mock(TimelineDbRepository.class);
+        final TimelineSync timelineSync = Mockito.mock(TimelineSync.class);
+        final PathChildrenCache zkCache = Mockito.mock(PathChildrenCache.class);
+        Mockito.when(zkCache.getListenable()).thenReturn(Mockito.mock(ListenerContainer.class));
+        final EventType tracked = TestUtils.buildDefaultEventType();
+        final EventType missing = TestUtils.buildDefaultEventType();
+        Mockito.when(etRepo.list()).thenReturn(Arrays.asList(tracked, missing));
+        Mockito.when(zkCache.getCurrentData()).thenReturn(Collections.singletonList(
+                new ChildData(EventTypeCache.ZKNODE_PATH + "/" + tracked.getName(), null, null)));
+        Mockito.when(timelineSync.registerTimelineChangeListener(Mockito.any(), Mockito.any()))
+                .thenReturn(() -> {});
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final List<String> createdNodes = new CopyOnWriteArrayList<>();
+        final EventTypeCache eventTypeCache = new EventTypeCache(etRepo, timelineRepository,
+                Mockito.mock(ZooKeeperHolder.class), zkCache, timelineSync, metricRegistry, 0) {
+            @Override
+            void createZNode(final String name) {
+                createdNodes.add(name);
+            }
+        };
+
+        Assert.assertNotNull(eventTypeCache.getValidator(missing.getName()));
+        Mockito.verify(timelineSync).registerTimelineChangeListener(Matchers.eq(tracked.getName()), Mockito.any());
+        Mockito.verify(timelineSync).registerTimelineChangeListener(Matchers.eq(missing.getName()), Mockito.any());
+        Assert.assertEquals(1, metricRegistry.timer("nakadi.startup.event_type_cache.total").getCount());
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (metricRegistry.timer("nakadi.startup.event_type_cache.validators").getCount() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, metricRegistry.timer("nakadi.startup.event_type_cache.validators").getCount());
+        Assert.assertEquals(Collections.singletonList(missing.getName()), createdNodes);
+    }
+
+    private static EventTypeCache createChangedCache(
+            final EventTypeRepository etRepo, final EventType et,
+            final ListenerContainer<PathChildrenCacheListener> zkListeners) {
+        final TimelineSync timelineSync = Mockito.mock(TimelineSync.class);
+        Mockito.when(timelineSync.registerTimelineChangeListener(Matchers.eq(et.getName()), Mockito.any()))
+                .thenReturn(() -> {});
+        final PathChildrenCache zkCache = Mockito.mock(PathChildrenCache.class);
+        Mockito.when(zkCache.getListenable()).thenReturn(zkListeners);
+        Mockito.when(zkCache.getCurrentData()).thenReturn(Collections.singletonList(
+                new ChildData(EventTypeCache.ZKNODE_PATH + "/" + et.getName(), null, null)));
+        Mockito.when(etRepo.list()).thenReturn(Collections.singletonList(et));
+        return createCache(etRepo, Mockito.mock(TimelineDbRepository.class), zkCache, timelineSync,
+                new MetricRegistry());
+    }
+
+    private static void changeEventType(final ListenerContainer<PathChildrenCacheListener> zkListeners,
+                                        final EventType et) throws Exception {
+        final ArgumentCaptor<PathChildrenCacheListener> zkListener =
+                ArgumentCaptor.forClass(PathChildrenCacheListener.class);
+        Mockito.verify(zkListeners).addListener(zkListener.capture());
+        zkListener.getValue().childEvent(null, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED,
+                new ChildData(EventTypeCache.ZKNODE_PATH + "/" + et.getName(), null, null)));
+    }
+
+    private static EventTypeCache createCache(final EventTypeRepository etRepo,
+                                              final TimelineDbRepository timelineRepository,
+                                              final PathChildrenCache zkCache,
+                                              final TimelineSync timelineSync,
+                                              final MetricRegistry metricRegistry) {
+        final EventTypeCache eventTypeCache = new EventTypeCache(etRepo, timelineRepository,
+                Mockito.mock(ZooKeeperHolder.class), zkCache, timelineSync, metricRegistry, 0) {
+            @Override
+            public void created(final String name) throws Exception {
+                // ignore this call, because mocking is too complex
+            }
+        };
+        return eventTypeCache;
+    }
 }
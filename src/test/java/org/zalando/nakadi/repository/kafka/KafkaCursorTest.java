@@ -34,4 +34,13 @@ public class KafkaCursorTest {
             Assert.assertEquals(ex.getError(), CursorError.INVALID_FORMAT);
         }
     }
+
+    @Test
+    public void testToNakadiOffset() {
+        Assert.assertEquals("-1", KafkaCursor.toNakadiOffset(-1));
+        Assert.assertEquals("000000000000000000", KafkaCursor.toNakadiOffset(0));
+        Assert.assertEquals("000000000000000123", KafkaCursor.toNakadiOffset(123));
+        Assert.assertEquals("123456789012345678", KafkaCursor.toNakadiOffset(123456789012345678L));
+        Assert.assertEquals(String.valueOf(Long.MAX_VALUE), KafkaCursor.toNakadiOffset(Long.MAX_VALUE));
+    }
 }
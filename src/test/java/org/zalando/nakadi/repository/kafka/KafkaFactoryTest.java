@@ -7,19 +7,31 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class KafkaFactoryTest {
+    private static final String TOPIC = "topic";
+
     private static class FakeKafkaFactory extends KafkaFactory {
+        private final List<KafkaProducerProfiles.Profile> createdWith = new ArrayList<>();
+
+        FakeKafkaFactory(final MetricRegistry metricRegistry, final int producerShards) {
+            this(metricRegistry, producerShards, new KafkaProducerProfiles());
+        }
 
-        FakeKafkaFactory(final MetricRegistry metricRegistry) {
-            super(null, metricRegistry);
+        FakeKafkaFactory(final MetricRegistry metricRegistry, final int producerShards,
+                         final KafkaProducerProfiles producerProfiles) {
+            super(null, metricRegistry, "kafka.producer.test", producerShards, producerProfiles);
         }
 
         @Override
-        protected Producer<String, String> createProducerInstance() {
+        protected Producer<String, byte[]> createProducerInstance(final KafkaProducerProfiles.Profile profile) {
+            createdWith.add(profile);
             return Mockito.mock(Producer.class);
         }
     }
@@ -27,20 +39,20 @@ public class KafkaFactoryTest {
     private static KafkaFactory createTestKafkaFactory() {
         final MetricRegistry reg = Mockito.mock(MetricRegistry.class);
         Mockito.when(reg.counter(Mockito.anyString())).thenReturn(Mockito.mock(Counter.class));
-        return new FakeKafkaFactory(reg);
+        return new FakeKafkaFactory(reg, 1);
     }
 
     @Test
     public void verifySameProducerUsed() {
         final KafkaFactory factory = createTestKafkaFactory();
-        final Producer<String, String> producer1 = factory.takeProducer();
+        final Producer<String, byte[]> producer1 = factory.takeProducer(TOPIC, null);
         try {
             Assert.assertNotNull(producer1);
         } finally {
             factory.releaseProducer(producer1);
         }
 
-        final Producer<String, String> producer2 = factory.takeProducer();
+        final Producer<String, byte[]> producer2 = factory.takeProducer(TOPIC, null);
         try {
             Assert.assertSame(producer1, producer2);
         } finally {
@@ -52,9 +64,9 @@ public class KafkaFactoryTest {
     public void verifyProducerIsClosedAtCorrectTime() {
         final KafkaFactory factory = createTestKafkaFactory();
 
-        final List<Producer<String, String>> producers1 = IntStream.range(0, 10)
-                .mapToObj(ignore -> factory.takeProducer()).collect(Collectors.toList());
-        final Producer<String, String> producer = producers1.get(0);
+        final List<Producer<String, byte[]>> producers1 = IntStream.range(0, 10)
+                .mapToObj(ignore -> factory.takeProducer(TOPIC, null)).collect(Collectors.toList());
+        final Producer<String, byte[]> producer = producers1.get(0);
         Assert.assertNotNull(producer);
         producers1.forEach(p -> Assert.assertSame(producer, p));
         producers1.forEach(factory::releaseProducer);
@@ -62,9 +74,9 @@ public class KafkaFactoryTest {
         Mockito.verify(producer, Mockito.times(0)).close();
 
 
-        final List<Producer<String, String>> producers2 = IntStream.range(0, 10)
-                .mapToObj(ignore -> factory.takeProducer()).collect(Collectors.toList());
-        final Producer<String, String> additionalProducer = factory.takeProducer();
+        final List<Producer<String, byte[]>> producers2 = IntStream.range(0, 10)
+                .mapToObj(ignore -> factory.takeProducer(TOPIC, null)).collect(Collectors.toList());
+        final Producer<String, byte[]> additionalProducer = factory.takeProducer(TOPIC, null);
 
         Assert.assertSame(producer, additionalProducer);
         producers2.forEach(p -> Assert.assertSame(producer, p));
@@ -82,16 +94,74 @@ public class KafkaFactoryTest {
     @Test
     public void verifyNewProducerCreatedAfterClose() {
         final KafkaFactory factory = createTestKafkaFactory();
-        final Producer<String, String> producer1 = factory.takeProducer();
+        final Producer<String, byte[]> producer1 = factory.takeProducer(TOPIC, null);
         Assert.assertNotNull(producer1);
         factory.terminateProducer(producer1);
         factory.releaseProducer(producer1);
         Mockito.verify(producer1, Mockito.times(1)).close();
 
-        final Producer<String, String> producer2 = factory.takeProducer();
+        final Producer<String, byte[]> producer2 = factory.takeProducer(TOPIC, null);
         Assert.assertNotNull(producer2);
         Assert.assertNotSame(producer1, producer2);
         factory.releaseProducer(producer2);
         Mockito.verify(producer2, Mockito.times(0)).close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void verifyTopicsAreSpreadOverShards() {
+        final KafkaFactory factory = new FakeKafkaFactory(new MetricRegistry(), 4);
+        final Set<Producer<String, byte[]>> producers = IntStream.range(0, 100)
+                .mapToObj(i -> factory.takeProducer("topic-" + i, null))
+                .collect(Collectors.toSet());
+        Assert.assertEquals(4, producers.size());
+
+        final Producer<String, byte[]> producer = factory.takeProducer(TOPIC, null);
+        factory.releaseProducer(producer);
+        Assert.assertSame(producer, factory.takeProducer(TOPIC, null));
+    }
+
+    @Test
+    public void verifyTerminationAffectsOnlyItsShard() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final KafkaFactory factory = new FakeKafkaFactory(metricRegistry, 2);
+        final String otherShardTopic = IntStream.range(0, 100).mapToObj(i -> "topic-" + i)
+                .filter(topic -> Math.floorMod(topic.hashCode(), 2) != Math.floorMod(TOPIC.hashCode(), 2))
+                .findFirst().get();
+        final Producer<String, byte[]> terminated = factory.takeProducer(TOPIC, null);
+        final Producer<String, byte[]> other = factory.takeProducer(otherShardTopic, null);
+        Assert.assertEquals(2, metricRegistry.getGauges().values().stream()
+                .filter(gauge -> Integer.valueOf(1).equals(gauge.getValue())).count());
+
+        factory.terminateProducer(terminated);
+        factory.releaseProducer(terminated);
+        Mockito.verify(terminated, Mockito.times(1)).close();
+
+        Assert.assertNotSame(terminated, factory.takeProducer(TOPIC, null));
+        Assert.assertSame(other, factory.takeProducer(otherShardTopic, null));
+        Mockito.verify(other, Mockito.times(0)).close();
+    }
+
+    @Test
+    public void verifyProfilesHaveOwnProducers() {
+        final KafkaProducerProfiles profiles = new KafkaProducerProfiles();
+        final KafkaProducerProfiles.Profile bulk = new KafkaProducerProfiles.Profile();
+        bulk.setCompression("zstd");
+        bulk.setLingerMs(20);
+        profiles.getProfiles().put("bulk", bulk);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final FakeKafkaFactory factory = new FakeKafkaFactory(metricRegistry, 1, profiles);
+
+        final Producer<String, byte[]> defaultProducer = factory.takeProducer(TOPIC, null);
+        final Producer<String, byte[]> bulkProducer = factory.takeProducer(TOPIC, "bulk");
+
+        Assert.assertNotSame(defaultProducer, bulkProducer);
+        Assert.assertSame(defaultProducer, factory.takeProducer(TOPIC, "not-configured"));
+        Assert.assertSame(bulk, factory.createdWith.get(1));
+        Assert.assertTrue(metricRegistry.getGauges().containsKey("kafka.producer.test.profile.bulk.shard.0.in_flight"));
+
+        final Properties properties = bulk.apply(new Properties());
+        Assert.assertEquals("zstd", properties.get("compression.type"));
+        Assert.assertEquals(20, properties.get("linger.ms"));
+        Assert.assertFalse(properties.containsKey("batch.size"));
+    }
+}
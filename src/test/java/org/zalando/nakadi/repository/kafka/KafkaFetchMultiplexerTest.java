@@ -0,0 +1,198 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetOutOfRangeException;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.Storage;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+
+public class KafkaFetchMultiplexerTest {
+
+    private static final TopicPartition TOPIC_PARTITION = new TopicPartition("topic", 0);
+    private static final TopicPartition OTHER_PARTITION = new TopicPartition("topic", 1);
+    private static final String METRIC_PREFIX = "kafka.fetch.multiplexer.default";
+    private static final long TIMEOUT_MS = 5000;
+
+    private final MockConsumer<byte[], byte[]> kafkaConsumer = new MockConsumer<>(OffsetResetStrategy.NONE);
+    private final AtomicInteger consumersCreated = new AtomicInteger();
+    private final List<List<KafkaCursor>> dedicatedConsumers = new CopyOnWriteArrayList<>();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final Timeline timeline =
+            new Timeline("et", 1, new Storage("default", Storage.Type.KAFKA), TOPIC_PARTITION.topic(), new Date());
+    private KafkaFetchMultiplexer multiplexer;
+
+    @Before
+    public void before() {
+        multiplexer = createMultiplexer(1000);
+    }
+
+    @After
+    public void after() {
+        multiplexer.close();
+    }
+
+    private KafkaFetchMultiplexer createMultiplexer(final long windowBytes) {
+        return new KafkaFetchMultiplexer(() -> {
+            consumersCreated.incrementAndGet();
+            return kafkaConsumer;
+        }, 1, windowBytes, 10, new KafkaTimestampIndex(1000, 256), metricRegistry, METRIC_PREFIX);
+    }
+
+    private EventConsumer.LowLevelConsumer createConsumer(final long offset) {
+        return createConsumer(TOPIC_PARTITION, offset);
+    }
+
+    private EventConsumer.LowLevelConsumer createConsumer(final TopicPartition topicPartition, final long offset) {
+        final KafkaCursor cursor = new KafkaCursor(topicPartition.topic(), topicPartition.partition(), offset);
+        return multiplexer.createEventConsumer(
+                Collections.singletonList(cursor),
+                ImmutableMap.of(TOPIC_PARTITION, timeline, OTHER_PARTITION, timeline),
+                cursors -> {
+                    dedicatedConsumers.add(cursors);
+                    return mock(NakadiKafkaConsumer.class);
+                });
+    }
+
+    private void publish(final int from, final int to) {
+        waitFor(() -> kafkaConsumer.assignment().contains(TOPIC_PARTITION));
+        // mock consumer is synchronized, so records are becoming visible to shared fetch all at once
+        synchronized (kafkaConsumer) {
+            for (int offset = from; offset < to; ++offset) {
+                kafkaConsumer.addRecord(new ConsumerRecord<>(TOPIC_PARTITION.topic(), TOPIC_PARTITION.partition(),
+                        offset, null, ("event" + offset).getBytes()));
+            }
+        }
+    }
+
+    private static List<ConsumedEvent> read(final EventConsumer consumer, final int count) {
+        final List<ConsumedEvent> result = new ArrayList<>();
+        waitFor(() -> {
+            result.addAll(consumer.readEvents());
+            return result.size() >= count;
+        });
+        return result;
+    }
+
+    private static void waitFor(final BooleanSupplier condition) {
+        final long finishAt = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition was not met in time", System.currentTimeMillis() < finishAt);
+        }
+    }
+
+    private static List<String> offsets(final List<ConsumedEvent> events) {
+        return events.stream().map(e -> e.getPosition().getOffset()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenReadersAreAtTheSamePositionThenRecordsAreFetchedOnce() {
+        final EventConsumer.LowLevelConsumer first = createConsumer(0);
+        final EventConsumer.LowLevelConsumer second = createConsumer(0);
+        publish(0, 3);
+
+        final List<ConsumedEvent> firstEvents = read(first, 3);
+        final List<ConsumedEvent> secondEvents = read(second, 3);
+
+        Assert.assertEquals(offsets(firstEvents), offsets(secondEvents));
+        Assert.assertEquals(KafkaCursor.toNakadiOffset(2), firstEvents.get(2).getPosition().getOffset());
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertSame(firstEvents.get(i).getEvent(), secondEvents.get(i).getEvent());
+        }
+        Assert.assertEquals(1, consumersCreated.get());
+        Assert.assertTrue(dedicatedConsumers.isEmpty());
+    }
+
+    @Test
+    public void whenReaderJoinsWithinWindowThenItIsServedFromMemory() {
+        final EventConsumer.LowLevelConsumer first = createConsumer(0);
+        publish(0, 5);
+        read(first, 5);
+
+        final EventConsumer.LowLevelConsumer second = createConsumer(2);
+        final List<ConsumedEvent> events = read(second, 3);
+
+        Assert.assertEquals(KafkaCursor.toNakadiOffset(2), events.get(0).getPosition().getOffset());
+        Assert.assertTrue(dedicatedConsumers.isEmpty());
+    }
+
+    @Test
+    public void whenReaderIsLeftBehindThenItSwitchesToDedicatedConsumer() {
+        multiplexer.close();
+        // two records of 6 bytes
+        multiplexer = createMultiplexer(12);
+        final EventConsumer.LowLevelConsumer consumer = createConsumer(0);
+        publish(0, 5);
+
+        waitFor(() -> {
+            consumer.readEvents();
+            return !dedicatedConsumers.isEmpty();
+        });
+
+        Assert.assertEquals(1, dedicatedConsumers.size());
+        final KafkaCursor dedicatedCursor = dedicatedConsumers.get(0).get(0);
+        Assert.assertEquals(TOPIC_PARTITION.topic(), dedicatedCursor.getTopic());
+        Assert.assertEquals(0L, dedicatedCursor.getOffset());
+    }
+
+    @Test
+    public void whenAllReadersAreClosedThenSharedConsumerIsClosed() throws Exception {
+        final EventConsumer.LowLevelConsumer first = createConsumer(0);
+        final EventConsumer.LowLevelConsumer second = createConsumer(0);
+        waitFor(() -> kafkaConsumer.assignment().contains(TOPIC_PARTITION));
+
+        first.close();
+        Assert.assertFalse(kafkaConsumer.closed());
+        second.close();
+        waitFor(kafkaConsumer::closed);
+    }
+
+    @Test
+    public void whenOffsetIsOutOfRangeThenOnlyReadersOfThePartitionSwitchToDedicatedConsumer() {
+        final EventConsumer.LowLevelConsumer first = createConsumer(TOPIC_PARTITION, 0);
+        final EventConsumer.LowLevelConsumer second = createConsumer(OTHER_PARTITION, 0);
+        waitFor(() -> kafkaConsumer.assignment().containsAll(Arrays.asList(TOPIC_PARTITION, OTHER_PARTITION)));
+
+        kafkaConsumer.setException(new OffsetOutOfRangeException(ImmutableMap.of(OTHER_PARTITION, 0L)));
+        waitFor(() -> {
+            second.readEvents();
+            return !dedicatedConsumers.isEmpty();
+        });
+        Assert.assertEquals(OTHER_PARTITION.partition(), dedicatedConsumers.get(0).get(0).getPartition());
+
+        publish(0, 3);
+        Assert.assertEquals(3, read(first, 3).size());
+        Assert.assertEquals(1, dedicatedConsumers.size());
+        Assert.assertEquals(1, consumersCreated.get());
+    }
+
+    @Test
+    public void whenMultiplexerIsClosedThenItsMetricsAreRemoved() {
+        Assert.assertTrue(metricRegistry.getNames().contains(METRIC_PREFIX + ".fetched"));
+
+        multiplexer.close();
+
+        Assert.assertTrue(metricRegistry.getNames().stream().noneMatch(name -> name.startsWith(METRIC_PREFIX)));
+    }
+}
@@ -0,0 +1,181 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KafkaOffsetsTest {
+
+    private final Consumer<byte[], byte[]> consumer = createConsumer();
+    private final AtomicInteger consumersCreated = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<byte[], byte[]> createConsumer() {
+        final Consumer<byte[], byte[]> consumer = mock(Consumer.class);
+        when(consumer.partitionsFor(anyString(), any(Duration.class))).thenAnswer(invocation -> {
+            final String topic = (String) invocation.getArguments()[0];
+            return ImmutableList.of(new PartitionInfo(topic, 0, null, null, null),
+                    new PartitionInfo(topic, 1, null, null, null));
+        });
+        when(consumer.beginningOffsets(any(), any(Duration.class))).thenAnswer(invocation ->
+                ((Collection<TopicPartition>) invocation.getArguments()[0]).stream()
+                        .collect(Collectors.toMap(tp -> tp, tp -> 10L)));
+        when(consumer.endOffsets(any(), any(Duration.class))).thenAnswer(invocation ->
+                ((Collection<TopicPartition>) invocation.getArguments()[0]).stream()
+                        .collect(Collectors.toMap(tp -> tp, tp -> 20L + tp.partition())));
+        return consumer;
+    }
+
+    private KafkaOffsets createOffsets(final long ttlMs) {
+        return new KafkaOffsets(() -> {
+            consumersCreated.incrementAndGet();
+            return consumer;
+        }, ttlMs, 5000, new MetricRegistry(), "kafka.offsets");
+    }
+
+    @Test
+    public void whenOffsetsAreLoadedThenAllPartitionsOfTopicsAreReturned() {
+        final Map<String, List<KafkaOffsets.PartitionOffsets>> offsets =
+                createOffsets(0).getOffsets(ImmutableList.of("t1", "t2"), false);
+
+        Assert.assertEquals(ImmutableSet.of("t1", "t2"), offsets.keySet());
+        final KafkaOffsets.PartitionOffsets second = offsets.get("t2").get(1);
+        Assert.assertEquals(1, second.getPartition());
+        Assert.assertEquals(10L, second.getBegin());
+        Assert.assertEquals(21L, second.getEnd());
+    }
+
+    @Test
+    public void whenOffsetsAreWithinTtlThenTheyAreReusedUnlessFreshReadIsRequested() {
+        final KafkaOffsets offsets = createOffsets(60_000);
+
+        offsets.getOffsets(ImmutableList.of("t1"), false);
+        offsets.getOffsets(ImmutableList.of("t1"), false);
+        verify(consumer, times(1)).endOffsets(any(), any(Duration.class));
+
+        offsets.getOffsets(ImmutableList.of("t1"), true);
+        verify(consumer, times(2)).endOffsets(any(), any(Duration.class));
+
+        offsets.removeTopic("t1");
+        offsets.getOffsets(ImmutableList.of("t1"), false);
+        verify(consumer, times(3)).endOffsets(any(), any(Duration.class));
+        Assert.assertEquals(1, consumersCreated.get());
+    }
+
+    @Test(timeout = 10_000)
+    @SuppressWarnings("unchecked")
+    public void whenCallersWaitForRoundTripThenTheirRequestsAreBatched() throws Exception {
+        final KafkaOffsets offsets = createOffsets(0);
+        final CountDownLatch roundTripStarted = new CountDownLatch(1);
+        final CountDownLatch releaseRoundTrip = new CountDownLatch(1);
+        when(consumer.partitionsFor(eq("slow"), any(Duration.class))).thenAnswer(invocation -> {
+            roundTripStarted.countDown();
+            releaseRoundTrip.await();
+            return ImmutableList.of(new PartitionInfo("slow", 0, null, null, null));
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> first = executor.submit(() -> offsets.getOffsets(ImmutableList.of("slow"), true));
+            roundTripStarted.await();
+            final Future<Map<String, List<KafkaOffsets.PartitionOffsets>>> second =
+                    executor.submit(() -> offsets.getOffsets(ImmutableList.of("t1"), true));
+            final Future<Map<String, List<KafkaOffsets.PartitionOffsets>>> third =
+                    executor.submit(() -> offsets.getOffsets(ImmutableList.of("t2"), true));
+            while (offsets.getPendingRequests() < 2) {
+                Thread.sleep(1);
+            }
+            releaseRoundTrip.countDown();
+
+            first.get();
+            Assert.assertEquals(ImmutableSet.of("t1"), second.get().keySet());
+            Assert.assertEquals(ImmutableSet.of("t2"), third.get().keySet());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(consumer, times(2)).endOffsets(captor.capture(), any(Duration.class));
+        Assert.assertEquals(4, captor.getAllValues().get(1).size());
+    }
+
+    @Test
+    public void whenRoundTripFailsThenErrorIsRethrownAndConsumerIsRecreated() {
+        final KafkaOffsets offsets = createOffsets(0);
+        when(consumer.partitionsFor(eq("broken"), any(Duration.class))).thenThrow(new TimeoutException("timeout"));
+        try {
+            offsets.getOffsets(ImmutableList.of("broken"), false);
+            Assert.fail();
+        } catch (final TimeoutException expected) {
+        }
+        verify(consumer).close();
+
+        offsets.getOffsets(ImmutableList.of("t2"), false);
+        Assert.assertEquals(2, consumersCreated.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void whenTopicOfOneCallerFailsThenOtherCallersOfRoundTripGetTheirOffsets() throws Exception {
+        final KafkaOffsets offsets = createOffsets(0);
+        final CountDownLatch roundTripStarted = new CountDownLatch(1);
+        final CountDownLatch releaseRoundTrip = new CountDownLatch(1);
+        when(consumer.partitionsFor(eq("slow"), any(Duration.class))).thenAnswer(invocation -> {
+            roundTripStarted.countDown();
+            releaseRoundTrip.await();
+            return ImmutableList.of(new PartitionInfo("slow", 0, null, null, null));
+        });
+        when(consumer.partitionsFor(eq("broken"), any(Duration.class))).thenThrow(new TimeoutException("timeout"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> first = executor.submit(() -> offsets.getOffsets(ImmutableList.of("slow"), true));
+            roundTripStarted.await();
+            final Future<Map<String, List<KafkaOffsets.PartitionOffsets>>> broken =
+                    executor.submit(() -> offsets.getOffsets(ImmutableList.of("broken"), true));
+            final Future<Map<String, List<KafkaOffsets.PartitionOffsets>>> healthy =
+                    executor.submit(() -> offsets.getOffsets(ImmutableList.of("t1"), true));
+            while (offsets.getPendingRequests() < 2) {
+                Thread.sleep(1);
+            }
+            releaseRoundTrip.countDown();
+
+            first.get();
+            Assert.assertEquals(ImmutableSet.of("t1"), healthy.get().keySet());
+            try {
+                broken.get();
+                Assert.fail("Error of the topic is expected to be thrown to its caller");
+            } catch (final ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof TimeoutException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
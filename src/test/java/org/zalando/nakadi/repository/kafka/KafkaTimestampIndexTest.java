@@ -0,0 +1,112 @@
+package org.zalando.nakadi.repository.kafka;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class KafkaTimestampIndexTest {
+
+    private static final String TOPIC = "topic";
+
+    private final KafkaTimestampIndex index = new KafkaTimestampIndex(10_000, 8);
+
+    @Test
+    public void whenOffsetIsSampledThenExactTimestampIsReturned() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.onRecord(TOPIC, 0, 20, 20_000);
+
+        Assert.assertEquals(Optional.of(10_000L), index.estimateTimestamp(TOPIC, 0, 10));
+        Assert.assertEquals(Optional.of(20_000L), index.estimateTimestamp(TOPIC, 0, 20));
+    }
+
+    @Test
+    public void whenOffsetIsBetweenSamplesThenTimestampIsInterpolated() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.onRecord(TOPIC, 0, 20, 20_000);
+
+        Assert.assertEquals(Optional.of(15_000L), index.estimateTimestamp(TOPIC, 0, 15));
+    }
+
+    @Test
+    public void whenOffsetIsOutsideOfSamplesThenNothingIsReturned() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.onRecord(TOPIC, 0, 20, 20_000);
+
+        Assert.assertEquals(Optional.empty(), index.estimateTimestamp(TOPIC, 0, 9));
+        Assert.assertEquals(Optional.empty(), index.estimateTimestamp(TOPIC, 0, 21));
+        Assert.assertEquals(Optional.empty(), index.estimateTimestamp(TOPIC, 1, 15));
+    }
+
+    @Test
+    public void whenRecordsArriveWithinSampleIntervalThenLatestPositionIsMovedForward() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.onRecord(TOPIC, 0, 11, 10_100);
+        index.onRecord(TOPIC, 0, 12, 10_200);
+
+        Assert.assertEquals(Optional.of(10_200L), index.estimateTimestamp(TOPIC, 0, 12));
+        Assert.assertEquals(Optional.of(10_100L), index.estimateTimestamp(TOPIC, 0, 11));
+    }
+
+    @Test
+    public void whenOlderRecordsAreConsumedThenTheyAreAddedToIndex() {
+        index.onRecord(TOPIC, 0, 30, 30_000);
+        index.onRecord(TOPIC, 0, 40, 40_000);
+        index.onRecord(TOPIC, 0, 10, 10_000);
+
+        Assert.assertEquals(Optional.of(10_000L), index.estimateTimestamp(TOPIC, 0, 10));
+        Assert.assertEquals(Optional.of(20_000L), index.estimateTimestamp(TOPIC, 0, 20));
+    }
+
+    @Test
+    public void whenSamplesAreFarApartInTimeThenNothingIsReturned() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.onRecord(TOPIC, 0, 20, 20_000);
+        index.onRecord(TOPIC, 0, 30, 3_600_000);
+
+        Assert.assertEquals(Optional.of(15_000L), index.estimateTimestamp(TOPIC, 0, 15));
+        Assert.assertEquals(Optional.empty(), index.estimateTimestamp(TOPIC, 0, 25));
+        Assert.assertEquals(Optional.of(3_600_000L), index.estimateTimestamp(TOPIC, 0, 30));
+    }
+
+    @Test
+    public void whenIndexIsFullThenSamplesAreThinnedOutAndLatestPositionIsKept() {
+        for (int i = 0; i < 100; ++i) {
+            index.onRecord(TOPIC, 0, i * 10, i * 10_000);
+        }
+
+        Assert.assertEquals(Optional.of(0L), index.estimateTimestamp(TOPIC, 0, 0));
+        Assert.assertEquals(Optional.of(990_000L), index.estimateTimestamp(TOPIC, 0, 990));
+        Assert.assertEquals(Optional.of(505_000L), index.estimateTimestamp(TOPIC, 0, 505));
+    }
+
+    @Test
+    public void whenRecordsAreConsumedThenTheyAreSampled() {
+        final TopicPartition topicPartition = new TopicPartition(TOPIC, 0);
+        index.onRecords(new ConsumerRecords<>(ImmutableMap.of(topicPartition, ImmutableList.of(
+                record(10, 10_000), record(11, 10_500), record(12, 11_000)))));
+
+        Assert.assertEquals(Optional.of(10_000L), index.estimateTimestamp(TOPIC, 0, 10));
+        Assert.assertEquals(Optional.of(10_500L), index.estimateTimestamp(TOPIC, 0, 11));
+        Assert.assertEquals(Optional.of(11_000L), index.estimateTimestamp(TOPIC, 0, 12));
+    }
+
+    @Test
+    public void whenTopicIsRemovedThenItsSamplesAreDropped() {
+        index.onRecord(TOPIC, 0, 10, 10_000);
+        index.removeTopic(TOPIC);
+
+        Assert.assertEquals(Optional.empty(), index.estimateTimestamp(TOPIC, 0, 10));
+    }
+
+    private static ConsumerRecord<byte[], byte[]> record(final long offset, final long timestamp) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, timestamp, TimestampType.CREATE_TIME, 0L, 0, 0,
+                new byte[0], new byte[0]);
+    }
+}
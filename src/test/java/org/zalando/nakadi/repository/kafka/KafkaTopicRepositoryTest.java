@@ -1,5 +1,6 @@
 package org.zalando.nakadi.repository.kafka;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.GetChildrenBuilder;
@@ -8,9 +9,11 @@ import org.apache.kafka.clients.producer.BufferExhaustedException;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -29,13 +32,19 @@ import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 import org.zalando.nakadi.repository.zookeeper.ZookeeperSettings;
 import org.zalando.nakadi.view.Cursor;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.google.common.collect.Sets.newHashSet;
@@ -48,11 +57,14 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.anyVararg;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.zalando.nakadi.utils.TestUtils.buildTimelineWithTopic;
+import static org.zalando.nakadi.utils.TestUtils.createBatchItem;
 
 public class KafkaTopicRepositoryTest {
 
@@ -65,7 +77,8 @@ public class KafkaTopicRepositoryTest {
     private static final String KAFKA_CLIENT_ID = "application_name-topic_name";
 
     @SuppressWarnings("unchecked")
-    public static final ProducerRecord EXPECTED_PRODUCER_RECORD = new ProducerRecord(MY_TOPIC, 0, "0", "payload");
+    public static final ProducerRecord EXPECTED_PRODUCER_RECORD = new ProducerRecord(MY_TOPIC, 0, "0",
+            "payload".getBytes(StandardCharsets.UTF_8));
 
     private static final Set<PartitionState> PARTITIONS;
 
@@ -81,13 +94,6 @@ public class KafkaTopicRepositoryTest {
         PARTITIONS.add(new PartitionState(ANOTHER_TOPIC, 9, 99, 222));
     }
 
-    private ConsumerOffsetMode offsetMode = ConsumerOffsetMode.EARLIEST;
-
-    private enum ConsumerOffsetMode {
-        EARLIEST,
-        LATEST
-    }
-
     public static final List<Cursor> MY_TOPIC_VALID_CURSORS = asList(
             cursor("0", "39"), // the first one possible
             cursor("0", "40"), // something in the middle
@@ -98,7 +104,7 @@ public class KafkaTopicRepositoryTest {
             cursor("5", "30"), cursor("9", "100"));
 
     private final KafkaTopicRepository kafkaTopicRepository;
-    private final KafkaProducer<String, String> kafkaProducer;
+    private final KafkaProducer<String, byte[]> kafkaProducer;
     private final KafkaFactory kafkaFactory;
 
     @SuppressWarnings("unchecked")
@@ -220,11 +226,7 @@ public class KafkaTopicRepositoryTest {
 
     @Test
     public void whenPostEventTimesOutThenUpdateItemStatus() {
-        final BatchItem item = new BatchItem(
-                "{}",
-                BatchItem.EmptyInjectionConfiguration.build(1, true),
-                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+        final BatchItem item = createBatchItem("{}");
         item.setPartition("1");
         final List<BatchItem> batch = new ArrayList<>();
         batch.add(item);
@@ -238,7 +240,7 @@ public class KafkaTopicRepositoryTest {
                 .send(any(), any());
 
         try {
-            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch);
+            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch, null);
             fail();
         } catch (final EventPublishingException e) {
             assertThat(item.getResponse().getPublishingStatus(), equalTo(EventPublishingStatus.FAILED));
@@ -248,10 +250,7 @@ public class KafkaTopicRepositoryTest {
 
     @Test
     public void whenPostEventOverflowsBufferThenUpdateItemStatus() {
-        final BatchItem item = new BatchItem("{}",
-                BatchItem.EmptyInjectionConfiguration.build(1, true),
-                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+        final BatchItem item = createBatchItem("{}");
         item.setPartition("1");
         final List<BatchItem> batch = new ArrayList<>();
         batch.add(item);
@@ -265,7 +264,7 @@ public class KafkaTopicRepositoryTest {
                 .send(any(), any());
 
         try {
-            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch);
+            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch, null);
             fail();
         } catch (final EventPublishingException e) {
             assertThat(item.getResponse().getPublishingStatus(), equalTo(EventPublishingStatus.FAILED));
@@ -276,13 +275,9 @@ public class KafkaTopicRepositoryTest {
     @Test
     public void whenKafkaPublishCallbackWithExceptionThenEventPublishingException() {
 
-        final BatchItem firstItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
-                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+        final BatchItem firstItem = createBatchItem("{}");
         firstItem.setPartition("1");
-        final BatchItem secondItem = new BatchItem("{}", BatchItem.EmptyInjectionConfiguration.build(1, true),
-                new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                Collections.emptyList());
+        final BatchItem secondItem = createBatchItem("{}");
         secondItem.setPartition("2");
         final List<BatchItem> batch = ImmutableList.of(firstItem, secondItem);
 
@@ -296,13 +291,13 @@ public class KafkaTopicRepositoryTest {
             if (record.partition() == 2) {
                 callback.onCompletion(null, new Exception()); // return exception only for second event
             } else {
-                callback.onCompletion(null, null);
+                callback.onCompletion(acknowledged(record.topic(), record.partition()), null);
             }
             return null;
         });
 
         try {
-            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch);
+            kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), batch, null);
             fail();
         } catch (final EventPublishingException e) {
             assertThat(firstItem.getResponse().getPublishingStatus(), equalTo(EventPublishingStatus.SUBMITTED));
@@ -312,6 +307,33 @@ public class KafkaTopicRepositoryTest {
         }
     }
 
+    @Test
+    public void whenPostBatchThenResultIsCompletedOnAcknowledgement() throws Exception {
+        when(nakadiSettings.getKafkaSendTimeoutMs()).thenReturn(10000L);
+        when(kafkaProducer.partitionsFor(EXPECTED_PRODUCER_RECORD.topic())).thenReturn(ImmutableList.of(
+                new PartitionInfo(EXPECTED_PRODUCER_RECORD.topic(), 1, new Node(1, "host", 9091), null, null)));
+
+        final List<Callback> callbacks = new ArrayList<>();
+        when(kafkaProducer.send(any(), any())).thenAnswer(invocation -> {
+            callbacks.add((Callback) invocation.getArguments()[1]);
+            return null;
+        });
+
+        final BatchItem item = createBatchItem("{}");
+        item.setPartition("1");
+        final CompletableFuture<Void> result =
+                kafkaTopicRepository.postBatch(EXPECTED_PRODUCER_RECORD.topic(), ImmutableList.of(item), null);
+
+        assertThat(result.isDone(), is(false));
+        verify(kafkaFactory, never()).releaseProducer(any());
+
+        callbacks.forEach(callback -> callback.onCompletion(acknowledged(EXPECTED_PRODUCER_RECORD.topic(), 1), null));
+        result.get(5, TimeUnit.SECONDS);
+
+        assertThat(item.getResponse().getPublishingStatus(), equalTo(EventPublishingStatus.SUBMITTED));
+        verify(kafkaFactory, times(1)).releaseProducer(kafkaProducer);
+    }
+
     @Test
     public void whenKafkaPublishTimeoutThenCircuitIsOpened() {
 
@@ -329,13 +351,10 @@ public class KafkaTopicRepositoryTest {
         final List<BatchItem> batches = new LinkedList<>();
         for (int i = 0; i < 1000; i++) {
             try {
-                final BatchItem batchItem = new BatchItem("{}",
-                        BatchItem.EmptyInjectionConfiguration.build(1, true),
-                        new BatchItem.InjectionConfiguration[BatchItem.Injection.values().length],
-                        Collections.emptyList());
+                final BatchItem batchItem = createBatchItem("{}");
                 batchItem.setPartition("1");
                 batches.add(batchItem);
-                kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), ImmutableList.of(batchItem));
+                kafkaTopicRepository.syncPostBatch(EXPECTED_PRODUCER_RECORD.topic(), ImmutableList.of(batchItem), null);
                 fail();
             } catch (final EventPublishingException e) {
             }
@@ -347,6 +366,10 @@ public class KafkaTopicRepositoryTest {
                 .count() >= 1);
     }
 
+    private static RecordMetadata acknowledged(final String topic, final int partition) {
+        return new RecordMetadata(new TopicPartition(topic, partition), 0L, 0L, System.currentTimeMillis(), 0L, 0, 0);
+    }
+
     private static Cursor cursor(final String partition, final String offset) {
         return new Cursor(partition, offset);
     }
@@ -358,7 +381,10 @@ public class KafkaTopicRepositoryTest {
                     nakadiSettings,
                     kafkaSettings,
                     zookeeperSettings,
-                    kafkaTopicConfigFactory);
+                    kafkaTopicConfigFactory,
+                    new KafkaTimestampIndex(1000, 256),
+                    new KafkaOffsets(kafkaFactory::getConsumer, 0, 5000, new MetricRegistry(), "kafka.offsets"),
+                    null);
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -391,27 +417,13 @@ public class KafkaTopicRepositoryTest {
 
         allTopics().forEach(
                 topic -> when(consumer.partitionsFor(topic)).thenReturn(partitionsOfTopic(topic)));
+        allTopics().forEach(topic -> when(consumer.partitionsFor(eq(topic), any(Duration.class)))
+                .thenReturn(partitionsOfTopic(topic)));
 
-        doAnswer(invocation -> {
-            offsetMode = ConsumerOffsetMode.EARLIEST;
-            return null;
-        }).when(consumer).seekToBeginning(anyVararg());
-
-        doAnswer(invocation -> {
-            offsetMode = ConsumerOffsetMode.LATEST;
-            return null;
-        }).when(consumer).seekToEnd(anyVararg());
-
-        when(consumer.position(any())).thenAnswer(invocation -> {
-            final org.apache.kafka.common.TopicPartition tp =
-                    (org.apache.kafka.common.TopicPartition) invocation.getArguments()[0];
-            return PARTITIONS
-                    .stream()
-                    .filter(ps -> ps.topic.equals(tp.topic()) && ps.partition == tp.partition())
-                    .findFirst()
-                    .map(ps -> offsetMode == ConsumerOffsetMode.LATEST ? ps.latestOffset : ps.earliestOffset)
-                    .orElseThrow(KafkaException::new);
-        });
+        when(consumer.beginningOffsets(any(), any(Duration.class))).thenAnswer(invocation -> offsetsOf(
+                (Collection<TopicPartition>) invocation.getArguments()[0], ps -> ps.earliestOffset));
+        when(consumer.endOffsets(any(), any(Duration.class))).thenAnswer(invocation -> offsetsOf(
+                (Collection<TopicPartition>) invocation.getArguments()[0], ps -> ps.latestOffset));
 
         // KafkaProducer
         when(kafkaProducer.send(EXPECTED_PRODUCER_RECORD)).thenReturn(mock(Future.class));
@@ -421,11 +433,20 @@ public class KafkaTopicRepositoryTest {
 
         when(kafkaFactory.getConsumer(KAFKA_CLIENT_ID)).thenReturn(consumer);
         when(kafkaFactory.getConsumer()).thenReturn(consumer);
-        when(kafkaFactory.takeProducer()).thenReturn(kafkaProducer);
+        when(kafkaFactory.takeProducer(any(), any())).thenReturn(kafkaProducer);
 
         return kafkaFactory;
     }
 
+    private static Map<TopicPartition, Long> offsetsOf(final Collection<TopicPartition> partitions,
+                                                       final Function<PartitionState, Long> offset) {
+        return partitions.stream().collect(Collectors.toMap(tp -> tp, tp -> PARTITIONS.stream()
+                .filter(ps -> ps.topic.equals(tp.topic()) && ps.partition == tp.partition())
+                .findFirst()
+                .map(offset)
+                .orElseThrow(KafkaException::new)));
+    }
+
     private List<PartitionInfo> partitionsOfTopic(final String topic) {
         return PARTITIONS.stream()
                 .filter(p -> p.topic.equals(topic))
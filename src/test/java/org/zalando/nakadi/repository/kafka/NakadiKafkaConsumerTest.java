@@ -2,6 +2,7 @@ package org.zalando.nakadi.repository.kafka;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -12,6 +13,7 @@ import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.utils.TestUtils;
 
@@ -78,7 +80,8 @@ public class NakadiKafkaConsumerTest {
                 kafkaCursor(TOPIC, randomUInt(), randomULong()));
 
         // ACT //
-        new NakadiKafkaConsumer(kafkaConsumerMock, kafkaCursors, createTpTimelineMap(), POLL_TIMEOUT);
+        new NakadiKafkaConsumer(kafkaConsumerMock, kafkaCursors, createTpTimelineMap(), POLL_TIMEOUT,
+                new KafkaTimestampIndex(1000, 256));
 
         // ASSERT //
         final Map<String, String> cursors = kafkaCursors.stream().collect(Collectors.toMap(kafkaCursor ->
@@ -129,7 +132,8 @@ public class NakadiKafkaConsumerTest {
 
         // ACT //
         final NakadiKafkaConsumer consumer = new NakadiKafkaConsumer(
-                kafkaConsumerMock, cursors, createTpTimelineMap(), POLL_TIMEOUT);
+                kafkaConsumerMock, cursors, createTpTimelineMap(), POLL_TIMEOUT,
+                new KafkaTimestampIndex(1000, 256));
         final List<ConsumedEvent> consumedEvents = consumer.readEvents();
 
         // ASSERT //
@@ -167,7 +171,8 @@ public class NakadiKafkaConsumerTest {
 
                 // ACT //
                 final NakadiKafkaConsumer consumer = new NakadiKafkaConsumer(kafkaConsumerMock,
-                        ImmutableList.of(), createTpTimelineMap(), POLL_TIMEOUT);
+                        ImmutableList.of(), createTpTimelineMap(), POLL_TIMEOUT,
+                        new KafkaTimestampIndex(1000, 256));
                 consumer.readEvents();
 
                 // ASSERT //
@@ -188,11 +193,51 @@ public class NakadiKafkaConsumerTest {
         // ARRANGE //
         final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
         final NakadiKafkaConsumer nakadiKafkaConsumer = new NakadiKafkaConsumer(kafkaConsumerMock,
-                ImmutableList.of(), createTpTimelineMap(), POLL_TIMEOUT);
+                ImmutableList.of(), createTpTimelineMap(), POLL_TIMEOUT,
+                new KafkaTimestampIndex(1000, 256));
         // ACT //
         nakadiKafkaConsumer.close();
         // ASSERT //
         verify(kafkaConsumerMock, times(1)).close();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenPauseAndResumeThenOnlyAssignedPartitionsArePausedAndResumed() {
+        final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
+        final Timeline timeline = buildTimeline(TOPIC, TOPIC, CREATED_AT);
+        final TopicPartition assigned = new TopicPartition(TOPIC, 0);
+        when(kafkaConsumerMock.assignment()).thenReturn(ImmutableSet.of(assigned, new TopicPartition(TOPIC, 1)));
+        final NakadiKafkaConsumer nakadiKafkaConsumer = new NakadiKafkaConsumer(kafkaConsumerMock,
+                ImmutableList.of(), ImmutableMap.of(assigned, timeline, new TopicPartition(TOPIC, 1), timeline),
+                POLL_TIMEOUT, new KafkaTimestampIndex(1000, 256));
+        final List<EventTypePartition> partitions = ImmutableList.of(
+                new EventTypePartition(TOPIC, toNakadiPartition(0)),
+                new EventTypePartition(TOPIC, toNakadiPartition(2)));
+
+        nakadiKafkaConsumer.pause(partitions);
+        verify(kafkaConsumerMock).pause(ImmutableList.of(assigned));
+
+        nakadiKafkaConsumer.resume(partitions);
+        verify(kafkaConsumerMock).resume(ImmutableList.of(assigned));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenReassignedThenOnlyNewPartitionsAreSeeked() {
+        final KafkaConsumer<byte[], byte[]> kafkaConsumerMock = mock(KafkaConsumer.class);
+        final TopicPartition kept = new TopicPartition(TOPIC, 0);
+        final TopicPartition added = new TopicPartition(TOPIC, 1);
+        final NakadiKafkaConsumer nakadiKafkaConsumer = new NakadiKafkaConsumer(kafkaConsumerMock,
+                ImmutableList.of(kafkaCursor(TOPIC, 0, 10)), createTpTimelineMap(), POLL_TIMEOUT,
+                new KafkaTimestampIndex(1000, 256));
+        when(kafkaConsumerMock.assignment()).thenReturn(ImmutableSet.of(kept));
+
+        nakadiKafkaConsumer.reassign(ImmutableList.of(kafkaCursor(TOPIC, 0, 20), kafkaCursor(TOPIC, 1, 30)));
+
+        verify(kafkaConsumerMock).seek(kept, 10);
+        verify(kafkaConsumerMock, times(0)).seek(kept, 20);
+        verify(kafkaConsumerMock).seek(added, 30);
+        verify(kafkaConsumerMock, times(0)).close();
+    }
 }
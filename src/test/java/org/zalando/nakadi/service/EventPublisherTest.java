@@ -33,10 +33,12 @@ import org.zalando.nakadi.validation.EventTypeValidator;
 import org.zalando.nakadi.validation.ValidationError;
 
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -99,7 +101,18 @@ public class EventPublisherTest {
         final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName());
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
-        verify(topicRepository, times(1)).syncPostBatch(any(), any());
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any());
+    }
+
+    @Test
+    public void whenPublishThenProducerProfileOfEventTypeIsUsed() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        eventType.getOptions().setProducerProfile("bulk");
+        mockSuccessfulValidation(eventType);
+
+        publisher.publish(buildDefaultBatch(1).toString(), eventType.getName());
+
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), eq("bulk"));
     }
 
     @Test(expected = AccessDeniedException.class)
@@ -126,7 +139,7 @@ public class EventPublisherTest {
         final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName());
 
         assertThat(result.getResponses().get(0).getEid(), equalTo(event.getJSONObject("metadata").optString("eid")));
-        verify(topicRepository, times(1)).syncPostBatch(any(), any());
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -163,7 +176,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(createBatchItem(event), eventType);
         verify(partitionResolver, times(0)).resolvePartition(eventType, event);
-        verify(topicRepository, times(0)).syncPostBatch(any(), any());
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -203,7 +216,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
         verify(partitionResolver, times(0)).resolvePartition(any(), any());
-        verify(topicRepository, times(0)).syncPostBatch(any(), any());
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -284,7 +297,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
         verify(enrichment, times(1)).enrich(any(), any());
         verify(partitionResolver, times(1)).resolvePartition(any(), any());
-        verify(topicRepository, times(1)).syncPostBatch(any(), any());
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -299,7 +312,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
         verify(partitionResolver, times(0)).resolvePartition(any(), any());
-        verify(topicRepository, times(0)).syncPostBatch(any(), any());
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -314,7 +327,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.ABORTED));
         verify(enrichment, times(0)).enrich(any(), any());
         verify(partitionResolver, times(0)).resolvePartition(any(), any());
-        verify(topicRepository, times(0)).syncPostBatch(any(), any());
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -329,7 +342,7 @@ public class EventPublisherTest {
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
         verify(enrichment, times(1)).enrich(any(), any());
         verify(partitionResolver, times(1)).resolvePartition(any(), any());
-        verify(topicRepository, times(1)).syncPostBatch(any(), any());
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -387,7 +400,68 @@ public class EventPublisherTest {
         final EventPublishResult result = publisher.publish(batch.toString(), eventType.getName());
 
         assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
-        verify(topicRepository, times(1)).syncPostBatch(any(), any());
+        verify(topicRepository, times(1)).syncPostBatch(any(), any(), any());
+    }
+
+    @Test
+    public void whenPublishAsyncThenEventTypeIsReleasedAfterAcknowledgement() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        final JSONArray batch = buildDefaultBatch(2);
+        mockSuccessfulValidation(eventType);
+
+        final Closeable etCloser = mock(Closeable.class);
+        Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong())).thenReturn(etCloser);
+        final CompletableFuture<Void> acknowledgement = new CompletableFuture<>();
+        Mockito.when(topicRepository.postBatch(any(), any(), any())).thenReturn(acknowledgement);
+
+        final CompletableFuture<EventPublishResult> result =
+                publisher.publishAsync(batch.toString().getBytes(StandardCharsets.UTF_8), eventType.getName());
+
+        assertThat(result.isDone(), is(false));
+        verify(etCloser, times(0)).close();
+
+        acknowledgement.complete(null);
+
+        assertThat(result.get().getStatus(), equalTo(EventPublishingStatus.SUBMITTED));
+        assertThat(result.get().getResponses().size(), equalTo(2));
+        verify(etCloser, times(1)).close();
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
+    }
+
+    @Test
+    public void whenPublishAsyncFailsThenResultIsFailed() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        final JSONArray batch = buildDefaultBatch(1);
+        mockSuccessfulValidation(eventType);
+
+        final Closeable etCloser = mock(Closeable.class);
+        Mockito.when(timelineSync.workWithEventType(any(String.class), anyLong())).thenReturn(etCloser);
+        final CompletableFuture<Void> acknowledgement = new CompletableFuture<>();
+        acknowledgement.completeExceptionally(new EventPublishingException("Error publishing message to kafka"));
+        Mockito.when(topicRepository.postBatch(any(), any(), any())).thenReturn(acknowledgement);
+
+        final EventPublishResult result = publisher
+                .publishAsync(batch.toString().getBytes(StandardCharsets.UTF_8), eventType.getName())
+                .get();
+
+        assertThat(result.getStatus(), equalTo(EventPublishingStatus.FAILED));
+        assertThat(result.getStep(), equalTo(EventPublishingStep.PUBLISHING));
+        verify(etCloser, times(1)).close();
+    }
+
+    @Test
+    public void whenPublishAsyncValidationFailsThenBatchIsNotPosted() throws Exception {
+        final EventType eventType = buildDefaultEventType();
+        final JSONArray batch = buildDefaultBatch(1);
+
+        mockFaultValidation(eventType, "error");
+
+        final CompletableFuture<EventPublishResult> result =
+                publisher.publishAsync(batch.toString().getBytes(StandardCharsets.UTF_8), eventType.getName());
+
+        assertThat(result.isDone(), is(true));
+        assertThat(result.get().getStatus(), equalTo(EventPublishingStatus.ABORTED));
+        verify(topicRepository, times(0)).postBatch(any(), any(), any());
     }
 
     @Test
@@ -405,7 +479,7 @@ public class EventPublisherTest {
         verify(cache, times(1)).getValidator(eventType.getName());
         verify(partitionResolver, times(1)).resolvePartition(any(), any());
         verify(enrichment, times(1)).enrich(any(), any());
-        verify(topicRepository, times(0)).syncPostBatch(any(), any());
+        verify(topicRepository, times(0)).syncPostBatch(any(), any(), any());
     }
 
     @Test
@@ -464,7 +538,7 @@ public class EventPublisherTest {
     @SuppressWarnings("unchecked")
     private List<BatchItem> capturePublishedBatch() {
         final ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
-        verify(topicRepository, atLeastOnce()).syncPostBatch(any(), batchCaptor.capture());
+        verify(topicRepository, atLeastOnce()).syncPostBatch(any(), batchCaptor.capture(), any());
         return (List<BatchItem>) batchCaptor.getValue();
     }
 
@@ -507,7 +581,7 @@ public class EventPublisherTest {
         Mockito
                 .doThrow(EventPublishingException.class)
                 .when(topicRepository)
-                .syncPostBatch(any(), any());
+                .syncPostBatch(any(), any(), any());
     }
 
     private void mockFaultPartition() throws PartitioningException {
@@ -24,6 +24,8 @@ import org.zalando.nakadi.utils.TestUtils;
 import org.zalando.nakadi.view.Cursor;
 import org.zalando.nakadi.view.SubscriptionCursor;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -53,6 +55,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.zalando.nakadi.service.EventStreamWriter.BATCH_SEPARATOR;
 import static org.zalando.nakadi.utils.TestUtils.buildTimelineWithTopic;
@@ -92,7 +96,7 @@ public class EventStreamTest {
         final OutputStream outputStreamMock = mock(OutputStream.class);
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), outputStreamMock, config, mock(BlacklistService.class), cursorConverter,
-                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
 
         final Thread thread = new Thread(() -> eventStream.streamEvents(new AtomicBoolean(true), () -> {
         }));
@@ -120,7 +124,7 @@ public class EventStreamTest {
                 .build();
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), mock(OutputStream.class), config, mock(BlacklistService.class), cursorConverter,
-                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         final AtomicBoolean streamOpen = new AtomicBoolean(true);
         final Thread thread = new Thread(() -> eventStream.streamEvents(streamOpen, () -> {
         }));
@@ -148,7 +152,7 @@ public class EventStreamTest {
                 .build();
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), mock(OutputStream.class), config, mock(BlacklistService.class), cursorConverter,
-                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         final AtomicBoolean triggerAuthChange = new AtomicBoolean(false);
         final AtomicBoolean accessDeniedTriggered = new AtomicBoolean(false);
         final Thread thread = new Thread(() -> {
@@ -191,7 +195,7 @@ public class EventStreamTest {
                 .build();
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), mock(OutputStream.class), config, mock(BlacklistService.class), cursorConverter,
-                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
         // if something goes wrong - the test should fail with a timeout
@@ -208,7 +212,7 @@ public class EventStreamTest {
                 .build();
         final EventStream eventStream = new EventStream(endlessDummyConsumer(), mock(OutputStream.class), config,
                 mock(BlacklistService.class), cursorConverter, BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher,
-                kpiEventType, kpiFrequencyMs);
+                kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
         // if something goes wrong - the test should fail with a timeout
@@ -226,7 +230,7 @@ public class EventStreamTest {
                 .build();
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), mock(OutputStream.class), config, mock(BlacklistService.class), cursorConverter,
-                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
         // if something goes wrong - the test should fail with a timeout
@@ -247,7 +251,7 @@ public class EventStreamTest {
 
         final EventStream eventStream = new EventStream(
                 emptyConsumer(), out, config, mock(BlacklistService.class), cursorConverter, BYTES_FLUSHED_METER,
-                eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0, null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
 
@@ -274,7 +278,8 @@ public class EventStreamTest {
 
         final EventStream eventStream = new EventStream(
                 nCountDummyConsumerForPartition(12, "0"), out, config, mock(BlacklistService.class),
-                cursorConverter, BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                cursorConverter, BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs,
+                null, 0, 0, null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
 
@@ -289,6 +294,38 @@ public class EventStreamTest {
                 Optional.of(nCopies(2, new String(DUMMY))))));
     }
 
+    @Test(timeout = 10000)
+    public void whenStreamingAsyncThenEventsAreStreamedInBatches() throws Exception {
+        final EventStreamConfig config = EventStreamConfig
+                .builder()
+                .withCursors(ImmutableList.of(NakadiCursor.of(TIMELINE, "0", String.format("%18d", 0))))
+                .withBatchLimit(5)
+                .withStreamLimit(12)
+                .withConsumingClient(mock(Client.class))
+                .build();
+
+        final NakadiKafkaConsumer consumer = mock(NakadiKafkaConsumer.class);
+        final AtomicInteger polls = new AtomicInteger();
+        when(consumer.readAvailableEvents()).thenAnswer(invocation -> polls.incrementAndGet() % 2 == 0 ?
+                nCopies(3, new ConsumedEvent(DUMMY, NakadiCursor.of(TIMELINE, "0", "000000000000000000"), 0)) :
+                Collections.emptyList());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final EventStream eventStream = new EventStream(
+                consumer, out, config, mock(BlacklistService.class), cursorConverter, BYTES_FLUSHED_METER,
+                eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs,
+                new StreamingScheduler(1, 1).createSerialExecutor(), 10, 20, null);
+        eventStream.streamEventsAsync(new NonBlockingOutputStream(mock(HttpServletRequest.class),
+                mock(ServletOutputStream.class), 1000), new AtomicBoolean(true), () -> {
+        }).get();
+
+        final String[] batches = out.toString().split(BATCH_SEPARATOR);
+        assertThat(batches, arrayWithSize(3));
+        assertThat(batches[2], sameJSONAs(jsonBatch("0", "001-0000-000000000000000000",
+                Optional.of(nCopies(2, new String(DUMMY))))));
+        verify(consumer, never()).readEvents();
+    }
+
     @Test(timeout = 10000)
     public void whenReadingEventsTheOrderIsCorrect() throws IOException, InterruptedException {
         final EventStreamConfig config = EventStreamConfig
@@ -312,7 +349,8 @@ public class EventStreamTest {
 
         final EventStream eventStream =
                 new EventStream(predefinedConsumer(events), out, config, mock(BlacklistService.class), cursorConverter,
-                        BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                        BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0,
+                        null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
 
@@ -357,7 +395,8 @@ public class EventStreamTest {
 
         final EventStream eventStream =
                 new EventStream(predefinedConsumer(events), out, config, mock(BlacklistService.class), cursorConverter,
-                        BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs);
+                        BYTES_FLUSHED_METER, eventStreamWriter, kpiPublisher, kpiEventType, kpiFrequencyMs, null, 0, 0,
+                        null);
         eventStream.streamEvents(new AtomicBoolean(true), () -> {
         });
 
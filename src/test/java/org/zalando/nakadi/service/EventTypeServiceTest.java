@@ -6,6 +6,7 @@ import com.google.common.collect.Multimap;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.zalando.nakadi.config.NakadiSettings;
@@ -22,6 +23,7 @@ import org.zalando.nakadi.partitioning.PartitionResolver;
 import org.zalando.nakadi.repository.EventTypeRepository;
 import org.zalando.nakadi.repository.TopicRepository;
 import org.zalando.nakadi.repository.db.SubscriptionDbRepository;
+import org.zalando.nakadi.repository.kafka.KafkaProducerProfiles;
 import org.zalando.nakadi.repository.kafka.PartitionsCalculator;
 import org.zalando.nakadi.service.timeline.TimelineService;
 import org.zalando.nakadi.service.timeline.TimelineSync;
@@ -32,6 +34,7 @@ import org.zalando.nakadi.validation.SchemaEvolutionService;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -71,7 +74,8 @@ public class EventTypeServiceTest {
     @Before
     public void setUp() {
         final EventTypeOptionsValidator eventTypeOptionsValidator =
-                new EventTypeOptionsValidator(TOPIC_RETENTION_MIN_MS, TOPIC_RETENTION_MAX_MS);
+                new EventTypeOptionsValidator(TOPIC_RETENTION_MIN_MS, TOPIC_RETENTION_MAX_MS,
+                        ImmutableSet.of(KafkaProducerProfiles.DEFAULT));
         eventTypeService = new EventTypeService(eventTypeRepository, timelineService, partitionResolver, enrichment,
                 subscriptionDbRepository, schemaEvolutionService, partitionsCalculator, featureToggleService,
                 authorizationValidator, timelineSync, transactionTemplate, nakadiSettings, nakadiKpiPublisher,
@@ -189,6 +193,40 @@ public class EventTypeServiceTest {
                         .put("compatibility_mode", et.getCompatibilityMode()));
     }
 
+    @Test
+    public void whenEventTypeUpdatedWithSameRetentionThenProducerProfileIsUpdated() throws Exception {
+        final EventType original = buildDefaultEventType();
+        final EventType updated = buildDefaultEventType();
+        updated.setName(original.getName());
+        updated.getOptions().setProducerProfile(KafkaProducerProfiles.DEFAULT);
+        when(eventTypeRepository.findByName(original.getName())).thenReturn(original);
+        when(schemaEvolutionService.evolve(any(), any())).thenReturn(updated);
+
+        eventTypeService.update(original.getName(), updated);
+
+        final ArgumentCaptor<EventType> captor = ArgumentCaptor.forClass(EventType.class);
+        verify(eventTypeRepository).update(captor.capture());
+        assertEquals(KafkaProducerProfiles.DEFAULT, captor.getValue().getOptions().getProducerProfile());
+        assertEquals(original.getOptions().getRetentionTime(), captor.getValue().getOptions().getRetentionTime());
+    }
+
+    @Test
+    public void whenEventTypeUpdatedWithoutProducerProfileThenItIsKept() throws Exception {
+        final EventType original = buildDefaultEventType();
+        original.getOptions().setProducerProfile("bulk");
+        final EventType updated = buildDefaultEventType();
+        updated.setName(original.getName());
+        updated.getOptions().setProducerProfile(null);
+        when(eventTypeRepository.findByName(original.getName())).thenReturn(original);
+        when(schemaEvolutionService.evolve(any(), any())).thenReturn(updated);
+
+        eventTypeService.update(original.getName(), updated);
+
+        final ArgumentCaptor<EventType> captor = ArgumentCaptor.forClass(EventType.class);
+        verify(eventTypeRepository).update(captor.capture());
+        assertEquals("bulk", captor.getValue().getOptions().getProducerProfile());
+    }
+
     @Test
     public void whenEventTypeDeletedThenKPIEventSubmitted() throws Exception {
         final EventType et = buildDefaultEventType();
@@ -0,0 +1,130 @@
+package org.zalando.nakadi.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NonBlockingOutputStreamTest {
+
+    private HttpServletRequest request;
+    private ServletOutputStream servletOutput;
+    private NonBlockingOutputStream output;
+    private final AtomicInteger writableCalls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        request = mock(HttpServletRequest.class);
+        servletOutput = mock(ServletOutputStream.class);
+        output = new NonBlockingOutputStream(request, servletOutput, 10);
+        output.setWritableListener(writableCalls::incrementAndGet);
+    }
+
+    @Test
+    public void whenRequestIsNotAsyncThenOutputIsPassedThrough() throws IOException {
+        output.start();
+        output.write(new byte[20], 0, 20);
+        output.flush();
+        output.close();
+
+        verify(servletOutput, never()).setWriteListener(any());
+        verify(servletOutput).write(any(byte[].class), anyInt(), anyInt());
+        verify(servletOutput).flush();
+        verify(servletOutput).close();
+        Assert.assertFalse(output.isBackpressured());
+        Assert.assertTrue(output.getFinished().isDone());
+    }
+
+    @Test
+    public void whenContainerIsNotReadyThenDataIsKeptAndWrittenOnceItIsReady() throws IOException {
+        final WriteListener listener = start();
+        when(servletOutput.isReady()).thenReturn(false);
+
+        output.write(new byte[20], 0, 20);
+        output.flush();
+        Assert.assertTrue(output.isBackpressured());
+        verify(servletOutput, never()).write(any(byte[].class));
+
+        when(servletOutput.isReady()).thenReturn(true);
+        listener.onWritePossible();
+
+        verify(servletOutput).write(any(byte[].class));
+        verify(servletOutput).flush();
+        Assert.assertFalse(output.isBackpressured());
+        Assert.assertEquals(1, writableCalls.get());
+    }
+
+    @Test
+    public void whenClosedThenFinishedOnlyAfterPendingDataIsWrittenAndResponseIsNotClosed() throws IOException {
+        final WriteListener listener = start();
+        when(servletOutput.isReady()).thenReturn(false);
+
+        output.write(new byte[5], 0, 5);
+        output.close();
+        Assert.assertFalse(output.getFinished().isDone());
+
+        when(servletOutput.isReady()).thenReturn(true);
+        listener.onWritePossible();
+
+        Assert.assertTrue(output.getFinished().isDone());
+        verify(servletOutput, never()).close();
+    }
+
+    @Test
+    public void whenWritingFailsThenStreamIsFinishedAndListenerIsCalled() throws IOException {
+        final WriteListener listener = start();
+        when(servletOutput.isReady()).thenReturn(false);
+        output.write(new byte[20], 0, 20);
+        Assert.assertTrue(output.isBackpressured());
+
+        listener.onError(new IOException("connection reset"));
+
+        Assert.assertFalse(output.isBackpressured());
+        Assert.assertTrue(output.getFinished().isDone());
+        Assert.assertEquals(1, writableCalls.get());
+        try {
+            output.write(new byte[1], 0, 1);
+            Assert.fail("Writing to failed output should fail");
+        } catch (final IOException expected) {
+            Assert.assertEquals("connection reset", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void whenContainerFailsOnWriteThenErrorIsThrown() throws IOException {
+        start();
+        when(servletOutput.isReady()).thenReturn(true);
+        doThrow(new IOException("broken pipe")).when(servletOutput).write(any(byte[].class));
+
+        output.write(new byte[1], 0, 1);
+        try {
+            output.flush();
+        } finally {
+            verify(servletOutput, times(1)).write(any(byte[].class));
+            Assert.assertTrue(output.getFinished().isDone());
+        }
+    }
+
+    private WriteListener start() {
+        when(request.isAsyncStarted()).thenReturn(true);
+        output.start();
+        final ArgumentCaptor<WriteListener> captor = ArgumentCaptor.forClass(WriteListener.class);
+        verify(servletOutput).setWriteListener(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,152 @@
+package org.zalando.nakadi.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class SerialExecutorTest {
+
+    private final StreamingScheduler scheduler = new StreamingScheduler(4, 4);
+
+    @After
+    public void after() {
+        scheduler.shutdown();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test(timeout = 10000)
+    public void whenTasksAreSubmittedThenTheyAreExecutedInOrderAndNotConcurrently() throws Exception {
+        final List<SerialExecutor> executors = IntStream.range(0, 10)
+                .mapToObj(i -> scheduler.createSerialExecutor())
+                .collect(Collectors.toList());
+        final List<List<Integer>> executed = executors.stream()
+                .map(e -> Collections.synchronizedList(new ArrayList<Integer>()))
+                .collect(Collectors.toList());
+        final AtomicInteger[] running = IntStream.range(0, executors.size())
+                .mapToObj(i -> new AtomicInteger())
+                .toArray(AtomicInteger[]::new);
+        final AtomicInteger concurrentRuns = new AtomicInteger();
+        final int tasksPerExecutor = 1000;
+        final CountDownLatch finished = new CountDownLatch(executors.size() * tasksPerExecutor);
+
+        for (int task = 0; task < tasksPerExecutor; ++task) {
+            for (int i = 0; i < executors.size(); ++i) {
+                final int executorIdx = i;
+                final int taskIdx = task;
+                executors.get(i).execute(() -> {
+                    if (running[executorIdx].incrementAndGet() > 1) {
+                        concurrentRuns.incrementAndGet();
+                    }
+                    executed.get(executorIdx).add(taskIdx);
+                    running[executorIdx].decrementAndGet();
+                    finished.countDown();
+                });
+            }
+        }
+        finished.await();
+
+        Assert.assertEquals(0, concurrentRuns.get());
+        final List<Integer> expected = IntStream.range(0, tasksPerExecutor).boxed().collect(Collectors.toList());
+        executed.forEach(tasks -> Assert.assertEquals(expected, tasks));
+    }
+
+    @Test(timeout = 10000)
+    public void whenTaskIsExecutedThenSecurityContextOfCreatorIsUsed() throws Exception {
+        final SecurityContext context = new SecurityContextImpl();
+        SecurityContextHolder.setContext(context);
+        final SerialExecutor executor = scheduler.createSerialExecutor();
+        SecurityContextHolder.clearContext();
+
+        final AtomicReference<SecurityContext> taskContext = new AtomicReference<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        executor.schedule(() -> {
+            taskContext.set(SecurityContextHolder.getContext());
+            finished.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+        finished.await();
+
+        Assert.assertSame(context, taskContext.get());
+    }
+
+    @Test(timeout = 10000)
+    public void whenTaskFailsThenNextTasksAreExecuted() throws Exception {
+        final SerialExecutor executor = scheduler.createSerialExecutor();
+        final CountDownLatch finished = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("expected");
+        });
+        executor.execute(finished::countDown);
+        finished.await();
+    }
+
+    @Test(timeout = 10000)
+    public void whenBlockingAndStreamingTasksAreMixedThenOrderIsKeptAndBlockingTasksUseTheirOwnThreads()
+            throws Exception {
+        final SerialExecutor executor = scheduler.createSerialExecutor();
+        final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch finished = new CountDownLatch(100);
+        for (int i = 0; i < 100; ++i) {
+            final int taskIdx = i;
+            final Runnable task = () -> {
+                executed.add(taskIdx + ":" + Thread.currentThread().getName().startsWith("streaming-blocking-"));
+                finished.countDown();
+            };
+            if (i % 3 == 0) {
+                executor.executeBlocking(task);
+            } else {
+                executor.execute(task);
+            }
+        }
+        finished.await();
+
+        final List<String> expected = IntStream.range(0, 100)
+                .mapToObj(i -> i + ":" + (i % 3 == 0))
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected, executed);
+    }
+
+    @Test(timeout = 30000)
+    public void whenTasksAreAddedWhileQueueIsDrainedThenExecutorKeepsRunning() throws Exception {
+        final SerialExecutor executor = scheduler.createSerialExecutor();
+        final int producers = 4;
+        final int tasksPerProducer = 200_000;
+        final CountDownLatch finished = new CountDownLatch(producers * tasksPerProducer);
+        final List<Thread> threads = IntStream.range(0, producers)
+                .mapToObj(i -> new Thread(() -> {
+                    for (int task = 0; task < tasksPerProducer; ++task) {
+                        executor.execute(finished::countDown);
+                    }
+                }))
+                .collect(Collectors.toList());
+        threads.forEach(Thread::start);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertTrue("Executor stopped running tasks", finished.await(20, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void whenQueueIsDrainedBeforeRunnerIsScheduledThenExecutorIsNotStuck() throws Exception {
+        final SerialExecutor executor = scheduler.createSerialExecutor();
+        // The state seen by the runner, that took the flag right after another runner emptied the queue
+        executor.trySchedule();
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        executor.execute(finished::countDown);
+        finished.await();
+    }
+}
@@ -7,6 +7,7 @@ import org.zalando.nakadi.domain.DefaultStorage;
 import org.zalando.nakadi.domain.Storage;
 import org.zalando.nakadi.exceptions.runtime.NoSuchStorageException;
 import org.zalando.nakadi.exceptions.runtime.StorageIsUsedException;
+import org.zalando.nakadi.repository.TopicRepositoryHolder;
 import org.zalando.nakadi.repository.db.StorageDbRepository;
 import org.zalando.nakadi.repository.zookeeper.ZooKeeperHolder;
 import org.zalando.nakadi.utils.TestUtils;
@@ -16,6 +17,7 @@ import java.util.Optional;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StorageServiceTest {
@@ -23,15 +25,17 @@ public class StorageServiceTest {
     private StorageService storageService;
     private StorageDbRepository storageDbRepository;
     private FeatureToggleService featureToggleService;
+    private TopicRepositoryHolder topicRepositoryHolder;
 
     @Before
     public void setUp() {
         featureToggleService = mock(FeatureToggleService.class);
         storageDbRepository = mock(StorageDbRepository.class);
+        topicRepositoryHolder = mock(TopicRepositoryHolder.class);
         final NakadiAuditLogPublisher auditLogPublisher = mock(NakadiAuditLogPublisher.class);
         storageService = new StorageService(TestUtils.OBJECT_MAPPER, storageDbRepository,
                 new DefaultStorage(mock(Storage.class)), mock(ZooKeeperHolder.class), featureToggleService,
-                auditLogPublisher);
+                auditLogPublisher, topicRepositoryHolder);
         when(featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.DISABLE_DB_WRITE_OPERATIONS))
                 .thenReturn(false);
     }
@@ -50,6 +54,7 @@ public class StorageServiceTest {
     public void testDeleteUnusedStorage() {
         when(storageDbRepository.getStorage(any())).thenReturn(Optional.empty());
         storageService.deleteStorage("s3");
+        verify(topicRepositoryHolder).removeTopicRepository("s3");
     }
 
     @Test(expected = StorageIsUsedException.class)
@@ -0,0 +1,116 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.luben.zstd.ZstdInputStream;
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamCompressionTest {
+
+    private static final byte[] FIRST_BATCH =
+            "{\"cursor\":{\"partition\":\"0\",\"offset\":\"001\"}}\n".getBytes(UTF_8);
+    private static final byte[] SECOND_BATCH =
+            "{\"cursor\":{\"partition\":\"0\",\"offset\":\"002\"}}\n".getBytes(UTF_8);
+
+    private final FeatureToggleService featureToggleService = mock(FeatureToggleService.class);
+    private final MetricRegistry streamMetrics = new MetricRegistry();
+    private final StreamCompression compression = new StreamCompression(
+            featureToggleService, streamMetrics, 6, 3, 1);
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() {
+        when(featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.STREAM_COMPRESSION)).thenReturn(true);
+    }
+
+    @Test
+    public void whenNegotiatingThenMostPreferredSupportedEncodingIsSelected() {
+        Assert.assertNull(compression.negotiate(null));
+        Assert.assertNull(compression.negotiate("identity"));
+        Assert.assertNull(compression.negotiate("gzip;q=0, br"));
+        Assert.assertEquals(StreamCompression.Encoding.GZIP, compression.negotiate("gzip, deflate"));
+        Assert.assertEquals(StreamCompression.Encoding.GZIP, compression.negotiate("*"));
+        Assert.assertEquals(StreamCompression.Encoding.GZIP, compression.negotiate("zstd;q=0.5, gzip;q=0.8"));
+        Assert.assertEquals(StreamCompression.Encoding.ZSTD, compression.negotiate("gzip, zstd"));
+        Assert.assertEquals(StreamCompression.Encoding.ZSTD, compression.negotiate("zstd, *;q=0.1"));
+    }
+
+    @Test
+    public void whenFeatureIsDisabledThenStreamIsNotCompressed() throws IOException {
+        when(featureToggleService.isFeatureEnabled(FeatureToggleService.Feature.STREAM_COMPRESSION)).thenReturn(false);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        Assert.assertSame(sent, compression.compress(request, response, sent, "client", "stream"));
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void whenGzipIsAcceptedThenEveryBatchIsReadableRightAfterFlush() throws Exception {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        final OutputStream out = compression.compress(request, response, sent, "client", "stream");
+        verify(response).setHeader("Content-Encoding", "gzip");
+
+        out.write(FIRST_BATCH);
+        out.flush();
+        final Inflater inflater = new Inflater(true);
+        final byte[] frame = sent.toByteArray();
+        inflater.setInput(frame, 10, frame.length - 10);
+        final byte[] inflated = new byte[FIRST_BATCH.length];
+        Assert.assertEquals(FIRST_BATCH.length, inflater.inflate(inflated));
+        Assert.assertArrayEquals(FIRST_BATCH, inflated);
+
+        out.write(SECOND_BATCH);
+        out.flush();
+        out.close();
+        Assert.assertArrayEquals(concat(FIRST_BATCH, SECOND_BATCH),
+                ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+        Assert.assertEquals(sent.size(), streamMetrics.meter("compression.client.bytes-compressed").getCount());
+    }
+
+    @Test
+    public void whenZstdIsAcceptedThenEveryBatchIsReadableRightAfterFlush() throws Exception {
+        when(request.getHeader("Accept-Encoding")).thenReturn("zstd");
+        final OutputStream out = compression.compress(request, response, sent, "client", "stream");
+        verify(response).setHeader("Content-Encoding", "zstd");
+
+        out.write(FIRST_BATCH);
+        out.flush();
+        final byte[] decompressed = new byte[FIRST_BATCH.length];
+        try (InputStream in = new ZstdInputStream(new ByteArrayInputStream(sent.toByteArray()))) {
+            ByteStreams.readFully(in, decompressed);
+        }
+        Assert.assertArrayEquals(FIRST_BATCH, decompressed);
+
+        out.write(SECOND_BATCH);
+        out.close();
+        Assert.assertArrayEquals(concat(FIRST_BATCH, SECOND_BATCH),
+                ByteStreams.toByteArray(new ZstdInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
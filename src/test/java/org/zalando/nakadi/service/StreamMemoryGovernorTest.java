@@ -0,0 +1,84 @@
+package org.zalando.nakadi.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.repository.EventConsumer;
+
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class StreamMemoryGovernorTest {
+
+    private static final List<EventTypePartition> PARTITIONS = ImmutableList.of(
+            new EventTypePartition("et", "0"), new EventTypePartition("et", "1"));
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final StreamMemoryGovernor governor = new StreamMemoryGovernor(1000, metricRegistry);
+    private final EventConsumer consumer = mock(EventConsumer.class);
+
+    @Test
+    public void whenBudgetIsNotExceededThenNothingIsPaused() {
+        final StreamMemoryGovernor.Account account = governor.register("heavy");
+        governor.register("light");
+
+        account.update(900, () -> PARTITIONS, consumer);
+
+        Assert.assertEquals(900, governor.getUsedBytes());
+        Assert.assertTrue(account.getPaused().isEmpty());
+        verify(consumer, never()).pause(any());
+    }
+
+    @Test
+    public void whenBudgetIsExceededThenOnlyStreamOverCreditIsPaused() {
+        final StreamMemoryGovernor.Account heavy = governor.register("heavy");
+        final StreamMemoryGovernor.Account light = governor.register("light");
+        final EventConsumer lightConsumer = mock(EventConsumer.class);
+
+        light.update(400, () -> PARTITIONS, lightConsumer);
+        heavy.update(700, () -> PARTITIONS, consumer);
+        light.update(400, () -> PARTITIONS, lightConsumer);
+
+        Assert.assertEquals(500, heavy.getCredit());
+        verify(consumer).pause(PARTITIONS);
+        verify(lightConsumer, never()).pause(any());
+        Assert.assertEquals(ImmutableSet.copyOf(PARTITIONS), heavy.getPaused());
+        Assert.assertEquals(2, metricRegistry.counter("nakadi.stream.memory.paused_partitions").getCount());
+    }
+
+    @Test
+    public void whenStreamIsBackWithinCreditThenPartitionsAreResumed() {
+        final StreamMemoryGovernor.Account account = governor.register("heavy");
+        account.update(1100, () -> PARTITIONS, consumer);
+        verify(consumer).pause(PARTITIONS);
+
+        account.update(100, () -> PARTITIONS, consumer);
+
+        verify(consumer).resume(PARTITIONS);
+        Assert.assertTrue(account.getPaused().isEmpty());
+        Assert.assertEquals(0, metricRegistry.counter("nakadi.stream.memory.paused_partitions").getCount());
+    }
+
+    @Test
+    public void whenAccountIsClosedThenItsBytesAreReleased() {
+        final StreamMemoryGovernor.Account first = governor.register("first");
+        final StreamMemoryGovernor.Account second = governor.register("second");
+        first.update(300, () -> PARTITIONS, consumer);
+        second.update(200, () -> PARTITIONS, consumer);
+        Assert.assertEquals(ImmutableList.of("first", "second"),
+                ImmutableList.copyOf(governor.getTopConsumers().keySet()));
+
+        first.close();
+
+        Assert.assertEquals(200, governor.getUsedBytes());
+        Assert.assertEquals(1000, second.getCredit());
+        Assert.assertEquals(ImmutableList.of("second"), ImmutableList.copyOf(governor.getTopConsumers().keySet()));
+    }
+}
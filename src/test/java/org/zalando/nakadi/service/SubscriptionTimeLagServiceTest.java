@@ -11,19 +11,24 @@ import org.zalando.nakadi.domain.Storage;
 import org.zalando.nakadi.domain.Timeline;
 import org.zalando.nakadi.exceptions.runtime.InvalidCursorException;
 import org.zalando.nakadi.repository.EventConsumer;
+import org.zalando.nakadi.repository.TopicRepository;
 import org.zalando.nakadi.service.subscription.SubscriptionTimeLagService;
 import org.zalando.nakadi.service.timeline.TimelineService;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class SubscriptionTimeLagServiceTest {
@@ -33,10 +38,14 @@ public class SubscriptionTimeLagServiceTest {
     private NakadiCursorComparator cursorComparator;
     private SubscriptionTimeLagService timeLagService;
     private TimelineService timelineService;
+    private TopicRepository topicRepository;
 
     @Before
     public void setUp() throws Exception {
         timelineService = mock(TimelineService.class);
+        topicRepository = mock(TopicRepository.class);
+        when(topicRepository.estimateNextEventTimestamp(any())).thenReturn(Optional.empty());
+        when(timelineService.getTopicRepository(any(Timeline.class))).thenReturn(topicRepository);
 
         cursorComparator = mock(NakadiCursorComparator.class);
         timeLagService = new SubscriptionTimeLagService(timelineService, cursorComparator);
@@ -76,6 +85,22 @@ public class SubscriptionTimeLagServiceTest {
         assertThat(timeLags.get(new EventTypePartition("et1", "p2")), greaterThan(Duration.ZERO));
     }
 
+    @Test
+    public void whenNextEventTimestampIsEstimatedThenConsumerIsNotCreated() {
+        final Timeline et1Timeline = new Timeline("et1", 0, new Storage("", Storage.Type.KAFKA), "t1", null);
+        final NakadiCursor committedCursor = NakadiCursor.of(et1Timeline, "p1", "o1");
+        final PartitionEndStatistics endStats = mockEndStats(NakadiCursor.of(et1Timeline, "p1", "o2"));
+        when(cursorComparator.compare(committedCursor, endStats.getLast())).thenReturn(-1);
+        when(topicRepository.estimateNextEventTimestamp(committedCursor))
+                .thenReturn(Optional.of(System.currentTimeMillis() - 60_000));
+
+        final Map<EventTypePartition, Duration> timeLags = timeLagService.getTimeLags(
+                ImmutableList.of(committedCursor), ImmutableList.of(endStats));
+
+        assertThat(timeLags.get(new EventTypePartition("et1", "p1")),
+                greaterThanOrEqualTo(Duration.ofSeconds(60)));
+        verify(timelineService, never()).createEventConsumer(any(), any());
+    }
 
     @Test
     public void whenNoSubscriptionThenReturnSizeZeroMap() {
@@ -6,6 +6,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.zalando.nakadi.domain.Subscription;
+import org.zalando.nakadi.service.StreamingScheduler;
 import org.zalando.nakadi.service.subscription.model.Session;
 import org.zalando.nakadi.service.subscription.state.CleanupState;
 import org.zalando.nakadi.service.subscription.state.DummyState;
@@ -17,6 +18,8 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class StreamingContextTest {
+    private static final StreamingScheduler STREAMING_SCHEDULER = new StreamingScheduler(1, 1);
+
     private static StreamingContext createTestContext(final Consumer<Exception> onException) {
         final SubscriptionOutput output = new SubscriptionOutput() {
             @Override
@@ -40,7 +43,7 @@ public class StreamingContextTest {
                 .setParameters(null)
                 .setSession(Session.generate(1, ImmutableList.of()))
                 .setSubscription(new Subscription())
-                .setTimer(null)
+                .setExecutor(STREAMING_SCHEDULER.createSerialExecutor())
                 .setZkClient(null)
                 .setRebalancer(null)
                 .setKafkaPollTimeout(0)
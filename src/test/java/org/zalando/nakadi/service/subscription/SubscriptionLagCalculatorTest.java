@@ -0,0 +1,167 @@
+package org.zalando.nakadi.service.subscription;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.domain.NakadiCursor;
+import org.zalando.nakadi.domain.Subscription;
+import org.zalando.nakadi.domain.SubscriptionEventTypeStats;
+import org.zalando.nakadi.domain.Timeline;
+import org.zalando.nakadi.repository.TopicRepository;
+import org.zalando.nakadi.repository.kafka.KafkaPartitionEndStatistics;
+import org.zalando.nakadi.service.CursorConverter;
+import org.zalando.nakadi.service.CursorOperationsService;
+import org.zalando.nakadi.service.subscription.model.Partition;
+import org.zalando.nakadi.service.subscription.model.Session;
+import org.zalando.nakadi.service.subscription.zk.SubscriptionClientFactory;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
+import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionNode;
+import org.zalando.nakadi.service.timeline.TimelineService;
+import org.zalando.nakadi.utils.RandomSubscriptionBuilder;
+import org.zalando.nakadi.utils.TestUtils;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.zalando.nakadi.utils.TestUtils.buildTimelineWithTopic;
+
+public class SubscriptionLagCalculatorTest {
+
+    private static final Timeline TIMELINE = buildTimelineWithTopic("topic");
+
+    private final ZkSubscriptionClient client = mock(ZkSubscriptionClient.class);
+    private final TimelineService timelineService = mock(TimelineService.class);
+    private final TopicRepository topicRepository = mock(TopicRepository.class);
+    private final CursorConverter cursorConverter = mock(CursorConverter.class);
+    private final CursorOperationsService cursorOperationsService = mock(CursorOperationsService.class);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ZkSubscription<SubscriptionCursorWithoutToken> offset = mockZkSubscription();
+    private final Subscription subscription = RandomSubscriptionBuilder.builder()
+            .withEventType(TIMELINE.getEventType())
+            .build();
+    private SubscriptionLagCalculator calculator;
+    private ArgumentCaptor<Runnable> topologyListener;
+
+    @SuppressWarnings("unchecked")
+    private static <T> ZkSubscription<T> mockZkSubscription() {
+        return mock(ZkSubscription.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final ZkSubscriptionNode node = new ZkSubscriptionNode(
+                Collections.singletonList(new Partition(
+                        TIMELINE.getEventType(), "0", "xz", null, Partition.State.ASSIGNED)),
+                Collections.singletonList(new Session("xz", 0)));
+        when(client.getZkSubscriptionNode()).thenReturn(Optional.of(node));
+        topologyListener = ArgumentCaptor.forClass(Runnable.class);
+        when(client.subscribeForTopologyChanges(topologyListener.capture())).thenReturn(mockZkSubscription());
+        when(client.subscribeForSessionListChanges(any())).thenReturn(mockZkSubscription());
+        final SubscriptionCursorWithoutToken committed =
+                new SubscriptionCursorWithoutToken(TIMELINE.getEventType(), "0", "3");
+        when(offset.getData()).thenReturn(committed);
+        when(client.subscribeForOffsetChanges(eq(new EventTypePartition(TIMELINE.getEventType(), "0")), any()))
+                .thenReturn(offset);
+
+        when(timelineService.getActiveTimeline(TIMELINE.getEventType())).thenReturn(TIMELINE);
+        when(timelineService.getTopicRepository(TIMELINE)).thenReturn(topicRepository);
+        final KafkaPartitionEndStatistics end = new KafkaPartitionEndStatistics(TIMELINE, 0, 13);
+        when(topicRepository.loadTopicEndStatistics(Collections.singletonList(TIMELINE)))
+                .thenReturn(Collections.singletonList(end));
+        when(topicRepository.estimateNextEventTimestamp(any()))
+                .thenReturn(Optional.of(System.currentTimeMillis() - 60_000));
+
+        final NakadiCursor committedCursor = mock(NakadiCursor.class);
+        when(committedCursor.getTimeline()).thenReturn(TIMELINE);
+        when(cursorConverter.convert(committed)).thenReturn(committedCursor);
+        when(cursorOperationsService.calculateDistance(committedCursor, end.getLast())).thenReturn(10L);
+
+        calculator = new SubscriptionLagCalculator(mockFactory(), timelineService, cursorConverter,
+                cursorOperationsService, metricRegistry, 600_000, 10);
+    }
+
+    @Test
+    public void whenStatsAreRequestedThenLagIsComputedAndExposedAsGauges() {
+        final Map<String, List<SubscriptionEventTypeStats>> stats =
+                calculator.getStats(Collections.singletonList(subscription));
+
+        final SubscriptionEventTypeStats.Partition partition =
+                stats.get(subscription.getId()).get(0).getPartitions().get(0);
+        Assert.assertEquals("0", partition.getPartition());
+        Assert.assertEquals("assigned", partition.getState());
+        Assert.assertEquals("xz", partition.getStreamId());
+        Assert.assertEquals(Long.valueOf(10L), partition.getUnconsumedEvents());
+        Assert.assertTrue(partition.getConsumerLagSeconds() >= 60);
+
+        Assert.assertEquals(Long.valueOf(10L), gauge("unconsumed_events").getValue());
+        Assert.assertTrue(gauge("time_lag_seconds").getValue() >= 60);
+    }
+
+    @Test
+    public void whenRefreshedThenTopologyIsReloadedOnlyAfterItChanged() {
+        calculator.getStats(Collections.singletonList(subscription));
+        calculator.refresh();
+        verify(client, times(1)).getZkSubscriptionNode();
+        verify(client, times(1)).subscribeForOffsetChanges(any(), any());
+        verify(offset, times(2)).getData();
+
+        topologyListener.getValue().run();
+        calculator.refresh();
+        verify(client, times(2)).getZkSubscriptionNode();
+        verify(client, times(1)).subscribeForOffsetChanges(any(), any());
+        verify(topicRepository, times(3)).loadTopicEndStatistics(any());
+    }
+
+    @Test
+    public void whenSubscriptionIsIdleThenItIsNotTrackedAnymore() throws Exception {
+        calculator = new SubscriptionLagCalculator(mockFactory(), timelineService, cursorConverter,
+                cursorOperationsService, metricRegistry, -1, 10);
+        calculator.getStats(Collections.singletonList(subscription));
+        Assert.assertEquals(1, calculator.getTrackedCount());
+
+        calculator.refresh();
+        Assert.assertEquals(0, calculator.getTrackedCount());
+        verify(offset).close();
+        Assert.assertTrue(metricRegistry.getGauges().isEmpty());
+    }
+
+    @Test
+    public void whenMoreSubscriptionsAreNewThanAllowedPerRequestThenTheRestIsComputedInBackground() throws Exception {
+        calculator = new SubscriptionLagCalculator(mockFactory(), timelineService, cursorConverter,
+                cursorOperationsService, metricRegistry, 600_000, 0);
+
+        Assert.assertFalse(calculator.getStats(Collections.singletonList(subscription))
+                .containsKey(subscription.getId()));
+
+        TestUtils.waitFor(() -> Assert.assertTrue(calculator.getStats(Collections.singletonList(subscription))
+                .containsKey(subscription.getId())));
+        Assert.assertEquals(1, calculator.getTrackedCount());
+        calculator.shutdown();
+    }
+
+    private SubscriptionClientFactory mockFactory() throws Exception {
+        final SubscriptionClientFactory clientFactory = mock(SubscriptionClientFactory.class);
+        when(clientFactory.createClient(any(), anyString())).thenReturn(client);
+        return clientFactory;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Gauge<Long> gauge(final String name) {
+        return metricRegistry.getGauges().get(MetricRegistry.name("nakadi.subscriptions", subscription.getId(), name));
+    }
+}
@@ -1,12 +1,20 @@
 package org.zalando.nakadi.service.subscription;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.model.Session;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.google.common.collect.Sets.newHashSet;
@@ -23,32 +31,137 @@ import static org.zalando.nakadi.service.subscription.model.Partition.State.UNAS
 public class SubscriptionRebalancerTest {
 
     @Test(expected = IllegalArgumentException.class)
-    public void splitByWeightShouldAcceptOnlyCorrectData1() {
-        SubscriptionRebalancer.splitByWeight(1, new int[]{1, 1});
+    public void rebalanceShouldAcceptOnlyPositiveWeights() {
+        new SubscriptionRebalancer().apply(
+                ImmutableList.of(new Session("s1", 1), new Session("s2", 0)),
+                unassigned(2));
     }
 
-    @Test(expected = IllegalArgumentException.class)
-    public void splitByWeightShouldAcceptOnlyCorrectData2() {
-        SubscriptionRebalancer.splitByWeight(2, new int[]{1, 0});
+    @Test
+    public void partitionsAreSplitByWeightOfSessions() {
+        assertArrayEquals(new int[]{1, 1}, countPerSession(2, 1, 1));
+        assertArrayEquals(new int[]{2, 1}, countPerSession(3, 1, 1));
+        assertArrayEquals(new int[]{1, 2}, countPerSession(3, 1, 2));
+        assertArrayEquals(new int[]{34, 33, 33}, countPerSession(100, 1, 1, 1));
+        assertArrayEquals(new int[]{26, 25, 50}, countPerSession(101, 1, 1, 2));
+        assertArrayEquals(new int[]{1, 1, 0}, countPerSession(2, 1, 1, 1));
     }
 
     @Test
-    public void splitByWeightMustCorrectlyWorkOnDifferentValues() {
-        assertArrayEquals(
-                new int[]{1, 1},
-                SubscriptionRebalancer.splitByWeight(2, new int[]{1, 1}));
-        assertArrayEquals(
-                new int[]{2, 1},
-                SubscriptionRebalancer.splitByWeight(3, new int[]{1, 1}));
-        assertArrayEquals(
-                new int[]{1, 2},
-                SubscriptionRebalancer.splitByWeight(3, new int[]{1, 2}));
-        assertArrayEquals(
-                new int[]{34, 33, 33},
-                SubscriptionRebalancer.splitByWeight(100, new int[]{1, 1, 1}));
-        assertArrayEquals(
-                new int[]{26, 25, 50},
-                SubscriptionRebalancer.splitByWeight(101, new int[]{1, 1, 2}));
+    public void partitionsAreSplitByThroughput() {
+        final Map<EventTypePartition, Double> throughput = ImmutableMap.of(
+                new EventTypePartition("et", "0"), 1000.,
+                new EventTypePartition("et", "1"), 100.,
+                new EventTypePartition("et", "2"), 100.,
+                new EventTypePartition("et", "3"), 100.);
+        final Partition[] changeset = new SubscriptionRebalancer(p -> throughput.getOrDefault(p, 0.)).apply(
+                ImmutableList.of(new Session("s1", 1), new Session("s2", 1)),
+                unassigned(4));
+
+        assertEquals(newHashSet(changeset), newHashSet(
+                new Partition("et", "0", "s1", null, ASSIGNED),
+                new Partition("et", "1", "s2", null, ASSIGNED),
+                new Partition("et", "2", "s2", null, ASSIGNED),
+                new Partition("et", "3", "s2", null, ASSIGNED)));
+    }
+
+    @Test
+    public void partitionsBalancedByThroughputAreNotMoved() {
+        final Map<EventTypePartition, Double> throughput = ImmutableMap.of(
+                new EventTypePartition("et", "0"), 1000.,
+                new EventTypePartition("et", "1"), 500.,
+                new EventTypePartition("et", "2"), 450.);
+        assertThat(new SubscriptionRebalancer(p -> throughput.getOrDefault(p, 0.)).apply(
+                ImmutableList.of(new Session("s1", 1), new Session("s2", 1)),
+                new Partition[]{
+                        new Partition("et", "0", "s1", null, ASSIGNED),
+                        new Partition("et", "1", "s2", null, ASSIGNED),
+                        new Partition("et", "2", "s2", null, ASSIGNED)}),
+                emptyArray());
+    }
+
+    @Test
+    public void bigSubscriptionIsBalancedWithFewMoves() {
+        final Random random = new Random(42);
+        final int partitionCount = 10_000;
+        final Map<EventTypePartition, Double> throughput = new HashMap<>();
+        Partition[] partitions = unassigned(partitionCount);
+        // Few hot partitions and a lot of partitions with comparable load
+        for (final Partition partition : partitions) {
+            throughput.put(partition.getKey(), random.nextInt(100) == 0 ?
+                    10_000 + random.nextInt(10_000) : 100. + random.nextInt(1000));
+        }
+        final SubscriptionRebalancer rebalancer = new SubscriptionRebalancer(throughput::get);
+        final List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            sessions.add(new Session("s" + i, 1 + random.nextInt(2)));
+        }
+
+        partitions = applyAndCheck(rebalancer, sessions, partitions, throughput, partitionCount);
+        for (int step = 0; step < 20; ++step) {
+            final List<Session> newSessions = new ArrayList<>(sessions);
+            if (random.nextBoolean()) {
+                newSessions.add(new Session("new" + step, 1 + random.nextInt(2)));
+            } else {
+                newSessions.remove(random.nextInt(newSessions.size()));
+            }
+            final long before = Stream.of(partitions).filter(p -> newSessions.stream()
+                    .anyMatch(s -> s.getId().equals(p.getSession()))).count();
+            // Partitions of sessions that are gone, and enough partitions to load a new session, are moved
+            final int maxMoves = (int) (partitionCount - before) + partitionCount / newSessions.size() * 2;
+            partitions = applyAndCheck(rebalancer, newSessions, partitions, throughput, maxMoves);
+            sessions.clear();
+            sessions.addAll(newSessions);
+            // Nothing is moved when nothing changed
+            assertThat(rebalancer.apply(sessions, partitions), emptyArray());
+        }
+    }
+
+    private static Partition[] applyAndCheck(
+            final SubscriptionRebalancer rebalancer,
+            final List<Session> sessions,
+            final Partition[] partitions,
+            final Map<EventTypePartition, Double> throughput,
+            final int maxMoves) {
+        final Partition[] changeset = rebalancer.apply(sessions, partitions);
+        assertTrue("Moved " + changeset.length + " partitions", changeset.length <= maxMoves);
+
+        // Streams are handing over partitions that are being reassigned
+        final Map<EventTypePartition, Partition> result = new LinkedHashMap<>();
+        Stream.of(partitions).forEach(p -> result.put(p.getKey(), p));
+        Stream.of(changeset).forEach(p -> result.put(p.getKey(),
+                p.toState(ASSIGNED, p.getEffectiveSession(), null)));
+
+        final Map<String, Double> loadPerSession = new HashMap<>();
+        result.values().forEach(p -> loadPerSession.merge(p.getSession(), throughput.get(p.getKey()), Double::sum));
+        final int totalWeight = sessions.stream().mapToInt(Session::getWeight).sum();
+        final double average = throughput.values().stream().mapToDouble(Double::doubleValue).sum() / totalWeight;
+        final double maxPartition = throughput.values().stream().mapToDouble(Double::doubleValue).max().getAsDouble();
+        for (final Session session : sessions) {
+            final double load = loadPerSession.getOrDefault(session.getId(), 0.) / session.getWeight();
+            assertTrue("Session " + session + " has load " + load + " with average " + average,
+                    load <= average * (1 + SubscriptionRebalancer.TOLERANCE) + maxPartition);
+            assertTrue("Session " + session + " has load " + load + " with average " + average,
+                    load >= average * (1 - SubscriptionRebalancer.TOLERANCE) - maxPartition);
+        }
+        assertEquals(sessions.stream().map(Session::getId).collect(Collectors.toSet()), loadPerSession.keySet());
+        return result.values().toArray(new Partition[result.size()]);
+    }
+
+    private static Partition[] unassigned(final int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Partition("et", String.valueOf(i), null, null, UNASSIGNED))
+                .toArray(Partition[]::new);
+    }
+
+    private static int[] countPerSession(final int partitionCount, final int... weights) {
+        final List<Session> sessions = IntStream.range(0, weights.length)
+                .mapToObj(i -> new Session(String.valueOf(i), weights[i]))
+                .collect(Collectors.toList());
+        final Partition[] changeset = new SubscriptionRebalancer().apply(sessions, unassigned(partitionCount));
+        return sessions.stream()
+                .mapToInt(s -> (int) Stream.of(changeset).filter(p -> s.getId().equals(p.getSession())).count())
+                .toArray();
     }
 
     @Test
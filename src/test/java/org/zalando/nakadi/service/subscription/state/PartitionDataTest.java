@@ -3,6 +3,7 @@ package org.zalando.nakadi.service.subscription.state;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.zalando.nakadi.domain.ConsumedEvent;
+import org.zalando.nakadi.domain.EventTypePartition;
 import org.zalando.nakadi.domain.NakadiCursor;
 import org.zalando.nakadi.domain.Storage;
 import org.zalando.nakadi.domain.Timeline;
@@ -153,4 +154,48 @@ public class PartitionDataTest {
         }
         assertNull(pd.takeEventsToStream(currentTimeMillis(), 0, timeout, true));
     }
+
+    @Test
+    public void whenEventsAreReadAgainThenTheyAreNotCountedTwice() {
+        final PartitionData pd = new PartitionData(COMP, null, createCursor(100L), System.currentTimeMillis());
+        for (long i = 101; i <= 110; ++i) {
+            pd.addEvent(new ConsumedEvent("test".getBytes(), createCursor(i), 0));
+        }
+        pd.takeEventsToStream(currentTimeMillis(), 10, 0L, false);
+        for (long i = 105; i <= 110; ++i) {
+            pd.addEvent(new ConsumedEvent("test".getBytes(), createCursor(i), 0));
+        }
+        assertEquals(10, pd.getUnconfirmed());
+
+        assertEquals(10L, pd.onCommitOffset(createCursor(110L)).committedCount);
+        assertEquals(0, pd.getUnconfirmed());
+        assertEquals(0L, pd.getBytesInMemory());
+    }
+
+    @Test
+    public void accountingShouldFollowChangesOfPartitions() {
+        final PartitionsAccounting accounting = new PartitionsAccounting();
+        final PartitionData[] partitions = new PartitionData[5];
+        for (int p = 0; p < partitions.length; ++p) {
+            partitions[p] = new PartitionData(COMP, null, createCursor(100L), System.currentTimeMillis());
+            accounting.add(new EventTypePartition("et", String.valueOf(p)), partitions[p]);
+            for (long i = 0; i < p * 10; ++i) {
+                partitions[p].addEvent(new ConsumedEvent(new byte[p + 1], createCursor(101L + i), 0));
+            }
+        }
+        assertEquals(new EventTypePartition("et", "4"), accounting.getHeaviest());
+        assertEquals(10 * 2 + 20 * 3 + 30 * 4 + 40 * 5, accounting.getBytesInMemory());
+
+        partitions[4].extractMaxEvents(currentTimeMillis(), 35);
+        partitions[3].extractMaxEvents(currentTimeMillis(), 25);
+        assertEquals(new EventTypePartition("et", "2"), accounting.getHeaviest());
+        assertEquals(10 * 2 + 20 * 3 + 5 * 4 + 5 * 5, accounting.getBytesInMemory());
+        assertEquals(60, accounting.getUnconfirmed());
+
+        partitions[4].onCommitOffset(createCursor(130L));
+        accounting.remove(partitions[2]);
+        assertEquals(new EventTypePartition("et", "4"), accounting.getHeaviest());
+        assertEquals(10 * 2 + 5 * 4 + 5 * 5, accounting.getBytesInMemory());
+        assertEquals(30, accounting.getUnconfirmed());
+    }
 }
@@ -0,0 +1,60 @@
+package org.zalando.nakadi.service.subscription.state;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void whenBufferWrapsAroundAndGrowsThenOrderIsKept() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>();
+        final List<Integer> expected = new ArrayList<>();
+        int next = 0;
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 7 * round + 5; ++i) {
+                buffer.addLast(next);
+                expected.add(next++);
+            }
+            final List<Integer> removed = buffer.removeFirst(3 * round + 2);
+            assertEquals(expected.subList(0, removed.size()), removed);
+            expected.subList(0, removed.size()).clear();
+            assertEquals(expected.size(), buffer.size());
+        }
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i), buffer.get(i));
+        }
+    }
+
+    @Test
+    public void whenElementIsInsertedThenTailIsShifted() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>();
+        for (int i = 0; i < 20; ++i) {
+            buffer.addLast(i * 2);
+        }
+        buffer.dropFirst(10);
+        buffer.insert(3, 25);
+        buffer.insert(0, 19);
+
+        assertEquals(ImmutableList.of(19, 20, 22, 24, 25, 26, 28, 30, 32, 34, 36, 38), buffer.removeFirst(12));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void whenBufferIsModifiedThenRemovedElementsAreReleased() {
+        final RingBuffer<Object> buffer = new RingBuffer<>();
+        buffer.addLast("a");
+        buffer.addLast("b");
+        final List<Object> view = buffer.removeFirst(1);
+        assertEquals(ImmutableList.of("a"), view);
+
+        buffer.addLast("c");
+        assertEquals(null, view.get(0));
+        assertEquals(ImmutableList.of("b", "c"), buffer.removeFirst(2));
+    }
+}
@@ -21,6 +21,7 @@ import org.zalando.nakadi.security.Client;
 import org.zalando.nakadi.service.CursorConverter;
 import org.zalando.nakadi.service.subscription.StreamParameters;
 import org.zalando.nakadi.service.subscription.StreamingContext;
+import org.zalando.nakadi.service.subscription.SubscriptionOutput;
 import org.zalando.nakadi.service.subscription.model.Partition;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscription;
 import org.zalando.nakadi.service.subscription.zk.ZkSubscriptionClient;
@@ -60,6 +61,9 @@ public class StreamingStateTest {
         when(contextMock.getSubscription()).thenReturn(subscription);
         timelineService = mock(TimelineService.class);
         when(contextMock.getTimelineService()).thenReturn(timelineService);
+        when(timelineService.createEventConsumer(any()))
+                .thenReturn(mock(EventConsumer.ReassignableEventConsumer.class));
+        when(contextMock.getOut()).thenReturn(mock(SubscriptionOutput.class));
 
         final MetricRegistry metricRegistry = mock(MetricRegistry.class);
         when(metricRegistry.register(any(), any())).thenReturn(null);
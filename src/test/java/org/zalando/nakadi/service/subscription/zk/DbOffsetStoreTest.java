@@ -0,0 +1,172 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.zalando.nakadi.domain.EventTypePartition;
+import org.zalando.nakadi.exceptions.runtime.NakadiRuntimeException;
+import org.zalando.nakadi.repository.db.SubscriptionOffsetDbRepository;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DbOffsetStoreTest {
+
+    private static final String SUBSCRIPTION_ID = "sid";
+    private static final EventTypePartition P0 = new EventTypePartition("et", "0");
+    private static final EventTypePartition P1 = new EventTypePartition("et", "1");
+    private static final Comparator<SubscriptionCursorWithoutToken> BY_OFFSET =
+            Comparator.comparing(SubscriptionCursorWithoutToken::getOffset);
+
+    private final SubscriptionOffsetDbRepository repository = mock(SubscriptionOffsetDbRepository.class);
+    private DbOffsetWatcher watcher;
+    private DbOffsetStore store;
+
+    @Before
+    public void setUp() {
+        final Map<EventTypePartition, String> offsets = ImmutableMap.of(P0, "001", P1, "005");
+        when(repository.getOffsets(eq(SUBSCRIPTION_ID), anyCollectionOf(EventTypePartition.class)))
+                .thenAnswer(invocation -> ((Collection<?>) invocation.getArguments()[1]).stream()
+                        .collect(Collectors.toMap(key -> (EventTypePartition) key, offsets::get)));
+        watcher = new DbOffsetWatcher(repository);
+        store = new DbOffsetStore(SUBSCRIPTION_ID, repository, watcher);
+    }
+
+    @Test
+    public void whenCursorsAreCommittedThenOnlyGreaterOnesAreWrittenAtOnce() {
+        final List<Boolean> committed = store.commitOffsets(
+                ImmutableList.of(cursor(P0, "003"), cursor(P1, "004"), cursor(P0, "002")), BY_OFFSET);
+
+        Assert.assertEquals(ImmutableList.of(true, false, false), committed);
+        verify(repository, times(1)).compareAndSetOffsets(SUBSCRIPTION_ID,
+                ImmutableMap.of(P0, "001", P1, "005"), ImmutableList.of(cursor(P0, "003")));
+    }
+
+    @Test
+    public void whenOffsetsAreChangedConcurrentlyThenCommitIsRetried() {
+        doThrow(new OptimisticLockingFailureException("conflict"))
+                .doNothing()
+                .when(repository).compareAndSetOffsets(any(), any(), any());
+
+        final List<Boolean> committed = store.commitOffsets(ImmutableList.of(cursor(P0, "003")), BY_OFFSET);
+
+        Assert.assertEquals(ImmutableList.of(true), committed);
+        verify(repository, times(2)).compareAndSetOffsets(any(), any(), any());
+    }
+
+    @Test
+    public void whenOffsetsAreChangedConcurrentlyThenPartitionsAreRetriedSeparately() {
+        doThrow(new OptimisticLockingFailureException("conflict"))
+                .doNothing()
+                .when(repository).compareAndSetOffsets(any(), any(), any());
+
+        final List<Boolean> committed = store.commitOffsets(
+                ImmutableList.of(cursor(P0, "003"), cursor(P1, "006")), BY_OFFSET);
+
+        Assert.assertEquals(ImmutableList.of(true, true), committed);
+        verify(repository, times(3)).compareAndSetOffsets(any(), any(), any());
+        verify(repository, times(1)).compareAndSetOffsets(SUBSCRIPTION_ID,
+                ImmutableMap.of(P0, "001"), ImmutableList.of(cursor(P0, "003")));
+        verify(repository, times(1)).compareAndSetOffsets(SUBSCRIPTION_ID,
+                ImmutableMap.of(P1, "005"), ImmutableList.of(cursor(P1, "006")));
+    }
+
+    @Test
+    public void whenOnePartitionKeepsConflictingThenOtherPartitionsAreStillCommittedAndCommitFails() {
+        doThrow(new OptimisticLockingFailureException("conflict"))
+                .when(repository).compareAndSetOffsets(any(), any(), any());
+        doNothing().when(repository).compareAndSetOffsets(SUBSCRIPTION_ID,
+                ImmutableMap.of(P1, "005"), ImmutableList.of(cursor(P1, "006")));
+
+        try {
+            store.commitOffsets(ImmutableList.of(cursor(P0, "003"), cursor(P1, "006")), BY_OFFSET);
+            Assert.fail("Conflict of the partition is expected to be thrown");
+        } catch (final NakadiRuntimeException expected) {
+            Assert.assertTrue(expected.getException() instanceof OptimisticLockingFailureException);
+        }
+        verify(repository, times(1)).compareAndSetOffsets(SUBSCRIPTION_ID,
+                ImmutableMap.of(P1, "005"), ImmutableList.of(cursor(P1, "006")));
+    }
+
+    @Test
+    public void whenOffsetIsCommittedByThisNodeThenListenersAreNotifiedRightAway() {
+        final AtomicInteger notified = new AtomicInteger();
+        final ZkSubscription<SubscriptionCursorWithoutToken> first =
+                store.subscribeForOffsetChanges(P0, notified::incrementAndGet);
+        final ZkSubscription<SubscriptionCursorWithoutToken> second =
+                store.subscribeForOffsetChanges(P0, notified::incrementAndGet);
+        Assert.assertEquals("001", first.getData().getOffset());
+        Assert.assertEquals(1, watcher.getWatchedCount());
+
+        store.commitOffsets(ImmutableList.of(cursor(P0, "003")), BY_OFFSET);
+
+        Assert.assertEquals(2, notified.get());
+        Assert.assertEquals("003", first.getData().getOffset());
+        Assert.assertEquals("003", second.getData().getOffset());
+        verify(repository, never()).getOffsetsOfSubscriptions(any());
+
+        first.close();
+        second.close();
+        Assert.assertEquals(0, watcher.getWatchedCount());
+    }
+
+    @Test
+    public void whenOffsetIsCommittedByAnotherNodeThenItIsFoundByPoll() {
+        final AtomicInteger notified = new AtomicInteger();
+        final ZkSubscription<SubscriptionCursorWithoutToken> subscription =
+                store.subscribeForOffsetChanges(P1, notified::incrementAndGet);
+
+        when(repository.getOffsetsOfSubscriptions(any()))
+                .thenReturn(ImmutableMap.of(SUBSCRIPTION_ID, ImmutableMap.of(P0, "001", P1, "005")));
+        watcher.poll();
+        Assert.assertEquals(0, notified.get());
+
+        when(repository.getOffsetsOfSubscriptions(any()))
+                .thenReturn(ImmutableMap.of(SUBSCRIPTION_ID, ImmutableMap.of(P0, "001", P1, "007")));
+        watcher.poll();
+        Assert.assertEquals(1, notified.get());
+        Assert.assertEquals("007", subscription.getData().getOffset());
+    }
+
+    @Test
+    public void whenManySubscriptionsAreWatchedThenTheyArePolledWithOneQuery() {
+        when(repository.getOffsets(eq("other"), anyCollectionOf(EventTypePartition.class)))
+                .thenReturn(ImmutableMap.of(P0, "010"));
+        final AtomicInteger notified = new AtomicInteger();
+        store.subscribeForOffsetChanges(P1, notified::incrementAndGet);
+        final ZkSubscription<SubscriptionCursorWithoutToken> other = new DbOffsetStore("other", repository, watcher)
+                .subscribeForOffsetChanges(P0, notified::incrementAndGet);
+
+        when(repository.getOffsetsOfSubscriptions(any())).thenReturn(ImmutableMap.of(
+                SUBSCRIPTION_ID, ImmutableMap.of(P0, "001", P1, "007"),
+                "other", ImmutableMap.of(P0, "011")));
+        watcher.poll();
+
+        Assert.assertEquals(2, notified.get());
+        Assert.assertEquals("011", other.getData().getOffset());
+        verify(repository, times(1)).getOffsetsOfSubscriptions(any());
+    }
+
+    private static SubscriptionCursorWithoutToken cursor(final EventTypePartition key, final String offset) {
+        return new SubscriptionCursorWithoutToken(key.getEventType(), key.getPartition(), offset);
+    }
+}
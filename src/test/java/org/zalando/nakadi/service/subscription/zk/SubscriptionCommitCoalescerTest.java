@@ -0,0 +1,159 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zalando.nakadi.domain.Subscription;
+import org.zalando.nakadi.exceptions.runtime.ServiceTemporarilyUnavailableException;
+import org.zalando.nakadi.view.SubscriptionCursorWithoutToken;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SubscriptionCommitCoalescerTest {
+
+    private static final Comparator<SubscriptionCursorWithoutToken> COMPARATOR =
+            Comparator.comparing(SubscriptionCursorWithoutToken::getOffset);
+
+    private ZkSubscriptionClient zkClient;
+    private SubscriptionCommitCoalescer coalescer;
+    private ExecutorService callers;
+    private Subscription subscription;
+
+    @Before
+    public void setUp() {
+        zkClient = mock(ZkSubscriptionClient.class);
+        final SubscriptionClientFactory clientFactory = mock(SubscriptionClientFactory.class);
+        when(clientFactory.createClient(any(), any())).thenReturn(zkClient);
+        coalescer = new SubscriptionCommitCoalescer(clientFactory, 2, 60000, 1000);
+        subscription = new Subscription();
+        subscription.setId("sid");
+        callers = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+        coalescer.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void whenCommitsArriveDuringWriteThenTheyAreWrittenTogether() throws Exception {
+        final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        final CountDownLatch firstWriteAllowed = new CountDownLatch(1);
+        final List<List<SubscriptionCursorWithoutToken>> writes = new ArrayList<>();
+        when(zkClient.commitOffsets(anyList(), any())).thenAnswer(invocation -> {
+            final List<SubscriptionCursorWithoutToken> cursors =
+                    new ArrayList<>((List<SubscriptionCursorWithoutToken>) invocation.getArguments()[0]);
+            synchronized (writes) {
+                writes.add(cursors);
+            }
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                firstWriteAllowed.await();
+            }
+            final List<Boolean> result = new ArrayList<>();
+            for (int i = 0; i < cursors.size(); ++i) {
+                result.add(i % 2 == 0);
+            }
+            return result;
+        });
+
+        final CompletableFuture<List<Boolean>> first = commitAsync(cursor("0", "001"));
+        firstWriteStarted.await();
+        final CompletableFuture<List<Boolean>> second = commitAsync(cursor("0", "002"), cursor("1", "002"));
+        final CompletableFuture<List<Boolean>> third = commitAsync(cursor("0", "003"));
+        waitForQueuedCommits(second, third);
+        firstWriteAllowed.countDown();
+
+        Assert.assertEquals(ImmutableList.of(true), first.get());
+        // results are split back in the order commits were queued
+        final List<Boolean> secondResult = second.get();
+        final List<Boolean> thirdResult = third.get();
+        Assert.assertEquals(2, writes.size());
+        Assert.assertEquals(3, writes.get(1).size());
+        Assert.assertEquals(2, secondResult.size());
+        Assert.assertEquals(1, thirdResult.size());
+        final List<Boolean> all = new ArrayList<>();
+        if (writes.get(1).get(0).getOffset().equals("002")) {
+            all.addAll(secondResult);
+            all.addAll(thirdResult);
+        } else {
+            all.addAll(thirdResult);
+            all.addAll(secondResult);
+        }
+        Assert.assertEquals(ImmutableList.of(true, false, true), all);
+    }
+
+    @Test(timeout = 10000)
+    public void whenWriteFailsThenAllCommitsOfBatchFail() throws Exception {
+        when(zkClient.commitOffsets(anyList(), any()))
+                .thenThrow(new ServiceTemporarilyUnavailableException("expected", null));
+        try {
+            coalescer.commitOffsets(subscription, ImmutableList.of(cursor("0", "001")), COMPARATOR);
+            Assert.fail("Exception of write is expected to be thrown to caller");
+        } catch (final ServiceTemporarilyUnavailableException ignore) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void whenWriteTakesLongerThanCommitTimeoutThenCallerFails() throws Exception {
+        final CountDownLatch writeAllowed = new CountDownLatch(1);
+        when(zkClient.commitOffsets(anyList(), any())).thenAnswer(invocation -> {
+            writeAllowed.await();
+            return ImmutableList.of(true);
+        });
+        try {
+            coalescer.commitOffsets(subscription, ImmutableList.of(cursor("0", "001")), COMPARATOR);
+            Assert.fail("Commit is expected to time out");
+        } catch (final ServiceTemporarilyUnavailableException ignore) {
+        } finally {
+            writeAllowed.countDown();
+        }
+    }
+
+    @Test
+    public void whenSessionsAreCheckedThenWatchedSessionListIsUsed() {
+        final ZkSubscription<List<String>> sessions = mock(ZkSubscription.class);
+        when(sessions.getData()).thenReturn(ImmutableList.of("stream-1"));
+        when(zkClient.subscribeForSessionListChanges(any())).thenReturn(sessions);
+
+        Assert.assertTrue(coalescer.isActiveSession(subscription, "stream-1"));
+        Assert.assertFalse(coalescer.isActiveSession(subscription, "stream-2"));
+
+        verify(zkClient, times(1)).subscribeForSessionListChanges(any());
+        verify(sessions, times(2)).getData();
+    }
+
+    private CompletableFuture<List<Boolean>> commitAsync(final SubscriptionCursorWithoutToken... cursors) {
+        return CompletableFuture.supplyAsync(
+                () -> coalescer.commitOffsets(subscription, ImmutableList.copyOf(cursors), COMPARATOR), callers);
+    }
+
+    private static void waitForQueuedCommits(final CompletableFuture<?>... commits) throws InterruptedException {
+        // commits are not finished until first write is allowed, so give them time to get into the queue
+        for (final CompletableFuture<?> commit : commits) {
+            Assert.assertFalse(commit.isDone());
+        }
+        TimeUnit.MILLISECONDS.sleep(200);
+    }
+
+    private static SubscriptionCursorWithoutToken cursor(final String partition, final String offset) {
+        return new SubscriptionCursorWithoutToken("et", partition, offset);
+    }
+}
@@ -0,0 +1,110 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.ExistsBuilder;
+import org.apache.curator.framework.api.GetDataBuilder;
+import org.apache.curator.framework.api.WatchPathable;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.service.subscription.model.Partition;
+import org.zalando.nakadi.utils.TestUtils;
+
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TopologyCodecTest {
+
+    private static final ObjectMapper MAPPER = TestUtils.OBJECT_MAPPER;
+
+    @Test
+    public void whenTopologyIsEncodedThenItIsDecodedToTheSameTopology() {
+        final ZkSubscriptionClient.Topology topology = new ZkSubscriptionClient.Topology(
+                new Partition[]{
+                        new Partition("et1", "0", null, null, Partition.State.UNASSIGNED),
+                        new Partition("et1", "1", "s1", null, Partition.State.ASSIGNED),
+                        new Partition("et2", "0", "s1", "s2", Partition.State.REASSIGNING),
+                        new Partition("et2", "007", "s2", null, Partition.State.ASSIGNED),
+                        new Partition("et2", "p-1", "s2", null, Partition.State.ASSIGNED),
+                        new Partition("et2", "12345678901", "s2", null, Partition.State.ASSIGNED)},
+                "hash",
+                300);
+
+        final byte[] encoded = TopologyCodec.encode(topology);
+
+        Assert.assertTrue(TopologyCodec.isCompact(encoded));
+        Assert.assertEquals(Integer.valueOf(300), TopologyCodec.peekVersion(encoded));
+        Assert.assertEquals(topology, TopologyCodec.decode(encoded));
+    }
+
+    @Test
+    public void whenTopologyHasNoHashThenItIsDecodedWithoutHash() {
+        final ZkSubscriptionClient.Topology topology =
+                new ZkSubscriptionClient.Topology(new Partition[0], null, 0);
+        Assert.assertEquals(topology, TopologyCodec.decode(TopologyCodec.encode(topology)));
+    }
+
+    @Test
+    public void whenTopologyIsJsonThenItIsNotCompact() throws Exception {
+        final byte[] json = MAPPER.writeValueAsBytes(new ZkSubscriptionClient.Topology(
+                new Partition[]{new Partition("et1", "0", null, null, Partition.State.UNASSIGNED)}, "", 1));
+        Assert.assertFalse(TopologyCodec.isCompact(json));
+        Assert.assertNull(TopologyCodec.peekVersion(json));
+    }
+
+    @Test
+    public void whenTopologyIsBigThenCompactFormIsMuchSmallerThanJson() throws Exception {
+        final String[] sessions = new String[50];
+        for (int i = 0; i < sessions.length; ++i) {
+            sessions[i] = UUID.randomUUID().toString();
+        }
+        final Partition[] partitions = new Partition[5000];
+        for (int i = 0; i < partitions.length; ++i) {
+            partitions[i] = new Partition("event-type-" + i % 10, String.valueOf(i / 10),
+                    sessions[i % sessions.length], null, Partition.State.ASSIGNED);
+        }
+        final ZkSubscriptionClient.Topology topology = new ZkSubscriptionClient.Topology(partitions, "hash", 10);
+
+        final byte[] compact = TopologyCodec.encode(topology);
+        final byte[] json = MAPPER.writeValueAsBytes(topology);
+
+        Assert.assertTrue(compact.length + " vs " + json.length, compact.length * 10 < json.length);
+        Assert.assertEquals(topology, TopologyCodec.decode(compact));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenTopologyNodeIsNotChangedThenItIsNotReadAgain() throws Exception {
+        final CuratorFramework curator = mock(CuratorFramework.class);
+        final GetDataBuilder getData = mock(GetDataBuilder.class);
+        final WatchPathable<byte[]> read = mock(WatchPathable.class);
+        final ExistsBuilder checkExists = mock(ExistsBuilder.class);
+        when(curator.getData()).thenReturn(getData);
+        when(getData.storingStatIn(any())).thenReturn(read);
+        when(curator.checkExists()).thenReturn(checkExists);
+        final ZkSubscriptionClient.Topology topology = new ZkSubscriptionClient.Topology(
+                new Partition[]{new Partition("et1", "0", "s1", null, Partition.State.ASSIGNED)}, "hash", 3);
+        when(read.forPath(anyString())).thenReturn(TopologyCodec.encode(topology));
+        when(checkExists.forPath(anyString())).thenReturn(new Stat());
+        final NewZkSubscriptionClient client =
+                new NewZkSubscriptionClient("sid", curator, "test", MAPPER, () -> true,
+                        new ZkWatchHub(curator), null, () -> false);
+
+        Assert.assertEquals(topology, client.getTopology());
+        Assert.assertSame(client.getTopology(), client.getTopology());
+        verify(read, times(1)).forPath(anyString());
+
+        final Stat changed = new Stat();
+        changed.setVersion(1);
+        when(checkExists.forPath(anyString())).thenReturn(changed);
+        Assert.assertEquals(topology, client.getTopology());
+        verify(read, times(2)).forPath(anyString());
+    }
+}
@@ -0,0 +1,126 @@
+package org.zalando.nakadi.service.subscription.zk;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundPathable;
+import org.apache.curator.framework.api.GetChildrenBuilder;
+import org.apache.curator.framework.api.GetDataBuilder;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZkWatchHubTest {
+
+    private static final String PATH = "/nakadi/subscriptions/sid/offsets/et/0";
+    private static final WatchedEvent CHANGED =
+            new WatchedEvent(Watcher.Event.EventType.NodeDataChanged, Watcher.Event.KeeperState.SyncConnected, PATH);
+
+    private final CuratorFramework curator = mock(CuratorFramework.class);
+    private final GetDataBuilder getData = mock(GetDataBuilder.class);
+    private BackgroundPathable<byte[]> watchedRead;
+    private ZkWatchHub hub;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        watchedRead = mock(BackgroundPathable.class);
+        when(curator.getData()).thenReturn(getData);
+        when(getData.usingWatcher(any(Watcher.class))).thenReturn(watchedRead);
+        when(watchedRead.forPath(PATH)).thenReturn("001".getBytes(UTF_8));
+        hub = new ZkWatchHub(curator);
+    }
+
+    @Test
+    public void whenNodeIsWatchedByManySessionsThenItIsWatchedAndReadOnce() throws Exception {
+        final AtomicInteger notified = new AtomicInteger();
+        final ZkSubscription<String> first = hub.subscribeForValue(PATH, notified::incrementAndGet, String::new);
+        final ZkSubscription<String> second = hub.subscribeForValue(PATH, notified::incrementAndGet, String::new);
+
+        Assert.assertEquals("001", first.getData());
+        Assert.assertEquals("001", second.getData());
+        Assert.assertEquals(1, hub.getWatchCount());
+        final ArgumentCaptor<Watcher> watcher = ArgumentCaptor.forClass(Watcher.class);
+        verify(getData, times(1)).usingWatcher(watcher.capture());
+        verify(watchedRead, times(1)).forPath(PATH);
+
+        when(watchedRead.forPath(PATH)).thenReturn("002".getBytes(UTF_8));
+        watcher.getValue().process(CHANGED);
+        Assert.assertEquals(2, notified.get());
+        Assert.assertEquals("002", first.getData());
+        Assert.assertEquals("002", second.getData());
+        verify(watchedRead, times(2)).forPath(PATH);
+    }
+
+    @Test
+    public void whenSubscriptionIsClosedThenItIsNotNotifiedAndWatchIsReleasedWithTheLastOne() throws Exception {
+        final AtomicInteger firstNotified = new AtomicInteger();
+        final AtomicInteger secondNotified = new AtomicInteger();
+        final ZkSubscription<String> first = hub.subscribeForValue(PATH, firstNotified::incrementAndGet, String::new);
+        final ZkSubscription<String> second =
+                hub.subscribeForValue(PATH, secondNotified::incrementAndGet, String::new);
+        final ArgumentCaptor<Watcher> watcher = ArgumentCaptor.forClass(Watcher.class);
+        verify(getData).usingWatcher(watcher.capture());
+
+        first.close();
+        Assert.assertEquals(1, hub.getWatchCount());
+        watcher.getValue().process(CHANGED);
+        Assert.assertEquals(0, firstNotified.get());
+        Assert.assertEquals(1, secondNotified.get());
+
+        second.close();
+        Assert.assertEquals(0, hub.getWatchCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenChildrenAreWatchedByManySessionsThenTheyAreReadOnce() throws Exception {
+        final GetChildrenBuilder getChildren = mock(GetChildrenBuilder.class);
+        final BackgroundPathable<List<String>> watchedChildren = mock(BackgroundPathable.class);
+        when(curator.getChildren()).thenReturn(getChildren);
+        when(getChildren.usingWatcher(any(Watcher.class))).thenReturn(watchedChildren);
+        when(watchedChildren.forPath(eq("/sessions"))).thenReturn(ImmutableList.of("s1", "s2"));
+
+        final ZkSubscription<List<String>> first = hub.subscribeForChildren("/sessions", () -> {
+        });
+        final ZkSubscription<List<String>> second = hub.subscribeForChildren("/sessions", () -> {
+        });
+
+        Assert.assertEquals(ImmutableList.of("s1", "s2"), first.getData());
+        Assert.assertEquals(ImmutableList.of("s1", "s2"), second.getData());
+        verify(watchedChildren, times(1)).forPath(eq("/sessions"));
+    }
+
+    @Test
+    public void whenCreateOnceValueIsReadThenItIsCachedUntilInvalidated() throws Exception {
+        final String marker = "/nakadi/subscriptions/sid/offset_store";
+        when(getData.forPath(marker)).thenThrow(new KeeperException.NoNodeException(marker));
+
+        Assert.assertFalse(hub.getCreateOnceValue(marker).isPresent());
+        Assert.assertFalse(hub.getCreateOnceValue(marker).isPresent());
+        verify(getData, times(1)).forPath(marker);
+
+        reset(getData);
+        when(getData.forPath(marker)).thenReturn("db".getBytes(UTF_8));
+        hub.invalidateCreateOnceValue(marker);
+        Assert.assertEquals("db", new String(hub.getCreateOnceValue(marker).get(), UTF_8));
+        Assert.assertEquals("db", new String(hub.getCreateOnceValue(marker).get(), UTF_8));
+        verify(getData, times(1)).forPath(marker);
+        Assert.assertEquals(0, hub.getWatchCount());
+    }
+}
@@ -0,0 +1,74 @@
+package org.zalando.nakadi.service.timeline;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class LocalLockingTest {
+
+    private final LocalLocking locking = new LocalLocking();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void whenEventTypeIsLockedThenInFlightPublishingIsDrained() throws Exception {
+        final Closeable publishing = locking.workWithEventType("et", 1000);
+        final Future<?> lock = executor.submit(() -> {
+            locking.updateLockedEventTypes(ImmutableSet.of("et"));
+            return null;
+        });
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertFalse(lock.isDone());
+
+        publishing.close();
+        lock.get();
+    }
+
+    @Test(timeout = 10000)
+    public void whenOtherEventTypeIsLockedThenPublishingIsNotBlocked() throws Exception {
+        final Closeable publishing = locking.workWithEventType("et-1", 1000);
+        final Future<?> lock = executor.submit(() -> {
+            locking.updateLockedEventTypes(ImmutableSet.of("et-1"));
+            return null;
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        locking.workWithEventType("et-2", 0).close();
+
+        publishing.close();
+        lock.get();
+    }
+
+    @Test(timeout = 10000, expected = TimeoutException.class)
+    public void whenEventTypeIsLockedThenPublishingTimesOut() throws Exception {
+        locking.updateLockedEventTypes(ImmutableSet.of("et"));
+        locking.workWithEventType("et", 100);
+    }
+
+    @Test(timeout = 10000)
+    public void whenEventTypeIsUnlockedThenWaitingPublishingProceeds() throws Exception {
+        locking.updateLockedEventTypes(ImmutableSet.of("et"));
+        final Future<Closeable> publishing = executor.submit(() -> locking.workWithEventType("et", 5000));
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertFalse(publishing.isDone());
+
+        Assert.assertEquals(ImmutableSet.of("et"), locking.getUnlockedEventTypes(ImmutableSet.of()));
+        locking.updateLockedEventTypes(ImmutableSet.of());
+
+        publishing.get().close();
+        Assert.assertEquals(ImmutableSet.of(), locking.getUnlockedEventTypes(ImmutableSet.of()));
+    }
+}
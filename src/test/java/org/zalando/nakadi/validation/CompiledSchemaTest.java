@@ -0,0 +1,254 @@
+package org.zalando.nakadi.validation;
+
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zalando.nakadi.domain.CleanupPolicy;
+import org.zalando.nakadi.domain.CompatibilityMode;
+import org.zalando.nakadi.domain.EventCategory;
+import org.zalando.nakadi.domain.EventType;
+import org.zalando.nakadi.utils.EventTypeTestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.zalando.nakadi.utils.TestUtils.readFile;
+
+/**
+ * Differential test of compiled schemas: every event is validated with everit and with compiled schema, and both are
+ * expected to come to the same decision. Events are produced by mutating valid events: removing, adding and replacing
+ * values of every field with values of all the json types.
+ */
+public class CompiledSchemaTest {
+
+    private static final Object[] REPLACEMENTS = {
+            JSONObject.NULL, true, 7, -3, 7.5, 1L << 40, "", "x", "1992-08-03T10:00:00Z",
+            "12341234-1234-1324-1324-123412341234", "create", new JSONObject(), new JSONArray(),
+            new JSONArray().put("x"), new JSONObject().put("id", "x")};
+
+    private final JsonSchemaEnrichment enrichment = new JsonSchemaEnrichment();
+
+    @Test
+    public void dataChangeEventsAreValidatedTheSameWay() throws Exception {
+        for (final CompatibilityMode mode : CompatibilityMode.values()) {
+            final EventType eventType = EventTypeTestBuilder.builder()
+                    .category(EventCategory.DATA)
+                    .compatibilityMode(mode)
+                    .schema(readFile("product-json-schema.json"))
+                    .build();
+            assertSameDecisions(enrichment.effectiveSchema(eventType), new JSONObject(readFile("product-event.json")));
+        }
+    }
+
+    @Test
+    public void businessEventsAreValidatedTheSameWay() throws Exception {
+        for (final CompatibilityMode mode : CompatibilityMode.values()) {
+            for (final CleanupPolicy cleanupPolicy : new CleanupPolicy[]{CleanupPolicy.DELETE, CleanupPolicy.COMPACT}) {
+                final EventType eventType = EventTypeTestBuilder.builder()
+                        .category(EventCategory.BUSINESS)
+                        .compatibilityMode(mode)
+                        .cleanupPolicy(cleanupPolicy)
+                        .schema(keywordsSchema())
+                        .build();
+                final JSONObject event = keywordsEvent();
+                if (mode == CompatibilityMode.COMPATIBLE) {
+                    // map with any keys is not allowed in compatible mode
+                    event.remove("labels");
+                }
+                if (cleanupPolicy == CleanupPolicy.COMPACT) {
+                    event.getJSONObject("metadata").put("partition_compaction_key", "key");
+                }
+                assertSameDecisions(enrichment.effectiveSchema(eventType), event);
+            }
+        }
+    }
+
+    @Test
+    public void sampleBusinessEventIsValidatedTheSameWay() throws Exception {
+        final EventType eventType = EventTypeTestBuilder.builder()
+                .category(EventCategory.BUSINESS)
+                .schema("{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"string\"},\"sku\":{\"type\":" +
+                        "\"string\",\"pattern\":\"^[A-Z][0-9]+$\"},\"name\":{\"type\":\"string\"},\"price\":" +
+                        "{\"type\":\"number\",\"minimum\":0,\"exclusiveMinimum\":true}},\"required\":[\"sku\"]}")
+                .build();
+        assertSameDecisions(enrichment.effectiveSchema(eventType),
+                new JSONObject(readFile("sample-business-event.json")));
+    }
+
+    @Test
+    public void whenSchemaUsesUnsupportedKeywordsThenItIsNotCompiled() {
+        final String[] schemas = {
+                "{\"not\":{\"type\":\"string\"}}",
+                "{\"type\":\"object\",\"patternProperties\":{\"^x\":{\"type\":\"string\"}}}",
+                "{\"type\":\"string\",\"format\":\"email\"}",
+                "{\"type\":\"number\",\"multipleOf\":3}",
+                "{\"type\":\"array\",\"uniqueItems\":true}",
+                "{\"type\":\"array\",\"items\":[{\"type\":\"string\"}]}",
+                "{\"$schema\":\"http://json-schema.org/draft-06/schema#\",\"type\":\"string\"}",
+                "{\"properties\":{\"a\":{\"$ref\":\"#/definitions/a\",\"type\":\"string\"}}," +
+                        "\"definitions\":{\"a\":{\"type\":\"string\"}}}",
+                "{\"properties\":{\"a\":{\"$ref\":\"http://example.com/schema\"}}}",
+                "{\"properties\":{\"a\":{\"$ref\":\"#/definitions/missing\"}}}",
+        };
+        for (final String schema : schemas) {
+            Assert.assertEquals(schema, Optional.empty(), CompiledSchema.compile(new JSONObject(schema)));
+        }
+    }
+
+    @Test
+    public void whenEnumHasNonStringValuesThenNonStringValuesAreNotDecided() {
+        final CompiledSchema compiled = CompiledSchema.compile(new JSONObject("{\"enum\":[\"a\",1]}")).get();
+
+        Assert.assertEquals(CompiledSchema.VALID, compiled.validate("a"));
+        Assert.assertEquals(CompiledSchema.INVALID, compiled.validate("b"));
+        Assert.assertEquals(CompiledSchema.UNKNOWN, compiled.validate(1));
+    }
+
+    @Test
+    public void whenEventIsNotConfirmedByCompiledSchemaThenEveritMessageIsReturned() {
+        final JSONObject schema = new JSONObject("{\"properties\":{\"a\":{\"type\":\"string\"}}}");
+        final JSONSchemaValidator validator = new JSONSchemaValidator(schema);
+
+        Assert.assertEquals(Optional.empty(), validator.accepts(new JSONObject("{\"a\":\"b\"}")));
+        Assert.assertEquals("#/a: expected type: String, found: Integer",
+                validator.accepts(new JSONObject("{\"a\":1}")).get().getMessage());
+    }
+
+    private void assertSameDecisions(final JSONObject schema, final JSONObject validEvent) {
+        final CompiledSchema compiled = CompiledSchema.compile(schema)
+                .orElseThrow(() -> new AssertionError("Schema is expected to be compiled: " + schema));
+        final Schema everit = SchemaLoader.builder()
+                .schemaJson(schema)
+                .addFormatValidator("date-time", new RFC3339DateTimeValidator())
+                .build()
+                .load()
+                .build();
+        Assert.assertEquals("Event is expected to be valid: " + validEvent,
+                CompiledSchema.VALID, compiled.validate(validEvent));
+
+        final List<JSONObject> events = new ArrayList<>();
+        mutate(validEvent, validEvent, events);
+        int rejected = 0;
+        for (final JSONObject event : events) {
+            final boolean everitValid = isValid(everit, event);
+            Assert.assertEquals("Different decision on " + event,
+                    everitValid ? CompiledSchema.VALID : CompiledSchema.INVALID, compiled.validate(event));
+            rejected += everitValid ? 0 : 1;
+        }
+        // mutations are expected to cover both valid and invalid events
+        Assert.assertTrue(rejected > 0 && rejected < events.size());
+    }
+
+    private static boolean isValid(final Schema schema, final JSONObject event) {
+        try {
+            schema.validate(event);
+            return true;
+        } catch (final ValidationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds copies of root event to result with every value of {@code value} (which is a part of root event) removed
+     * and replaced.
+     */
+    private static void mutate(final JSONObject root, final Object value, final List<JSONObject> result) {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            for (final String key : new ArrayList<>(object.keySet())) {
+                final Object original = object.get(key);
+                object.remove(key);
+                result.add(copy(root));
+                for (final Object replacement : REPLACEMENTS) {
+                    object.put(key, replacement);
+                    result.add(copy(root));
+                }
+                object.put(key, original);
+                mutate(root, original, result);
+            }
+            object.put("unexpected_property", "x");
+            result.add(copy(root));
+            object.remove("unexpected_property");
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); ++i) {
+                final Object original = array.get(i);
+                for (final Object replacement : REPLACEMENTS) {
+                    array.put(i, replacement);
+                    result.add(copy(root));
+                }
+                array.put(i, original);
+                mutate(root, original, result);
+            }
+            array.put("x");
+            result.add(copy(root));
+            array.remove(array.length() - 1);
+            if (array.length() > 0) {
+                final Object last = array.remove(array.length() - 1);
+                result.add(copy(root));
+                array.put(last);
+            }
+        }
+    }
+
+    private static JSONObject copy(final JSONObject event) {
+        return new JSONObject(event.toString());
+    }
+
+    private static JSONObject keywordsSchema() {
+        return new JSONObject("{" +
+                "\"type\":\"object\"," +
+                "\"required\":[\"name\",\"count\",\"tree\"]," +
+                "\"properties\":{" +
+                "  \"name\":{\"type\":\"string\",\"minLength\":2,\"maxLength\":10,\"pattern\":\"^[a-zü]+$\"}," +
+                "  \"nickname\":{\"type\":[\"string\",\"null\"],\"x-extensible-enum\":[\"a\"]}," +
+                "  \"count\":{\"type\":\"integer\",\"minimum\":0,\"maximum\":100,\"exclusiveMaximum\":true}," +
+                "  \"ratio\":{\"type\":\"number\",\"minimum\":-5.5,\"maximum\":10}," +
+                "  \"kind\":{\"enum\":[\"create\",\"update\"]}," +
+                "  \"flag\":{\"type\":\"boolean\"}," +
+                "  \"nothing\":{\"type\":\"null\"}," +
+                "  \"created_at\":{\"type\":\"string\",\"format\":\"date-time\"}," +
+                "  \"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\"},\"minItems\":1,\"maxItems\":3}," +
+                "  \"labels\":{\"type\":\"object\",\"additionalProperties\":{\"type\":\"string\"}," +
+                "      \"minProperties\":1,\"maxProperties\":2}," +
+                "  \"either\":{\"anyOf\":[{\"type\":\"string\",\"minLength\":3},{\"type\":\"integer\"}]}," +
+                "  \"exactly\":{\"oneOf\":[{\"type\":\"string\"},{\"type\":\"number\"},{\"minimum\":0}]," +
+                "      \"x-note\":\"ignored\",\"unknown_keyword\":true}," +
+                "  \"both\":{\"allOf\":[{\"type\":\"string\"},{\"maxLength\":3}]}," +
+                "  \"untyped\":{\"minLength\":1,\"minimum\":1,\"required\":[\"id\"],\"properties\":{\"id\":{}}}," +
+                "  \"tree\":{\"$ref\":\"#/definitions/node\"}" +
+                "}," +
+                "\"definitions\":{" +
+                "  \"node\":{\"type\":\"object\",\"required\":[\"id\"],\"properties\":{" +
+                "    \"id\":{\"type\":\"string\"}," +
+                "    \"children\":{\"type\":\"array\",\"items\":{\"$ref\":\"#/definitions/node\"}}}}" +
+                "}}");
+    }
+
+    private static JSONObject keywordsEvent() {
+        return new JSONObject("{" +
+                "\"metadata\":{\"eid\":\"12341234-1234-1324-1324-123412341234\"," +
+                "  \"occurred_at\":\"1992-08-03T10:00:00Z\",\"span_ctx\":{\"trace\":\"1\"}}," +
+                "\"name\":\"jürgen\"," +
+                "\"nickname\":null," +
+                "\"count\":99," +
+                "\"ratio\":-5.5," +
+                "\"kind\":\"update\"," +
+                "\"flag\":false," +
+                "\"nothing\":null," +
+                "\"created_at\":\"2019-01-01T10:00:00.123+01:00\"," +
+                "\"tags\":[\"a\",\"b\"]," +
+                "\"labels\":{\"a\":\"b\"}," +
+                "\"either\":\"abc\"," +
+                "\"exactly\":-1," +
+                "\"both\":\"ab\"," +
+                "\"untyped\":{\"id\":1}," +
+                "\"tree\":{\"id\":\"root\",\"children\":[{\"id\":\"leaf\",\"children\":[]}]}" +
+                "}");
+    }
+}
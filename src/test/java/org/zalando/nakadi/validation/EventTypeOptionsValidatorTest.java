@@ -1,5 +1,6 @@
 package org.zalando.nakadi.validation;
 
+import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
 import org.junit.Test;
 import org.zalando.nakadi.domain.EventTypeOptions;
@@ -13,7 +14,8 @@ public class EventTypeOptionsValidatorTest {
 
     private final EventTypeOptionsValidator validator = new EventTypeOptionsValidator(
             TOPIC_RETENTION_MIN,
-            TOPIC_RETENTION_MAX
+            TOPIC_RETENTION_MAX,
+            ImmutableSet.of("default", "bulk")
     );
 
     @Test
@@ -38,6 +40,22 @@ public class EventTypeOptionsValidatorTest {
         }
     }
 
+    @Test
+    public void testProducerProfileValidation() {
+        final EventTypeOptions options = new EventTypeOptions();
+        validator.checkProducerProfile(options);
+        options.setProducerProfile("bulk");
+        validator.checkProducerProfile(options);
+        options.setProducerProfile("unknown");
+        try {
+            validator.checkProducerProfile(options);
+            Assert.fail("EventTypeOptionsValidationException is expected here");
+        } catch (EventTypeOptionsValidationException e) {
+            Assert.assertEquals(
+                    "Field \"options.producer_profile\" must be one of [default, bulk]", e.getMessage());
+        }
+    }
+
     private EventTypeOptions createEventTypeOptions(final long retentionTime) {
         final EventTypeOptions eventTypeOptions = new EventTypeOptions();
         eventTypeOptions.setRetentionTime(retentionTime);